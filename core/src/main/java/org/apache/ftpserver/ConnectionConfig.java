@@ -68,4 +68,116 @@ public interface ConnectionConfig {
      *         processing client requests.
      */
     int getMaxThreads();
+
+    /**
+     * Returns the maximum combined download rate of all data connections on
+     * the server.
+     * 
+     * @return The maximum download rate in bytes per second, 0 if unlimited
+     */
+    int getMaxDownloadRate();
+
+    /**
+     * Returns the maximum combined upload rate of all data connections on the
+     * server.
+     * 
+     * @return The maximum upload rate in bytes per second, 0 if unlimited
+     */
+    int getMaxUploadRate();
+
+    /**
+     * Returns whether commands, including the blocking data transfers they
+     * start, are executed on virtual threads rather than on a fixed pool of
+     * platform threads. Requires Java 21 or later.
+     * 
+     * @return true if commands are executed on virtual threads
+     */
+    boolean isVirtualThreadsEnabled();
+
+    /**
+     * Returns the size of the buffers used to move data during transfers,
+     * taken from a pool shared by the server.
+     * 
+     * @return The transfer buffer size in bytes
+     */
+    int getTransferBufferSize();
+
+    /**
+     * Returns the maximum number of bytes kept in idle pooled transfer
+     * buffers. Buffers released while the pool is full are left to the
+     * garbage collector.
+     * 
+     * @return The transfer buffer pool size in bytes, 0 disables pooling
+     */
+    int getTransferBufferPoolSize();
+
+    /**
+     * Returns whether the transfer buffers handed to channels are direct
+     * buffers, allocated outside of the Java heap.
+     * 
+     * @return true if direct buffers are used
+     */
+    boolean isDirectTransferBuffers();
+
+    /**
+     * Returns the checksum algorithms computed while files are uploaded, so
+     * that checksum commands sent after the upload do not read the file
+     * again.
+     * 
+     * @return The algorithm names, empty if no checksums are computed
+     */
+    String[] getInlineChecksums();
+
+    /**
+     * Returns the maximum number of files whose checksums are kept in memory.
+     * 
+     * @return The checksum cache size, 0 disables the cache
+     */
+    int getChecksumCacheSize();
+
+    /**
+     * Returns the maximum number of bytes of an upload received from the
+     * client and not yet written to the file. When positive, uploads are
+     * written to the file by a separate thread, so that slow disk writes do
+     * not stall the reception of the data.
+     * 
+     * @return The write-behind size in bytes, 0 if uploads are written by the
+     *         thread receiving the data
+     */
+    int getWriteBehindSize();
+
+    /**
+     * Returns the maximum number of bytes received from the clients and not
+     * yet written to the files, for all uploads of the server.
+     * 
+     * @return The write-behind pool size in bytes
+     */
+    int getWriteBehindPoolSize();
+
+    /**
+     * Returns the number of chunks of a downloaded file read ahead while the
+     * current chunk is sent. When positive, downloads are read from the
+     * files by a separate thread, so that slow storage does not leave the
+     * data connection idle.
+     * 
+     * @return The read-ahead depth, 0 if downloads are read by the thread
+     *         sending the data
+     */
+    int getReadAheadDepth();
+
+    /**
+     * Returns the size of the chunks read ahead from the downloaded files.
+     * 
+     * @return The read-ahead chunk size in bytes
+     */
+    int getReadAheadChunkSize();
+
+    /**
+     * Returns whether directory listings show the directories before the
+     * files. Listings are streamed from the directory, so listing the
+     * directories first takes two passes over it.
+     * 
+     * @return true if directories are listed before files
+     */
+    boolean isListDirectoriesFirst();
 }
@@ -41,6 +41,32 @@ public class ConnectionConfigFactory {
 
     private int maxThreads = 0;
 
+    private int maxDownloadRate = 0;
+
+    private int maxUploadRate = 0;
+
+    private boolean virtualThreadsEnabled = false;
+
+    private int transferBufferSize = 64 * 1024;
+
+    private int transferBufferPoolSize = 16 * 1024 * 1024;
+
+    private boolean directTransferBuffers = false;
+
+    private String[] inlineChecksums = new String[0];
+
+    private int checksumCacheSize = 1000;
+
+    private int writeBehindSize = 0;
+
+    private int writeBehindPoolSize = 64 * 1024 * 1024;
+
+    private int readAheadDepth = 0;
+
+    private int readAheadChunkSize = 256 * 1024;
+
+    private boolean listDirectoriesFirst = true;
+
     /**
      * Create a connection configuration instances based on the configuration on this factory
      * @return The {@link ConnectionConfig} instance
@@ -48,7 +74,12 @@ public class ConnectionConfigFactory {
     public ConnectionConfig createConnectionConfig() {
         return new DefaultConnectionConfig(anonymousLoginEnabled,
                 loginFailureDelay, maxLogins, maxAnonymousLogins,
-                maxLoginFailures, maxThreads);
+                maxLoginFailures, maxThreads, maxDownloadRate, maxUploadRate,
+                virtualThreadsEnabled, transferBufferSize,
+                transferBufferPoolSize, directTransferBuffers,
+                inlineChecksums, checksumCacheSize, writeBehindSize,
+                writeBehindPoolSize, readAheadDepth, readAheadChunkSize,
+                listDirectoriesFirst);
     }
 
     /**
@@ -125,6 +156,299 @@ public class ConnectionConfigFactory {
         this.maxThreads = maxThreads;
     }
 
+    /**
+     * Returns the maximum combined download rate of all data connections on
+     * the server.
+     * 
+     * @return The maximum download rate in bytes per second, 0 if unlimited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Sets the maximum combined download rate of all data connections on the
+     * server. The bandwidth is shared fairly between the active downloads.
+     * 
+     * @param maxDownloadRate
+     *            The maximum download rate in bytes per second, 0 if unlimited
+     */
+    public void setMaxDownloadRate(int maxDownloadRate) {
+        this.maxDownloadRate = maxDownloadRate;
+    }
+
+    /**
+     * Returns the maximum combined upload rate of all data connections on the
+     * server.
+     * 
+     * @return The maximum upload rate in bytes per second, 0 if unlimited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Sets the maximum combined upload rate of all data connections on the
+     * server. The bandwidth is shared fairly between the active uploads.
+     * 
+     * @param maxUploadRate
+     *            The maximum upload rate in bytes per second, 0 if unlimited
+     */
+    public void setMaxUploadRate(int maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
+    /**
+     * Returns whether commands are executed on virtual threads.
+     * 
+     * @return true if commands are executed on virtual threads
+     */
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    /**
+     * Sets whether commands, including the blocking data transfers they
+     * start, are executed on virtual threads. Commands of a session are still
+     * executed one at a time and in order, but a blocked command no longer
+     * holds one of a limited number of platform threads, so the maximum
+     * number of threads does not apply. Requires Java 21 or later, older Java
+     * versions fall back to platform threads. Defaults to false.
+     * 
+     * @param virtualThreadsEnabled
+     *            true if commands should be executed on virtual threads
+     */
+    public void setVirtualThreadsEnabled(boolean virtualThreadsEnabled) {
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+    }
+
+    /**
+     * Returns the size of the pooled buffers used during transfers.
+     * 
+     * @return The transfer buffer size in bytes
+     */
+    public int getTransferBufferSize() {
+        return transferBufferSize;
+    }
+
+    /**
+     * Sets the size of the pooled buffers used during transfers, checksum
+     * calculations and directory listings. Larger buffers help on links with
+     * a high bandwidth-delay product. Defaults to 64 kB.
+     * 
+     * @param transferBufferSize
+     *            The transfer buffer size in bytes
+     */
+    public void setTransferBufferSize(int transferBufferSize) {
+        this.transferBufferSize = transferBufferSize;
+    }
+
+    /**
+     * Returns the maximum number of bytes kept in idle pooled transfer
+     * buffers.
+     * 
+     * @return The transfer buffer pool size in bytes, 0 disables pooling
+     */
+    public int getTransferBufferPoolSize() {
+        return transferBufferPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes kept in idle pooled transfer buffers.
+     * Buffers are still handed out when the pool is empty, but those released
+     * while it is full are left to the garbage collector. Defaults to 16 MB.
+     * 
+     * @param transferBufferPoolSize
+     *            The transfer buffer pool size in bytes, 0 disables pooling
+     */
+    public void setTransferBufferPoolSize(int transferBufferPoolSize) {
+        this.transferBufferPoolSize = transferBufferPoolSize;
+    }
+
+    /**
+     * Returns whether the transfer buffers handed to channels are direct
+     * buffers.
+     * 
+     * @return true if direct buffers are used
+     */
+    public boolean isDirectTransferBuffers() {
+        return directTransferBuffers;
+    }
+
+    /**
+     * Sets whether the transfer buffers handed to channels are direct
+     * buffers, allocated outside of the Java heap, which saves a copy when
+     * moving data between sockets and files. Transfers working on streams
+     * always use heap buffers. Defaults to false.
+     * 
+     * @param directTransferBuffers
+     *            true if direct buffers should be used
+     */
+    public void setDirectTransferBuffers(boolean directTransferBuffers) {
+        this.directTransferBuffers = directTransferBuffers;
+    }
+
+    /**
+     * Returns the checksum algorithms computed while files are uploaded.
+     * 
+     * @return The algorithm names, empty if no checksums are computed
+     */
+    public String[] getInlineChecksums() {
+        return inlineChecksums.clone();
+    }
+
+    /**
+     * Sets the checksum algorithms computed while binary files are uploaded
+     * from the start, MD5, SHA-1, SHA-256 or CRC32. The checksums are cached
+     * and answer the checksum commands sent after the upload without reading
+     * the file again. Defaults to none.
+     * 
+     * @param inlineChecksums
+     *            The algorithm names, empty to compute no checksums
+     */
+    public void setInlineChecksums(String[] inlineChecksums) {
+        this.inlineChecksums = inlineChecksums != null ? inlineChecksums
+                .clone() : new String[0];
+    }
+
+    /**
+     * Returns the maximum number of files whose checksums are kept in memory.
+     * 
+     * @return The checksum cache size, 0 disables the cache
+     */
+    public int getChecksumCacheSize() {
+        return checksumCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of files whose checksums are kept in memory,
+     * the least recently used are evicted first. Defaults to 1000.
+     * 
+     * @param checksumCacheSize
+     *            The checksum cache size, 0 disables the cache
+     */
+    public void setChecksumCacheSize(int checksumCacheSize) {
+        this.checksumCacheSize = checksumCacheSize;
+    }
+
+    /**
+     * Returns the maximum number of bytes of an upload received from the
+     * client and not yet written to the file.
+     * 
+     * @return The write-behind size in bytes, 0 if disabled
+     */
+    public int getWriteBehindSize() {
+        return writeBehindSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes of an upload received from the client
+     * and not yet written to the file. When positive, the data read from the
+     * data connection is handed to a separate thread which writes it to the
+     * file, coalescing the buffers received meanwhile into single writes, so
+     * that slow disk writes do not stall the reception of the data. The
+     * upload is only acknowledged once all the data has been written.
+     * Defaults to 0, uploads being written by the thread receiving the data.
+     * 
+     * @param writeBehindSize
+     *            The write-behind size in bytes, 0 to disable
+     */
+    public void setWriteBehindSize(int writeBehindSize) {
+        this.writeBehindSize = writeBehindSize;
+    }
+
+    /**
+     * Returns the maximum number of bytes received from the clients and not
+     * yet written to the files, for all uploads of the server.
+     * 
+     * @return The write-behind pool size in bytes
+     */
+    public int getWriteBehindPoolSize() {
+        return writeBehindPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes received from the clients and not yet
+     * written to the files, for all uploads of the server. Uploads reaching
+     * this limit wait for the pending writes before receiving more data. Only
+     * used if the write-behind size is positive. Defaults to 64 MB.
+     * 
+     * @param writeBehindPoolSize
+     *            The write-behind pool size in bytes
+     */
+    public void setWriteBehindPoolSize(int writeBehindPoolSize) {
+        this.writeBehindPoolSize = writeBehindPoolSize;
+    }
+
+    /**
+     * Returns the number of chunks of a downloaded file read ahead while the
+     * current chunk is sent.
+     * 
+     * @return The read-ahead depth, 0 if disabled
+     */
+    public int getReadAheadDepth() {
+        return readAheadDepth;
+    }
+
+    /**
+     * Sets the number of chunks of a downloaded file read ahead while the
+     * current chunk is sent. When positive, downloaded files are read by a
+     * separate thread, so that the data connection is not left idle while
+     * waiting for slow or network mounted storage. Works with any file
+     * system. Defaults to 0, downloads being read by the thread sending the
+     * data.
+     * 
+     * @param readAheadDepth
+     *            The read-ahead depth, 0 to disable
+     */
+    public void setReadAheadDepth(int readAheadDepth) {
+        this.readAheadDepth = readAheadDepth;
+    }
+
+    /**
+     * Returns the size of the chunks read ahead from the downloaded files.
+     * 
+     * @return The read-ahead chunk size in bytes
+     */
+    public int getReadAheadChunkSize() {
+        return readAheadChunkSize;
+    }
+
+    /**
+     * Sets the size of the chunks read ahead from the downloaded files. Only
+     * used if the read-ahead depth is positive. Defaults to 256 kB.
+     * 
+     * @param readAheadChunkSize
+     *            The read-ahead chunk size in bytes
+     */
+    public void setReadAheadChunkSize(int readAheadChunkSize) {
+        this.readAheadChunkSize = readAheadChunkSize;
+    }
+
+    /**
+     * Returns whether directory listings show the directories before the
+     * files.
+     * 
+     * @return true if directories are listed before files
+     */
+    public boolean isListDirectoriesFirst() {
+        return listDirectoriesFirst;
+    }
+
+    /**
+     * Sets whether directory listings show the directories before the files.
+     * Listings are streamed from the directory without being sorted, listing
+     * the directories first reads the directory twice. Disable to list each
+     * directory in a single pass, in the order returned by the file system.
+     * Defaults to true.
+     * 
+     * @param listDirectoriesFirst
+     *            true to list directories before files
+     */
+    public void setListDirectoriesFirst(boolean listDirectoriesFirst) {
+        this.listDirectoriesFirst = listDirectoriesFirst;
+    }
+
     /**
      * Set if anonymous logins are allowed at the server
      * @param anonymousLoginEnabled true if anonymous logins should be enabled
@@ -126,4 +126,67 @@ public interface DataConnectionConfiguration {
      * @return True if SSL is mandatory for the data channel
      */
     boolean isImplicitSsl();
+
+    /**
+     * Get the maximum number of bytes a rate limited transfer can move at full
+     * speed after having been idle, that is the size of the token bucket
+     * enforcing the user's maximum transfer rate.
+     * 
+     * @return The burst size in bytes, 0 if the burst size should be a tenth
+     *         of a second worth of transfer at the maximum rate
+     */
+    int getTransferRateBurstSize();
+
+    /**
+     * Get the interval at which the transfer rate token bucket is refilled.
+     * Smaller intervals give smoother throughput at the cost of more frequent
+     * wake ups.
+     * 
+     * @return The refill interval in milliseconds
+     */
+    int getTransferRateRefillInterval();
+
+    /**
+     * Get the maximum combined download rate of all data connections on this
+     * listener.
+     * 
+     * @return The maximum download rate in bytes per second, 0 if unlimited
+     */
+    int getMaxDownloadRate();
+
+    /**
+     * Get the maximum combined upload rate of all data connections on this
+     * listener.
+     * 
+     * @return The maximum upload rate in bytes per second, 0 if unlimited
+     */
+    int getMaxUploadRate();
+
+    /**
+     * Are the transfer rate limits of a user shared by all the sessions of the
+     * user? If not, every session of a user can transfer at the user's
+     * maximum rates.
+     * 
+     * @return true if the user's transfer rates are shared by the user's
+     *         sessions
+     */
+    boolean isUserTransferRateShared();
+
+    /**
+     * Are data connections accepted, connected and waited on using
+     * non-blocking channels driven by a shared selector, rather than by
+     * blocking sockets?
+     * 
+     * @return true if non-blocking data connections are used
+     */
+    boolean isNonBlocking();
+
+    /**
+     * Are passive server sockets kept bound and listening in a pool shared
+     * by the sessions, rather than bound for each PASV and closed after the
+     * transfer?
+     * 
+     * @return true if passive server sockets are pooled
+     */
+    boolean isPassiveSocketPoolEnabled();
 }
@@ -53,6 +53,14 @@ public class DataConnectionConfigurationFactory {
     private boolean passiveIpCheck = false;
     private boolean implicitSsl;
 
+    private int transferRateBurstSize = 0;
+    private int transferRateRefillInterval = 10;
+    private int maxDownloadRate = 0;
+    private int maxUploadRate = 0;
+    private boolean userTransferRateShared = false;
+    private boolean nonBlocking = false;
+    private boolean passiveSocketPoolEnabled = false;
+
     /**
      * Create a {@link DataConnectionConfiguration} instance based on the 
      * configuration on this factory
@@ -64,7 +72,10 @@ public class DataConnectionConfigurationFactory {
                 ssl, activeEnabled, activeIpCheck,
                 activeLocalAddress, activeLocalPort,
                 passiveAddress, passivePorts,
-                passiveExternalAddress, passiveIpCheck, implicitSsl);
+                passiveExternalAddress, passiveIpCheck, implicitSsl,
+                transferRateBurstSize, transferRateRefillInterval,
+                maxDownloadRate, maxUploadRate, userTransferRateShared,
+                nonBlocking, passiveSocketPoolEnabled);
     }
     /*
      * (Non-Javadoc)
@@ -321,4 +332,143 @@ public class DataConnectionConfigurationFactory {
     public void setImplicitSsl(boolean implicitSsl) {
         this.implicitSsl = implicitSsl;
     }
+
+    /**
+     * Get the burst size of the token bucket enforcing transfer rate limits.
+     * @return The burst size in bytes, 0 for a tenth of a second worth of
+     *         transfer at the maximum rate
+     */
+    public int getTransferRateBurstSize() {
+        return transferRateBurstSize;
+    }
+
+    /**
+     * Set the maximum number of bytes a rate limited transfer can move at full
+     * speed after having been idle. Defaults to 0, a tenth of a second worth of
+     * transfer at the maximum rate.
+     * @param transferRateBurstSize The burst size in bytes
+     */
+    public void setTransferRateBurstSize(int transferRateBurstSize) {
+        this.transferRateBurstSize = transferRateBurstSize;
+    }
+
+    /**
+     * Get the interval at which the transfer rate token bucket is refilled.
+     * @return The refill interval in milliseconds
+     */
+    public int getTransferRateRefillInterval() {
+        return transferRateRefillInterval;
+    }
+
+    /**
+     * Set the interval at which the transfer rate token bucket is refilled.
+     * Defaults to 10 milliseconds.
+     * @param transferRateRefillInterval The refill interval in milliseconds
+     */
+    public void setTransferRateRefillInterval(int transferRateRefillInterval) {
+        this.transferRateRefillInterval = transferRateRefillInterval;
+    }
+
+    /**
+     * Get the maximum combined download rate of all data connections on the
+     * listener.
+     * @return The maximum download rate in bytes per second, 0 if unlimited
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * Set the maximum combined download rate of all data connections on the
+     * listener. The bandwidth is shared fairly between the active downloads.
+     * Defaults to 0, unlimited.
+     * @param maxDownloadRate The maximum download rate in bytes per second
+     */
+    public void setMaxDownloadRate(int maxDownloadRate) {
+        this.maxDownloadRate = maxDownloadRate;
+    }
+
+    /**
+     * Get the maximum combined upload rate of all data connections on the
+     * listener.
+     * @return The maximum upload rate in bytes per second, 0 if unlimited
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * Set the maximum combined upload rate of all data connections on the
+     * listener. The bandwidth is shared fairly between the active uploads.
+     * Defaults to 0, unlimited.
+     * @param maxUploadRate The maximum upload rate in bytes per second
+     */
+    public void setMaxUploadRate(int maxUploadRate) {
+        this.maxUploadRate = maxUploadRate;
+    }
+
+    /**
+     * Are the transfer rate limits of a user shared by all the user's sessions?
+     * @return true if the user's transfer rates are shared
+     */
+    public boolean isUserTransferRateShared() {
+        return userTransferRateShared;
+    }
+
+    /**
+     * Set whether the maximum transfer rates of a user, as configured by the
+     * user's {@link org.apache.ftpserver.usermanager.impl.TransferRatePermission},
+     * are shared by all the sessions of the user. Defaults to false, every
+     * session of a user can transfer at the user's maximum rates.
+     * @param userTransferRateShared true if the user's transfer rates should
+     *            be shared
+     */
+    public void setUserTransferRateShared(boolean userTransferRateShared) {
+        this.userTransferRateShared = userTransferRateShared;
+    }
+
+    /**
+     * Are non-blocking data connections used?
+     * @return true if non-blocking data connections are used
+     */
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * Set whether data connections are accepted, connected and waited on
+     * using non-blocking channels driven by a selector shared by all data
+     * connections of the server, rather than by blocking sockets. Plain
+     * transfers then release the thread running the command until they
+     * complete, secure transfers and the uploads in the compressed and block
+     * modes still wait on that thread. Defaults to false.
+     * @param nonBlocking true if non-blocking data connections should be used
+     */
+    public void setNonBlocking(boolean nonBlocking) {
+        this.nonBlocking = nonBlocking;
+    }
+
+    /**
+     * Are passive server sockets pooled?
+     * @return true if passive server sockets are pooled
+     */
+    public boolean isPassiveSocketPoolEnabled() {
+        return passiveSocketPoolEnabled;
+    }
+
+    /**
+     * Set whether passive server sockets are kept bound and listening in a
+     * pool once a transfer is done, to be handed to the next PASV on the
+     * same port, rather than bound and closed for every transfer. This saves
+     * binding and closing sockets for clients doing many small transfers.
+     * Ports bound by other processes are then only found when binding the
+     * socket, rather than by a probe before picking the port. Enabling the
+     * passive IP check is recommended, as a late connection meant for the
+     * previous session could otherwise be accepted. Defaults to false.
+     * @param passiveSocketPoolEnabled true if passive server sockets should
+     *            be pooled
+     */
+    public void setPassiveSocketPoolEnabled(boolean passiveSocketPoolEnabled) {
+        this.passiveSocketPoolEnabled = passiveSocketPoolEnabled;
+    }
 }
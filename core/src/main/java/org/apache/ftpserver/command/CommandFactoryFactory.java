@@ -25,6 +25,7 @@ import java.util.Map.Entry;
 
 import org.apache.ftpserver.command.impl.ABOR;
 import org.apache.ftpserver.command.impl.ACCT;
+import org.apache.ftpserver.command.impl.ALLO;
 import org.apache.ftpserver.command.impl.APPE;
 import org.apache.ftpserver.command.impl.AUTH;
 import org.apache.ftpserver.command.impl.CDUP;
@@ -34,6 +35,7 @@ import org.apache.ftpserver.command.impl.DefaultCommandFactory;
 import org.apache.ftpserver.command.impl.EPRT;
 import org.apache.ftpserver.command.impl.EPSV;
 import org.apache.ftpserver.command.impl.FEAT;
+import org.apache.ftpserver.command.impl.HASH;
 import org.apache.ftpserver.command.impl.HELP;
 import org.apache.ftpserver.command.impl.LANG;
 import org.apache.ftpserver.command.impl.LIST;
@@ -54,6 +56,7 @@ import org.apache.ftpserver.command.impl.PORT;
 import org.apache.ftpserver.command.impl.PROT;
 import org.apache.ftpserver.command.impl.PWD;
 import org.apache.ftpserver.command.impl.QUIT;
+import org.apache.ftpserver.command.impl.RANG;
 import org.apache.ftpserver.command.impl.REIN;
 import org.apache.ftpserver.command.impl.REST;
 import org.apache.ftpserver.command.impl.RETR;
@@ -74,6 +77,7 @@ import org.apache.ftpserver.command.impl.STRU;
 import org.apache.ftpserver.command.impl.SYST;
 import org.apache.ftpserver.command.impl.TYPE;
 import org.apache.ftpserver.command.impl.USER;
+import org.apache.ftpserver.command.impl.XCRC;
 
 /**
  * Factory for {@link CommandFactory} instances
@@ -88,6 +92,7 @@ public class CommandFactoryFactory {
         // first populate the default command list
         DEFAULT_COMMAND_MAP.put("ABOR", new ABOR());
         DEFAULT_COMMAND_MAP.put("ACCT", new ACCT());
+        DEFAULT_COMMAND_MAP.put("ALLO", new ALLO());
         DEFAULT_COMMAND_MAP.put("APPE", new APPE());
         DEFAULT_COMMAND_MAP.put("AUTH", new AUTH());
         DEFAULT_COMMAND_MAP.put("CDUP", new CDUP());
@@ -96,6 +101,7 @@ public class CommandFactoryFactory {
         DEFAULT_COMMAND_MAP.put("EPRT", new EPRT());
         DEFAULT_COMMAND_MAP.put("EPSV", new EPSV());
         DEFAULT_COMMAND_MAP.put("FEAT", new FEAT());
+        DEFAULT_COMMAND_MAP.put("HASH", new HASH());
         DEFAULT_COMMAND_MAP.put("HELP", new HELP());
         DEFAULT_COMMAND_MAP.put("LANG", new LANG());
         DEFAULT_COMMAND_MAP.put("LIST", new LIST());
@@ -117,6 +123,7 @@ public class CommandFactoryFactory {
         DEFAULT_COMMAND_MAP.put("PROT", new PROT());
         DEFAULT_COMMAND_MAP.put("PWD", new PWD());
         DEFAULT_COMMAND_MAP.put("QUIT", new QUIT());
+        DEFAULT_COMMAND_MAP.put("RANG", new RANG());
         DEFAULT_COMMAND_MAP.put("REIN", new REIN());
         DEFAULT_COMMAND_MAP.put("REST", new REST());
         DEFAULT_COMMAND_MAP.put("RETR", new RETR());
@@ -138,6 +145,10 @@ public class CommandFactoryFactory {
         DEFAULT_COMMAND_MAP.put("SYST", new SYST());
         DEFAULT_COMMAND_MAP.put("TYPE", new TYPE());
         DEFAULT_COMMAND_MAP.put("USER", new USER());
+        DEFAULT_COMMAND_MAP.put("XCRC", new XCRC());
+        DEFAULT_COMMAND_MAP.put("XMD5", new XCRC());
+        DEFAULT_COMMAND_MAP.put("XSHA1", new XCRC());
+        DEFAULT_COMMAND_MAP.put("XSHA256", new XCRC());
     }
 
     private Map<String, Command> commandMap = new HashMap<>();
@@ -37,8 +37,9 @@ import org.apache.ftpserver.impl.LocalizedFtpReply;
  * any associated transfer of data. No action is to be taken if the previous
  * command has been completed (including data transfer). The control connection
  * is not to be closed by the server, but the data connection must be closed.
- * Current implementation does not do anything. As here data transfers are not
- * multi-threaded.
+ * A transfer still in progress is aborted as soon as ABOR is received, see
+ * {@link org.apache.ftpserver.listener.nio.OutOfBandCommandFilter}. This
+ * command is executed once the transfer command has replied.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * <code>ALLO &lt;SP&gt; &lt;decimal-integer&gt; [&lt;SP&gt; R &lt;SP&gt; &lt;decimal-integer&gt;] &lt;CRLF&gt;</code><br>
+ * 
+ * Announces the number of bytes of the file to be stored by the following
+ * STOR or APPE command. The file is extended to this size before the data
+ * is received and trimmed to the received data afterwards. The maximum
+ * record size is ignored.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ALLO extends AbstractCommand {
+
+    private final Logger LOG = LoggerFactory.getLogger(ALLO.class);
+
+    /**
+     * Execute command
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException {
+
+        // reset state variables
+        session.resetState();
+        session.takeAllocationSize();
+
+        // argument check
+        String argument = request.getArgument();
+        if (argument == null) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "ALLO", null));
+            return;
+        }
+        String[] tokens = argument.trim().split(" +");
+        if (tokens.length != 1
+                && (tokens.length != 3 || !"R".equalsIgnoreCase(tokens[1]))) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "ALLO", null));
+            return;
+        }
+
+        long size;
+        try {
+            size = Long.parseLong(tokens[0]);
+            if (tokens.length == 3) {
+                Long.parseLong(tokens[2]);
+            }
+        } catch (NumberFormatException ex) {
+            LOG.debug("Invalid allocation size: " + argument, ex);
+            size = -1;
+        }
+        if (size < 0) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "ALLO.invalid", tokens[0]));
+            return;
+        }
+
+        session.setAllocationSize(size);
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_200_COMMAND_OKAY, "ALLO", null));
+    }
+}
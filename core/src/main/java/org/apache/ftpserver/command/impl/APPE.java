@@ -23,17 +23,22 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
+import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.ChecksumCalculator;
+import org.apache.ftpserver.impl.FileAllocator;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.IODataConnection;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedDataTransferFtpReply;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
@@ -66,8 +71,12 @@ public class APPE extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean pending = false;
         try {
 
+            // get state variable
+            long allocationSize = session.takeAllocationSize();
+
             // reset state variables
             session.resetState();
 
@@ -130,6 +139,15 @@ public class APPE extends AbstractCommand {
                 return;
             }
 
+            // fail before the transfer if the size announced by ALLO does
+            // not fit
+            if (!FileAllocator.hasSpace(file, allocationSize)) {
+                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                        FtpReply.REPLY_452_REQUESTED_ACTION_NOT_TAKEN,
+                        "APPE.space", fileName, file));
+                return;
+            }
+
             // get data connection
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "APPE", fileName));
@@ -145,66 +163,144 @@ public class APPE extends AbstractCommand {
                 return;
             }
 
-            // get data from client
-            boolean failure = false;
+            // find offset
+            long offset = 0L;
+            if (file.doesExist()) {
+                offset = file.getSize();
+            }
+
+            // open streams
             OutputStream os = null;
-            long transSz = 0L;
+            ChecksumCalculator checksumCalculator = null;
             try {
-
-                // find offset
-                long offset = 0L;
-                if (file.doesExist()) {
-                    offset = file.getSize();
+                checksumCalculator = context.getChecksumCache().startUpload(
+                        session, file, dataConnection, offset);
+                if (session.getDataType() == DataType.ASCII) {
+                    os = context.getAsciiOffsetIndexCache().createOutputStream(
+                            file, offset);
+                } else {
+                    context.getAsciiOffsetIndexCache().invalidate(file);
+                    os = file.createOutputStream(offset);
+                    if (allocationSize > 0) {
+                        os = FileAllocator.allocate(os, offset + allocationSize);
+                    }
                 }
+            } catch (IOException ex) {
+                transferred(session, context, request, file, os, null, 0L, ex);
+                return;
+            }
 
-                // open streams
-                os = file.createOutputStream(offset);
-
-                // transfer data
-                transSz = dataConnection.transferFromClient(session.getFtpletSession(), os);
-
-                // attempt to close the output stream so that errors in 
-                // closing it will return an error to the client (FTPSERVER-119) 
-                if(os != null) {
-                    os.close();
+            if (dataConnection instanceof IODataConnection
+                    && ((IODataConnection) dataConnection)
+                            .isAsyncTransferPossible(true)) {
+                // the transfer does not hold the thread while waiting for the
+                // client, the next command waits for the reply
+                CompletableFuture<Long> transfer;
+                try {
+                    transfer = ((IODataConnection) dataConnection)
+                            .transferFromClientAsync(session
+                                    .getFtpletSession(), os);
+                } catch (IOException ex) {
+                    transfer = CompletableFuture.failedFuture(ex);
                 }
+                final FtpFile receivedFile = file;
+                final OutputStream receivedStream = os;
+                final ChecksumCalculator receivedChecksum = checksumCalculator;
+                session.setPendingCommand(transfer.handle((transSz, e) -> {
+                    try {
+                        transferred(session, context, request, receivedFile,
+                                receivedStream, receivedChecksum,
+                                transSz != null ? transSz : 0L,
+                                (IOException) e);
+                    } finally {
+                        transferEnded(session);
+                    }
+                    return null;
+                }));
+                pending = true;
+                return;
+            }
 
-                LOG.info("File uploaded {}", fileName);
-
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
-                        .getFtpStatistics();
-                ftpStat.setUpload(session, file, transSz);
-                
-            } catch (SocketException e) {
-                LOG.debug("SocketException during file upload", e);
-                failure = true;
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "APPE", fileName, file));
-            } catch (IOException e) {
-                LOG.debug("IOException during file upload", e);
-                failure = true;
-                session
-                        .write(LocalizedDataTransferFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "APPE", fileName, file));
-            } finally {
-                // make sure we really close the output stream
+            // transfer data
+            long transSz = 0L;
+            IOException failure = null;
+            try {
+                transSz = dataConnection.transferFromClient(session.getFtpletSession(), os);
+            } catch (IOException ex) {
+                failure = ex;
+            } catch (RuntimeException ex) {
                 IoUtils.close(os);
+                throw ex;
+            }
+            transferred(session, context, request, file, os,
+                    checksumCalculator, transSz, failure);
+        } finally {
+            if (!pending) {
+                transferEnded(session);
             }
+        }
+    }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "APPE",
-                        fileName, file, transSz));
+    /**
+     * Close the file once its data is received and reply.
+     * 
+     * @param failure
+     *            The failure of the transfer, null if it succeeded
+     */
+    private void transferred(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final OutputStream os,
+            final ChecksumCalculator checksumCalculator, final long transSz,
+            IOException failure) {
+        String fileName = file.getAbsolutePath();
+        try {
+            // attempt to close the output stream so that errors in 
+            // closing it will return an error to the client (FTPSERVER-119) 
+            if (failure == null && os != null) {
+                os.close();
             }
+        } catch (IOException ex) {
+            failure = ex;
         } finally {
+            // make sure we really close the output stream
+            IoUtils.close(os);
+        }
+
+        if (failure instanceof SocketException) {
+            LOG.debug("SocketException during file upload", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "APPE", fileName, file));
+        } else if (failure != null) {
+            LOG.debug("IOException during file upload", failure);
+            session
+                    .write(LocalizedDataTransferFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "APPE", fileName, file));
+        } else {
+            context.getChecksumCache().uploaded(file, checksumCalculator);
+
+            LOG.info("File uploaded {}", fileName);
+
+            // notify the statistics component
+            ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                    .getFtpStatistics();
+            ftpStat.setUpload(session, file, transSz);
+
+            // if data transfer ok - send transfer complete message
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "APPE",
+                    fileName, file, transSz));
+        }
+    }
+
+    private void transferEnded(final FtpIoSession session) {
+        // in block mode the data connection carries the next transfer
+        if (!session.getDataConnection().isKeptOpen()) {
             session.getDataConnection().closeDataConnection();
         }
     }
@@ -100,6 +100,8 @@ public class DELE extends AbstractCommand {
 
         // now delete
         if (file.delete()) {
+            context.getChecksumCache().invalidate(file);
+            context.getAsciiOffsetIndexCache().invalidate(file);
             session.write(LocalizedFileActionFtpReply.translate(session, request, context,
                     FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "DELE",
                     fileName, file));
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.ChecksumCache;
+import org.apache.ftpserver.impl.ChecksumCalculator;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>HASH &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ *
+ * Returns the hash of a file, or of the byte range set by a preceding
+ * <code>RANG</code> command, with the algorithm selected by
+ * <code>OPTS HASH</code>, SHA-1 by default. The reply has the form
+ * <code>213 &lt;algorithm&gt; &lt;start&gt;-&lt;end&gt; &lt;hash&gt; &lt;pathname&gt;</code>
+ * where end is the position after the last hashed byte.
+ *
+ * The hash is computed by the server file hasher, the command replying once
+ * it is done. Whole file hashes are cached.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class HASH extends AbstractCommand {
+
+    /**
+     * The session attribute holding the algorithm selected by
+     * <code>OPTS HASH</code>
+     */
+    public static final String ATTRIBUTE_ALGORITHM = "HASH.algorithm";
+
+    public static final String DEFAULT_ALGORITHM = ChecksumCalculator.SHA1;
+
+    private final Logger LOG = LoggerFactory.getLogger(HASH.class);
+
+    /**
+     * Execute command.
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException {
+
+        // get state variable
+        long[] range = session.getHashRange();
+
+        // reset state variables
+        session.resetState();
+
+        // argument check
+        String fileName = request.getArgument();
+        if (fileName == null || fileName.trim().length() == 0) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "HASH", null));
+            return;
+        }
+        fileName = fileName.trim();
+        if (fileName.length() > 1 && fileName.startsWith("\"")
+                && fileName.endsWith("\"")) {
+            fileName = fileName.substring(1, fileName.length() - 1);
+        }
+
+        // get file object
+        FtpFile file = null;
+        try {
+            file = session.getFileSystemView().getFile(fileName);
+        } catch (Exception ex) {
+            LOG.debug("Exception getting file object", ex);
+        }
+        if (file == null || !file.doesExist()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "HASH.missing", fileName));
+            return;
+        }
+        fileName = file.getAbsolutePath();
+        if (!file.isFile()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "HASH.invalid", fileName));
+            return;
+        }
+        if (!file.isReadable()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "HASH.permission", fileName));
+            return;
+        }
+
+        // get the range to hash
+        final long size = file.getSize();
+        long start = 0;
+        long end = size;
+        if (range != null) {
+            start = range[0];
+            end = Math.min(range[1] + 1, size);
+            if (start > size) {
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context,
+                        FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                        "HASH.range", fileName));
+                return;
+            }
+        }
+        final boolean wholeFile = start == 0 && end == size;
+
+        String algorithm = (String) session.getAttribute(ATTRIBUTE_ALGORITHM,
+                DEFAULT_ALGORITHM);
+        final ChecksumCache cache = context.getChecksumCache();
+        if (wholeFile) {
+            String hash = cache.get(file, algorithm);
+            if (hash != null) {
+                writeHash(session, context, request, algorithm, start, end,
+                        hash, fileName);
+                return;
+            }
+        }
+
+        // hash in the background, the next command waits for the reply
+        final FtpFile hashedFile = file;
+        final String hashedName = fileName;
+        final String hashAlgorithm = algorithm;
+        final long hashStart = start;
+        final long hashEnd = end;
+        final long lastModified = file.getLastModified();
+        CompletableFuture<Void> completion = context.getFileHasher().hash(
+                file, algorithm, start, end).handle((hash, e) -> {
+            if (e == null) {
+                if (wholeFile && hashedFile.getSize() == size
+                        && hashedFile.getLastModified() == lastModified) {
+                    cache.add(hashedFile, hashAlgorithm, hash);
+                }
+                writeHash(session, context, request, hashAlgorithm,
+                        hashStart, hashEnd, hash, hashedName);
+            } else {
+                LOG.warn("Failed to hash " + hashedName, e);
+                session.write(LocalizedFtpReply.translate(session, request,
+                        context, FtpReply.REPLY_451_REQUESTED_ACTION_ABORTED,
+                        "HASH", hashedName));
+            }
+            return null;
+        });
+        session.setPendingCommand(completion);
+    }
+
+    private void writeHash(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final String algorithm, final long start, final long end,
+            final String hash, final String fileName) {
+        session.write(LocalizedFtpReply.translate(session, request, context,
+                FtpReply.REPLY_213_FILE_STATUS, "HASH", algorithm + " "
+                        + start + "-" + end + " " + hash + " " + fileName));
+    }
+}
@@ -22,9 +22,11 @@ package org.apache.ftpserver.command.impl;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.command.impl.listing.DirectoryLister;
+import org.apache.ftpserver.command.impl.listing.DirectoryListing;
 import org.apache.ftpserver.command.impl.listing.LISTFileFormater;
 import org.apache.ftpserver.command.impl.listing.ListArgument;
 import org.apache.ftpserver.command.impl.listing.ListArgumentParser;
@@ -72,6 +74,7 @@ public class LIST extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean pending = false;
         try {
 
             // reset state variables
@@ -122,28 +125,41 @@ public class LIST extends AbstractCommand {
             }
 
             // transfer listing data
-            boolean failure = false;
-            String dirList = directoryLister.listFiles(parsedArg, 
-            	session.getFileSystemView(), LIST_FILE_FORMATER);
+            final DirectoryListing listing = directoryLister.openListing(
+                    parsedArg, session.getFileSystemView(), LIST_FILE_FORMATER,
+                    context.getConnectionConfig().isListDirectoriesFirst());
+            CompletableFuture<Long> transfer;
             try {
-                dataConnection.transferToClient(session.getFtpletSession(), dirList);
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during list transfer", ex);
-                failure = true;
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "LIST", null, file));
+                transfer = listing.transferToAsync(session.getFtpletSession(),
+                        dataConnection);
             } catch (IOException ex) {
-                LOG.debug("IOException during list transfer", ex);
-                failure = true;
-                session
-                        .write(LocalizedDataTransferFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "LIST", null, file));
+                transfer = CompletableFuture.failedFuture(ex);
+            }
+            if (transfer != null) {
+                // the listing does not hold the thread while the client reads
+                // it, the next command waits for the reply
+                session.setPendingCommand(transfer.handle((transferredSize, e) -> {
+                    try {
+                        listing.close();
+                        transferred(session, context, request, file,
+                                transferredSize != null ? transferredSize : 0L,
+                                (IOException) e);
+                    } finally {
+                        transferEnded(session);
+                    }
+                    return null;
+                }));
+                pending = true;
+                return;
+            }
+
+            long transferredSize = 0;
+            IOException failure = null;
+            try {
+                transferredSize = listing.transferTo(session
+                        .getFtpletSession(), dataConnection);
+            } catch (IOException ex) {
+                failure = ex;
             } catch (IllegalArgumentException e) {
                 LOG.debug("Illegal list syntax: " + request.getArgument(), e);
                 // if listing syntax error - send message
@@ -155,15 +171,54 @@ public class LIST extends AbstractCommand {
                                         context,
                                         FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
                                         "LIST", null, file));
+            } finally {
+                listing.close();
+            }
+            transferred(session, context, request, file, transferredSize,
+                    failure);
+        } finally {
+            if (!pending) {
+                transferEnded(session);
             }
+        }
+    }
 
+    /**
+     * Reply once the listing is sent.
+     * 
+     * @param failure
+     *            The failure of the transfer, null if it succeeded
+     */
+    private void transferred(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final long transferredSize,
+            final IOException failure) {
+        if (failure instanceof SocketException) {
+            LOG.debug("Socket exception during list transfer", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "LIST", null, file));
+        } else if (failure != null) {
+            LOG.debug("IOException during list transfer", failure);
+            session
+                    .write(LocalizedDataTransferFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "LIST", null, file));
+        } else {
             // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "LIST",
-                        null, file, dirList.length()));
-            }
-        } finally {
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "LIST",
+                    null, file, transferredSize));
+        }
+    }
+
+    private void transferEnded(final FtpIoSession session) {
+        // in block mode the data connection carries the next transfer
+        if (!session.getDataConnection().isKeptOpen()) {
             session.getDataConnection().closeDataConnection();
         }
     }
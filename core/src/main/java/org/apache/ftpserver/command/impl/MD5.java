@@ -20,19 +20,16 @@
 package org.apache.ftpserver.command.impl;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.ChecksumCalculator;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
-import org.apache.ftpserver.util.IoUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,7 +40,8 @@ import org.slf4j.LoggerFactory;
  * <code>MMD5 &lt;SP&gt; &lt;pathnames&gt; &lt;CRLF&gt;</code><br>
  * 
  * Returns the MD5 value for a file or multiple files according to
- * draft-twine-ftpmd5-00.txt.
+ * draft-twine-ftpmd5-00.txt. Values computed during the upload of a file or
+ * by a previous request are taken from the server checksum cache.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -127,10 +125,9 @@ public class MD5 extends AbstractCommand {
                 return;
             }
 
-            InputStream is = null;
             try {
-                is = file.createInputStream(0);
-                String md5Hash = md5(is);
+                String md5Hash = context.getChecksumCache().getChecksum(file,
+                        ChecksumCalculator.MD5, context.getTransferBufferPool());
 
                 if (i > 0) {
                     sb.append(", ");
@@ -151,8 +148,6 @@ public class MD5 extends AbstractCommand {
                 session.write(LocalizedFtpReply.translate(session, request, context,
                         FtpReply.REPLY_502_COMMAND_NOT_IMPLEMENTED,
                         "MD5.notimplemened", null));
-            } finally {
-                IoUtils.close(is);
             }
         }
         if (isMMD5) {
@@ -164,28 +159,6 @@ public class MD5 extends AbstractCommand {
         }
     }
 
-    /**
-     * @param is
-     *            InputStream for which the MD5 hash is calculated
-     * @return The hash of the content in the input stream
-     * @throws IOException
-     * @throws NoSuchAlgorithmException
-     */
-    private String md5(InputStream is) throws IOException,
-            NoSuchAlgorithmException {
-        MessageDigest digest = MessageDigest.getInstance("MD5");
-        DigestInputStream dis = new DigestInputStream(is, digest);
-
-        byte[] buffer = new byte[1024];
-
-        int read = dis.read(buffer);
-        while (read > -1) {
-            read = dis.read(buffer);
-        }
-
-        return new String(encodeHex(dis.getMessageDigest().digest()));
-    }
-
     /**
      * Converts an array of bytes into an array of characters representing the
      * hexidecimal values of each byte in order. The returned array will be
@@ -22,9 +22,11 @@ package org.apache.ftpserver.command.impl;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.command.impl.listing.DirectoryLister;
+import org.apache.ftpserver.command.impl.listing.DirectoryListing;
 import org.apache.ftpserver.command.impl.listing.FileFormater;
 import org.apache.ftpserver.command.impl.listing.ListArgument;
 import org.apache.ftpserver.command.impl.listing.ListArgumentParser;
@@ -67,6 +69,7 @@ public class MLSD extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean pending = false;
         try {
 
             // reset state
@@ -102,7 +105,7 @@ public class MLSD extends AbstractCommand {
                 return;
             }
 
-            boolean failure = false;
+            final DirectoryListing listing;
             try {
                 // parse argument
                 ListArgument parsedArg = ListArgumentParser.parse(request
@@ -110,26 +113,9 @@ public class MLSD extends AbstractCommand {
 
                 FileFormater formater = new MLSTFileFormater((String[]) session
                         .getAttribute("MLST.types"));
-
-                dataConnection.transferToClient(session.getFtpletSession(), directoryLister.listFiles(
-                        parsedArg, session.getFileSystemView(), formater));
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "MLSD", null));
-            } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                session
-                        .write(LocalizedFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "MLSD", null));
+                listing = directoryLister.openListing(parsedArg, session
+                        .getFileSystemView(), formater, context
+                        .getConnectionConfig().isListDirectoriesFirst());
             } catch (IllegalArgumentException e) {
                 LOG
                         .debug("Illegal listing syntax: "
@@ -143,15 +129,86 @@ public class MLSD extends AbstractCommand {
                                         context,
                                         FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
                                         "MLSD", null));
+                transferred(session, context, request, 0L, null);
+                return;
             }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "MLSD",
-                        null));
+            CompletableFuture<Long> transfer;
+            try {
+                transfer = listing.transferToAsync(session.getFtpletSession(),
+                        dataConnection);
+            } catch (IOException ex) {
+                transfer = CompletableFuture.failedFuture(ex);
+            }
+            if (transfer != null) {
+                // the listing does not hold the thread while the client reads
+                // it, the next command waits for the reply
+                session.setPendingCommand(transfer.handle((transferredSize, e) -> {
+                    try {
+                        listing.close();
+                        transferred(session, context, request,
+                                transferredSize != null ? transferredSize : 0L,
+                                (IOException) e);
+                    } finally {
+                        transferEnded(session);
+                    }
+                    return null;
+                }));
+                pending = true;
+                return;
+            }
+
+            IOException failure = null;
+            try {
+                listing.transferTo(session.getFtpletSession(), dataConnection);
+            } catch (IOException ex) {
+                failure = ex;
+            } finally {
+                listing.close();
             }
+            transferred(session, context, request, 0L, failure);
         } finally {
+            if (!pending) {
+                transferEnded(session);
+            }
+        }
+    }
+
+    /**
+     * Reply once the listing is sent.
+     * 
+     * @param failure
+     *            The failure of the transfer, null if it succeeded
+     */
+    private void transferred(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final long transferredSize, final IOException failure) {
+        if (failure instanceof SocketException) {
+            LOG.debug("Socket exception during data transfer", failure);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "MLSD", null));
+        } else if (failure != null) {
+            LOG.debug("IOException during data transfer", failure);
+            session
+                    .write(LocalizedFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "MLSD", null));
+        } else {
+            // if data transfer ok - send transfer complete message
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "MLSD",
+                    null));
+        }
+    }
+
+    private void transferEnded(final FtpIoSession session) {
+        // in block mode the data connection carries the next transfer
+        if (!session.getDataConnection().isKeptOpen()) {
             session.getDataConnection().closeDataConnection();
         }
     }
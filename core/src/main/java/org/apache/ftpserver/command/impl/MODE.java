@@ -34,7 +34,8 @@ import org.apache.ftpserver.impl.LocalizedFtpReply;
  * <code>MODE &lt;SP&gt; <mode-code> &lt;CRLF&gt;</code><br>
  * 
  * The argument is a single Telnet character code specifying the data transfer
- * modes described in the Section on Transmission Modes.
+ * modes described in the Section on Transmission Modes. In block mode the data
+ * connection stays open between transfers.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -63,9 +64,16 @@ public class MODE extends AbstractCommand {
         md = Character.toUpperCase(md);
         if (md == 'S') {
             session.getDataConnection().setZipMode(false);
+            session.getDataConnection().setBlockMode(false);
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_200_COMMAND_OKAY, "MODE", "S"));
+        } else if (md == 'B') {
+            session.getDataConnection().setZipMode(false);
+            session.getDataConnection().setBlockMode(true);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_200_COMMAND_OKAY, "MODE", "B"));
         } else if (md == 'Z') {
+            session.getDataConnection().setBlockMode(false);
             session.getDataConnection().setZipMode(true);
             session.write(LocalizedFtpReply.translate(session, request, context,
                     FtpReply.REPLY_200_COMMAND_OKAY, "MODE", "Z"));
@@ -22,9 +22,11 @@ package org.apache.ftpserver.command.impl;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.command.impl.listing.DirectoryLister;
+import org.apache.ftpserver.command.impl.listing.DirectoryListing;
 import org.apache.ftpserver.command.impl.listing.FileFormater;
 import org.apache.ftpserver.command.impl.listing.LISTFileFormater;
 import org.apache.ftpserver.command.impl.listing.ListArgument;
@@ -72,6 +74,7 @@ public class NLST extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean pending = false;
         try {
 
             // reset state
@@ -107,7 +110,7 @@ public class NLST extends AbstractCommand {
                 return;
             }
 
-            boolean failure = false;
+            final DirectoryListing listing;
             try {
                 // parse argument
                 ListArgument parsedArg = ListArgumentParser.parse(request
@@ -119,26 +122,9 @@ public class NLST extends AbstractCommand {
                 } else {
                     formater = NLST_FILE_FORMATER;
                 }
-
-                dataConnection.transferToClient(session.getFtpletSession(), directoryLister.listFiles(
-                        parsedArg, session.getFileSystemView(), formater));
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "NLST", null));
-            } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                session
-                        .write(LocalizedFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "NLST", null));
+                listing = directoryLister.openListing(parsedArg, session
+                        .getFileSystemView(), formater, context
+                        .getConnectionConfig().isListDirectoriesFirst());
             } catch (IllegalArgumentException e) {
                 LOG
                         .debug("Illegal listing syntax: "
@@ -152,15 +138,86 @@ public class NLST extends AbstractCommand {
                                         context,
                                         FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
                                         "LIST", null));
+                transferred(session, context, request, 0L, null);
+                return;
             }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "NLST",
-                        null));
+            CompletableFuture<Long> transfer;
+            try {
+                transfer = listing.transferToAsync(session.getFtpletSession(),
+                        dataConnection);
+            } catch (IOException ex) {
+                transfer = CompletableFuture.failedFuture(ex);
+            }
+            if (transfer != null) {
+                // the listing does not hold the thread while the client reads
+                // it, the next command waits for the reply
+                session.setPendingCommand(transfer.handle((transferredSize, e) -> {
+                    try {
+                        listing.close();
+                        transferred(session, context, request,
+                                transferredSize != null ? transferredSize : 0L,
+                                (IOException) e);
+                    } finally {
+                        transferEnded(session);
+                    }
+                    return null;
+                }));
+                pending = true;
+                return;
             }
+
+            IOException failure = null;
+            try {
+                listing.transferTo(session.getFtpletSession(), dataConnection);
+            } catch (IOException ex) {
+                failure = ex;
+            } finally {
+                listing.close();
+            }
+            transferred(session, context, request, 0L, failure);
         } finally {
+            if (!pending) {
+                transferEnded(session);
+            }
+        }
+    }
+
+    /**
+     * Reply once the listing is sent.
+     * 
+     * @param failure
+     *            The failure of the transfer, null if it succeeded
+     */
+    private void transferred(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final long transferredSize, final IOException failure) {
+        if (failure instanceof SocketException) {
+            LOG.debug("Socket exception during data transfer", failure);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "NLST", null));
+        } else if (failure != null) {
+            LOG.debug("IOException during data transfer", failure);
+            session
+                    .write(LocalizedFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "NLST", null));
+        } else {
+            // if data transfer ok - send transfer complete message
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "NLST",
+                    null));
+        }
+    }
+
+    private void transferEnded(final FtpIoSession session) {
+        // in block mode the data connection carries the next transfer
+        if (!session.getDataConnection().isKeptOpen()) {
             session.getDataConnection().closeDataConnection();
         }
     }
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>RANG &lt;SP&gt; &lt;start&gt; &lt;SP&gt; &lt;end&gt; &lt;CRLF&gt;</code><br>
+ *
+ * Sets the byte range, from start to end inclusive, hashed by the
+ * <code>HASH</code> command which shall immediately follow.
+ * <code>RANG 1 0</code> resets the range to the whole file. The range does
+ * not apply to file transfers.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class RANG extends AbstractCommand {
+
+    private final Logger LOG = LoggerFactory.getLogger(RANG.class);
+
+    /**
+     * Execute command
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException {
+
+        // reset state variables
+        session.resetState();
+
+        // argument check
+        String argument = request.getArgument();
+        if (argument == null) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "RANG", null));
+            return;
+        }
+        String[] markers = argument.trim().split(" +");
+        if (markers.length != 2) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "RANG", null));
+            return;
+        }
+
+        long start;
+        long end;
+        try {
+            start = Long.parseLong(markers[0]);
+            end = Long.parseLong(markers[1]);
+        } catch (NumberFormatException ex) {
+            LOG.debug("Invalid range: " + argument, ex);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "RANG.invalid", argument));
+            return;
+        }
+
+        if (start == 1 && end == 0) {
+            // the whole file again, as already done by the state reset
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_350_REQUESTED_FILE_ACTION_PENDING_FURTHER_INFORMATION,
+                    "RANG.reset", null));
+        } else if (start < 0 || end < start) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "RANG.invalid", argument));
+        } else {
+            session.setHashRange(start, end);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_350_REQUESTED_FILE_ACTION_PENDING_FURTHER_INFORMATION,
+                    "RANG", start + "-" + end));
+        }
+    }
+}
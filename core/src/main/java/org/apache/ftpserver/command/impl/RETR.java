@@ -19,11 +19,11 @@
 
 package org.apache.ftpserver.command.impl;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.ftplet.DataConnection;
@@ -34,8 +34,10 @@ import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.AsciiOffsetIndexCache;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.IODataConnection;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedDataTransferFtpReply;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
@@ -67,6 +69,7 @@ public class RETR extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean pending = false;
         try {
 
             // get state variable
@@ -145,9 +148,6 @@ public class RETR extends AbstractCommand {
                     FtpReply.REPLY_150_FILE_STATUS_OKAY, "RETR", null));
 
             // send file data to client
-            boolean failure = false;
-            InputStream is = null;
-
             DataConnection dataConnection;
             try {
                 dataConnection = session.getDataConnection().openConnection();
@@ -159,60 +159,123 @@ public class RETR extends AbstractCommand {
                 return;
             }
 
-            long transSz = 0L;
+            // open streams
+            InputStream is = null;
             try {
+                is = openInputStream(session, context, file, skipLen);
+            } catch (IOException ex) {
+                transferred(session, context, request, file, null, 0L, ex);
+                return;
+            }
 
-                // open streams
-                is = openInputStream(session, file, skipLen);
-
-                // transfer data
-                transSz = dataConnection.transferToClient(session.getFtpletSession(), is);
-                // attempt to close the input stream so that errors in 
-                // closing it will return an error to the client (FTPSERVER-119) 
-                if(is != null) {
-                    is.close();
+            if (dataConnection instanceof IODataConnection
+                    && ((IODataConnection) dataConnection)
+                            .isAsyncTransferPossible(false)) {
+                // the transfer does not hold the thread while waiting for the
+                // client, the next command waits for the reply
+                CompletableFuture<Long> transfer;
+                try {
+                    transfer = ((IODataConnection) dataConnection)
+                            .transferToClientAsync(session.getFtpletSession(),
+                                    is);
+                } catch (IOException ex) {
+                    transfer = CompletableFuture.failedFuture(ex);
                 }
+                final FtpFile sentFile = file;
+                final InputStream sentStream = is;
+                session.setPendingCommand(transfer.handle((transSz, e) -> {
+                    try {
+                        transferred(session, context, request, sentFile,
+                                sentStream, transSz != null ? transSz : 0L,
+                                (IOException) e);
+                    } finally {
+                        transferEnded(session);
+                    }
+                    return null;
+                }));
+                pending = true;
+                return;
+            }
 
-                LOG.info("File downloaded {}", fileName);
-
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
-                        .getFtpStatistics();
-                if (ftpStat != null) {
-                    ftpStat.setDownload(session, file, transSz);
-                }
-                
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "RETR", fileName, file, transSz));
+            // transfer data
+            long transSz = 0L;
+            IOException failure = null;
+            try {
+                transSz = dataConnection.transferToClient(session.getFtpletSession(), is);
             } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                session
-                        .write(LocalizedDataTransferFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "RETR", fileName, file, transSz));
-            } finally {
-                // make sure we really close the input stream
+                failure = ex;
+            } catch (RuntimeException ex) {
                 IoUtils.close(is);
+                throw ex;
             }
+            transferred(session, context, request, file, is, transSz, failure);
+        } finally {
+            if (!pending) {
+                transferEnded(session);
+            }
+        }
+    }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
-                        fileName, file, transSz));
-
+    /**
+     * Close the file once its data is sent and reply.
+     * 
+     * @param failure
+     *            The failure of the transfer, null if it succeeded
+     */
+    private void transferred(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final InputStream is, final long transSz,
+            IOException failure) {
+        String fileName = file.getAbsolutePath();
+        try {
+            // attempt to close the input stream so that errors in 
+            // closing it will return an error to the client (FTPSERVER-119) 
+            if (failure == null && is != null) {
+                is.close();
             }
+        } catch (IOException ex) {
+            failure = ex;
         } finally {
-            session.resetState();
+            // make sure we really close the input stream
+            IoUtils.close(is);
+        }
+
+        if (failure instanceof SocketException) {
+            LOG.debug("Socket exception during data transfer", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "RETR", fileName, file, transSz));
+        } else if (failure != null) {
+            LOG.debug("IOException during data transfer", failure);
+            session
+                    .write(LocalizedDataTransferFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "RETR", fileName, file, transSz));
+        } else {
+            LOG.info("File downloaded {}", fileName);
+
+            // notify the statistics component
+            ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                    .getFtpStatistics();
+            if (ftpStat != null) {
+                ftpStat.setDownload(session, file, transSz);
+            }
+
+            // if data transfer ok - send transfer complete message
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "RETR",
+                    fileName, file, transSz));
+        }
+    }
+
+    private void transferEnded(final FtpIoSession session) {
+        session.resetState();
+        // in block mode the data connection carries the next transfer
+        if (!session.getDataConnection().isKeptOpen()) {
             session.getDataConnection().closeDataConnection();
         }
     }
@@ -220,22 +283,20 @@ public class RETR extends AbstractCommand {
     /**
      * Skip length and open input stream.
      */
-    public InputStream openInputStream(FtpIoSession session, FtpFile file,
-            long skipLen) throws IOException {
+    public InputStream openInputStream(FtpIoSession session,
+            FtpServerContext context, FtpFile file, long skipLen)
+            throws IOException {
         InputStream in;
         if (session.getDataType() == DataType.ASCII) {
-            int c;
-            long offset = 0L;
-            in = new BufferedInputStream(file.createInputStream(0L));
-            while (offset++ < skipLen) {
-                if ((c = in.read()) == -1) {
-                    throw new IOException("Cannot skip");
-                }
-                if (c == '\n') {
-                    offset++;
-                }
-            }
+            // the restart offset counts the line endings sent as \r\n,
+            // find the matching file position from the index of the file
+            AsciiOffsetIndexCache indexCache = context
+                    .getAsciiOffsetIndexCache();
+            long position = indexCache.getPosition(file, skipLen);
+            in = indexCache.createInputStream(file, position);
         } else {
+            // do not wrap the stream, the data connection will send file
+            // streams using zero-copy when possible
             in = file.createInputStream(skipLen);
         }
         return in;
@@ -129,6 +129,10 @@ public class RNTO extends AbstractCommand {
             
             // now rename
             if (frFile.move(toFile)) {
+                context.getChecksumCache().invalidate(frFile);
+                context.getChecksumCache().invalidate(toFile);
+                context.getAsciiOffsetIndexCache().invalidate(frFile);
+                context.getAsciiOffsetIndexCache().invalidate(toFile);
                 session.write(LocalizedRenameFtpReply.translate(session, request, context,
                         FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "RNTO",
                         toFileStr, frFile, toFile));
@@ -23,17 +23,23 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.ftpserver.command.AbstractCommand;
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataConnectionFactory;
+import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.DefaultFtpReply;
 import org.apache.ftpserver.ftplet.FtpException;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
 import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.AsciiOffsetIndexCache;
+import org.apache.ftpserver.impl.ChecksumCalculator;
+import org.apache.ftpserver.impl.FileAllocator;
 import org.apache.ftpserver.impl.FtpIoSession;
 import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.IODataConnection;
 import org.apache.ftpserver.impl.IODataConnectionFactory;
 import org.apache.ftpserver.impl.LocalizedDataTransferFtpReply;
 import org.apache.ftpserver.impl.LocalizedFtpReply;
@@ -66,10 +72,12 @@ public class STOR extends AbstractCommand {
             final FtpServerContext context, final FtpRequest request)
             throws IOException, FtpException {
 
+        boolean pending = false;
         try {
 
             // get state variable
             long skipLen = session.getFileOffset();
+            long allocationSize = session.takeAllocationSize();
 
             // argument check
             String fileName = request.getArgument();
@@ -122,6 +130,15 @@ public class STOR extends AbstractCommand {
                 return;
             }
 
+            // fail before the transfer if the size announced by ALLO does
+            // not fit
+            if (!FileAllocator.hasSpace(file, allocationSize)) {
+                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                        FtpReply.REPLY_452_REQUESTED_ACTION_NOT_TAKEN,
+                        "STOR.space", fileName, file));
+                return;
+            }
+
             // get data connection
             session.write(
                     LocalizedFtpReply.translate(session, request, context,
@@ -139,58 +156,146 @@ public class STOR extends AbstractCommand {
                 return;
             }
 
-            // transfer data
-            boolean failure = false;
+            // open streams
             OutputStream outStream = null;
-            long transSz = 0L;
+            ChecksumCalculator checksumCalculator = null;
             try {
-                outStream = file.createOutputStream(skipLen);
-                transSz = dataConnection.transferFromClient(session.getFtpletSession(), outStream);
-
-                // attempt to close the output stream so that errors in 
-                // closing it will return an error to the client (FTPSERVER-119) 
-                if(outStream != null) {
-                    outStream.close();
+                checksumCalculator = context
+                        .getChecksumCache().startUpload(session, file,
+                                dataConnection, skipLen);
+                if (session.getDataType() == DataType.ASCII) {
+                    // the restart offset counts the line endings received
+                    // as \r\n, find the matching file position
+                    AsciiOffsetIndexCache indexCache = context
+                            .getAsciiOffsetIndexCache();
+                    long position = indexCache.getPosition(file, skipLen);
+                    outStream = indexCache.createOutputStream(file, position);
+                } else {
+                    context.getAsciiOffsetIndexCache().invalidate(file);
+                    outStream = file.createOutputStream(skipLen);
+                    if (allocationSize > 0) {
+                        outStream = FileAllocator.allocate(outStream, skipLen
+                                + allocationSize);
+                    }
                 }
+            } catch (IOException ex) {
+                transferred(session, context, request, file, outStream, null,
+                        0L, ex);
+                return;
+            }
 
-                LOG.info("File uploaded {}", fileName);
+            if (dataConnection instanceof IODataConnection
+                    && ((IODataConnection) dataConnection)
+                            .isAsyncTransferPossible(true)) {
+                // the transfer does not hold the thread while waiting for the
+                // client, the next command waits for the reply
+                CompletableFuture<Long> transfer;
+                try {
+                    transfer = ((IODataConnection) dataConnection)
+                            .transferFromClientAsync(session
+                                    .getFtpletSession(), outStream);
+                } catch (IOException ex) {
+                    transfer = CompletableFuture.failedFuture(ex);
+                }
+                final FtpFile receivedFile = file;
+                final OutputStream receivedStream = outStream;
+                final ChecksumCalculator receivedChecksum = checksumCalculator;
+                session.setPendingCommand(transfer.handle((transSz, e) -> {
+                    try {
+                        transferred(session, context, request, receivedFile,
+                                receivedStream, receivedChecksum,
+                                transSz != null ? transSz : 0L,
+                                (IOException) e);
+                    } finally {
+                        transferEnded(session);
+                    }
+                    return null;
+                }));
+                pending = true;
+                return;
+            }
 
-                // notify the statistics component
-                ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
-                        .getFtpStatistics();
-                ftpStat.setUpload(session, file, transSz);
-                
-            } catch (SocketException ex) {
-                LOG.debug("Socket exception during data transfer", ex);
-                failure = true;
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
-                        "STOR", fileName, file));
+            // transfer data
+            long transSz = 0L;
+            IOException failure = null;
+            try {
+                transSz = dataConnection.transferFromClient(session.getFtpletSession(), outStream);
             } catch (IOException ex) {
-                LOG.debug("IOException during data transfer", ex);
-                failure = true;
-                session
-                        .write(LocalizedDataTransferFtpReply
-                                .translate(
-                                        session,
-                                        request,
-                                        context,
-                                        FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
-                                        "STOR", fileName, file));
-            } finally {
-                // make sure we really close the output stream
+                failure = ex;
+            } catch (RuntimeException ex) {
                 IoUtils.close(outStream);
+                throw ex;
             }
+            transferred(session, context, request, file, outStream,
+                    checksumCalculator, transSz, failure);
+        } finally {
+            if (!pending) {
+                transferEnded(session);
+            }
+        }
+    }
 
-            // if data transfer ok - send transfer complete message
-            if (!failure) {
-                session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
-                        FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
-                        fileName, file, transSz));
-
+    /**
+     * Close the file once its data is received and reply.
+     * 
+     * @param failure
+     *            The failure of the transfer, null if it succeeded
+     */
+    private void transferred(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request,
+            final FtpFile file, final OutputStream outStream,
+            final ChecksumCalculator checksumCalculator, final long transSz,
+            IOException failure) {
+        String fileName = file.getAbsolutePath();
+        try {
+            // attempt to close the output stream so that errors in 
+            // closing it will return an error to the client (FTPSERVER-119) 
+            if (failure == null && outStream != null) {
+                outStream.close();
             }
+        } catch (IOException ex) {
+            failure = ex;
         } finally {
-            session.resetState();
+            // make sure we really close the output stream
+            IoUtils.close(outStream);
+        }
+
+        if (failure instanceof SocketException) {
+            LOG.debug("Socket exception during data transfer", failure);
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_426_CONNECTION_CLOSED_TRANSFER_ABORTED,
+                    "STOR", fileName, file));
+        } else if (failure != null) {
+            LOG.debug("IOException during data transfer", failure);
+            session
+                    .write(LocalizedDataTransferFtpReply
+                            .translate(
+                                    session,
+                                    request,
+                                    context,
+                                    FtpReply.REPLY_551_REQUESTED_ACTION_ABORTED_PAGE_TYPE_UNKNOWN,
+                                    "STOR", fileName, file));
+        } else {
+            context.getChecksumCache().uploaded(file, checksumCalculator);
+
+            LOG.info("File uploaded {}", fileName);
+
+            // notify the statistics component
+            ServerFtpStatistics ftpStat = (ServerFtpStatistics) context
+                    .getFtpStatistics();
+            ftpStat.setUpload(session, file, transSz);
+
+            // if data transfer ok - send transfer complete message
+            session.write(LocalizedDataTransferFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "STOR",
+                    fileName, file, transSz));
+        }
+    }
+
+    private void transferEnded(final FtpIoSession session) {
+        session.resetState();
+        // in block mode the data connection carries the next transfer
+        if (!session.getDataConnection().isKeptOpen()) {
             session.getDataConnection().closeDataConnection();
         }
     }
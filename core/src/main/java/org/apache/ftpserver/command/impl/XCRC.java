@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.ftpserver.command.AbstractCommand;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.ChecksumCalculator;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * <code>XCRC &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ * <code>XMD5 &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ * <code>XSHA1 &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ * <code>XSHA256 &lt;SP&gt; &lt;pathname&gt; &lt;CRLF&gt;</code><br>
+ *
+ * Returns the CRC32, MD5, SHA-1 or SHA-256 value of a file, as the
+ * non-standard commands supported by many FTP clients to verify transfers.
+ * Values computed during the upload of a file or by a previous request are
+ * taken from the server checksum cache.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class XCRC extends AbstractCommand {
+
+    private final Logger LOG = LoggerFactory.getLogger(XCRC.class);
+
+    /**
+     * Execute command.
+     */
+    public void execute(final FtpIoSession session,
+            final FtpServerContext context, final FtpRequest request)
+            throws IOException {
+
+        // reset state variables
+        session.resetState();
+
+        // argument check
+        String fileName = request.getArgument();
+        if (fileName == null || fileName.trim().length() == 0) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_501_SYNTAX_ERROR_IN_PARAMETERS_OR_ARGUMENTS,
+                    "XCRC", null));
+            return;
+        }
+        fileName = fileName.trim();
+        if (fileName.length() > 1 && fileName.startsWith("\"")
+                && fileName.endsWith("\"")) {
+            fileName = fileName.substring(1, fileName.length() - 1);
+        }
+
+        // get file object
+        FtpFile file = null;
+        try {
+            file = session.getFileSystemView().getFile(fileName);
+        } catch (Exception ex) {
+            LOG.debug("Exception getting file object", ex);
+        }
+        if (file == null || !file.doesExist()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "XCRC.missing", fileName));
+            return;
+        }
+        fileName = file.getAbsolutePath();
+        if (!file.isFile()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "XCRC.invalid", fileName));
+            return;
+        }
+        if (!file.isReadable()) {
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_550_REQUESTED_ACTION_NOT_TAKEN,
+                    "XCRC.permission", fileName));
+            return;
+        }
+
+        try {
+            String checksum = context.getChecksumCache().getChecksum(file,
+                    getAlgorithm(request.getCommand()),
+                    context.getTransferBufferPool());
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_250_REQUESTED_FILE_ACTION_OKAY, "XCRC",
+                    checksum));
+        } catch (NoSuchAlgorithmException e) {
+            LOG.debug("Checksum algorithm not available", e);
+            session.write(LocalizedFtpReply.translate(session, request, context,
+                    FtpReply.REPLY_502_COMMAND_NOT_IMPLEMENTED,
+                    "XCRC.notimplemented", null));
+        }
+    }
+
+    private String getAlgorithm(final String command) {
+        if ("XMD5".equals(command)) {
+            return ChecksumCalculator.MD5;
+        } else if ("XSHA1".equals(command)) {
+            return ChecksumCalculator.SHA1;
+        } else if ("XSHA256".equals(command)) {
+            return ChecksumCalculator.SHA256;
+        }
+        return ChecksumCalculator.CRC32;
+    }
+}
@@ -20,7 +20,9 @@
 package org.apache.ftpserver.command.impl.listing;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.ftpserver.ftplet.FileSystemView;
@@ -36,56 +38,69 @@ import org.apache.ftpserver.ftplet.FtpFile;
  */
 public class DirectoryLister {
 
-    private String traverseFiles(final List<? extends FtpFile> files,
-            final FileFilter filter, final FileFormater formater) {
-        StringBuilder sb = new StringBuilder();
-
-        sb.append(traverseFiles(files, filter, formater, true));
-        sb.append(traverseFiles(files, filter, formater, false));
-
-        return sb.toString();
-    }
-
-    private String traverseFiles(final List<? extends FtpFile> files,
-            final FileFilter filter, final FileFormater formater,
-            boolean matchDirs) {
-        StringBuilder sb = new StringBuilder();
-        for (FtpFile file : files) {
-            if (file == null) {
-                continue;
-            }
-
-            if (filter == null || filter.accept(file)) {
-                if (file.isDirectory() == matchDirs) {
-                    sb.append(formater.format(file));
-                }
-            }
+    private FileFilter createFilter(final ListArgument argument) {
+        FileFilter filter = null;
+        if (!argument.hasOption('a')) {
+            filter = new VisibleFileFilter();
         }
-
-        return sb.toString();
+        if (argument.getPattern() != null) {
+            filter = new RegexFileFilter(argument.getPattern(), filter);
+        }
+        return filter;
     }
 
+    /**
+     * Get the listing as a string, directories first and in alphabetical
+     * order. The whole listing is held in memory, data transfers use
+     * {@link #openListing(ListArgument, FileSystemView, FileFormater, boolean)}
+     * instead.
+     */
     public String listFiles(final ListArgument argument,
             final FileSystemView fileSystemView, final FileFormater formater)
             throws IOException {
 
-        StringBuilder sb = new StringBuilder();
-
         // get all the file objects
         List<? extends FtpFile> files = listFiles(fileSystemView, argument.getFile());
-        if (files != null) {
-            FileFilter filter = null;
-            if (!argument.hasOption('a')) {
-                filter = new VisibleFileFilter();
-            }
-            if (argument.getPattern() != null) {
-                filter = new RegexFileFilter(argument.getPattern(), filter);
-            }
+        if (files == null) {
+            return "";
+        }
 
-            sb.append(traverseFiles(files, filter, formater));
+        DirectoryListing listing = new DirectoryListing(null, files,
+                createFilter(argument), formater, true);
+        try {
+            return listing.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+    }
 
-        return sb.toString();
+    /**
+     * Open a listing streamed from the directory, formatting each entry as
+     * the listing is iterated. The entries are listed in the order of the
+     * file system. The listing must be closed after use.
+     *
+     * @param directoriesFirst
+     *            true to list the directories before the files, reading the
+     *            directory twice
+     */
+    public DirectoryListing openListing(final ListArgument argument,
+            final FileSystemView fileSystemView, final FileFormater formater,
+            final boolean directoriesFirst) {
+        FileFilter filter = createFilter(argument);
+        try {
+            FtpFile virtualFile = fileSystemView.getFile(argument.getFile());
+            if (virtualFile.isFile()) {
+                return new DirectoryListing(null, Collections
+                        .singletonList(virtualFile), filter, formater,
+                        directoriesFirst);
+            } else if (virtualFile.isDirectory()) {
+                return new DirectoryListing(virtualFile, null, filter,
+                        formater, directoriesFirst);
+            }
+        } catch (FtpException ex) {
+        }
+        return new DirectoryListing(null, Collections.<FtpFile> emptyList(),
+                filter, formater, directoriesFirst);
     }
 
     /**
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.command.impl.listing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.ftpserver.filesystem.StreamingFtpFile;
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.impl.IODataConnection;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The lines of a directory listing, formatted one entry at a time as the
+ * listing is iterated. Directories implementing {@link StreamingFtpFile} are
+ * read through a {@link DirectoryStream}, so that the memory used does not
+ * depend on the size of the directory. When directories are listed first,
+ * the directory is read twice, once for the directories and once for the
+ * files. Failures to read the directory are reported as
+ * {@link UncheckedIOException}.
+ * 
+ * When sent over the data connection, the lines are formated in chunks into
+ * a reused builder, without creating a string per line.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DirectoryListing implements Iterator<String>, Closeable {
+
+    // the number of chars formated before a chunk is sent
+    private static final int CHUNK_SIZE = 8192;
+
+    private final FtpFile dir;
+
+    private List<? extends FtpFile> files;
+
+    private final FileFilter filter;
+
+    private final FileFormater formater;
+
+    // the kind of entries listed by each pass, null for all of them
+    private final Boolean[] passes;
+
+    private int pass = 0;
+
+    private DirectoryStream<FtpFile> stream;
+
+    private Iterator<? extends FtpFile> entries;
+
+    private String next;
+
+    /**
+     * @param dir
+     *            The directory to list, null to list the given files
+     * @param files
+     *            The files to list if the directory is null
+     * @param filter
+     *            The filter of the listed files, may be null
+     * @param formater
+     *            The formater of the listing lines
+     * @param directoriesFirst
+     *            true to list the directories before the files
+     */
+    DirectoryListing(final FtpFile dir, final List<? extends FtpFile> files,
+            final FileFilter filter, final FileFormater formater,
+            final boolean directoriesFirst) {
+        this.dir = dir;
+        this.files = files;
+        this.filter = filter;
+        this.formater = formater;
+        if (directoriesFirst) {
+            passes = new Boolean[] { Boolean.TRUE, Boolean.FALSE };
+        } else {
+            passes = new Boolean[] { null };
+        }
+    }
+
+    public boolean hasNext() {
+        if (next == null) {
+            FtpFile file = nextFile();
+            if (file != null) {
+                next = formater.format(file);
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * Get the next listed file.
+     * 
+     * @return The file, null at the end of the listing
+     */
+    private FtpFile nextFile() {
+        try {
+            while (true) {
+                if (entries == null) {
+                    if (pass == passes.length) {
+                        return null;
+                    }
+                    entries = openEntries();
+                }
+                if (!entries.hasNext()) {
+                    closeEntries();
+                    pass++;
+                    continue;
+                }
+
+                FtpFile file = entries.next();
+                if (file == null) {
+                    continue;
+                }
+                if (filter == null || filter.accept(file)) {
+                    Boolean matchDirs = passes[pass];
+                    if (matchDirs == null
+                            || file.isDirectory() == matchDirs.booleanValue()) {
+                        return file;
+                    }
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw new UncheckedIOException(e.getCause());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        String line = next;
+        next = null;
+        return line;
+    }
+
+    /**
+     * Send the listing over the data connection.
+     *
+     * @return The number of bytes transferred
+     * @throws IOException
+     *             If the directory can not be read or the transfer fails
+     */
+    public long transferTo(final FtpSession session,
+            final DataConnection dataConnection) throws IOException {
+        if (dataConnection instanceof IODataConnection) {
+            return ((IODataConnection) dataConnection).transferToClient(
+                    session, chunks());
+        }
+
+        // other data connections only take the listing as a whole
+        String listing;
+        try {
+            listing = join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        dataConnection.transferToClient(session, listing);
+        return listing.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Start sending the listing over the data connection without holding the
+     * calling thread while the client reads it. The listing must not be
+     * closed before the transfer has completed.
+     *
+     * @return Completed with the number of bytes transferred or the failure
+     *         of the transfer, null if the data connection can only send the
+     *         listing with {@link #transferTo(FtpSession, DataConnection)}
+     * @throws IOException
+     *             If the transfer can not be started
+     */
+    public CompletableFuture<Long> transferToAsync(final FtpSession session,
+            final DataConnection dataConnection) throws IOException {
+        if (dataConnection instanceof IODataConnection
+                && ((IODataConnection) dataConnection)
+                        .isAsyncTransferPossible(false)) {
+            return ((IODataConnection) dataConnection).transferToClientAsync(
+                    session, chunks());
+        }
+        return null;
+    }
+
+    /**
+     * Get the remaining lines of the listing as one string.
+     */
+    String join() {
+        StringBuilder sb = new StringBuilder();
+        if (next != null) {
+            sb.append(next);
+            next = null;
+        }
+        FtpFile file;
+        while ((file = nextFile()) != null) {
+            formater.format(file, sb);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the remaining lines of the listing in chunks of a few kilobytes,
+     * formated into a reused builder. A chunk is only valid until the
+     * iterator is called again.
+     */
+    Iterator<CharSequence> chunks() {
+        final StringBuilder chunk = new StringBuilder(CHUNK_SIZE + 256);
+        return new Iterator<CharSequence>() {
+            private boolean filled;
+
+            public boolean hasNext() {
+                if (!filled) {
+                    chunk.setLength(0);
+                    if (next != null) {
+                        chunk.append(next);
+                        next = null;
+                    }
+                    FtpFile file;
+                    while (chunk.length() < CHUNK_SIZE
+                            && (file = nextFile()) != null) {
+                        formater.format(file, chunk);
+                    }
+                    filled = chunk.length() > 0;
+                }
+                return filled;
+            }
+
+            public CharSequence next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                filled = false;
+                return chunk;
+            }
+        };
+    }
+
+    /**
+     * Close the directory stream left open by a listing not iterated to the
+     * end.
+     */
+    public void close() {
+        closeEntries();
+        pass = passes.length;
+    }
+
+    private Iterator<? extends FtpFile> openEntries() throws IOException {
+        if (dir instanceof StreamingFtpFile) {
+            stream = ((StreamingFtpFile) dir).newDirectoryStream();
+            return stream.iterator();
+        }
+
+        // other files are listed at once, the list being kept for each pass
+        if (files == null) {
+            files = dir.listFiles();
+            if (files == null) {
+                files = Collections.emptyList();
+            }
+        }
+        return files.iterator();
+    }
+
+    private void closeEntries() {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            stream = null;
+        }
+        entries = null;
+    }
+}
@@ -38,4 +38,15 @@ public interface FileFormater {
      */
     String format(FtpFile file);
 
+    /**
+     * Format the file into a builder, without creating a string per file.
+     * Used to format whole listings into a reused builder.
+     * 
+     * @param file
+     *            The {@link FtpFile}
+     * @param out
+     *            The builder the formated string is appended to
+     */
+    void format(FtpFile file, StringBuilder out);
+
 }
@@ -18,10 +18,7 @@
  */
 package org.apache.ftpserver.command.impl.listing;
 
-import java.util.Arrays;
-
 import org.apache.ftpserver.ftplet.FtpFile;
-import org.apache.ftpserver.util.DateUtils;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
@@ -36,12 +33,24 @@ public class LISTFileFormater implements FileFormater {
 
     private final static char[] NEWLINE = { '\r', '\n' };
 
+    private final static int LENGTH_WIDTH = 12;
+
+    private final static ListingDateFormat DATE_FORMAT = new ListingDateFormat();
+
     /**
      * @see FileFormater#format(FtpFile)
      */
     public String format(FtpFile file) {
         StringBuilder sb = new StringBuilder();
-        sb.append(getPermission(file));
+        format(file, sb);
+        return sb.toString();
+    }
+
+    /**
+     * @see FileFormater#format(FtpFile, StringBuilder)
+     */
+    public void format(FtpFile file, StringBuilder sb) {
+        appendPermission(sb, file);
         sb.append(DELIM);
         sb.append(DELIM);
         sb.append(DELIM);
@@ -51,59 +60,44 @@ public class LISTFileFormater implements FileFormater {
         sb.append(DELIM);
         sb.append(file.getGroupName());
         sb.append(DELIM);
-        sb.append(getLength(file));
+        appendLength(sb, file);
         sb.append(DELIM);
-        sb.append(getLastModified(file));
+        DATE_FORMAT.appendUnixDate(sb, file.getLastModified());
         sb.append(DELIM);
         sb.append(file.getName());
         sb.append(NEWLINE);
-
-        return sb.toString();
     }
 
     /**
-     * Get size
+     * Append size, right aligned
      */
-    private String getLength(FtpFile file) {
-        String initStr = "            ";
+    private void appendLength(StringBuilder sb, FtpFile file) {
         long sz = 0;
         if (file.isFile()) {
             sz = file.getSize();
         }
-        String szStr = String.valueOf(sz);
-        if (szStr.length() > initStr.length()) {
-            return szStr;
+        int digits = 1;
+        for (long rest = sz / 10; rest != 0; rest /= 10) {
+            digits++;
         }
-        return initStr.substring(0, initStr.length() - szStr.length()) + szStr;
-    }
-
-    /**
-     * Get last modified date string.
-     */
-    private String getLastModified(FtpFile file) {
-        return DateUtils.getUnixDate(file.getLastModified());
+        if (sz < 0) {
+            digits++;
+        }
+        for (int i = digits; i < LENGTH_WIDTH; i++) {
+            sb.append(DELIM);
+        }
+        sb.append(sz);
     }
 
     /**
-     * Get permission string.
+     * Append permission string.
      */
-    private char[] getPermission(FtpFile file) {
-        char[] permission = new char[10];
-        Arrays.fill(permission, '-');
-
-        permission[0] = file.isDirectory() ? 'd' : '-';
-        permission[1] = file.isReadable() ? 'r' : '-';
-        permission[2] = file.isWritable() ? 'w' : '-';
-        permission[3] = file.isDirectory() ? 'x' : '-'; 
-        return permission;
+    private void appendPermission(StringBuilder sb, FtpFile file) {
+        boolean directory = file.isDirectory();
+        sb.append(directory ? 'd' : '-');
+        sb.append(file.isReadable() ? 'r' : '-');
+        sb.append(file.isWritable() ? 'w' : '-');
+        sb.append(directory ? 'x' : '-');
+        sb.append("------");
     }
-
-    /*
-     * public String format(FileObject[] files) { StringBuilder sb = new
-     * StringBuilder();
-     * 
-     * for (int i = 0; i < files.length; i++) { sb.append(format(files[i]));
-     * sb.append(NEWLINE); } return sb.toString(); }
-     */
-
 }
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.command.impl.listing;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+import org.apache.ftpserver.util.DateUtils;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Renders the dates of the directory listings into a {@link StringBuilder}
+ * without creating objects per file. The fields of the day (month, day of
+ * month and year) are rendered once per day and cached, the time of the day
+ * being computed from the start of the cached day. The days are cached in a
+ * small table indexed by the day number, so that the files of a listing,
+ * modified on a limited number of days, rarely miss the cache. The output is
+ * the same as {@link DateUtils#getUnixDate(long)} and
+ * {@link DateUtils#getFtpDate(long)}.
+ * 
+ * The default time zone is read again at most once per second, as reading it
+ * copies it, a change of the default time zone being followed within a
+ * second. Instances are thread safe, each cached day being immutable and only
+ * referenced once fully built.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+class ListingDateFormat {
+
+    private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr",
+            "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+    private static final long SIX_MONTHS = 15811200000L; // 183L * 24L * 60L * 60L * 1000L;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    // the number of cached days of each kind, a power of two
+    private static final int CACHED_DAYS = 256;
+
+    /**
+     * The rendered fields of a day, valid for the times from start
+     * (inclusive) to end (exclusive).
+     */
+    private static final class Day {
+
+        // the time zone of the day, null for UTC
+        final ZoneId zone;
+
+        final long start;
+
+        final long end;
+
+        // the time of the day being millis - midnight
+        final long midnight;
+
+        // "Mmm dd " for LIST, "yyyyMMdd" for MLST
+        final char[] date;
+
+        // " yyyy" for LIST, unused for MLST
+        final char[] year;
+
+        Day(final ZoneId zone, final long start, final long end,
+                final long midnight, final String date, final String year) {
+            this.zone = zone;
+            this.start = start;
+            this.end = end;
+            this.midnight = midnight;
+            this.date = date.toCharArray();
+            this.year = year.toCharArray();
+        }
+
+        boolean contains(final long millis) {
+            return millis >= start && millis < end;
+        }
+    }
+
+    private final Day[] unixDays = new Day[CACHED_DAYS];
+
+    private final Day[] ftpDays = new Day[CACHED_DAYS];
+
+    private volatile ZoneId zone;
+
+    private volatile long zoneReadTime;
+
+    private static int getSlot(final long millis) {
+        return (int) (millis / MILLIS_PER_DAY) & (CACHED_DAYS - 1);
+    }
+
+    /**
+     * Append the date of a LIST line, in the local time zone. The time is
+     * shown for the dates within six months, the year otherwise.
+     */
+    void appendUnixDate(final StringBuilder out, final long millis) {
+        if (millis < 0) {
+            out.append("------------");
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        ZoneId zone = getZone(now);
+
+        // local days may span two slots, then each slot caches the day
+        int slot = getSlot(millis);
+        Day day = unixDays[slot];
+        if (day == null || !day.contains(millis) || !zone.equals(day.zone)) {
+            day = createUnixDay(millis, zone);
+            unixDays[slot] = day;
+        }
+
+        out.append(day.date);
+        if (Math.abs(now - millis) > SIX_MONTHS) {
+            out.append(day.year);
+        } else {
+            int minutes = (int) ((millis - day.midnight) / 60000);
+            appendTwoDigits(out, minutes / 60);
+            out.append(':');
+            appendTwoDigits(out, minutes % 60);
+        }
+    }
+
+    /**
+     * Get the default time zone, read again if not read within the last
+     * second.
+     */
+    private ZoneId getZone(final long now) {
+        ZoneId current = zone;
+        long readTime = zoneReadTime;
+        if (current == null || now - readTime >= 1000 || now < readTime) {
+            current = ZoneId.systemDefault();
+            zone = current;
+            zoneReadTime = now;
+        }
+        return current;
+    }
+
+    /**
+     * Append the date of a MLST fact, in UTC.
+     */
+    void appendFtpDate(final StringBuilder out, final long millis) {
+        if (millis < 0) {
+            // before 1970, rendered by the calendar of the old dates
+            out.append(DateUtils.getFtpDate(millis));
+            return;
+        }
+
+        int slot = getSlot(millis);
+        Day day = ftpDays[slot];
+        if (day == null || !day.contains(millis)) {
+            long midnight = millis - millis % MILLIS_PER_DAY;
+            LocalDate date = LocalDate.ofEpochDay(millis / MILLIS_PER_DAY);
+            StringBuilder sb = new StringBuilder(8);
+            sb.append(date.getYear());
+            appendTwoDigits(sb, date.getMonthValue());
+            appendTwoDigits(sb, date.getDayOfMonth());
+            day = new Day(null, midnight, midnight + MILLIS_PER_DAY, midnight,
+                    sb.toString(), "");
+            ftpDays[slot] = day;
+        }
+
+        out.append(day.date);
+        int time = (int) (millis - day.midnight);
+        appendTwoDigits(out, time / 3600000);
+        appendTwoDigits(out, time / 60000 % 60);
+        appendTwoDigits(out, time / 1000 % 60);
+        out.append('.');
+        int milli = time % 1000;
+        out.append((char) ('0' + milli / 100));
+        appendTwoDigits(out, milli % 100);
+    }
+
+    /**
+     * Render the local day of a time. The cached range is cut at the offset
+     * transitions of the time zone, so that the time of the day can be
+     * computed from the midnight of the range.
+     */
+    private static Day createUnixDay(final long millis, final ZoneId zone) {
+        ZoneRules rules = zone.getRules();
+        Instant instant = Instant.ofEpochMilli(millis);
+        LocalDate date = LocalDateTime.ofInstant(instant, zone).toLocalDate();
+
+        long start = date.atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = date.plusDays(1).atStartOfDay(zone).toInstant()
+                .toEpochMilli();
+        ZoneOffsetTransition transition = rules.nextTransition(Instant
+                .ofEpochMilli(start));
+        if (transition != null) {
+            long transitionMillis = transition.toEpochSecond() * 1000;
+            if (transitionMillis < end) {
+                if (millis < transitionMillis) {
+                    end = transitionMillis;
+                } else {
+                    start = transitionMillis;
+                }
+            }
+        }
+        ZoneOffset offset = rules.getOffset(Instant.ofEpochMilli(start));
+        long midnight = date.atStartOfDay().toEpochSecond(offset) * 1000;
+
+        StringBuilder sb = new StringBuilder(7);
+        sb.append(MONTHS[date.getMonthValue() - 1]);
+        sb.append(' ');
+        int dayOfMonth = date.getDayOfMonth();
+        if (dayOfMonth < 10) {
+            sb.append(' ');
+        }
+        sb.append(dayOfMonth);
+        sb.append(' ');
+        return new Day(zone, start, end, midnight, sb.toString(), " "
+                + date.getYear());
+    }
+
+    private static void appendTwoDigits(final StringBuilder out,
+            final int value) {
+        out.append((char) ('0' + value / 10));
+        out.append((char) ('0' + value % 10));
+    }
+}
@@ -18,13 +18,16 @@
  */
 package org.apache.ftpserver.command.impl.listing;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.ftpserver.ftplet.FtpFile;
-import org.apache.ftpserver.util.DateUtils;
 
 /**
  * <strong>Internal class, do not use directly.</strong>
  * 
- * Formats files according to the MLST specification
+ * Formats files according to the MLST specification. The selected types are
+ * resolved once, into the facts emitted for each file.
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -35,71 +38,110 @@ public class MLSTFileFormater implements FileFormater {
 
     private final static char[] NEWLINE = { '\r', '\n' };
 
-    private String[] selectedTypes = DEFAULT_TYPES;
+    private final static ListingDateFormat DATE_FORMAT = new ListingDateFormat();
 
     /**
-     * @param selectedTypes
-     *            The types to show in the formated file
+     * The facts of the MLST specification, each appending its value to the
+     * formated file.
      */
-    public MLSTFileFormater(String[] selectedTypes) {
-        if (selectedTypes != null) {
-            this.selectedTypes = selectedTypes.clone();
-        }
-    }
-
-    /**
-     * @see FileFormater#format(FtpFile)
-     */
-    public String format(FtpFile file) {
-        StringBuilder sb = new StringBuilder();
-
-        for (String type : selectedTypes) {
-            if (type.equalsIgnoreCase("size")) {
+    private enum Fact {
+        SIZE {
+            @Override
+            void append(StringBuilder sb, FtpFile file) {
                 sb.append("Size=");
                 sb.append(file.getSize());
                 sb.append(';');
-            } else if (type.equalsIgnoreCase("modify")) {
-                String timeStr = DateUtils.getFtpDate(file.getLastModified());
+            }
+        },
+
+        MODIFY {
+            @Override
+            void append(StringBuilder sb, FtpFile file) {
                 sb.append("Modify=");
-                sb.append(timeStr);
+                DATE_FORMAT.appendFtpDate(sb, file.getLastModified());
                 sb.append(';');
-            } else if (type.equalsIgnoreCase("type")) {
+            }
+        },
+
+        TYPE {
+            @Override
+            void append(StringBuilder sb, FtpFile file) {
                 if (file.isFile()) {
                     sb.append("Type=file;");
                 } else if (file.isDirectory()) {
                     sb.append("Type=dir;");
                 }
-            } else if (type.equalsIgnoreCase("perm")) {
+            }
+        },
+
+        PERM {
+            @Override
+            void append(StringBuilder sb, FtpFile file) {
                 sb.append("Perm=");
                 if (file.isReadable()) {
                     if (file.isFile()) {
                         sb.append('r');
                     } else if (file.isDirectory()) {
-                        sb.append('e');
-                        sb.append('l');
+                        sb.append("el");
                     }
                 }
                 if (file.isWritable()) {
                     if (file.isFile()) {
-                        sb.append('a');
-                        sb.append('d');
-                        sb.append('f');
-                        sb.append('w');
+                        sb.append("adfw");
                     } else if (file.isDirectory()) {
-                        sb.append('f');
-                        sb.append('p');
-                        sb.append('c');
-                        sb.append('m');
+                        sb.append("fpcm");
                     }
                 }
                 sb.append(';');
             }
+        };
+
+        abstract void append(StringBuilder sb, FtpFile file);
+    }
+
+    private final Fact[] selectedFacts;
+
+    /**
+     * @param selectedTypes
+     *            The types to show in the formated file
+     */
+    public MLSTFileFormater(String[] selectedTypes) {
+        if (selectedTypes == null) {
+            selectedTypes = DEFAULT_TYPES;
+        }
+
+        // unknown types are ignored
+        List<Fact> facts = new ArrayList<>(selectedTypes.length);
+        for (String type : selectedTypes) {
+            for (Fact fact : Fact.values()) {
+                if (fact.name().equalsIgnoreCase(type)) {
+                    facts.add(fact);
+                    break;
+                }
+            }
+        }
+        selectedFacts = facts.toArray(new Fact[facts.size()]);
+    }
+
+    /**
+     * @see FileFormater#format(FtpFile)
+     */
+    public String format(FtpFile file) {
+        StringBuilder sb = new StringBuilder();
+        format(file, sb);
+        return sb.toString();
+    }
+
+    /**
+     * @see FileFormater#format(FtpFile, StringBuilder)
+     */
+    public void format(FtpFile file, StringBuilder sb) {
+        for (Fact fact : selectedFacts) {
+            fact.append(sb, file);
         }
         sb.append(' ');
         sb.append(file.getName());
 
         sb.append(NEWLINE);
-
-        return sb.toString();
     }
 }
@@ -36,9 +36,15 @@ public class NLSTFileFormater implements FileFormater {
      */
     public String format(FtpFile file) {
         StringBuilder sb = new StringBuilder();
+        format(file, sb);
+        return sb.toString();
+    }
+
+    /**
+     * @see FileFormater#format(FtpFile, StringBuilder)
+     */
+    public void format(FtpFile file, StringBuilder sb) {
         sb.append(file.getName());
         sb.append(NEWLINE);
-
-        return sb.toString();
     }
 }
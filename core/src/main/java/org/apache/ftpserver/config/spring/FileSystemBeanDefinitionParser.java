@@ -20,6 +20,7 @@
 package org.apache.ftpserver.config.spring;
 
 import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.filesystem.pathfs.PathFileSystemFactory;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.AbstractSingleBeanDefinitionParser;
@@ -28,7 +29,8 @@ import org.springframework.util.StringUtils;
 import org.w3c.dom.Element;
 
 /**
- * Parses the FtpServer "native-filesystem" element into a Spring bean graph
+ * Parses the FtpServer "native-filesystem" and "path-filesystem" elements
+ * into a Spring bean graph
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
@@ -41,6 +43,9 @@ public class FileSystemBeanDefinitionParser extends
     @Override
     protected Class<? extends FileSystemFactory> getBeanClass(
             final Element element) {
+        if ("path-filesystem".equals(element.getLocalName())) {
+            return PathFileSystemFactory.class;
+        }
         return NativeFileSystemFactory.class;
     }
 
@@ -59,5 +64,9 @@ public class FileSystemBeanDefinitionParser extends
             builder.addPropertyValue("createHome", Boolean
                     .valueOf(element.getAttribute("create-home")));
         }
+        if (StringUtils.hasText(element.getAttribute("listing-cache-size"))) {
+            builder.addPropertyValue("listingCacheSize", Integer
+                    .valueOf(element.getAttribute("listing-cache-size")));
+        }
     }
 }
@@ -47,6 +47,8 @@ public class FtpServerNamespaceHandler extends NamespaceHandlerSupport {
                 new UserManagerBeanDefinitionParser());
         registerBeanDefinitionParser("native-filesystem",
                 new FileSystemBeanDefinitionParser());
+        registerBeanDefinitionParser("path-filesystem",
+                new FileSystemBeanDefinitionParser());
         registerBeanDefinitionParser("commands",
                 new CommandFactoryBeanDefinitionParser());
 
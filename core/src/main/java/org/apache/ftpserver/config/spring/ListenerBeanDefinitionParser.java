@@ -219,6 +219,13 @@ public class ListenerBeanDefinitionParser extends
                 ssl.setSslProtocol(protocol);
             }
 
+            ssl.setSessionCacheSize(SpringUtil.parseInt(sslElm,
+                    "session-cache-size", ssl.getSessionCacheSize()));
+            ssl.setSessionTimeout(SpringUtil.parseInt(sslElm,
+                    "session-timeout", ssl.getSessionTimeout()));
+            ssl.setSessionTicketsEnabled(SpringUtil.parseBoolean(sslElm,
+                    "session-tickets", ssl.isSessionTicketsEnabled()));
+
             return ssl.createSslConfiguration();
         } else {
             return null;
@@ -234,6 +241,7 @@ public class ListenerBeanDefinitionParser extends
         if (element != null) {
             
             dc.setImplicitSsl(SpringUtil.parseBoolean(element, "implicit-ssl", false));
+            dc.setNonBlocking(SpringUtil.parseBoolean(element, "non-blocking", false));
             
             // data con config element available
             SslConfiguration ssl = parseSsl(element);
@@ -283,6 +291,26 @@ public class ListenerBeanDefinitionParser extends
                 }
                 dc.setPassiveIpCheck(SpringUtil.parseBoolean(passiveElm,
                     "ip-check", false));
+                dc.setPassiveSocketPoolEnabled(SpringUtil.parseBoolean(
+                        passiveElm, "socket-pool", false));
+            }
+
+            Element transferRateElm = SpringUtil.getChildElement(element,
+                    FtpServerNamespaceHandler.FTPSERVER_NS, "transfer-rate");
+            if (transferRateElm != null) {
+                dc.setTransferRateBurstSize(SpringUtil.parseInt(
+                        transferRateElm, "burst-size",
+                        dc.getTransferRateBurstSize()));
+                dc.setTransferRateRefillInterval(SpringUtil.parseInt(
+                        transferRateElm, "refill-interval",
+                        dc.getTransferRateRefillInterval()));
+                dc.setMaxDownloadRate(SpringUtil.parseInt(transferRateElm,
+                        "max-download-rate", dc.getMaxDownloadRate()));
+                dc.setMaxUploadRate(SpringUtil.parseInt(transferRateElm,
+                        "max-upload-rate", dc.getMaxUploadRate()));
+                dc.setUserTransferRateShared(SpringUtil.parseBoolean(
+                        transferRateElm, "user-shared",
+                        dc.isUserTransferRateShared()));
             }
         } else {
             // no data conn config element, do we still have SSL config from the
@@ -88,7 +88,8 @@ public class ServerBeanDefinitionParser extends
                 factoryBuilder.addPropertyValue("userManager", SpringUtil
                         .parseSpringChildElement(childElm, parserContext,
                                 builder));
-            } else if ("native-filesystem".equals(childName)) {
+            } else if ("native-filesystem".equals(childName)
+                    || "path-filesystem".equals(childName)) {
                 Object fileSystem = parserContext.getDelegate()
                         .parseCustomElement(childElm,
                                 builder.getBeanDefinition());
@@ -139,6 +140,58 @@ public class ServerBeanDefinitionParser extends
             connectionConfig.setLoginFailureDelay(SpringUtil.parseInt(element,
                     "login-failure-delay"));
         }
+        if (StringUtils.hasText(element.getAttribute("max-download-rate"))) {
+            connectionConfig.setMaxDownloadRate(SpringUtil.parseInt(element,
+                    "max-download-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("max-upload-rate"))) {
+            connectionConfig.setMaxUploadRate(SpringUtil.parseInt(element,
+                    "max-upload-rate"));
+        }
+        if (StringUtils.hasText(element.getAttribute("virtual-threads"))) {
+            connectionConfig.setVirtualThreadsEnabled(SpringUtil.parseBoolean(
+                    element, "virtual-threads", false));
+        }
+        if (StringUtils.hasText(element.getAttribute("transfer-buffer-size"))) {
+            connectionConfig.setTransferBufferSize(SpringUtil.parseInt(element,
+                    "transfer-buffer-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("transfer-buffer-pool-size"))) {
+            connectionConfig.setTransferBufferPoolSize(SpringUtil.parseInt(
+                    element, "transfer-buffer-pool-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("direct-transfer-buffers"))) {
+            connectionConfig.setDirectTransferBuffers(SpringUtil.parseBoolean(
+                    element, "direct-transfer-buffers", false));
+        }
+        if (StringUtils.hasText(element.getAttribute("inline-checksums"))) {
+            connectionConfig.setInlineChecksums(SpringUtil.parseString(
+                    element, "inline-checksums").trim().split("[\\s,]+"));
+        }
+        if (StringUtils.hasText(element.getAttribute("checksum-cache-size"))) {
+            connectionConfig.setChecksumCacheSize(SpringUtil.parseInt(element,
+                    "checksum-cache-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("write-behind-size"))) {
+            connectionConfig.setWriteBehindSize(SpringUtil.parseInt(element,
+                    "write-behind-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("write-behind-pool-size"))) {
+            connectionConfig.setWriteBehindPoolSize(SpringUtil.parseInt(
+                    element, "write-behind-pool-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("read-ahead-depth"))) {
+            connectionConfig.setReadAheadDepth(SpringUtil.parseInt(element,
+                    "read-ahead-depth"));
+        }
+        if (StringUtils.hasText(element.getAttribute("read-ahead-chunk-size"))) {
+            connectionConfig.setReadAheadChunkSize(SpringUtil.parseInt(
+                    element, "read-ahead-chunk-size"));
+        }
+        if (StringUtils.hasText(element.getAttribute("list-directories-first"))) {
+            connectionConfig.setListDirectoriesFirst(SpringUtil.parseBoolean(
+                    element, "list-directories-first", true));
+        }
 
         factoryBuilder.addPropertyValue("connectionConfig", connectionConfig.createConnectionConfig());
 
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+
+/**
+ * A file able to iterate over the entries of a directory without loading
+ * them all in memory. Directory listings use this interface when implemented
+ * by the files of a {@link org.apache.ftpserver.ftplet.FileSystemView} and
+ * fall back to {@link FtpFile#listFiles()} otherwise.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public interface StreamingFtpFile extends FtpFile {
+
+    /**
+     * Open a stream over the entries of this directory. The entries are
+     * returned in the order of the underlying file system, not sorted. The
+     * stream must be closed once iterated, and like any
+     * {@link DirectoryStream} can only be iterated once.
+     *
+     * @return The stream of the directory entries
+     * @throws IOException
+     *             If this file is not a directory or can not be read
+     */
+    DirectoryStream<FtpFile> newDirectoryStream() throws IOException;
+}
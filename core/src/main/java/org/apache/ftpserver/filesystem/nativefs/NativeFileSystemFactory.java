@@ -98,8 +98,17 @@ public class NativeFileSystemFactory implements FileSystemFactory {
                 }
             }
 
-            return new NativeFileSystemView(user, caseInsensitive);
+            return createFileSystemView(user, caseInsensitive);
         }
     }
 
+    /**
+     * Create the view once the home directory is known to exist, allowing
+     * subclasses to provide their own view.
+     */
+    protected FileSystemView createFileSystemView(User user,
+            boolean caseInsensitive) throws FtpException {
+        return new NativeFileSystemView(user, caseInsensitive);
+    }
+
 }
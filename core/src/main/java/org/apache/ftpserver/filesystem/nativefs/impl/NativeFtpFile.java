@@ -26,10 +26,16 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 
+import org.apache.ftpserver.filesystem.StreamingFtpFile;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.User;
 import org.apache.ftpserver.usermanager.impl.WriteRequest;
@@ -43,7 +49,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author <a href="http://mina.apache.org">Apache MINA Project</a>
  */
-public class NativeFtpFile implements FtpFile {
+public class NativeFtpFile implements StreamingFtpFile {
 
     private final Logger LOG = LoggerFactory.getLogger(NativeFtpFile.class);
 
@@ -201,16 +207,24 @@ public class NativeFtpFile implements FtpFile {
      * Check file write permission.
      */
     public boolean isWritable() {
-        LOG.debug("Checking authorization for " + getAbsolutePath());
-        if (user.authorize(new WriteRequest(getAbsolutePath())) == null) {
+        // called for each listed file, the messages are only built if logged
+        boolean debug = LOG.isDebugEnabled();
+        String absolutePath = getAbsolutePath();
+        if (debug) {
+            LOG.debug("Checking authorization for " + absolutePath);
+        }
+        if (user.authorize(new WriteRequest(absolutePath)) == null) {
             LOG.debug("Not authorized");
             return false;
         }
 
         LOG.debug("Checking if file exists");
         if (file.exists()) {
-            LOG.debug("Checking can write: " + file.canWrite());
-            return file.canWrite();
+            boolean canWrite = file.canWrite();
+            if (debug) {
+                LOG.debug("Checking can write: " + canWrite);
+            }
+            return canWrite;
         }
 
         LOG.debug("Authorized");
@@ -338,7 +352,48 @@ public class NativeFtpFile implements FtpFile {
     }
 
     /**
-     * Create output stream for writing.
+     * Stream the directory entries in the order of the file system. Unlike
+     * {@link #listFiles()} the entries are neither loaded at once nor sorted,
+     * each one being created as the stream is iterated.
+     */
+    public DirectoryStream<FtpFile> newDirectoryStream() throws IOException {
+        final DirectoryStream<Path> entries = Files.newDirectoryStream(file
+                .toPath());
+
+        // get the virtual name of the base directory
+        String virtualFileStr = getAbsolutePath();
+        if (virtualFileStr.charAt(virtualFileStr.length() - 1) != '/') {
+            virtualFileStr += '/';
+        }
+        final String virtualDir = virtualFileStr;
+
+        return new DirectoryStream<FtpFile>() {
+            public Iterator<FtpFile> iterator() {
+                final Iterator<Path> paths = entries.iterator();
+                return new Iterator<FtpFile>() {
+                    public boolean hasNext() {
+                        return paths.hasNext();
+                    }
+
+                    public FtpFile next() {
+                        Path path = paths.next();
+                        return new NativeFtpFile(virtualDir
+                                + path.getFileName(), path.toFile(), user);
+                    }
+                };
+            }
+
+            public void close() throws IOException {
+                entries.close();
+            }
+        };
+    }
+
+    /**
+     * Create output stream for writing. The returned stream is a
+     * {@link FileOutputStream} whose {@link FileOutputStream#getChannel()} is
+     * positioned at the offset, allowing the data connection to move uploaded
+     * data into the file channel directly.
      */
     public OutputStream createOutputStream(final long offset)
             throws IOException {
@@ -356,16 +411,34 @@ public class NativeFtpFile implements FtpFile {
         // The IBM jre needs to have both the stream and the random access file
         // objects closed to actually close the file
         return new FileOutputStream(raf.getFD()) {
+            @Override
+            public FileChannel getChannel() {
+                return raf.getChannel();
+            }
+
             @Override
             public void close() throws IOException {
                 super.close();
                 raf.close();
+                outputStreamClosed();
             }
         };
     }
 
     /**
-     * Create input stream for reading.
+     * Called once an output stream created by
+     * {@link #createOutputStream(long)} is closed, the file having been
+     * written.
+     */
+    protected void outputStreamClosed() {
+        // nothing to do by default
+    }
+
+    /**
+     * Create input stream for reading. The returned stream is a
+     * {@link FileInputStream} whose {@link FileInputStream#getChannel()} is
+     * positioned at the offset, allowing the data connection to send the file
+     * without copying it through the JVM.
      */
     public InputStream createInputStream(final long offset) throws IOException {
 
@@ -381,6 +454,11 @@ public class NativeFtpFile implements FtpFile {
         // The IBM jre needs to have both the stream and the random access file
         // objects closed to actually close the file
         return new FileInputStream(raf.getFD()) {
+            @Override
+            public FileChannel getChannel() {
+                return raf.getChannel();
+            }
+
             @Override
             public void close() throws IOException {
                 super.close();
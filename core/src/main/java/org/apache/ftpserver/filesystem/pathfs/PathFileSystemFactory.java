@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.pathfs;
+
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.filesystem.pathfs.impl.DirectoryListingCache;
+import org.apache.ftpserver.filesystem.pathfs.impl.PathFileSystemView;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.User;
+
+/**
+ * File system factory using the OS file system through java.nio.file. It
+ * serves the same files as {@link NativeFileSystemFactory}, but reads the
+ * attributes of each file once, in a single call, instead of one system call
+ * per attribute. The attributes of the entries of a listed directory are read
+ * while iterating the directory.
+ *
+ * The attributes of a file are a snapshot taken when first needed, each
+ * command getting its own file objects.
+ *
+ * Optionally, the listings of the recently listed directories are kept in a
+ * server wide {@link DirectoryListingCache}, bounded by the total number of
+ * entries. The cached directories are watched for changes, and the files
+ * modified by the server discard the listing of their directory.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PathFileSystemFactory extends NativeFileSystemFactory {
+
+    private int listingCacheSize = 0;
+
+    private DirectoryListingCache listingCache;
+
+    /**
+     * Get the maximum number of directory entries held by the listing cache.
+     *
+     * @return The maximum number of entries, 0 if the listings are not cached
+     */
+    public int getListingCacheSize() {
+        return listingCacheSize;
+    }
+
+    /**
+     * Set the maximum number of directory entries held by the listing cache.
+     * Must be set before the first user logs in.
+     *
+     * @param listingCacheSize
+     *            The maximum number of entries, 0 to not cache the listings
+     */
+    public void setListingCacheSize(int listingCacheSize) {
+        if (listingCacheSize < 0) {
+            throw new IllegalArgumentException(
+                    "Listing cache size must be 0 or positive");
+        }
+        this.listingCacheSize = listingCacheSize;
+    }
+
+    /**
+     * Get the listing cache, giving access to its hit and miss counts.
+     *
+     * @return The listing cache, null if the listings are not cached
+     */
+    public synchronized DirectoryListingCache getListingCache() {
+        if (listingCache == null && listingCacheSize > 0) {
+            listingCache = new DirectoryListingCache(listingCacheSize);
+        }
+        return listingCache;
+    }
+
+    /**
+     * Create the java.nio.file based view.
+     */
+    @Override
+    protected FileSystemView createFileSystemView(User user,
+            boolean caseInsensitive) throws FtpException {
+        return new PathFileSystemView(user, caseInsensitive,
+                getListingCache());
+    }
+
+    /**
+     * Discard the cached listings and stop watching the directories.
+     */
+    public synchronized void dispose() {
+        if (listingCache != null) {
+            listingCache.dispose();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.pathfs.impl;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Server wide cache of the directory listings, holding the names and the
+ * attributes of the entries of the recently listed directories. The cache is
+ * bounded by the total number of entries, the least recently listed
+ * directories being evicted first. Directories with more entries than the
+ * cache can hold are not cached.
+ *
+ * Each cached directory is watched through a {@link WatchService}, any change
+ * in the directory discarding its listing. The files modified by the server
+ * discard the listing of their directory right away, without waiting for the
+ * watch events. The cached entries are only the content of the directory,
+ * the permissions of the users are checked on the files created from them.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DirectoryListingCache {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(DirectoryListingCache.class);
+
+    private final int maxEntries;
+
+    private final Map<Path, Listing> listings = new LinkedHashMap<>(16,
+            0.75f, true);
+
+    private int entryCount = 0;
+
+    // incremented on each invalidation, so that a listing read while its
+    // directory changed is not cached
+    private long version = 0;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private WatchService watchService;
+
+    /**
+     * @param maxEntries
+     *            The maximum number of directory entries held by the cache
+     */
+    public DirectoryListingCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * An entry of a cached directory.
+     */
+    static final class Entry {
+
+        final String name;
+
+        final BasicFileAttributes attributes;
+
+        Entry(final String name, final BasicFileAttributes attributes) {
+            this.name = name;
+            this.attributes = attributes;
+        }
+    }
+
+    private static final class Listing {
+
+        // null if the directory has too many entries to be cached
+        final List<Entry> entries;
+
+        final WatchKey watchKey;
+
+        Listing(final List<Entry> entries, final WatchKey watchKey) {
+            this.entries = entries;
+            this.watchKey = watchKey;
+        }
+
+        int getWeight() {
+            return entries == null ? 1 : Math.max(1, entries.size());
+        }
+    }
+
+    /**
+     * Get the entries of a directory, reading and caching them if needed.
+     *
+     * @return The entries, null if the directory can not be cached and must
+     *         be read by the caller
+     * @throws IOException
+     *             If the directory can not be read
+     */
+    List<Entry> getEntries(final Path dir) throws IOException {
+        long startVersion;
+        synchronized (this) {
+            Listing listing = listings.get(dir);
+            if (listing != null && listing.entries != null) {
+                hits++;
+                return listing.entries;
+            }
+            misses++;
+            if (listing != null) {
+                // known to be too large
+                return null;
+            }
+            startVersion = version;
+        }
+
+        // watch the directory before reading it, so that no change is missed
+        WatchKey watchKey = watch(dir);
+        if (watchKey == null) {
+            return null;
+        }
+        List<Entry> entries = read(dir);
+
+        synchronized (this) {
+            if (version == startVersion && watchKey.isValid()) {
+                put(dir, new Listing(entries, watchKey));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Read the entries of a directory.
+     *
+     * @return The entries, null if there are too many to be cached
+     */
+    private List<Entry> read(final Path dir) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                if (entries.size() == maxEntries) {
+                    return null;
+                }
+                entries.add(new Entry(entry.getFileName().toString(),
+                        PathFtpFile.readAttributes(stream, entry)));
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    private void put(final Path dir, final Listing listing) {
+        Listing old = listings.put(dir, listing);
+        if (old != null) {
+            entryCount -= old.getWeight();
+        }
+        entryCount += listing.getWeight();
+
+        // evict the least recently used listings
+        Iterator<Map.Entry<Path, Listing>> iter = listings.entrySet()
+                .iterator();
+        while (entryCount > maxEntries && iter.hasNext()) {
+            Listing evicted = iter.next().getValue();
+            if (evicted == listing) {
+                continue;
+            }
+            iter.remove();
+            entryCount -= evicted.getWeight();
+            evicted.watchKey.cancel();
+        }
+    }
+
+    /**
+     * Discard the listing of a directory.
+     */
+    public synchronized void invalidate(final Path dir) {
+        version++;
+        Listing listing = listings.remove(dir);
+        if (listing != null) {
+            entryCount -= listing.getWeight();
+            listing.watchKey.cancel();
+        }
+    }
+
+    /**
+     * Register a directory with the watch service, started with the first
+     * watched directory.
+     *
+     * @return The watch key, null if the directory can not be watched
+     */
+    private WatchKey watch(final Path dir) {
+        try {
+            WatchService service;
+            synchronized (this) {
+                if (watchService == null) {
+                    watchService = dir.getFileSystem().newWatchService();
+                    startWatcher(watchService);
+                }
+                service = watchService;
+            }
+            return dir.register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException
+                | ClosedWatchServiceException e) {
+            LOG.debug("Can not watch directory " + dir, e);
+            return null;
+        }
+    }
+
+    private void startWatcher(final WatchService service) {
+        Thread watcher = new Thread(new Runnable() {
+            public void run() {
+                while (true) {
+                    WatchKey key;
+                    try {
+                        key = service.take();
+                    } catch (InterruptedException
+                            | ClosedWatchServiceException e) {
+                        return;
+                    }
+                    key.pollEvents();
+                    synchronized (DirectoryListingCache.this) {
+                        invalidate((Path) key.watchable());
+                        // also cancels a key registered for a listing being
+                        // read, which will not be cached
+                        key.cancel();
+                    }
+                }
+            }
+        }, "FtpServer listing watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * Get the number of listings answered from the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of listings read from the file system.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of cached directories.
+     */
+    public synchronized int getSize() {
+        return listings.size();
+    }
+
+    /**
+     * Get the number of cached directory entries.
+     */
+    public synchronized int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Get the maximum number of directory entries held by the cache.
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Discard all the listings and stop watching the directories. The cache
+     * can be used again afterwards.
+     */
+    public void dispose() {
+        WatchService service;
+        synchronized (this) {
+            listings.clear();
+            entryCount = 0;
+            version++;
+            service = watchService;
+            watchService = null;
+        }
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                LOG.debug("Failed to close the watch service", e);
+            }
+        }
+    }
+}
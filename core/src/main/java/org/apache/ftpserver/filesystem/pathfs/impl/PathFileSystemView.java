@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.pathfs.impl;
+
+import java.io.File;
+
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFileSystemView;
+import org.apache.ftpserver.filesystem.pathfs.PathFileSystemFactory;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * File system view based on java.nio.file. Paths are resolved as by the
+ * native file system view, the files being {@link PathFtpFile} instances.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PathFileSystemView extends NativeFileSystemView {
+
+    private final User user;
+
+    private final DirectoryListingCache listingCache;
+
+    /**
+     * Constructor - internal do not use directly, use {@link PathFileSystemFactory} instead
+     */
+    public PathFileSystemView(User user, boolean caseInsensitive)
+            throws FtpException {
+        this(user, caseInsensitive, null);
+    }
+
+    /**
+     * Constructor - internal do not use directly, use {@link PathFileSystemFactory} instead
+     *
+     * @param listingCache
+     *            The cache of the directory listings, null to read the
+     *            directories on each listing
+     */
+    public PathFileSystemView(User user, boolean caseInsensitive,
+            DirectoryListingCache listingCache) throws FtpException {
+        super(user, caseInsensitive);
+        this.user = user;
+        this.listingCache = listingCache;
+    }
+
+    /**
+     * Get the user home directory.
+     */
+    @Override
+    public FtpFile getHomeDirectory() {
+        return toPathFile(super.getHomeDirectory());
+    }
+
+    /**
+     * Get the current directory.
+     */
+    @Override
+    public FtpFile getWorkingDirectory() {
+        return toPathFile(super.getWorkingDirectory());
+    }
+
+    /**
+     * Get file object.
+     */
+    @Override
+    public FtpFile getFile(String file) {
+        return toPathFile(super.getFile(file));
+    }
+
+    private FtpFile toPathFile(final FtpFile file) {
+        return new PathFtpFile(file.getAbsolutePath(), ((File) file
+                .getPhysicalFile()).toPath(), user, listingCache);
+    }
+}
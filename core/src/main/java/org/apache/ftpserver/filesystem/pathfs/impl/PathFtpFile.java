@@ -0,0 +1,473 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.filesystem.pathfs.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SecureDirectoryStream;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.ftpserver.filesystem.nativefs.impl.NativeFtpFile;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.usermanager.impl.WriteRequest;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * This class wraps a java.nio.file path. The attributes of the file are read
+ * at once when first needed, or while iterating the parent directory, and
+ * every getter is answered from this snapshot. The access rights of the
+ * server process are checked once, as they can not be derived from the
+ * permission bits alone. Operations modifying the file discard the snapshot.
+ * When a {@link DirectoryListingCache} is given, directories are listed from
+ * the cache, and the operations modifying a file discard the cached listing
+ * of the file and of its directory.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PathFtpFile extends NativeFtpFile {
+
+    private final Path path;
+
+    private final User user;
+
+    private BasicFileAttributes attributes;
+
+    private boolean attributesRead;
+
+    private Boolean readable;
+
+    private Boolean writable;
+
+    private final DirectoryListingCache listingCache;
+
+    /**
+     * Constructor, internal do not use directly.
+     */
+    protected PathFtpFile(final String fileName, final Path path,
+            final User user) {
+        this(fileName, path, user, (DirectoryListingCache) null);
+    }
+
+    /**
+     * Constructor, internal do not use directly.
+     *
+     * @param listingCache
+     *            The cache of the directory listings, may be null
+     */
+    protected PathFtpFile(final String fileName, final Path path,
+            final User user, final DirectoryListingCache listingCache) {
+        super(fileName, path == null ? null : path.toFile(), user);
+        this.path = path;
+        this.user = user;
+        this.listingCache = listingCache;
+    }
+
+    /**
+     * Constructor for the entries of a directory, the attributes being read
+     * while iterating the directory.
+     *
+     * @param attributes
+     *            The attributes of the file, null if it does not exist
+     */
+    PathFtpFile(final String fileName, final Path path, final User user,
+            final BasicFileAttributes attributes,
+            final DirectoryListingCache listingCache) {
+        this(fileName, path, user, listingCache);
+        this.attributes = attributes;
+        attributesRead = true;
+    }
+
+    /**
+     * Get the path of the file.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Get the attributes of the file, reading them on the first call.
+     *
+     * @return The attributes, null if the file does not exist
+     */
+    private BasicFileAttributes getAttributes() {
+        if (!attributesRead) {
+            try {
+                attributes = Files.readAttributes(path,
+                        getAttributesType(path.getFileSystem()));
+            } catch (IOException e) {
+                attributes = null;
+            }
+            attributesRead = true;
+        }
+        return attributes;
+    }
+
+    /**
+     * Discard the attributes, the file having been modified.
+     */
+    private void resetAttributes() {
+        attributes = null;
+        attributesRead = false;
+        readable = null;
+        writable = null;
+
+        if (listingCache != null) {
+            listingCache.invalidate(path);
+            Path parent = path.getParent();
+            if (parent != null) {
+                listingCache.invalidate(parent);
+            }
+        }
+    }
+
+    /**
+     * Get the attributes to read for the files of a file system. The DOS
+     * attributes hold the hidden flag on Windows, other file systems tell
+     * hidden files by their name.
+     */
+    private static Class<? extends BasicFileAttributes> getAttributesType(
+            final FileSystem fileSystem) {
+        if (!fileSystem.supportedFileAttributeViews().contains("posix")
+                && fileSystem.supportedFileAttributeViews().contains("dos")) {
+            return DosFileAttributes.class;
+        }
+        return BasicFileAttributes.class;
+    }
+
+    /**
+     * Is a hidden file?
+     */
+    @Override
+    public boolean isHidden() {
+        BasicFileAttributes attrs = getAttributes();
+        if (attrs instanceof DosFileAttributes) {
+            return ((DosFileAttributes) attrs).isHidden();
+        }
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith(".");
+    }
+
+    /**
+     * Is it a directory?
+     */
+    @Override
+    public boolean isDirectory() {
+        BasicFileAttributes attrs = getAttributes();
+        return attrs != null && attrs.isDirectory();
+    }
+
+    /**
+     * Is it a file?
+     */
+    @Override
+    public boolean isFile() {
+        BasicFileAttributes attrs = getAttributes();
+        return attrs != null && attrs.isRegularFile();
+    }
+
+    /**
+     * Does this file exists?
+     */
+    @Override
+    public boolean doesExist() {
+        return getAttributes() != null;
+    }
+
+    /**
+     * Get file size.
+     */
+    @Override
+    public long getSize() {
+        BasicFileAttributes attrs = getAttributes();
+        return attrs == null ? 0 : attrs.size();
+    }
+
+    /**
+     * Get link count
+     */
+    @Override
+    public int getLinkCount() {
+        return isDirectory() ? 3 : 1;
+    }
+
+    /**
+     * Get last modified time.
+     */
+    @Override
+    public long getLastModified() {
+        BasicFileAttributes attrs = getAttributes();
+        return attrs == null ? 0 : attrs.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean setLastModified(long time) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(time));
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            resetAttributes();
+        }
+    }
+
+    /**
+     * Check read permission.
+     */
+    @Override
+    public boolean isReadable() {
+        if (readable == null) {
+            readable = Files.isReadable(path);
+        }
+        return readable;
+    }
+
+    /**
+     * Check file write permission.
+     */
+    @Override
+    public boolean isWritable() {
+        if (user.authorize(new WriteRequest(getAbsolutePath())) == null) {
+            return false;
+        }
+
+        if (doesExist()) {
+            if (writable == null) {
+                writable = Files.isWritable(path);
+            }
+            return writable;
+        }
+        return true;
+    }
+
+    /**
+     * Delete file.
+     */
+    @Override
+    public boolean delete() {
+        if (!isRemovable()) {
+            return false;
+        }
+        try {
+            Files.delete(path);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            resetAttributes();
+        }
+    }
+
+    /**
+     * Move file object.
+     */
+    @Override
+    public boolean move(final FtpFile dest) {
+        try {
+            return super.move(dest);
+        } finally {
+            resetAttributes();
+            if (dest instanceof PathFtpFile) {
+                ((PathFtpFile) dest).resetAttributes();
+            }
+        }
+    }
+
+    /**
+     * Create directory.
+     */
+    @Override
+    public boolean mkdir() {
+        if (!isWritable()) {
+            return false;
+        }
+        try {
+            Files.createDirectory(path);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            resetAttributes();
+        }
+    }
+
+    /**
+     * Create output stream for writing, the attributes being read again once
+     * the file is written.
+     */
+    @Override
+    public OutputStream createOutputStream(final long offset)
+            throws IOException {
+        OutputStream out = super.createOutputStream(offset);
+        resetAttributes();
+        return out;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void outputStreamClosed() {
+        resetAttributes();
+    }
+
+    /**
+     * List files. If not a directory or does not exist, null will be returned.
+     */
+    @Override
+    public List<FtpFile> listFiles() {
+
+        // is a directory
+        if (!isDirectory()) {
+            return null;
+        }
+
+        List<FtpFile> files = new ArrayList<>();
+        try (DirectoryStream<FtpFile> stream = newDirectoryStream()) {
+            for (FtpFile file : stream) {
+                files.add(file);
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            return null;
+        }
+
+        // make sure the files are returned in order
+        files.sort(Comparator.comparing(FtpFile::getName));
+        return Collections.unmodifiableList(files);
+    }
+
+    /**
+     * Stream the directory entries in the order of the file system, the
+     * attributes of each entry being read as the stream is iterated. When
+     * the file system allows it, the attributes are read relative to the open
+     * directory, without looking up the directory path again. Cached
+     * listings are served from the {@link DirectoryListingCache}.
+     */
+    @Override
+    public DirectoryStream<FtpFile> newDirectoryStream() throws IOException {
+
+        // get the virtual name of the base directory
+        String virtualFileStr = getAbsolutePath();
+        if (virtualFileStr.charAt(virtualFileStr.length() - 1) != '/') {
+            virtualFileStr += '/';
+        }
+        final String virtualDir = virtualFileStr;
+
+        if (listingCache != null) {
+            List<DirectoryListingCache.Entry> cached = listingCache
+                    .getEntries(path);
+            if (cached != null) {
+                return newCachedDirectoryStream(virtualDir, cached);
+            }
+        }
+
+        final DirectoryStream<Path> entries = Files.newDirectoryStream(path);
+        return new DirectoryStream<FtpFile>() {
+            public Iterator<FtpFile> iterator() {
+                final Iterator<Path> paths = entries.iterator();
+                return new Iterator<FtpFile>() {
+                    public boolean hasNext() {
+                        return paths.hasNext();
+                    }
+
+                    public FtpFile next() {
+                        Path entry = paths.next();
+                        return new PathFtpFile(virtualDir
+                                + entry.getFileName(), entry, user,
+                                readAttributes(entries, entry), listingCache);
+                    }
+                };
+            }
+
+            public void close() throws IOException {
+                entries.close();
+            }
+        };
+    }
+
+    /**
+     * Stream the entries of a cached listing.
+     */
+    private DirectoryStream<FtpFile> newCachedDirectoryStream(
+            final String virtualDir,
+            final List<DirectoryListingCache.Entry> cached) {
+        return new DirectoryStream<FtpFile>() {
+            public Iterator<FtpFile> iterator() {
+                final Iterator<DirectoryListingCache.Entry> iter = cached
+                        .iterator();
+                return new Iterator<FtpFile>() {
+                    public boolean hasNext() {
+                        return iter.hasNext();
+                    }
+
+                    public FtpFile next() {
+                        DirectoryListingCache.Entry entry = iter.next();
+                        return new PathFtpFile(virtualDir + entry.name, path
+                                .resolve(entry.name), user,
+                                entry.attributes, listingCache);
+                    }
+                };
+            }
+
+            public void close() {
+                // nothing to close
+            }
+        };
+    }
+
+    /**
+     * Read the attributes of a directory entry.
+     *
+     * @return The attributes, null if the entry does not exist anymore
+     */
+    static BasicFileAttributes readAttributes(
+            final DirectoryStream<Path> entries, final Path entry) {
+        try {
+            if (entries instanceof SecureDirectoryStream) {
+                return ((SecureDirectoryStream<Path>) entries)
+                        .getFileAttributeView(entry.getFileName(),
+                                BasicFileAttributeView.class)
+                        .readAttributes();
+            }
+            return Files.readAttributes(entry, getAttributesType(entry
+                    .getFileSystem()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Sparse index of the positions in a file matching the offsets of the file
+ * sent as ASCII, where each bare <code>\n</code> is sent as
+ * <code>\r\n</code>. A checkpoint is kept every interval bytes of the file
+ * so that an ASCII restart only scans the file from the checkpoint before
+ * the restart offset.
+ *
+ * The index covers the beginning of the file read so far and is extended
+ * with the bytes following it, as they are read by restarts or transfers.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AsciiOffsetIndex {
+
+    private final long interval;
+
+    // ASCII offsets at the file positions multiple of the interval
+    private long[] asciiOffsets = new long[16];
+
+    // checkpoints following a \r
+    private final BitSet afterCr = new BitSet();
+
+    private int count = 1;
+
+    // the end of the indexed data
+    private Position end = new Position(0, 0, (byte) 0);
+
+    // the last position found by a restart
+    private Position lastSeek = null;
+
+    /**
+     * @param interval
+     *            The number of file bytes between two checkpoints
+     */
+    public AsciiOffsetIndex(final long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Get the number of bytes of the file covered by the index.
+     */
+    public synchronized long getLength() {
+        return end.position;
+    }
+
+    /**
+     * Get the number of checkpoints of the index.
+     */
+    public synchronized int getCheckpoints() {
+        return count;
+    }
+
+    /**
+     * Extend the index with bytes read from the file. Bytes not directly
+     * following the indexed data are ignored.
+     *
+     * @param position
+     *            The position in the file of the first byte
+     */
+    public synchronized void update(final long position, final byte[] data,
+            final int off, final int len) {
+        if (position != end.position) {
+            return;
+        }
+        long pos = end.position;
+        long ascii = end.asciiOffset;
+        byte previous = end.previous;
+        long nextCheckpoint = (long) count * interval;
+        for (int i = off; i < off + len; i++) {
+            byte b = data[i];
+            ascii += (b == '\n' && previous != '\r') ? 2 : 1;
+            previous = b;
+            if (++pos == nextCheckpoint) {
+                addCheckpoint(ascii, previous == '\r');
+                nextCheckpoint += interval;
+            }
+        }
+        end = new Position(pos, ascii, previous);
+    }
+
+    private void addCheckpoint(final long asciiOffset, final boolean cr) {
+        if (count == asciiOffsets.length) {
+            asciiOffsets = Arrays.copyOf(asciiOffsets, count * 2);
+        }
+        asciiOffsets[count] = asciiOffset;
+        afterCr.set(count, cr);
+        count++;
+    }
+
+    /**
+     * Get the last indexed position at or before an ASCII offset.
+     */
+    public synchronized Position floor(final long asciiOffset) {
+        if (end.asciiOffset <= asciiOffset) {
+            return end;
+        }
+        int index = Arrays.binarySearch(asciiOffsets, 0, count, asciiOffset);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return new Position(index * interval, asciiOffsets[index], afterCr
+                .get(index) ? (byte) '\r' : 0);
+    }
+
+    /**
+     * Remember the position found by a restart, the index can then be
+     * truncated at this position.
+     */
+    public synchronized void setLastSeek(final Position position) {
+        lastSeek = position;
+    }
+
+    /**
+     * Drop the indexed data after a position, for the file to be written
+     * from there.
+     *
+     * @return False if the index can not be truncated at this position, that
+     *         is it is neither the end of the indexed data nor the position
+     *         found by the last restart
+     */
+    public synchronized boolean truncate(final long position) {
+        Position to;
+        if (position == end.position) {
+            to = end;
+        } else if (lastSeek != null && position == lastSeek.position
+                && position <= end.position) {
+            to = lastSeek;
+        } else {
+            return false;
+        }
+        count = (int) (to.position / interval) + 1;
+        afterCr.clear(count, Math.max(count, afterCr.length()));
+        end = to;
+        lastSeek = null;
+        return true;
+    }
+
+    /**
+     * A position in the file with the matching ASCII offset.
+     */
+    public static class Position {
+
+        private final long position;
+
+        private final long asciiOffset;
+
+        private final byte previous;
+
+        public Position(final long position, final long asciiOffset,
+                final byte previous) {
+            this.position = position;
+            this.asciiOffset = asciiOffset;
+            this.previous = previous;
+        }
+
+        /**
+         * Get the position in the file.
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Get the ASCII offset of the position.
+         */
+        public long getAsciiOffset() {
+            return asciiOffset;
+        }
+
+        /**
+         * Get the byte before the position, only meaningful when it is a
+         * <code>\r</code>.
+         */
+        public byte getPrevious() {
+            return previous;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The {@link AsciiOffsetIndex} of recently transferred files, used to find
+ * the position in a file matching the offset of an ASCII restart without
+ * reading the file from its beginning. Entries are keyed by the physical
+ * file and only used while the size and the last modification time of the
+ * file are those of the indexed data. The least recently used entries are
+ * evicted once the cache is full.
+ *
+ * Indexes are built by the first restart of a file and extended during the
+ * ASCII transfers of the file, so that the restart of an interrupted
+ * transfer finds the index already built.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AsciiOffsetIndexCache {
+
+    /**
+     * The default number of files kept in the cache.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    /**
+     * The default number of file bytes between two checkpoints.
+     */
+    public static final long DEFAULT_INTERVAL = 1024 * 1024;
+
+    private final int maxEntries;
+
+    private final long interval;
+
+    private final TransferBufferPool bufferPool;
+
+    private final Map<Object, Entry> entries;
+
+    public AsciiOffsetIndexCache(final TransferBufferPool bufferPool) {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_INTERVAL, bufferPool);
+    }
+
+    /**
+     * @param maxEntries
+     *            The maximum number of files kept in the cache
+     * @param interval
+     *            The number of file bytes between two checkpoints
+     * @param bufferPool
+     *            The pool to take the read buffers of restarts from
+     */
+    public AsciiOffsetIndexCache(final int maxEntries, final long interval,
+            final TransferBufferPool bufferPool) {
+        this.maxEntries = maxEntries;
+        this.interval = interval;
+        this.bufferPool = bufferPool;
+        this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Object, Entry> eldest) {
+                return size() > AsciiOffsetIndexCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the position in a file matching an ASCII offset, that is the first
+     * position where at least this number of bytes has been sent when the
+     * file is sent as ASCII. The file is only read from the last checkpoint
+     * before the offset.
+     *
+     * @param asciiOffset
+     *            The offset of the restart
+     * @throws IOException
+     *             If the file is shorter than the offset
+     */
+    public long getPosition(final FtpFile file, final long asciiOffset)
+            throws IOException {
+        if (asciiOffset <= 0) {
+            return 0;
+        }
+        long size = file.getSize();
+        long lastModified = file.getLastModified();
+        AsciiOffsetIndex index = get(file);
+        if (index == null) {
+            index = new AsciiOffsetIndex(interval);
+        }
+
+        AsciiOffsetIndex.Position from = index.floor(asciiOffset);
+        long position = from.getPosition();
+        long ascii = from.getAsciiOffset();
+        byte previous = from.getPrevious();
+        if (ascii < asciiOffset) {
+            InputStream in = null;
+            ByteBuffer buffer = bufferPool.acquireHeapBuffer();
+            try {
+                in = file.createInputStream(position);
+                byte[] buff = buffer.array();
+                while (ascii < asciiOffset) {
+                    int count = in.read(buff);
+                    if (count == -1) {
+                        throw new IOException("Cannot skip");
+                    }
+                    index.update(position, buff, 0, count);
+                    for (int i = 0; i < count && ascii < asciiOffset; i++) {
+                        byte b = buff[i];
+                        ascii += (b == '\n' && previous != '\r') ? 2 : 1;
+                        previous = b;
+                        position++;
+                    }
+                }
+            } finally {
+                IoUtils.close(in);
+                bufferPool.release(buffer);
+            }
+        }
+        index.setLastSeek(new AsciiOffsetIndex.Position(position, ascii,
+                previous));
+
+        // do not cache the index of a file modified while reading it
+        if (file.getSize() == size && file.getLastModified() == lastModified) {
+            put(file, index);
+        }
+        return position;
+    }
+
+    /**
+     * Open a file for an ASCII download, the data read extending the index of
+     * the file.
+     *
+     * @param position
+     *            The position in the file to start reading at
+     */
+    public InputStream createInputStream(final FtpFile file,
+            final long position) throws IOException {
+        AsciiOffsetIndex index = get(file);
+        if (index == null && position == 0) {
+            index = new AsciiOffsetIndex(interval);
+            put(file, index);
+        }
+        InputStream in = file.createInputStream(position);
+        if (index == null) {
+            return in;
+        }
+        return new IndexingInputStream(in, index, position);
+    }
+
+    /**
+     * Open a file for an ASCII upload, the data written being indexed. The
+     * index is cached again once the stream is closed, if it covers the whole
+     * file.
+     *
+     * @param position
+     *            The position in the file to start writing at
+     */
+    public OutputStream createOutputStream(final FtpFile file,
+            final long position) throws IOException {
+        AsciiOffsetIndex index = get(file);
+        invalidate(file);
+        if (position == 0) {
+            index = new AsciiOffsetIndex(interval);
+        } else if (index != null && !index.truncate(position)) {
+            index = null;
+        }
+        OutputStream out = file.createOutputStream(position);
+        if (index == null) {
+            return out;
+        }
+        return new IndexingOutputStream(out, index, position, file);
+    }
+
+    /**
+     * Get the index of a file.
+     *
+     * @return The index, null if it is not cached or the file has changed
+     *         since it was indexed
+     */
+    public AsciiOffsetIndex get(final FtpFile file) {
+        Object key = file.getPhysicalFile();
+        if (key == null) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null || !entry.isValid(file)) {
+                return null;
+            }
+            return entry.index;
+        }
+    }
+
+    private void put(final FtpFile file, final AsciiOffsetIndex index) {
+        Object key = file.getPhysicalFile();
+        if (key == null || maxEntries <= 0) {
+            return;
+        }
+        Entry entry = new Entry(file.getSize(), file.getLastModified(), index);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Forget the index of a file, before it is modified.
+     */
+    public void invalidate(final FtpFile file) {
+        Object key = file.getPhysicalFile();
+        if (key == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Get the number of files in the cache.
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static class Entry {
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final AsciiOffsetIndex index;
+
+        public Entry(final long size, final long lastModified,
+                final AsciiOffsetIndex index) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.index = index;
+        }
+
+        public boolean isValid(final FtpFile file) {
+            return file.isFile() && size == file.getSize()
+                    && lastModified == file.getLastModified();
+        }
+    }
+
+    private static class IndexingInputStream extends FilterInputStream {
+
+        private final AsciiOffsetIndex index;
+
+        private long position;
+
+        public IndexingInputStream(final InputStream in,
+                final AsciiOffsetIndex index, final long position) {
+            super(in);
+            this.index = index;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+            int count = in.read(b, off, len);
+            if (count > 0) {
+                index.update(position, b, off, count);
+                position += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            long skipped = in.skip(n);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private class IndexingOutputStream extends FilterOutputStream {
+
+        private final AsciiOffsetIndex index;
+
+        private final FtpFile file;
+
+        private long position;
+
+        public IndexingOutputStream(final OutputStream out,
+                final AsciiOffsetIndex index, final long position,
+                final FtpFile file) {
+            super(out);
+            this.index = index;
+            this.position = position;
+            this.file = file;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException {
+            out.write(b, off, len);
+            index.update(position, b, off, len);
+            position += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (index.getLength() == file.getSize()) {
+                put(file, index);
+            }
+        }
+    }
+}
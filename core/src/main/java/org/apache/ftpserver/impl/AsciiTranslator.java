@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Line ending translation of ASCII transfers. Buffers are scanned for line
+ * endings and the runs between them are written with bulk writes. The last
+ * byte of a buffer is kept so that line endings split across buffers are
+ * translated as if the data was in a single buffer.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+class AsciiTranslator {
+
+    private final boolean toNetwork;
+
+    private final byte[] localEol;
+
+    private byte lastByte = 0;
+
+    /**
+     * @param toNetwork
+     *            True to translate local data sent to the client, where bare
+     *            <code>\n</code> are replaced by <code>\r\n</code>. False to
+     *            translate data received from the client, where
+     *            <code>\r\n</code>, <code>\r</code> and bare <code>\n</code>
+     *            are replaced by the local line ending.
+     * @param localEol
+     *            The local line ending
+     */
+    public AsciiTranslator(final boolean toNetwork, final byte[] localEol) {
+        this.toNetwork = toNetwork;
+        this.localEol = localEol;
+    }
+
+    /**
+     * Translate and write a buffer.
+     */
+    public void write(final byte[] buff, final int off, final int len,
+            final OutputStream out) throws IOException {
+        if (len <= 0) {
+            return;
+        }
+        if (toNetwork) {
+            writeToNetwork(buff, off, len, out);
+        } else {
+            writeToLocal(buff, off, len, out);
+        }
+        lastByte = buff[off + len - 1];
+    }
+
+    private void writeToNetwork(final byte[] buff, final int off,
+            final int len, final OutputStream out) throws IOException {
+        int end = off + len;
+        int start = off;
+        byte previous = lastByte;
+        for (int i = off; i < end; i++) {
+            byte b = buff[i];
+            if (b == '\n' && previous != '\r') {
+                // the \n itself starts the next run
+                out.write(buff, start, i - start);
+                out.write('\r');
+                start = i;
+            }
+            previous = b;
+        }
+        out.write(buff, start, end - start);
+    }
+
+    private void writeToLocal(final byte[] buff, final int off,
+            final int len, final OutputStream out) throws IOException {
+        int end = off + len;
+        int start = off;
+        byte previous = lastByte;
+        for (int i = off; i < end; i++) {
+            byte b = buff[i];
+            if (b == '\r' || b == '\n') {
+                out.write(buff, start, i - start);
+
+                // a \n following a \r has already been translated, some
+                // clients send bare \n which must not be dropped
+                if (b == '\r' || previous != '\r') {
+                    out.write(localEol);
+                }
+                start = i + 1;
+            }
+            previous = b;
+        }
+        out.write(buff, start, end - start);
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SelectableChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A data transfer driven by the {@link DataConnectionReactor} as a state
+ * machine rather than by a thread. Each step moves the data that can be
+ * moved without waiting, then either ends the transfer or waits for the
+ * socket channel, the rate limit or a task run elsewhere. No thread is held
+ * while waiting, the steps running on the transfer threads of the reactor.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+abstract class AsyncTransfer implements Runnable {
+
+    /**
+     * Returned by {@link #transferSome()} once a wait has been started.
+     */
+    protected static final long WAITING = -1;
+
+    /**
+     * Returned by {@link #transferSome()} at the end of the data.
+     */
+    protected static final long END = -2;
+
+    /**
+     * The maximum number of bytes moved before the transfer thread is handed
+     * to the other transfers.
+     */
+    private static final long STEP_SIZE = 1024 * 1024;
+
+    private final DataConnectionReactor reactor;
+
+    private final SelectableChannel channel;
+
+    private final long timeout;
+
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+
+    private volatile CompletableFuture<Void> waiting;
+
+    private Throwable waitFailure;
+
+    /**
+     * @param reactor
+     *            The reactor to wait for the channel with and to run the
+     *            steps on
+     * @param channel
+     *            The non-blocking socket channel
+     * @param timeout
+     *            The maximum time in milliseconds to wait for the channel, 0
+     *            means wait forever
+     */
+    protected AsyncTransfer(final DataConnectionReactor reactor,
+            final SelectableChannel channel, final long timeout) {
+        this.reactor = reactor;
+        this.channel = channel;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Start the transfer on a transfer thread.
+     *
+     * @return Completed with the number of bytes transferred, or with the
+     *         {@link IOException} the transfer failed with
+     */
+    public CompletableFuture<Long> start() {
+        resume();
+        return completion;
+    }
+
+    /**
+     * Stop waiting for the channel, the transfer then fails with an
+     * {@link AsynchronousCloseException}.
+     */
+    public void abortWait() {
+        CompletableFuture<Void> ready = waiting;
+        if (ready != null) {
+            ready.completeExceptionally(new AsynchronousCloseException());
+        }
+    }
+
+    /**
+     * Run the next step of the transfer.
+     */
+    public final void run() {
+        waiting = null;
+        Throwable failure = waitFailure;
+        waitFailure = null;
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            long budget = STEP_SIZE;
+            while (true) {
+                long count = transferSome();
+                if (count == WAITING) {
+                    return;
+                }
+                if (count == END) {
+                    long size = finish();
+                    release();
+                    completion.complete(size);
+                    return;
+                }
+                budget -= count;
+                if (budget <= 0) {
+                    resume();
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            Throwable reported = e;
+            try {
+                reported = failed(e);
+            } finally {
+                release();
+                if (!(reported instanceof IOException)) {
+                    reported = new IOException(reported);
+                }
+                completion.completeExceptionally(reported);
+            }
+        }
+    }
+
+    /**
+     * Move the data that can be moved without waiting. Once the data can not
+     * move on, call {@link #awaitChannel(int)}, {@link #await(CompletableFuture)}
+     * or {@link #awaitDelay(long)} and return {@link #WAITING}.
+     *
+     * @return The number of bytes moved, {@link #WAITING} or {@link #END}
+     */
+    protected abstract long transferSome() throws IOException;
+
+    /**
+     * Complete the transfer once all the data is moved.
+     *
+     * @return The number of bytes transferred
+     */
+    protected abstract long finish() throws IOException;
+
+    /**
+     * Handle the failure of the transfer.
+     *
+     * @return The failure to complete the transfer with
+     */
+    protected abstract Throwable failed(Throwable e);
+
+    /**
+     * Release the resources of the transfer, called once at its end whether
+     * it succeeded or failed.
+     */
+    protected abstract void release();
+
+    /**
+     * Continue once the channel is ready for one of the given operations.
+     */
+    protected void awaitChannel(final int ops) {
+        await(reactor.whenReady(channel, ops, timeout));
+    }
+
+    /**
+     * Continue once the future completes, the transfer failing with the
+     * failure of the future. Aborting the wait completes the future.
+     */
+    protected void await(final CompletableFuture<Void> ready) {
+        waiting = ready;
+        ready.whenComplete((result, e) -> {
+            waitFailure = e;
+            resume();
+        });
+    }
+
+    /**
+     * Continue once the delay has elapsed, waiting for the rate limit.
+     *
+     * @param delay
+     *            The delay in nanoseconds
+     */
+    protected void awaitDelay(final long delay) {
+        try {
+            reactor.schedule(this, delay);
+        } catch (RejectedExecutionException e) {
+            stopped();
+        }
+    }
+
+    private void resume() {
+        try {
+            reactor.execute(this);
+        } catch (RejectedExecutionException e) {
+            stopped();
+        }
+    }
+
+    /**
+     * Fail the transfer right away, the reactor being disposed.
+     */
+    private void stopped() {
+        waitFailure = new AsynchronousCloseException();
+        run();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Non-blocking readable channel over a data socket. Reads only return the data
+ * already available, callers should call {@link #awaitReadable()} before
+ * reading to wait for more data.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+interface AwaitableReadableChannel extends ReadableByteChannel {
+
+    /**
+     * Wait until data, or the end of the stream, is available to read.
+     * 
+     * @throws SocketTimeoutException
+     *             If nothing became available within the timeout
+     */
+    void awaitReadable() throws IOException;
+
+    /**
+     * Has the end of the stream been reached?
+     */
+    boolean isEndOfStream();
+}
@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.ftpserver.ConnectionConfig;
+import org.apache.ftpserver.DataConnectionConfiguration;
+import org.apache.ftpserver.listener.Listener;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Builds the hierarchy of transfer rate limits for data transfers: the server
+ * wide limit from the {@link ConnectionConfig}, the limit of the listener the
+ * session is connected to, the limit shared by all sessions of a user if
+ * enabled for the listener, and finally the limit of the session itself.
+ *
+ * Levels without a limit are left out, and no limiter is created at all if the
+ * transfer is not limited at any level. The shared levels of the listeners and
+ * users are dropped once their last transfer has ended, and created again with
+ * the current rate by the next transfer. The user level is shared per
+ * listener, each listener enforcing its own limit.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BandwidthShaper {
+
+    /**
+     * Refill interval in milliseconds for the server wide limits, which have
+     * no listener configuration of their own.
+     */
+    private static final long GLOBAL_REFILL_INTERVAL = 10;
+
+    private final Direction download;
+
+    private final Direction upload;
+
+    /**
+     * @param connectionConfig
+     *            The connection configuration holding the server wide limits
+     */
+    public BandwidthShaper(final ConnectionConfig connectionConfig) {
+        download = new Direction(connectionConfig.getMaxDownloadRate());
+        upload = new Direction(connectionConfig.getMaxUploadRate());
+    }
+
+    /**
+     * Open a limiter for a transfer to the client. The limiter must be closed
+     * with {@link #closeLimiter(TransferRateLimiter)} when the transfer ends.
+     *
+     * @param session
+     *            The session doing the transfer
+     * @param sessionRate
+     *            The maximum download rate of the user, 0 if unlimited
+     * @return The limiter, null if the transfer is not limited
+     */
+    public TransferRateLimiter openDownloadLimiter(final FtpIoSession session,
+            final int sessionRate) {
+        DataConnectionConfiguration dataCfg = getDataConnectionConfiguration(session);
+        return openLimiter(download, session, dataCfg,
+                dataCfg != null ? dataCfg.getMaxDownloadRate() : 0,
+                sessionRate);
+    }
+
+    /**
+     * Open a limiter for a transfer from the client. The limiter must be
+     * closed with {@link #closeLimiter(TransferRateLimiter)} when the transfer
+     * ends.
+     *
+     * @param session
+     *            The session doing the transfer
+     * @param sessionRate
+     *            The maximum upload rate of the user, 0 if unlimited
+     * @return The limiter, null if the transfer is not limited
+     */
+    public TransferRateLimiter openUploadLimiter(final FtpIoSession session,
+            final int sessionRate) {
+        DataConnectionConfiguration dataCfg = getDataConnectionConfiguration(session);
+        return openLimiter(upload, session, dataCfg,
+                dataCfg != null ? dataCfg.getMaxUploadRate() : 0, sessionRate);
+    }
+
+    /**
+     * Close a limiter opened by this shaper, dropping the shared listener and
+     * user levels once their last transfer has ended.
+     *
+     * @param limiter
+     *            The limiter, may be null
+     */
+    public synchronized void closeLimiter(final TransferRateLimiter limiter) {
+        if (limiter == null) {
+            return;
+        }
+        limiter.close();
+        for (TransferRateLimiter level = limiter; level != null; level = level
+                .getParent()) {
+            if (level instanceof SharedRateLimiter
+                    && level.getActiveTransfers() == 0) {
+                ((SharedRateLimiter<?>) level).remove();
+            }
+        }
+    }
+
+    /**
+     * Get the number of users currently having a shared limit, for testing.
+     */
+    synchronized int getUserLimiterCount() {
+        return download.users.size() + upload.users.size();
+    }
+
+    /**
+     * Get the number of listeners currently having a limit, for testing.
+     */
+    synchronized int getListenerLimiterCount() {
+        return download.listeners.size() + upload.listeners.size();
+    }
+
+    private synchronized TransferRateLimiter openLimiter(
+            final Direction direction, final FtpIoSession session,
+            final DataConnectionConfiguration dataCfg, final int listenerRate,
+            final int sessionRate) {
+        TransferRateLimiter parent = direction.global;
+
+        Listener listener = session.getListener();
+        if (listener != null && listenerRate > 0) {
+            parent = getSharedLimiter(direction.listeners, listener, parent,
+                    listenerRate, dataCfg, 0);
+        }
+
+        TokenBucket sessionBucket = null;
+        if (sessionRate > 0) {
+            if (dataCfg != null && dataCfg.isUserTransferRateShared()
+                    && session.getUser() != null) {
+                parent = getSharedLimiter(direction.users, new UserKey(
+                        listener, session.getUser().getName()), parent,
+                        sessionRate, dataCfg, dataCfg.getTransferRateBurstSize());
+            }
+            sessionBucket = createBucket(sessionRate, dataCfg);
+        }
+
+        if (parent == null && sessionBucket == null) {
+            return null;
+        }
+
+        TransferRateLimiter limiter = new TransferRateLimiter(parent,
+                sessionBucket);
+        limiter.open();
+        return limiter;
+    }
+
+    /**
+     * Get the shared level of a listener or user, creating it if there is
+     * none or if its rate has changed. Transfers still using a replaced level
+     * keep it until they end.
+     */
+    private static <K> TransferRateLimiter getSharedLimiter(
+            final Map<K, SharedRateLimiter<K>> limiters, final K key,
+            final TransferRateLimiter parent, final int rate,
+            final DataConnectionConfiguration dataCfg, final long burstSize) {
+        SharedRateLimiter<K> limiter = limiters.get(key);
+        if (limiter == null || limiter.rate != rate
+                || limiter.getParent() != parent) {
+            limiter = new SharedRateLimiter<>(parent, createBucket(rate,
+                    burstSize, dataCfg.getTransferRateRefillInterval()), rate,
+                    limiters, key);
+            limiters.put(key, limiter);
+        }
+        return limiter;
+    }
+
+    private DataConnectionConfiguration getDataConnectionConfiguration(
+            final FtpIoSession session) {
+        Listener listener = session.getListener();
+        if (listener == null) {
+            return null;
+        }
+        return listener.getDataConnectionConfiguration();
+    }
+
+    private static TokenBucket createBucket(final int rate,
+            final DataConnectionConfiguration dataCfg) {
+        // a session of a listener without configuration
+        if (dataCfg == null) {
+            return createBucket(rate, 0, GLOBAL_REFILL_INTERVAL);
+        }
+        return createBucket(rate, dataCfg.getTransferRateBurstSize(), dataCfg
+                .getTransferRateRefillInterval());
+    }
+
+    private static TokenBucket createBucket(final int rate, long burstSize,
+            final long refillInterval) {
+        if (burstSize <= 0) {
+            burstSize = Math.max(1, rate / 10);
+        }
+        return new TokenBucket(rate, burstSize, refillInterval);
+    }
+
+    /**
+     * The limiters for one transfer direction.
+     */
+    private static class Direction {
+
+        private final TransferRateLimiter global;
+
+        private final Map<Listener, SharedRateLimiter<Listener>> listeners = new IdentityHashMap<>();
+
+        private final Map<UserKey, SharedRateLimiter<UserKey>> users = new HashMap<>();
+
+        public Direction(final int globalRate) {
+            if (globalRate > 0) {
+                global = new TransferRateLimiter(null, createBucket(
+                        globalRate, 0, GLOBAL_REFILL_INTERVAL));
+            } else {
+                global = null;
+            }
+        }
+    }
+
+    /**
+     * The key of the level shared by the transfers of a user through a
+     * listener.
+     */
+    private static final class UserKey {
+
+        private final Listener listener;
+
+        private final String userName;
+
+        public UserKey(final Listener listener, final String userName) {
+            this.listener = listener;
+            this.userName = userName;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof UserKey)) {
+                return false;
+            }
+            UserKey other = (UserKey) obj;
+            return listener == other.listener
+                    && (userName == null ? other.userName == null : userName
+                            .equals(other.userName));
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(listener) * 31
+                    + (userName == null ? 0 : userName.hashCode());
+        }
+    }
+
+    /**
+     * A level shared by all transfers of a listener or user, removed from the
+     * shaper when no longer used.
+     */
+    private static class SharedRateLimiter<K> extends TransferRateLimiter {
+
+        private final int rate;
+
+        private final Map<K, SharedRateLimiter<K>> limiters;
+
+        private final K key;
+
+        public SharedRateLimiter(final TransferRateLimiter parent,
+                final TokenBucket bucket, final int rate,
+                final Map<K, SharedRateLimiter<K>> limiters, final K key) {
+            super(parent, bucket);
+            this.rate = rate;
+            this.limiters = limiters;
+            this.key = key;
+        }
+
+        public void remove() {
+            if (limiters.get(key) == this) {
+                limiters.remove(key);
+            }
+        }
+    }
+}
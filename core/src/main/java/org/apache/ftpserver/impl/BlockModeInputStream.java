@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Stream receiving data sent in the block mode of RFC 959. The stream ends
+ * after the block with the end of file descriptor, the underlying stream
+ * being left open for the next transfers. Record boundaries are ignored,
+ * files being transferred with the file structure, and restart markers are
+ * skipped.
+ *
+ * A client closing the data connection instead of sending the end of file
+ * descriptor also ends the stream, {@link #isEndOfFile()} telling both
+ * cases apart.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BlockModeInputStream extends FilterInputStream {
+
+    private final byte[] header = new byte[3];
+
+    private int remaining = 0;
+
+    private boolean lastBlock = false;
+
+    private boolean endOfFile = false;
+
+    private boolean endOfStream = false;
+
+    public BlockModeInputStream(final InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int count = read(b, 0, 1);
+        return count == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (remaining == 0) {
+            if (lastBlock) {
+                endOfFile = true;
+                return -1;
+            }
+            if (endOfStream || !readHeader()) {
+                return -1;
+            }
+        }
+        int count = in.read(b, off, Math.min(len, remaining));
+        if (count == -1) {
+            throw new EOFException("Data connection closed within a block");
+        }
+        remaining -= count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return Math.min(remaining, in.available());
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int count = read(buffer, 0, (int) Math.min(buffer.length, n
+                    - skipped));
+            if (count == -1) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    /**
+     * Returns whether the block with the end of file descriptor has been
+     * read, the underlying stream being then ready for the next transfer.
+     */
+    public boolean isEndOfFile() {
+        return endOfFile;
+    }
+
+    /**
+     * The underlying stream is left open.
+     */
+    @Override
+    public void close() {
+        // the data connection is closed by its owner
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Read the header of the next block, skipping restart markers.
+     *
+     * @return false if the underlying stream ended before the header
+     */
+    private boolean readHeader() throws IOException {
+        int position = 0;
+        while (position < header.length) {
+            int count = in.read(header, position, header.length - position);
+            if (count == -1) {
+                if (position == 0) {
+                    endOfStream = true;
+                    return false;
+                }
+                throw new EOFException(
+                        "Data connection closed within a block header");
+            }
+            position += count;
+        }
+        int descriptor = header[0] & 0xFF;
+        int count = ((header[1] & 0xFF) << 8) | (header[2] & 0xFF);
+        if ((descriptor & BlockModeOutputStream.DESCRIPTOR_RESTART_MARKER) != 0) {
+            skipFully(count);
+            count = 0;
+        }
+        remaining = count;
+        lastBlock = (descriptor & BlockModeOutputStream.DESCRIPTOR_EOF) != 0;
+        return true;
+    }
+
+    private void skipFully(int count) throws IOException {
+        byte[] buffer = new byte[count];
+        int position = 0;
+        while (position < count) {
+            int read = in.read(buffer, position, count - position);
+            if (read == -1) {
+                throw new EOFException(
+                        "Data connection closed within a restart marker");
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Stream sending data in the block mode of RFC 959. Each block starts with
+ * a descriptor byte and a two bytes count, the last block of the file has
+ * the end of file descriptor. The data connection is not closed at the end
+ * of the file, so that it can carry the next transfers.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class BlockModeOutputStream extends FilterOutputStream {
+
+    /**
+     * Descriptor of the last block of a record.
+     */
+    public static final int DESCRIPTOR_EOR = 0x80;
+
+    /**
+     * Descriptor of the last block of a file.
+     */
+    public static final int DESCRIPTOR_EOF = 0x40;
+
+    /**
+     * Descriptor of a block whose data may be in error.
+     */
+    public static final int DESCRIPTOR_ERRORS = 0x20;
+
+    /**
+     * Descriptor of a block holding a restart marker.
+     */
+    public static final int DESCRIPTOR_RESTART_MARKER = 0x10;
+
+    /**
+     * The maximum number of data bytes of a block.
+     */
+    public static final int MAX_BLOCK_SIZE = 0xFFFF;
+
+    private static final int HEADER_SIZE = 3;
+
+    private final byte[] block = new byte[HEADER_SIZE + MAX_BLOCK_SIZE];
+
+    private int count = 0;
+
+    private boolean finished = false;
+
+    public BlockModeOutputStream(final OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("End of file already sent");
+        }
+        while (len > 0) {
+            int length = Math.min(len, MAX_BLOCK_SIZE - count);
+            System.arraycopy(b, off, block, HEADER_SIZE + count, length);
+            count += length;
+            off += length;
+            len -= length;
+            if (count == MAX_BLOCK_SIZE) {
+                writeBlock(0);
+            }
+        }
+    }
+
+    /**
+     * Send the buffered data as a block.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0 && !finished) {
+            writeBlock(0);
+        }
+        out.flush();
+    }
+
+    /**
+     * Send the buffered data in a block marked as the end of the file. The
+     * underlying stream is left open.
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            writeBlock(DESCRIPTOR_EOF);
+            finished = true;
+            out.flush();
+        }
+    }
+
+    /**
+     * Finish the file, the underlying stream is left open.
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    private void writeBlock(final int descriptor) throws IOException {
+        block[0] = (byte) descriptor;
+        block[1] = (byte) (count >>> 8);
+        block[2] = (byte) count;
+        out.write(block, 0, HEADER_SIZE + count);
+        count = 0;
+    }
+}
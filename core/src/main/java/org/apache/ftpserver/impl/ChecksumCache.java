@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ftpserver.ConnectionConfig;
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.DataType;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.util.IoUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * The checksums of recently uploaded or checked files, kept in memory so that
+ * checksum commands sent after an upload do not read the file again. Entries
+ * are keyed by the physical file and only used while the size and the last
+ * modification time of the file are those seen when the checksums were
+ * computed. The least recently used entries are evicted once the cache is
+ * full.
+ *
+ * Uploads compute the checksums of the algorithms configured with
+ * {@link ConnectionConfig#getInlineChecksums()} while the data is received,
+ * see {@link #startUpload(FtpIoSession, FtpFile, DataConnection, long)}.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ChecksumCache {
+
+    private final Logger LOG = LoggerFactory.getLogger(ChecksumCache.class);
+
+    private final int maxEntries;
+
+    private final String[] inlineAlgorithms;
+
+    private final Map<Object, Entry> entries;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    public ChecksumCache(final ConnectionConfig connectionConfig) {
+        this(connectionConfig.getChecksumCacheSize(), connectionConfig
+                .getInlineChecksums());
+    }
+
+    /**
+     * @param maxEntries
+     *            The maximum number of files kept in the cache, 0 disables
+     *            caching
+     * @param inlineAlgorithms
+     *            The algorithms computed during uploads, empty to disable
+     *            inline computation
+     */
+    public ChecksumCache(final int maxEntries, final String[] inlineAlgorithms) {
+        this.maxEntries = maxEntries;
+        this.inlineAlgorithms = normalize(inlineAlgorithms);
+        this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<Object, Entry> eldest) {
+                return size() > ChecksumCache.this.maxEntries;
+            }
+        };
+    }
+
+    private String[] normalize(final String[] algorithms) {
+        if (algorithms == null) {
+            return new String[0];
+        }
+        String[] names = new String[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++) {
+            names[i] = ChecksumCalculator.normalize(algorithms[i]);
+            if (names[i] == null) {
+                throw new IllegalArgumentException(
+                        "Unsupported checksum algorithm: " + algorithms[i]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Create a calculator for the checksums computed during uploads.
+     *
+     * @return The calculator, null if no checksums are computed during
+     *         uploads or they could not be cached
+     */
+    public ChecksumCalculator createInlineCalculator() {
+        if (inlineAlgorithms.length == 0 || maxEntries <= 0) {
+            return null;
+        }
+        try {
+            return new ChecksumCalculator(inlineAlgorithms);
+        } catch (NoSuchAlgorithmException e) {
+            LOG.warn("Checksum algorithm not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * Prepare the upload of a file. The checksums cached for the file are
+     * dropped, and if the whole content of the file is uploaded in binary
+     * mode, the data connection is set up to compute the inline checksums.
+     *
+     * @param offset
+     *            The position in the file where the upload starts
+     * @return The calculator to pass to {@link #uploaded(FtpFile,
+     *         ChecksumCalculator)}, null if no checksums are computed
+     */
+    public ChecksumCalculator startUpload(final FtpIoSession session,
+            final FtpFile file, final DataConnection dataConnection,
+            final long offset) {
+        invalidate(file);
+        if (offset != 0 || session.getDataType() != DataType.BINARY
+                || !(dataConnection instanceof IODataConnection)
+                || file.getPhysicalFile() == null) {
+            return null;
+        }
+        ChecksumCalculator calculator = createInlineCalculator();
+        ((IODataConnection) dataConnection).setChecksumCalculator(calculator);
+        return calculator;
+    }
+
+    /**
+     * Cache the checksums computed during an upload, once the file has been
+     * closed.
+     *
+     * @param calculator
+     *            The calculator returned by
+     *            {@link #startUpload(FtpIoSession, FtpFile, DataConnection, long)}
+     */
+    public void uploaded(final FtpFile file,
+            final ChecksumCalculator calculator) {
+        if (calculator != null && calculator.getLength() == file.getSize()) {
+            put(file, calculator.getChecksums());
+        }
+    }
+
+    /**
+     * Store the checksums of the whole content of a file, as it is now.
+     */
+    public void put(final FtpFile file, final Map<String, String> checksums) {
+        Object key = file.getPhysicalFile();
+        if (key == null || maxEntries <= 0) {
+            return;
+        }
+        Entry entry = new Entry(file.getSize(), file.getLastModified(),
+                checksums);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Add a checksum of the whole content of a file, as it is now, to those
+     * already cached for it.
+     *
+     * @param algorithm
+     *            The algorithm, as named by {@link ChecksumCalculator}
+     */
+    public void add(final FtpFile file, final String algorithm,
+            final String checksum) {
+        Map<String, String> checksums = new HashMap<>();
+        checksums.put(algorithm, checksum);
+        merge(file, checksums);
+    }
+
+    /**
+     * Get a cached checksum of a file.
+     *
+     * @param algorithm
+     *            The algorithm, as named by {@link ChecksumCalculator}
+     * @return The checksum, null if it is not cached or the file has changed
+     *         since it was computed
+     */
+    public String get(final FtpFile file, final String algorithm) {
+        Object key = file.getPhysicalFile();
+        if (key == null) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null || !entry.isValid(file)) {
+                misses++;
+                return null;
+            }
+            String checksum = entry.checksums.get(algorithm);
+            if (checksum == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return checksum;
+        }
+    }
+
+    /**
+     * Forget the checksums of a file, before it is modified.
+     */
+    public void invalidate(final FtpFile file) {
+        Object key = file.getPhysicalFile();
+        if (key == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Get the checksum of a file from the cache, or compute it by reading the
+     * file if it is not cached. A computed checksum is cached, along with
+     * those of the inline algorithms computed in the same pass.
+     *
+     * @param algorithm
+     *            The algorithm, as named by {@link ChecksumCalculator}
+     * @param bufferPool
+     *            The pool to take the read buffer from
+     */
+    public String getChecksum(final FtpFile file, final String algorithm,
+            final TransferBufferPool bufferPool) throws IOException,
+            NoSuchAlgorithmException {
+        String checksum = get(file, algorithm);
+        if (checksum != null) {
+            return checksum;
+        }
+
+        String[] algorithms = new String[inlineAlgorithms.length + 1];
+        algorithms[0] = algorithm;
+        System.arraycopy(inlineAlgorithms, 0, algorithms, 1,
+                inlineAlgorithms.length);
+        ChecksumCalculator calculator = new ChecksumCalculator(algorithms);
+
+        long size = file.getSize();
+        long lastModified = file.getLastModified();
+        InputStream is = null;
+        ByteBuffer buffer = bufferPool.acquireHeapBuffer();
+        try {
+            is = file.createInputStream(0);
+            byte[] buff = buffer.array();
+            int read;
+            while ((read = is.read(buff)) > -1) {
+                calculator.update(buff, 0, read);
+            }
+        } finally {
+            IoUtils.close(is);
+            bufferPool.release(buffer);
+        }
+        Map<String, String> checksums = calculator.getChecksums();
+
+        // do not cache the checksums of a file modified while reading it
+        if (calculator.getLength() == size && file.getSize() == size
+                && file.getLastModified() == lastModified) {
+            merge(file, checksums);
+        }
+        return checksums.get(algorithm);
+    }
+
+    private void merge(final FtpFile file, final Map<String, String> checksums) {
+        Object key = file.getPhysicalFile();
+        if (key == null || maxEntries <= 0) {
+            return;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isValid(file)) {
+                Map<String, String> merged = new HashMap<>(entry.checksums);
+                merged.putAll(checksums);
+                checksums.putAll(merged);
+            }
+            entries.put(key, new Entry(file.getSize(), file
+                    .getLastModified(), checksums));
+        }
+    }
+
+    /**
+     * Get the number of files in the cache.
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Get the number of checksums answered from the cache.
+     */
+    public long getHits() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    /**
+     * Get the number of checksums not found in the cache.
+     */
+    public long getMisses() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    private static class Entry {
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final Map<String, String> checksums;
+
+        public Entry(final long size, final long lastModified,
+                final Map<String, String> checksums) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksums = checksums;
+        }
+
+        public boolean isValid(final FtpFile file) {
+            return file.isFile() && size == file.getSize()
+                    && lastModified == file.getLastModified();
+        }
+    }
+}
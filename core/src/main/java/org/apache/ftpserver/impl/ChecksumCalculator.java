@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Computes the checksums of a file for one or more algorithms in a single
+ * pass over its content. Supported algorithms are MD5, SHA-1, SHA-256,
+ * SHA-512 and CRC32. Checksums are returned as upper case hexadecimal
+ * strings, CRC32 as eight digits.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ChecksumCalculator {
+
+    public static final String MD5 = "MD5";
+
+    public static final String SHA1 = "SHA-1";
+
+    public static final String SHA256 = "SHA-256";
+
+    public static final String SHA512 = "SHA-512";
+
+    public static final String CRC32 = "CRC32";
+
+    private static final char[] DIGITS = { '0', '1', '2', '3', '4', '5', '6',
+            '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+    private final Map<String, MessageDigest> digests = new LinkedHashMap<>();
+
+    private CRC32 crc = null;
+
+    private long length = 0;
+
+    /**
+     * @param algorithms
+     *            The algorithms to compute
+     * @throws NoSuchAlgorithmException
+     *             If one of the algorithms is not supported
+     */
+    public ChecksumCalculator(final String... algorithms)
+            throws NoSuchAlgorithmException {
+        for (String algorithm : algorithms) {
+            String name = normalize(algorithm);
+            if (name == null) {
+                throw new NoSuchAlgorithmException("Unsupported checksum algorithm: "
+                        + algorithm);
+            }
+            if (CRC32.equals(name)) {
+                crc = new CRC32();
+            } else if (!digests.containsKey(name)) {
+                digests.put(name, MessageDigest.getInstance(name));
+            }
+        }
+    }
+
+    /**
+     * Get the name used by this class for a checksum algorithm, accepting
+     * the names with or without a dash and in any case, for example "sha256".
+     *
+     * @return The algorithm name, null if the algorithm is not supported
+     */
+    public static String normalize(final String algorithm) {
+        if (algorithm == null) {
+            return null;
+        }
+        String name = algorithm.trim().toUpperCase(Locale.ENGLISH).replace(
+                "-", "");
+        if ("MD5".equals(name)) {
+            return MD5;
+        } else if ("SHA1".equals(name)) {
+            return SHA1;
+        } else if ("SHA256".equals(name)) {
+            return SHA256;
+        } else if ("SHA512".equals(name)) {
+            return SHA512;
+        } else if ("CRC32".equals(name) || "CRC".equals(name)) {
+            return CRC32;
+        }
+        return null;
+    }
+
+    public void update(final byte[] data, final int offset, final int len) {
+        for (MessageDigest digest : digests.values()) {
+            digest.update(data, offset, len);
+        }
+        if (crc != null) {
+            crc.update(data, offset, len);
+        }
+        length += len;
+    }
+
+    /**
+     * Update the checksums with the remaining bytes of the buffer. The
+     * position of the buffer is left unchanged.
+     */
+    public void update(final ByteBuffer buffer) {
+        for (MessageDigest digest : digests.values()) {
+            digest.update(buffer.duplicate());
+        }
+        if (crc != null) {
+            crc.update(buffer.duplicate());
+        }
+        length += buffer.remaining();
+    }
+
+    /**
+     * Get the number of bytes passed to this calculator.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Finish the computation.
+     *
+     * @return The checksums by algorithm name
+     */
+    public Map<String, String> getChecksums() {
+        Map<String, String> checksums = new LinkedHashMap<>();
+        for (Map.Entry<String, MessageDigest> entry : digests.entrySet()) {
+            checksums.put(entry.getKey(), encodeHex(entry.getValue().digest()));
+        }
+        if (crc != null) {
+            checksums.put(CRC32, encodeCrc32(crc.getValue()));
+        }
+        return checksums;
+    }
+
+    /**
+     * Format a CRC32 value as eight upper case hexadecimal digits.
+     */
+    public static String encodeCrc32(final long value) {
+        String hex = Long.toHexString(value).toUpperCase(Locale.ENGLISH);
+        return "00000000".substring(hex.length()) + hex;
+    }
+
+    /**
+     * Get the CRC32 of two consecutive blocks of data from the CRC32 of each
+     * block, as crc32_combine() of zlib. This allows to compute the CRC32 of
+     * the parts of a file in parallel.
+     *
+     * @param crc1
+     *            The CRC32 of the first block
+     * @param crc2
+     *            The CRC32 of the second block
+     * @param length2
+     *            The length of the second block
+     * @return The CRC32 of the first block followed by the second block
+     */
+    public static long combineCrc32(long crc1, final long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+
+        // operator for one zero bit in odd, then two and four zero bits
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        odd[0] = 0xEDB88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+
+        // apply length2 zero bytes to crc1, squaring the operator for each
+        // bit of the length
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(final long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(final long[] square,
+            final long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+
+    private static String encodeHex(final byte[] data) {
+        char[] out = new char[data.length << 1];
+        for (int i = 0, j = 0; i < data.length; i++) {
+            out[j++] = DIGITS[(0xF0 & data[i]) >>> 4];
+            out[j++] = DIGITS[0x0F & data[i]];
+        }
+        return new String(out);
+    }
+}
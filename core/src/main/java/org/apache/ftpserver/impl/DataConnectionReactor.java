@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * A single selector thread shared by all non-blocking data connections of a
+ * server. Data connections register interest in a channel becoming ready and
+ * get a future completed by the selector thread once it is, so that no
+ * thread is needed per data connection to watch its socket. The futures fail
+ * if the channel is closed or does not become ready in time.
+ *
+ * The reactor also runs a few transfer threads, on which the asynchronous
+ * transfers continue once their channel is ready. A transfer waiting for its
+ * channel or for its rate limit holds no thread at all.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class DataConnectionReactor {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(DataConnectionReactor.class);
+
+    /**
+     * How often the selector thread checks that the channels waited for have
+     * not been closed, as closing a channel does not wake up the selector.
+     */
+    private static final long CLOSE_CHECK_INTERVAL = 500;
+
+    private final Selector selector;
+
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+
+    // the registrations waited for, only used by the selector thread
+    private final Set<SelectionKey> waitingKeys = new HashSet<>();
+
+    private final Thread thread;
+
+    private final ScheduledThreadPoolExecutor transferExecutor;
+
+    private volatile boolean running = true;
+
+    /**
+     * Open the selector and start the selector thread, with one transfer
+     * thread per processor.
+     */
+    public DataConnectionReactor() throws IOException {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Open the selector and start the selector thread.
+     *
+     * @param transferThreads
+     *            The number of threads running the asynchronous transfers
+     */
+    public DataConnectionReactor(final int transferThreads) throws IOException {
+        selector = Selector.open();
+        transferExecutor = new ScheduledThreadPoolExecutor(transferThreads,
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r,
+                                "FtpServer data transfer "
+                                        + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        transferExecutor.setRemoveOnCancelPolicy(true);
+        thread = new Thread(new Runnable() {
+            public void run() {
+                runSelector();
+            }
+        }, "FtpServer data connection reactor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The future of a registration, failing once its deadline has passed.
+     */
+    private static final class Waiter extends CompletableFuture<Void> {
+
+        // 0 to wait forever
+        private final long deadline;
+
+        Waiter(final long deadline) {
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Get notified when a channel becomes ready for one of the given
+     * operations. The channel must be in non-blocking mode.
+     *
+     * @param channel
+     *            The channel to watch
+     * @param ops
+     *            The operations of interest, see {@link SelectionKey}
+     * @return A future completed once the channel is ready
+     */
+    public CompletableFuture<Void> whenReady(final SelectableChannel channel,
+            final int ops) {
+        return whenReady(channel, ops, 0);
+    }
+
+    /**
+     * Get notified when a channel becomes ready for one of the given
+     * operations. The channel must be in non-blocking mode.
+     *
+     * @param channel
+     *            The channel to watch
+     * @param ops
+     *            The operations of interest, see {@link SelectionKey}
+     * @param timeout
+     *            The maximum time to wait in milliseconds, 0 to wait forever
+     * @return A future completed once the channel is ready, failing with a
+     *         {@link SocketTimeoutException} if the channel did not become
+     *         ready within the timeout and with an
+     *         {@link AsynchronousCloseException} if the channel is closed
+     */
+    public CompletableFuture<Void> whenReady(final SelectableChannel channel,
+            final int ops, final long timeout) {
+        final Waiter waiter = new Waiter(timeout > 0 ? System
+                .currentTimeMillis()
+                + timeout : 0);
+        if (!running) {
+            waiter.completeExceptionally(new AsynchronousCloseException());
+            return waiter;
+        }
+        pendingTasks.add(new Runnable() {
+            public void run() {
+                try {
+                    SelectionKey key = channel.keyFor(selector);
+                    if (key == null || !key.isValid()) {
+                        key = channel.register(selector, ops, waiter);
+                    } else {
+                        key.attach(waiter);
+                        key.interestOps(ops);
+                    }
+                    waitingKeys.add(key);
+                } catch (Exception e) {
+                    waiter.completeExceptionally(e);
+                }
+            }
+        });
+        selector.wakeup();
+        return waiter;
+    }
+
+    /**
+     * Wait until a channel becomes ready for one of the given operations.
+     *
+     * @param channel
+     *            The channel to wait for
+     * @param ops
+     *            The operations of interest, see {@link SelectionKey}
+     * @param timeout
+     *            The maximum time to wait in milliseconds, 0 to wait forever
+     * @throws SocketTimeoutException
+     *             If the channel did not become ready within the timeout
+     * @throws AsynchronousCloseException
+     *             If the channel was closed while waiting
+     * @throws InterruptedIOException
+     *             If the thread was interrupted while waiting
+     */
+    public void await(final SelectableChannel channel, final int ops,
+            final long timeout) throws IOException {
+        CompletableFuture<Void> future = whenReady(channel, ops, timeout);
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Wait for data connection interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Run a step of an asynchronous transfer on a transfer thread.
+     */
+    public void execute(final Runnable task) {
+        transferExecutor.execute(task);
+    }
+
+    /**
+     * Run a step of an asynchronous transfer on a transfer thread once the
+     * delay has elapsed.
+     *
+     * @param delay
+     *            The delay in nanoseconds
+     */
+    public void schedule(final Runnable task, final long delay) {
+        transferExecutor.schedule(task, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop the selector thread and the transfer threads, failing all pending
+     * waits.
+     */
+    public void dispose() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        transferExecutor.shutdown();
+    }
+
+    private void runSelector() {
+        try {
+            while (running) {
+                runPendingTasks();
+                selector.select(getSelectTimeout());
+
+                Iterator<SelectionKey> keys = selector.selectedKeys()
+                        .iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    // one notification per registration, the channel is
+                    // registered again for the next wait
+                    Waiter waiter = detach(key);
+                    if (waiter != null) {
+                        waiter.complete(null);
+                    }
+                }
+
+                failClosedAndExpired();
+            }
+        } catch (ClosedSelectorException e) {
+            // shutting down
+        } catch (Exception e) {
+            LOG.error("Data connection reactor failed", e);
+        } finally {
+            running = false;
+            close();
+        }
+    }
+
+    /**
+     * Get the time until the next check of the waiting channels.
+     */
+    private long getSelectTimeout() {
+        long timeout = CLOSE_CHECK_INTERVAL;
+        long now = System.currentTimeMillis();
+        for (SelectionKey key : waitingKeys) {
+            Waiter waiter = (Waiter) key.attachment();
+            if (waiter != null && waiter.deadline != 0) {
+                timeout = Math.min(timeout, Math.max(1, waiter.deadline - now));
+            }
+        }
+        return timeout;
+    }
+
+    /**
+     * Fail the waits for channels closed by another thread, or not ready
+     * within their timeout.
+     */
+    private void failClosedAndExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<SelectionKey> keys = waitingKeys.iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            Waiter waiter = (Waiter) key.attachment();
+            if (waiter == null || waiter.isDone()) {
+                // cancelled by the waiting thread
+                if (waiter != null && key.isValid()) {
+                    key.interestOps(0);
+                }
+                key.attach(null);
+                keys.remove();
+            } else if (!key.isValid() || !key.channel().isOpen()) {
+                key.attach(null);
+                keys.remove();
+                waiter.completeExceptionally(new AsynchronousCloseException());
+            } else if (waiter.deadline != 0 && waiter.deadline <= now) {
+                key.interestOps(0);
+                key.attach(null);
+                keys.remove();
+                waiter.completeExceptionally(new SocketTimeoutException(
+                        "Data connection timed out"));
+            }
+        }
+    }
+
+    private Waiter detach(final SelectionKey key) {
+        key.interestOps(0);
+        waitingKeys.remove(key);
+        return (Waiter) key.attach(null);
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void close() {
+        for (SelectionKey key : selector.keys()) {
+            Object waiter = key.attachment();
+            if (waiter instanceof Waiter) {
+                ((Waiter) waiter)
+                        .completeExceptionally(new AsynchronousCloseException());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close data connection reactor selector", e);
+        }
+
+        // fail the waits registered while shutting down
+        runPendingTasks();
+    }
+}
@@ -42,8 +42,36 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     
     private final int maxThreads;
 
+    private final int maxDownloadRate;
+
+    private final int maxUploadRate;
+
+    private final boolean virtualThreadsEnabled;
+
+    private final int transferBufferSize;
+
+    private final int transferBufferPoolSize;
+
+    private final boolean directTransferBuffers;
+
+    private final String[] inlineChecksums;
+
+    private final int checksumCacheSize;
+
+    private final int writeBehindSize;
+
+    private final int writeBehindPoolSize;
+
+    private final int readAheadDepth;
+
+    private final int readAheadChunkSize;
+
+    private final boolean listDirectoriesFirst;
+
     public DefaultConnectionConfig() {
-        this(true, 500, 10, 10, 3, 0);
+        this(true, 500, 10, 10, 3, 0, 0, 0, false, 64 * 1024, 16 * 1024 * 1024,
+                false, new String[0], 1000, 0, 64 * 1024 * 1024, 0,
+                256 * 1024, true);
     }
 
     /**
@@ -51,13 +79,33 @@ public class DefaultConnectionConfig implements ConnectionConfig {
      */
     public DefaultConnectionConfig(boolean anonymousLoginEnabled,
             int loginFailureDelay, int maxLogins, int maxAnonymousLogins,
-            int maxLoginFailures, int maxThreads) {
+            int maxLoginFailures, int maxThreads, int maxDownloadRate,
+            int maxUploadRate, boolean virtualThreadsEnabled,
+            int transferBufferSize, int transferBufferPoolSize,
+            boolean directTransferBuffers, String[] inlineChecksums,
+            int checksumCacheSize, int writeBehindSize,
+            int writeBehindPoolSize, int readAheadDepth,
+            int readAheadChunkSize, boolean listDirectoriesFirst) {
         this.anonymousLoginEnabled = anonymousLoginEnabled;
         this.loginFailureDelay = loginFailureDelay;
         this.maxLogins = maxLogins;
         this.maxAnonymousLogins = maxAnonymousLogins;
         this.maxLoginFailures = maxLoginFailures;
         this.maxThreads = maxThreads;
+        this.maxDownloadRate = maxDownloadRate;
+        this.maxUploadRate = maxUploadRate;
+        this.virtualThreadsEnabled = virtualThreadsEnabled;
+        this.transferBufferSize = transferBufferSize;
+        this.transferBufferPoolSize = transferBufferPoolSize;
+        this.directTransferBuffers = directTransferBuffers;
+        this.inlineChecksums = inlineChecksums != null ? inlineChecksums
+                .clone() : new String[0];
+        this.checksumCacheSize = checksumCacheSize;
+        this.writeBehindSize = writeBehindSize;
+        this.writeBehindPoolSize = writeBehindPoolSize;
+        this.readAheadDepth = readAheadDepth;
+        this.readAheadChunkSize = readAheadChunkSize;
+        this.listDirectoriesFirst = listDirectoriesFirst;
     }
 
     public int getLoginFailureDelay() {
@@ -83,5 +131,57 @@ public class DefaultConnectionConfig implements ConnectionConfig {
     public int getMaxThreads() {
         return maxThreads;
     }
+
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    public boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    public int getTransferBufferSize() {
+        return transferBufferSize;
+    }
+
+    public int getTransferBufferPoolSize() {
+        return transferBufferPoolSize;
+    }
+
+    public boolean isDirectTransferBuffers() {
+        return directTransferBuffers;
+    }
+
+    public String[] getInlineChecksums() {
+        return inlineChecksums.clone();
+    }
+
+    public int getChecksumCacheSize() {
+        return checksumCacheSize;
+    }
+
+    public int getWriteBehindSize() {
+        return writeBehindSize;
+    }
+
+    public int getWriteBehindPoolSize() {
+        return writeBehindPoolSize;
+    }
+
+    public int getReadAheadDepth() {
+        return readAheadDepth;
+    }
+
+    public int getReadAheadChunkSize() {
+        return readAheadChunkSize;
+    }
+
+    public boolean isListDirectoriesFirst() {
+        return listDirectoriesFirst;
+    }
     
 }
@@ -49,6 +49,16 @@ public class DefaultDataConnectionConfiguration implements
     
     private final boolean implicitSsl;
 
+    private final int transferRateBurstSize;
+    private final int transferRateRefillInterval;
+    private final int maxDownloadRate;
+    private final int maxUploadRate;
+    private final boolean userTransferRateShared;
+
+    private final boolean nonBlocking;
+
+    private final boolean passiveSocketPoolEnabled;
+
     /**
 	 * Internal constructor, do not use directly. Use
 	 * {@link DataConnectionConfigurationFactory} instead.
@@ -57,7 +67,10 @@ public class DefaultDataConnectionConfiguration implements
 		SslConfiguration ssl, boolean activeEnabled, boolean activeIpCheck,
 		String activeLocalAddress, int activeLocalPort, String passiveAddress,
 		PassivePorts passivePorts, String passiveExternalAddress,
-		boolean passiveIpCheck, boolean implicitSsl) {
+		boolean passiveIpCheck, boolean implicitSsl,
+		int transferRateBurstSize, int transferRateRefillInterval,
+		int maxDownloadRate, int maxUploadRate, boolean userTransferRateShared,
+		boolean nonBlocking, boolean passiveSocketPoolEnabled) {
 		this.idleTime = idleTime;
 		this.ssl = ssl;
 		this.activeEnabled = activeEnabled;
@@ -69,6 +82,13 @@ public class DefaultDataConnectionConfiguration implements
 		this.passiveExternalAddress = passiveExternalAddress;
 		this.passiveIpCheck = passiveIpCheck;
 		this.implicitSsl = implicitSsl;
+		this.transferRateBurstSize = transferRateBurstSize;
+		this.transferRateRefillInterval = transferRateRefillInterval;
+		this.maxDownloadRate = maxDownloadRate;
+		this.maxUploadRate = maxUploadRate;
+		this.userTransferRateShared = userTransferRateShared;
+		this.nonBlocking = nonBlocking;
+		this.passiveSocketPoolEnabled = passiveSocketPoolEnabled;
 	}
 
     /**
@@ -128,7 +148,12 @@ public class DefaultDataConnectionConfiguration implements
      * Get passive data port. Data port number zero (0) means that any available
      * port will be used.
      */
-    public synchronized int requestPassivePort() {
+    public int requestPassivePort() {
+        if (passiveSocketPoolEnabled) {
+            // probing would fail for the ports held by the pool, ports bound
+            // by other processes are found when binding instead
+            return passivePorts.reserveNextPort(false);
+        }
     	return passivePorts.reserveNextPort();
     }
 
@@ -144,10 +169,17 @@ public class DefaultDataConnectionConfiguration implements
     /**
      * Release data port
      */
-    public synchronized void releasePassivePort(final int port) {
+    public void releasePassivePort(final int port) {
         passivePorts.releasePort(port);
     }
 
+    /**
+     * Get the number of passive ports currently reserved
+     */
+    public int getPassivePortsInUse() {
+        return passivePorts.getPortsInUse();
+    }
+
     /**
      * Get SSL component.
      */
@@ -161,4 +193,53 @@ public class DefaultDataConnectionConfiguration implements
     public boolean isImplicitSsl() {
         return implicitSsl;
     }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getTransferRateBurstSize()
+     */
+    public int getTransferRateBurstSize() {
+        return transferRateBurstSize;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getTransferRateRefillInterval()
+     */
+    public int getTransferRateRefillInterval() {
+        return transferRateRefillInterval;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getMaxDownloadRate()
+     */
+    public int getMaxDownloadRate() {
+        return maxDownloadRate;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#getMaxUploadRate()
+     */
+    public int getMaxUploadRate() {
+        return maxUploadRate;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#isUserTransferRateShared()
+     */
+    public boolean isUserTransferRateShared() {
+        return userTransferRateShared;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#isNonBlocking()
+     */
+    public boolean isNonBlocking() {
+        return nonBlocking;
+    }
+
+    /**
+     * @see org.apache.ftpserver.DataConnectionConfiguration#isPassiveSocketPoolEnabled()
+     */
+    public boolean isPassiveSocketPoolEnabled() {
+        return passiveSocketPoolEnabled;
+    }
 }
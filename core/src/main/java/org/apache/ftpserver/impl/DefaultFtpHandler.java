@@ -21,6 +21,8 @@ package org.apache.ftpserver.impl;
 
 import java.io.IOException;
 import java.nio.charset.MalformedInputException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.ftpserver.command.Command;
 import org.apache.ftpserver.command.CommandFactory;
@@ -32,6 +34,8 @@ import org.apache.ftpserver.ftplet.FtpletResult;
 import org.apache.ftpserver.ftpletcontainer.FtpletContainer;
 import org.apache.ftpserver.listener.Listener;
 import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoEventType;
 import org.apache.mina.core.write.WriteToClosedSessionException;
 import org.apache.mina.filter.codec.ProtocolDecoderException;
 import org.slf4j.Logger;
@@ -174,6 +178,62 @@ public class DefaultFtpHandler implements FtpHandler {
 
     public void messageReceived(final FtpIoSession session,
             final FtpRequest request) throws Exception {
+        // keep the replies in order with a command still replying, without
+        // holding a thread until it has replied
+        if (session.deferCommand(request)) {
+            LOG.debug("Command deferred until the pending command has replied");
+            return;
+        }
+        executeCommands(session, request);
+    }
+
+    /**
+     * Execute a command, then the commands deferred meanwhile until one of
+     * them replies in the background.
+     */
+    private void executeCommands(final FtpIoSession session,
+            FtpRequest request) throws Exception {
+        while (request != null) {
+            session.setPendingCommand(null);
+            executeCommand(session, request);
+            CompletableFuture<?> pending = session.getPendingCommand();
+            if (pending != null && !pending.isDone()) {
+                pending.whenComplete((result, e) -> executeDeferredCommands(session));
+                return;
+            }
+            request = session.nextDeferredCommand();
+        }
+    }
+
+    /**
+     * Hand the commands deferred while a command was replying in the
+     * background to the thread pool, ordered with the commands of the session
+     * received later.
+     */
+    private void executeDeferredCommands(final FtpIoSession session) {
+        final FtpRequest request = session.nextDeferredCommand();
+        if (request == null) {
+            return;
+        }
+        context.getThreadPoolExecutor().execute(
+                new IoEvent(IoEventType.MESSAGE_RECEIVED, session, request) {
+                    @Override
+                    public void fire() {
+                        try {
+                            executeCommands(session, request);
+                        } catch (Exception e) {
+                            try {
+                                exceptionCaught(session, e);
+                            } catch (Exception ex) {
+                                LOG.warn("Failed to handle the exception of a deferred command", ex);
+                            }
+                        }
+                    }
+                });
+    }
+
+    private void executeCommand(final FtpIoSession session,
+            final FtpRequest request) throws Exception {
         try {
             session.updateLastAccessTime();
             
@@ -206,8 +266,12 @@ public class DefaultFtpHandler implements FtpHandler {
             } else if (ftpletRet != FtpletResult.SKIP) {
 
                 if (command != null) {
-                    synchronized (session) {
+                    Lock commandLock = session.getCommandLock();
+                    commandLock.lock();
+                    try {
                         command.execute(session, context, request);
+                    } finally {
+                        commandLock.unlock();
                     }
                 } else {
                     session.write(LocalizedFtpReply.translate(session, request,
@@ -216,18 +280,14 @@ public class DefaultFtpHandler implements FtpHandler {
                             "not.implemented", null));
                 }
 
-                try {
-                    ftpletRet = ftplets.afterCommand(
-                            session.getFtpletSession(), request, session
-                                    .getLastReply());
-                } catch (Exception e) {
-                    LOG.debug("Ftplet container threw exception", e);
-                    ftpletRet = FtpletResult.DISCONNECT;
-                }
-                if (ftpletRet == FtpletResult.DISCONNECT) {
-                    LOG.debug("Ftplet returned DISCONNECT, session will be closed");
-
-                    session.close(false).awaitUninterruptibly(10000);
+                // a command still transferring in the background has not
+                // replied yet, the ftplets are called once it has
+                CompletableFuture<?> pending = session.getPendingCommand();
+                if (pending != null) {
+                    session.setPendingCommand(pending.whenComplete(
+                            (result, e) -> afterCommand(session, request)));
+                } else {
+                    afterCommand(session, request);
                 }
             }
 
@@ -250,8 +310,30 @@ public class DefaultFtpHandler implements FtpHandler {
 
     }
 
+    private void afterCommand(final FtpIoSession session,
+            final FtpRequest request) {
+        FtpletResult ftpletRet;
+        try {
+            ftpletRet = context.getFtpletContainer().afterCommand(
+                    session.getFtpletSession(), request, session
+                            .getLastReply());
+        } catch (Exception e) {
+            LOG.debug("Ftplet container threw exception", e);
+            ftpletRet = FtpletResult.DISCONNECT;
+        }
+        if (ftpletRet == FtpletResult.DISCONNECT) {
+            LOG.debug("Ftplet returned DISCONNECT, session will be closed");
+
+            session.close(false).awaitUninterruptibly(10000);
+        }
+    }
+
     public void sessionIdle(final FtpIoSession session, final IdleStatus status)
             throws Exception {
+        if (session.isCommandPending()) {
+            LOG.debug("Session idle while a command is running, kept open");
+            return;
+        }
         LOG.info("Session idle, closing");
         session.close(false).awaitUninterruptibly(10000);
     }
@@ -19,6 +19,10 @@
 
 package org.apache.ftpserver.impl;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.apache.ftpserver.ftplet.FtpRequest;
 
 /**
@@ -30,6 +34,13 @@ import org.apache.ftpserver.ftplet.FtpRequest;
  */
 public class DefaultFtpRequest implements FtpRequest {
 
+    /**
+     * Commands starting with an X that are not the experimental names of
+     * other commands, such as XMKD for MKD, and are kept as is.
+     */
+    private static final Set<String> X_COMMANDS = new HashSet<>(Arrays
+            .asList("XCRC", "XMD5", "XSHA1", "XSHA256"));
+
     private final String line;
 
     private final String command;
@@ -67,7 +78,8 @@ public class DefaultFtpRequest implements FtpRequest {
         } else {
             cmd = line.toUpperCase();
         }
-        if ((cmd.length() > 0) && (cmd.charAt(0) == 'X')) {
+        if ((cmd.length() > 0) && (cmd.charAt(0) == 'X')
+                && !X_COMMANDS.contains(cmd)) {
             cmd = cmd.substring(1);
         }
         return cmd;
@@ -19,18 +19,24 @@
 
 package org.apache.ftpserver.impl;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.ftpserver.ConnectionConfig;
 import org.apache.ftpserver.ConnectionConfigFactory;
 import org.apache.ftpserver.command.CommandFactory;
 import org.apache.ftpserver.command.CommandFactoryFactory;
 import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.filesystem.pathfs.PathFileSystemFactory;
 import org.apache.ftpserver.ftplet.Authority;
 import org.apache.ftpserver.ftplet.FileSystemFactory;
 import org.apache.ftpserver.ftplet.FtpStatistics;
@@ -79,6 +85,16 @@ public class DefaultFtpServerContext implements FtpServerContext {
 
     private Map<String, Listener> listeners = new HashMap<>();
 
+    /**
+     * How long idle virtual worker threads are kept, in milliseconds
+     */
+    private static final long VIRTUAL_THREAD_KEEP_ALIVE = 1000;
+
+    /**
+     * How long idle handshake threads are kept, in milliseconds
+     */
+    private static final long HANDSHAKE_THREAD_KEEP_ALIVE = 60000;
+
     private static final List<Authority> ADMIN_AUTHORITIES = new ArrayList<>();
     private static final List<Authority> ANON_AUTHORITIES = new ArrayList<>();
     
@@ -86,6 +102,59 @@ public class DefaultFtpServerContext implements FtpServerContext {
      * The thread pool executor to be used by the server using this context
      */
     private ThreadPoolExecutor threadPoolExecutor = null;
+
+    /**
+     * The bandwidth shaper shared by the data transfers using this context
+     */
+    private BandwidthShaper bandwidthShaper = null;
+
+    /**
+     * The buffers shared by the data transfers using this context
+     */
+    private TransferBufferPool transferBufferPool = null;
+
+    /**
+     * The reactor driving the non-blocking data connections using this context
+     */
+    private DataConnectionReactor dataConnectionReactor = null;
+
+    /**
+     * The passive server sockets kept bound between transfers
+     */
+    private PassiveSocketPool passiveSocketPool = null;
+
+    /**
+     * The executor running the handshake tasks of the secure non-blocking data
+     * connections using this context
+     */
+    private ThreadPoolExecutor handshakeExecutor = null;
+
+    /**
+     * The checksums of the files recently uploaded or checked through this
+     * context
+     */
+    private ChecksumCache checksumCache = null;
+
+    /**
+     * The hasher computing the HASH command values of this context
+     */
+    private FileHasher fileHasher = null;
+
+    /**
+     * The indexes finding the file positions of ASCII restarts
+     */
+    private AsciiOffsetIndexCache asciiOffsetIndexCache = null;
+
+    /**
+     * The writer writing the uploads of this context on separate threads
+     */
+    private WriteBehindWriter writeBehindWriter = null;
+
+    /**
+     * The reader reading the downloads of this context ahead on separate
+     * threads
+     */
+    private ReadAheadReader readAheadReader = null;
     
     static {
         ADMIN_AUTHORITIES.add(new WritePermission());
@@ -208,6 +277,42 @@ public class DefaultFtpServerContext implements FtpServerContext {
                 // TODO: how to handle?
             }
         }
+        synchronized (this) {
+            if (dataConnectionReactor != null) {
+                LOG.debug("Shutting down the data connection reactor");
+                dataConnectionReactor.dispose();
+                dataConnectionReactor = null;
+            }
+            if (passiveSocketPool != null) {
+                LOG.debug("Closing the pooled passive server sockets");
+                // kept, to close the server sockets released afterwards
+                passiveSocketPool.dispose();
+            }
+            if (handshakeExecutor != null) {
+                LOG.debug("Shutting down the handshake executor");
+                handshakeExecutor.shutdown();
+                handshakeExecutor = null;
+            }
+            if (fileHasher != null) {
+                LOG.debug("Shutting down the file hasher");
+                fileHasher.dispose();
+                fileHasher = null;
+            }
+            if (writeBehindWriter != null) {
+                LOG.debug("Shutting down the write-behind writer");
+                writeBehindWriter.dispose();
+                writeBehindWriter = null;
+            }
+            if (readAheadReader != null) {
+                LOG.debug("Shutting down the read-ahead reader");
+                readAheadReader.dispose();
+                readAheadReader = null;
+            }
+            if (fileSystemManager instanceof PathFileSystemFactory) {
+                LOG.debug("Clearing the directory listing cache");
+                ((PathFileSystemFactory) fileSystemManager).dispose();
+            }
+        }
     }
 
     public Listener getListener(String name) {
@@ -263,6 +368,20 @@ public class DefaultFtpServerContext implements FtpServerContext {
     }
     
     public synchronized ThreadPoolExecutor getThreadPoolExecutor() {
+        if(threadPoolExecutor == null && connectionConfig.isVirtualThreadsEnabled()) {
+            ThreadFactory threadFactory = VirtualThreads.createThreadFactory("ftpserver-");
+            if(threadFactory != null) {
+                // a session holds at most one worker at a time, and idle
+                // workers are not kept, so the number of virtual threads
+                // follows the number of busy sessions
+                LOG.debug("Intializing shared thread pool executor with virtual threads");
+                threadPoolExecutor = new OrderedThreadPoolExecutor(0, Integer.MAX_VALUE,
+                        VIRTUAL_THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS, threadFactory);
+            }
+            else {
+                LOG.warn("Virtual threads require Java 21 or later, using platform threads");
+            }
+        }
         if(threadPoolExecutor == null) {
             int maxThreads = connectionConfig.getMaxThreads();
             if(maxThreads < 1) {
@@ -279,4 +398,92 @@ public class DefaultFtpServerContext implements FtpServerContext {
         }
         return threadPoolExecutor;
     }
+
+    public synchronized BandwidthShaper getBandwidthShaper() {
+        if (bandwidthShaper == null) {
+            bandwidthShaper = new BandwidthShaper(connectionConfig);
+        }
+        return bandwidthShaper;
+    }
+
+    public synchronized TransferBufferPool getTransferBufferPool() {
+        if (transferBufferPool == null) {
+            transferBufferPool = new TransferBufferPool(connectionConfig);
+        }
+        return transferBufferPool;
+    }
+
+    public synchronized DataConnectionReactor getDataConnectionReactor()
+            throws IOException {
+        if (dataConnectionReactor == null) {
+            LOG.debug("Starting the data connection reactor");
+            dataConnectionReactor = new DataConnectionReactor();
+        }
+        return dataConnectionReactor;
+    }
+
+    public synchronized PassiveSocketPool getPassiveSocketPool() {
+        if (passiveSocketPool == null) {
+            passiveSocketPool = new PassiveSocketPool();
+        }
+        return passiveSocketPool;
+    }
+
+    public synchronized ExecutorService getHandshakeExecutor() {
+        if (handshakeExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            handshakeExecutor = new ThreadPoolExecutor(threads, threads,
+                    HANDSHAKE_THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(final Runnable r) {
+                            Thread thread = new Thread(r,
+                                    "FtpServer handshake "
+                                            + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            handshakeExecutor.allowCoreThreadTimeOut(true);
+        }
+        return handshakeExecutor;
+    }
+
+    public synchronized ChecksumCache getChecksumCache() {
+        if (checksumCache == null) {
+            checksumCache = new ChecksumCache(connectionConfig);
+        }
+        return checksumCache;
+    }
+
+    public synchronized FileHasher getFileHasher() {
+        if (fileHasher == null) {
+            fileHasher = new FileHasher(getTransferBufferPool());
+        }
+        return fileHasher;
+    }
+
+    public synchronized AsciiOffsetIndexCache getAsciiOffsetIndexCache() {
+        if (asciiOffsetIndexCache == null) {
+            asciiOffsetIndexCache = new AsciiOffsetIndexCache(
+                    getTransferBufferPool());
+        }
+        return asciiOffsetIndexCache;
+    }
+
+    public synchronized WriteBehindWriter getWriteBehindWriter() {
+        if (writeBehindWriter == null) {
+            writeBehindWriter = new WriteBehindWriter(connectionConfig,
+                    getTransferBufferPool());
+        }
+        return writeBehindWriter;
+    }
+
+    public synchronized ReadAheadReader getReadAheadReader() {
+        if (readAheadReader == null) {
+            readAheadReader = new ReadAheadReader(connectionConfig);
+        }
+        return readAheadReader;
+    }
 }
@@ -76,6 +76,10 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
 
     private AtomicLong bytesDownload = new AtomicLong(0L);
 
+    private AtomicInteger dataSslHandshakes = new AtomicInteger(0);
+
+    private AtomicInteger resumedDataSslHandshakes = new AtomicInteger(0);
+
     private static class UserLogins {
         private Map<InetAddress, AtomicInteger> perAddress = new ConcurrentHashMap<>();
 
@@ -259,6 +263,21 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
         }
     }
 
+    /**
+     * Get the number of completed secure data connection handshakes.
+     */
+    public int getTotalDataSslHandshakeNumber() {
+        return dataSslHandshakes.get();
+    }
+
+    /**
+     * Get the number of secure data connection handshakes that resumed an
+     * earlier TLS session.
+     */
+    public int getTotalResumedDataSslHandshakeNumber() {
+        return resumedDataSslHandshakes.get();
+    }
+
     // //////////////////////////////////////////////////////
     // /////////////// All setter methods /////////////////
     /**
@@ -281,6 +300,17 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
         notifyDownload(session, file, size);
     }
 
+    /**
+     * Increment the secure data connection handshake count.
+     */
+    public void setDataSslHandshake(final FtpIoSession session,
+            final boolean resumed) {
+        dataSslHandshakes.incrementAndGet();
+        if (resumed) {
+            resumedDataSslHandshakes.incrementAndGet();
+        }
+    }
+
     /**
      * Increment delete count.
      */
@@ -577,5 +607,8 @@ public class DefaultFtpStatistics implements ServerFtpStatistics {
 
         bytesUpload.set(0);
         bytesDownload.set(0);
+
+        dataSslHandshakes.set(0);
+        resumedDataSslHandshakes.set(0);
     }
 }
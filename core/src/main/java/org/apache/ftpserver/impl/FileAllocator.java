@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Allocates the space of the files uploaded after an ALLO command. The file
+ * is extended to the announced length through its channel before the data
+ * is received, so that the file system knows the final size of the file
+ * up front, and trimmed to the length actually written when the upload
+ * stream is closed.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FileAllocator {
+
+    /**
+     * Check if the volume of a file has enough usable space for an upload.
+     * 
+     * @param size
+     *            The number of bytes to upload
+     * @return False if the file is known to lack space, true if it has
+     *         enough space or the usable space is not known
+     */
+    public static boolean hasSpace(final FtpFile file, final long size) {
+        if (size <= 0 || !(file.getPhysicalFile() instanceof File)) {
+            return true;
+        }
+        File dir = ((File) file.getPhysicalFile()).getAbsoluteFile()
+                .getParentFile();
+        if (dir == null || !dir.exists()) {
+            return true;
+        }
+        return dir.getUsableSpace() >= size;
+    }
+
+    /**
+     * Extend a file opened for an upload to its announced length.
+     * 
+     * @param out
+     *            The stream writing the file
+     * @param length
+     *            The length of the file once uploaded
+     * @return The stream to write the file to, trimming the file to the
+     *         written length when closed. The stream itself if it does not
+     *         write to a file channel or the file is already long enough.
+     */
+    public static OutputStream allocate(final OutputStream out,
+            final long length) throws IOException {
+        if (!(out instanceof FileOutputStream)) {
+            return out;
+        }
+        final FileOutputStream fileOut = (FileOutputStream) out;
+        final FileChannel channel = fileOut.getChannel();
+        if (channel.size() >= length) {
+            return out;
+        }
+        channel.write(ByteBuffer.allocate(1), length - 1);
+
+        // writes through the same descriptor as the stream it replaces,
+        // and keeps its channel for zero-copy uploads
+        return new FileOutputStream(fileOut.getFD()) {
+            @Override
+            public FileChannel getChannel() {
+                return channel;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    if (channel.isOpen() && channel.size() > channel.position()) {
+                        channel.truncate(channel.position());
+                    }
+                } finally {
+                    super.close();
+                    fileOut.close();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Hashes files, or ranges of files, on a pool of threads shared by the server
+ * with at most one thread per processor, so that hashing large files does not
+ * hold the thread of the session asking for it.
+ *
+ * Files of the native file system are read through memory mapped chunks. The
+ * CRC32 of large files is computed for each chunk in parallel, the values
+ * being combined at the end. A hash has at most one chunk per thread queued
+ * or running, the next chunk being queued once one is done, so that a large
+ * file does not hold the threads ahead of the hashes asked for after it.
+ * Digests can not be split and are computed chunk after chunk. Files of
+ * other file systems are read from their stream.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FileHasher {
+
+    /**
+     * The size of the chunks mapped and hashed at once.
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final long THREAD_KEEP_ALIVE = 60000;
+
+    private final ThreadPoolExecutor executor;
+
+    private final TransferBufferPool bufferPool;
+
+    private final long chunkSize;
+
+    public FileHasher(final TransferBufferPool bufferPool) {
+        this(bufferPool, Runtime.getRuntime().availableProcessors(),
+                DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param bufferPool
+     *            The pool to take the read buffers of streamed files from
+     * @param threads
+     *            The maximum number of hashing threads
+     * @param chunkSize
+     *            The size of the chunks mapped and hashed at once
+     */
+    public FileHasher(final TransferBufferPool bufferPool, final int threads,
+            final long chunkSize) {
+        this.bufferPool = bufferPool;
+        this.chunkSize = chunkSize;
+        executor = new ThreadPoolExecutor(threads, threads, THREAD_KEEP_ALIVE,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, "FtpServer hash "
+                                + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Hash a range of a file in the background.
+     *
+     * @param algorithm
+     *            The algorithm, as named by {@link ChecksumCalculator}
+     * @param start
+     *            The position of the first byte to hash
+     * @param end
+     *            The position after the last byte to hash
+     * @return A future completed with the hash, as an upper case hexadecimal
+     *         string, or failed if the file could not be read
+     */
+    public CompletableFuture<String> hash(final FtpFile file,
+            final String algorithm, final long start, final long end) {
+        try {
+            // fail early on unknown algorithms
+            new ChecksumCalculator(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        Object physicalFile = file.getPhysicalFile();
+        if (!(physicalFile instanceof File)) {
+            return supply(() -> hashStream(file, algorithm, start, end));
+        }
+
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(((File) physicalFile).toPath(),
+                    StandardOpenOption.READ);
+        } catch (IOException e) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        CompletableFuture<String> future;
+        if (ChecksumCalculator.CRC32.equals(ChecksumCalculator
+                .normalize(algorithm))) {
+            future = hashCrc32(channel, start, end);
+        } else {
+            future = supply(() -> hashChannel(channel, algorithm, start, end));
+        }
+        return future.whenComplete((hash, e) -> {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // ignore
+            }
+        });
+    }
+
+    /**
+     * Compute the CRC32 of each chunk in parallel and combine them.
+     */
+    private CompletableFuture<String> hashCrc32(final FileChannel channel,
+            final long start, final long end) {
+        return new Crc32Hash(channel, start, end).start();
+    }
+
+    private String hashChannel(final FileChannel channel,
+            final String algorithm, final long start, final long end)
+            throws IOException, NoSuchAlgorithmException {
+        ChecksumCalculator calculator = new ChecksumCalculator(algorithm);
+        for (long position = start; position < end; position += chunkSize) {
+            calculator.update(map(channel, position, Math.min(chunkSize, end
+                    - position)));
+        }
+        return calculator.getChecksums().values().iterator().next();
+    }
+
+    private ByteBuffer map(final FileChannel channel, final long position,
+            final long length) throws IOException {
+        if (length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    private String hashStream(final FtpFile file, final String algorithm,
+            final long start, final long end) throws IOException,
+            NoSuchAlgorithmException {
+        ChecksumCalculator calculator = new ChecksumCalculator(algorithm);
+        InputStream is = null;
+        ByteBuffer buffer = bufferPool.acquireHeapBuffer();
+        try {
+            is = file.createInputStream(start);
+            byte[] buff = buffer.array();
+            long remaining = end - start;
+            while (remaining > 0) {
+                int read = is.read(buff, 0, (int) Math.min(buff.length,
+                        remaining));
+                if (read == -1) {
+                    break;
+                }
+                calculator.update(buff, 0, read);
+                remaining -= read;
+            }
+        } finally {
+            IoUtils.close(is);
+            bufferPool.release(buffer);
+        }
+        return calculator.getChecksums().values().iterator().next();
+    }
+
+    /**
+     * Stop the hashing threads once the pending hashes are done.
+     */
+    public void dispose() {
+        executor.shutdown();
+    }
+
+    /**
+     * Get the number of tasks waiting for a hashing thread, for testing.
+     */
+    int getQueuedTasks() {
+        return executor.getQueue().size();
+    }
+
+    private <T> CompletableFuture<T> supply(final HashTask<T> task) {
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            public T get() {
+                try {
+                    return task.call();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * The CRC32 of a range, hashing as many chunks at once as there are
+     * threads.
+     */
+    private class Crc32Hash {
+
+        private final FileChannel channel;
+
+        private final long start;
+
+        private final long end;
+
+        private final long[] crcs;
+
+        private final AtomicInteger nextChunk = new AtomicInteger();
+
+        private final AtomicInteger pendingChunks;
+
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+
+        public Crc32Hash(final FileChannel channel, final long start,
+                final long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            // an empty range is one empty chunk
+            crcs = new long[(int) Math.max(1, (end - start + chunkSize - 1)
+                    / chunkSize)];
+            pendingChunks = new AtomicInteger(crcs.length);
+        }
+
+        public CompletableFuture<String> start() {
+            int window = Math.min(crcs.length, executor.getMaximumPoolSize());
+            for (int i = 0; i < window; i++) {
+                hashNextChunk();
+            }
+            return future;
+        }
+
+        private void hashNextChunk() {
+            final int chunk = nextChunk.getAndIncrement();
+            if (chunk >= crcs.length || future.isDone()) {
+                return;
+            }
+            final long position = start + chunk * chunkSize;
+            CompletableFuture<Long> chunkFuture;
+            try {
+                chunkFuture = supply(() -> {
+                    CRC32 crc = new CRC32();
+                    crc.update(map(channel, position, Math.min(chunkSize, end
+                            - position)));
+                    return crc.getValue();
+                });
+            } catch (RuntimeException e) {
+                // disposed
+                future.completeExceptionally(e);
+                return;
+            }
+            chunkFuture.whenComplete((crc, e) -> {
+                if (e != null) {
+                    future.completeExceptionally(e);
+                    return;
+                }
+                crcs[chunk] = crc;
+                if (pendingChunks.decrementAndGet() == 0) {
+                    future.complete(combine());
+                } else {
+                    hashNextChunk();
+                }
+            });
+        }
+
+        private String combine() {
+            long crc = crcs[0];
+            for (int i = 1; i < crcs.length; i++) {
+                long position = start + i * chunkSize;
+                crc = ChecksumCalculator.combineCrc32(crc, crcs[i], Math.min(
+                        chunkSize, end - position));
+            }
+            return ChecksumCalculator.encodeCrc32(crc);
+        }
+    }
+
+    private interface HashTask<T> {
+        T call() throws Exception;
+    }
+}
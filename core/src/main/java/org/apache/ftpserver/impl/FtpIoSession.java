@@ -21,9 +21,14 @@ package org.apache.ftpserver.impl;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.security.cert.Certificate;
+import java.util.ArrayDeque;
 import java.util.Date;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.net.ssl.SSLSession;
@@ -32,6 +37,7 @@ import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.FileSystemView;
 import org.apache.ftpserver.ftplet.FtpFile;
 import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
 import org.apache.ftpserver.ftplet.FtpSession;
 import org.apache.ftpserver.ftplet.Structure;
 import org.apache.ftpserver.ftplet.User;
@@ -68,6 +74,8 @@ public class FtpIoSession implements IoSession {
             + "user-argument";
     private static final String ATTRIBUTE_SESSION_ID = ATTRIBUTE_PREFIX
             + "session-id";
+    private static final String ATTRIBUTE_COMMAND_LOCK = ATTRIBUTE_PREFIX
+            + "command-lock";
     private static final String ATTRIBUTE_USER = ATTRIBUTE_PREFIX + "user";
     private static final String ATTRIBUTE_LANGUAGE = ATTRIBUTE_PREFIX
             + "language";
@@ -95,6 +103,16 @@ public class FtpIoSession implements IoSession {
             + "last-access-time";
     private static final String ATTRIBUTE_CACHED_REMOTE_ADDRESS = ATTRIBUTE_PREFIX
             + "cached-remote-address";
+    private static final String ATTRIBUTE_CURRENT_TRANSFER = ATTRIBUTE_PREFIX
+            + "current-transfer";
+    private static final String ATTRIBUTE_PENDING_COMMAND = ATTRIBUTE_PREFIX
+            + "pending-command";
+    private static final String ATTRIBUTE_DEFERRED_COMMANDS = ATTRIBUTE_PREFIX
+            + "deferred-commands";
+    private static final String ATTRIBUTE_HASH_RANGE = ATTRIBUTE_PREFIX
+            + "hash-range";
+    private static final String ATTRIBUTE_ALLOCATION_SIZE = ATTRIBUTE_PREFIX
+            + "allocation-size";
     private final IoSession wrappedSession;
     private final FtpServerContext context;
     /**
@@ -545,14 +563,20 @@ public class FtpIoSession implements IoSession {
     public void resetState() {
         removeAttribute(ATTRIBUTE_RENAME_FROM);
         removeAttribute(ATTRIBUTE_FILE_OFFSET);
+        removeAttribute(ATTRIBUTE_HASH_RANGE);
     }
 
     public synchronized ServerDataConnectionFactory getDataConnection() {
         if (containsAttribute(ATTRIBUTE_DATA_CONNECTION)) {
             return (ServerDataConnectionFactory) getAttribute(ATTRIBUTE_DATA_CONNECTION);
         } else {
-            IODataConnectionFactory dataCon = new IODataConnectionFactory(
-                    context, this);
+            IODataConnectionFactory dataCon;
+            if (getListener() != null
+                    && getListener().getDataConnectionConfiguration().isNonBlocking()) {
+                dataCon = new NioDataConnectionFactory(context, this);
+            } else {
+                dataCon = new IODataConnectionFactory(context, this);
+            }
             dataCon.setServerControlAddress(((InetSocketAddress) getLocalAddress()).getAddress());
             setAttribute(ATTRIBUTE_DATA_CONNECTION, dataCon);
 
@@ -652,6 +676,8 @@ public class FtpIoSession implements IoSession {
         removeAttribute(ATTRIBUTE_FILE_SYSTEM);
         removeAttribute(ATTRIBUTE_RENAME_FROM);
         removeAttribute(ATTRIBUTE_FILE_OFFSET);
+        removeAttribute(ATTRIBUTE_HASH_RANGE);
+        removeAttribute(ATTRIBUTE_ALLOCATION_SIZE);
     }
 
     public void logoutUser() {
@@ -682,6 +708,47 @@ public class FtpIoSession implements IoSession {
         return (Long) getAttribute(ATTRIBUTE_FILE_OFFSET, 0L);
     }
 
+    /**
+     * Set the size announced by ALLO for the next upload.
+     */
+    public void setAllocationSize(long allocationSize) {
+        setAttribute(ATTRIBUTE_ALLOCATION_SIZE, allocationSize);
+    }
+
+    /**
+     * Get the size announced by ALLO for the next upload, and forget it. The
+     * size is kept by other commands, as clients send PASV or PORT between
+     * ALLO and the upload.
+     * 
+     * @return The size, 0 if no size has been announced
+     */
+    public long takeAllocationSize() {
+        Long allocationSize = (Long) removeAttribute(ATTRIBUTE_ALLOCATION_SIZE);
+        return allocationSize == null ? 0L : allocationSize;
+    }
+
+    /**
+     * Set the byte range the next HASH command applies to.
+     * 
+     * @param start
+     *            The position of the first byte of the range
+     * @param end
+     *            The position of the last byte of the range
+     */
+    public void setHashRange(long start, long end) {
+        setAttribute(ATTRIBUTE_HASH_RANGE, new long[] { start, end });
+    }
+
+    /**
+     * Get the byte range the next HASH command applies to.
+     * 
+     * @return The positions of the first and last bytes of the range, null
+     *         for the whole file
+     */
+    public long[] getHashRange() {
+        return (long[]) getAttribute(ATTRIBUTE_HASH_RANGE);
+    }
+
     public void setStructure(Structure structure) {
         setAttribute(ATTRIBUTE_STRUCTURE, structure);
     }
@@ -703,6 +770,142 @@ public class FtpIoSession implements IoSession {
         }
     }
 
+    /**
+     * Get the lock held while executing a command of this session. This is
+     * not a monitor, so that blocking in a command does not pin the carrier
+     * thread of a virtual thread.
+     */
+    public Lock getCommandLock() {
+        Lock lock = (Lock) wrappedSession.getAttribute(ATTRIBUTE_COMMAND_LOCK);
+        if (lock == null) {
+            Lock newLock = new ReentrantLock();
+            lock = (Lock) wrappedSession.setAttributeIfAbsent(
+                    ATTRIBUTE_COMMAND_LOCK, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
+
+    /**
+     * Get the data connection currently transferring data, so that ABOR, STAT
+     * and NOOP can be handled while the command doing the transfer is still
+     * executing.
+     * 
+     * @return The data connection, null if no transfer is in progress
+     */
+    public IODataConnection getCurrentTransfer() {
+        return (IODataConnection) wrappedSession
+                .getAttribute(ATTRIBUTE_CURRENT_TRANSFER);
+    }
+
+    void setCurrentTransfer(IODataConnection transfer) {
+        if (transfer != null) {
+            wrappedSession.setAttribute(ATTRIBUTE_CURRENT_TRANSFER, transfer);
+        } else {
+            wrappedSession.removeAttribute(ATTRIBUTE_CURRENT_TRANSFER);
+        }
+    }
+
+    /**
+     * Set the completion of a command replying in the background. The next
+     * commands of the session are deferred until it is complete, so that the
+     * replies are sent in order.
+     * 
+     * @param completion
+     *            Completed once the command has written its reply, null once
+     *            no command replies in the background
+     */
+    public void setPendingCommand(CompletableFuture<?> completion) {
+        if (completion != null) {
+            wrappedSession.setAttribute(ATTRIBUTE_PENDING_COMMAND, completion);
+        } else {
+            wrappedSession.removeAttribute(ATTRIBUTE_PENDING_COMMAND);
+        }
+    }
+
+    /**
+     * Get the completion of the command replying in the background.
+     * 
+     * @return The completion, null if no command replies in the background
+     */
+    public CompletableFuture<?> getPendingCommand() {
+        return (CompletableFuture<?>) wrappedSession
+                .getAttribute(ATTRIBUTE_PENDING_COMMAND);
+    }
+
+    /**
+     * Is a command replying in the background still running.
+     */
+    public boolean isCommandPending() {
+        CompletableFuture<?> completion = getPendingCommand();
+        return completion != null && !completion.isDone();
+    }
+
+    /**
+     * Defer a command received while a command replies in the background, or
+     * while the commands deferred before it are executed. No thread waits for
+     * the deferred commands, they are taken with
+     * {@link #nextDeferredCommand()} once the command replying in the
+     * background is complete.
+     * 
+     * @return true if the command has been deferred, false if it can be
+     *         executed right away
+     */
+    public boolean deferCommand(FtpRequest request) {
+        DeferredCommands deferred = getDeferredCommands();
+        synchronized (deferred) {
+            if (deferred.executing || isCommandPending()) {
+                deferred.requests.add(request);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Take the next deferred command to execute, once no command replies in
+     * the background anymore. The commands received meanwhile are deferred
+     * until this method returns null.
+     * 
+     * @return The next deferred command, null if there is none
+     */
+    public FtpRequest nextDeferredCommand() {
+        DeferredCommands deferred = getDeferredCommands();
+        synchronized (deferred) {
+            FtpRequest request = deferred.requests.poll();
+            deferred.executing = request != null;
+            return request;
+        }
+    }
+
+    private DeferredCommands getDeferredCommands() {
+        DeferredCommands deferred = (DeferredCommands) wrappedSession
+                .getAttribute(ATTRIBUTE_DEFERRED_COMMANDS);
+        if (deferred == null) {
+            deferred = new DeferredCommands();
+            DeferredCommands existing = (DeferredCommands) wrappedSession
+                    .setAttributeIfAbsent(ATTRIBUTE_DEFERRED_COMMANDS,
+                            deferred);
+            if (existing != null) {
+                deferred = existing;
+            }
+        }
+        return deferred;
+    }
+
+    /**
+     * The commands received while a command replies in the background.
+     */
+    private static class DeferredCommands {
+
+        private final Queue<FtpRequest> requests = new ArrayDeque<>();
+
+        // a deferred command taken for execution
+        private boolean executing = false;
+    }
+
     public FtpIoSession(IoSession wrappedSession, FtpServerContext context) {
         this.wrappedSession = wrappedSession;
         this.context = context;
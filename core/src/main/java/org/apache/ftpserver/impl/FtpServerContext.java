@@ -19,6 +19,8 @@
 
 package org.apache.ftpserver.impl;
 
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
 import java.util.Map;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -70,4 +72,74 @@ public interface FtpServerContext extends FtpletContext {
      * @return the thread pool executor for this context.
      */
     ThreadPoolExecutor getThreadPoolExecutor();
+
+    /**
+     * Returns the bandwidth shaper enforcing the transfer rate limits shared
+     * by the data transfers of this context.
+     * @return the bandwidth shaper for this context.
+     */
+    BandwidthShaper getBandwidthShaper();
+
+    /**
+     * Returns the pool of the buffers used by the data transfers of this
+     * context.
+     * @return the transfer buffer pool for this context.
+     */
+    TransferBufferPool getTransferBufferPool();
+
+    /**
+     * Returns the reactor driving the non-blocking data connections of this
+     * context, started on first use.
+     * @return the data connection reactor for this context.
+     */
+    DataConnectionReactor getDataConnectionReactor() throws IOException;
+
+    /**
+     * Returns the pool of the passive server sockets kept bound between
+     * transfers of this context.
+     * @return the passive socket pool for this context.
+     */
+    PassiveSocketPool getPassiveSocketPool();
+
+    /**
+     * Returns the executor running the handshake tasks of the asynchronous
+     * transfers over the secure non-blocking data connections of this
+     * context, with at most one thread per processor.
+     * @return the handshake executor for this context.
+     */
+    ExecutorService getHandshakeExecutor();
+
+    /**
+     * Returns the cache of the checksums of the files recently uploaded or
+     * checked through this context.
+     * @return the checksum cache for this context.
+     */
+    ChecksumCache getChecksumCache();
+
+    /**
+     * Returns the hasher computing the HASH command values of this context in
+     * the background.
+     * @return the file hasher for this context.
+     */
+    FileHasher getFileHasher();
+
+    /**
+     * Returns the indexes finding the file positions of ASCII restarts.
+     * @return the ASCII offset index cache for this context.
+     */
+    AsciiOffsetIndexCache getAsciiOffsetIndexCache();
+
+    /**
+     * Returns the writer writing the uploads of this context to the files on
+     * separate threads, if enabled by the connection configuration.
+     * @return the write-behind writer for this context.
+     */
+    WriteBehindWriter getWriteBehindWriter();
+
+    /**
+     * Returns the reader reading the downloads of this context ahead on
+     * separate threads, if enabled by the connection configuration.
+     * @return the read-ahead reader for this context.
+     */
+    ReadAheadReader getReadAheadReader();
 }
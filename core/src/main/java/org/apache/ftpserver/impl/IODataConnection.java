@@ -19,18 +19,31 @@
 
 package org.apache.ftpserver.impl;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.UncheckedIOException;
 import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
+import javax.net.ssl.SSLSocket;
+
 import org.apache.ftpserver.ftplet.DataConnection;
 import org.apache.ftpserver.ftplet.DataType;
 import org.apache.ftpserver.ftplet.FtpSession;
@@ -54,18 +67,137 @@ public class IODataConnection implements DataConnection {
 
     
     private static final byte[] EOL = System.getProperty("line.separator").getBytes();
+
+    /**
+     * The maximum number of bytes handed to a single
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+     * or
+     * {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}
+     * call. Kept reasonably small so that the session statistics are updated
+     * during long transfers.
+     */
+    private static final int ZERO_COPY_CHUNK_SIZE = 1024 * 1024;
     
     private final FtpIoSession session;
 
+    private final FtpServerContext serverContext;
+
     private final Socket socket;
 
     private final ServerDataConnectionFactory factory;
 
+    private final BandwidthShaper bandwidthShaper;
+
+    private final TransferBufferPool bufferPool;
+
+    private final DataConnectionReactor reactor;
+
+    private final SslEngineSocketChannel secureChannel;
+
+    private final WriteBehindWriter writeBehindWriter;
+
+    private final ReadAheadReader readAheadReader;
+
+    private ChecksumCalculator checksumCalculator = null;
+
+    private volatile AsyncTransfer asyncTransfer = null;
+
+    private volatile boolean aborted = false;
+
+    private volatile long bytesTransferred = 0L;
+
     public IODataConnection(final Socket socket, final FtpIoSession session,
             final ServerDataConnectionFactory factory) {
+        this(socket, session, factory, null);
+    }
+
+    public IODataConnection(final Socket socket, final FtpIoSession session,
+            final ServerDataConnectionFactory factory,
+            final FtpServerContext serverContext) {
+        this(socket, session, factory, serverContext, null);
+    }
+
+    /**
+     * @param reactor
+     *            The reactor to wait for the socket channel with if the data
+     *            socket is non-blocking, null if the data socket is blocking
+     */
+    public IODataConnection(final Socket socket, final FtpIoSession session,
+            final ServerDataConnectionFactory factory,
+            final FtpServerContext serverContext,
+            final DataConnectionReactor reactor) {
+        this(socket, session, factory, serverContext, reactor, null);
+    }
+
+    /**
+     * @param reactor
+     *            The reactor to wait for the socket channel with if the data
+     *            socket is non-blocking, null if the data socket is blocking
+     * @param secureChannel
+     *            The channel encrypting the data of the non-blocking data
+     *            socket, null if the data is not encrypted or the data socket
+     *            is an {@link SSLSocket}
+     */
+    IODataConnection(final Socket socket, final FtpIoSession session,
+            final ServerDataConnectionFactory factory,
+            final FtpServerContext serverContext,
+            final DataConnectionReactor reactor,
+            final SslEngineSocketChannel secureChannel) {
         this.session = session;
+        this.serverContext = serverContext;
         this.socket = socket;
         this.factory = factory;
+        this.reactor = reactor;
+        this.secureChannel = secureChannel;
+        if (serverContext != null) {
+            this.bandwidthShaper = serverContext.getBandwidthShaper();
+            this.bufferPool = serverContext.getTransferBufferPool();
+            this.writeBehindWriter = serverContext.getWriteBehindWriter();
+            this.readAheadReader = serverContext.getReadAheadReader();
+        } else {
+            DefaultConnectionConfig connectionConfig = new DefaultConnectionConfig();
+            this.bandwidthShaper = new BandwidthShaper(connectionConfig);
+            this.bufferPool = new TransferBufferPool(connectionConfig);
+            this.writeBehindWriter = null;
+            this.readAheadReader = null;
+        }
+    }
+
+    /**
+     * Get a connection for the next transfer over the same data socket, used
+     * in block mode where the data socket stays open between transfers.
+     */
+    IODataConnection reopen() {
+        return new IODataConnection(socket, session, factory, serverContext,
+                reactor, secureChannel);
+    }
+
+    /**
+     * Abort the secure channel of the non-blocking data socket, if any,
+     * handing its buffers back to the pool. The streams of the block mode
+     * leave the channel open, so the factory does this when closing the data
+     * connection. No TLS close notification is sent, as the data connection
+     * is also closed on aborts from the I/O threads of the control
+     * connections, which must not wait for the client. The transfers in
+     * block mode end with the end of file marker instead.
+     */
+    void abortSecureChannel() {
+        if (secureChannel != null) {
+            secureChannel.abort();
+        }
+    }
+
+    /**
+     * Compute checksums of the data received by the next upload on this
+     * connection, as it is written to the file.
+     *
+     * @param checksumCalculator
+     *            The calculator to update with the uploaded data, null to
+     *            compute no checksums
+     */
+    public void setChecksumCalculator(
+            final ChecksumCalculator checksumCalculator) {
+        this.checksumCalculator = checksumCalculator;
     }
 
     /**
@@ -81,9 +213,18 @@ public class IODataConnection implements DataConnection {
             }
 
             // create input stream
-            InputStream is = dataSoc.getInputStream();
+            InputStream is;
+            if (secureChannel != null) {
+                is = secureChannel.getInputStream();
+            } else if (reactor != null) {
+                is = createReactorChannel().getInputStream();
+            } else {
+                is = dataSoc.getInputStream();
+            }
             if (factory.isZipMode()) {
                 is = new InflaterInputStream(is);
+            } else if (factory.isBlockMode()) {
+                is = new BlockModeInputStream(is);
             }
             return is;
         } catch (IOException ex) {
@@ -105,9 +246,18 @@ public class IODataConnection implements DataConnection {
             }
 
             // create output stream
-            OutputStream os = dataSoc.getOutputStream();
+            OutputStream os;
+            if (secureChannel != null) {
+                os = secureChannel.getOutputStream();
+            } else if (reactor != null) {
+                os = createReactorChannel().getOutputStream();
+            } else {
+                os = dataSoc.getOutputStream();
+            }
             if (factory.isZipMode()) {
                 os = new DeflaterOutputStream(os);
+            } else if (factory.isBlockMode()) {
+                os = new BlockModeOutputStream(os);
             }
             return os;
         } catch (IOException ex) {
@@ -116,14 +266,10 @@ public class IODataConnection implements DataConnection {
         }
     }
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @seeorg.apache.ftpserver.FtpDataConnection2#transferFromClient(java.io.
-     * OutputStream)
+    /**
+     * Open the limiter of an upload with the rate allowed to the user.
      */
-    public final long transferFromClient(FtpSession session,
-            final OutputStream out) throws IOException {
+    private TransferRateLimiter openUploadLimiter(FtpSession session) {
         TransferRateRequest transferRateRequest = new TransferRateRequest();
         transferRateRequest = (TransferRateRequest) session.getUser()
                 .authorize(transferRateRequest);
@@ -131,24 +277,13 @@ public class IODataConnection implements DataConnection {
         if (transferRateRequest != null) {
             maxRate = transferRateRequest.getMaxUploadRate();
         }
-
-        InputStream is = getDataInputStream();
-        try {
-            return transfer(session, false, is, out, maxRate);
-        } finally {
-            IoUtils.close(is);
-        }
+        return bandwidthShaper.openUploadLimiter(this.session, maxRate);
     }
 
-    /*
-     * (non-Javadoc)
-     * 
-     * @see
-     * org.apache.ftpserver.FtpDataConnection2#transferToClient(java.io.InputStream
-     * )
+    /**
+     * Open the limiter of a download with the rate allowed to the user.
      */
-    public final long transferToClient(FtpSession session, final InputStream in)
-            throws IOException {
+    private TransferRateLimiter openDownloadLimiter(FtpSession session) {
         TransferRateRequest transferRateRequest = new TransferRateRequest();
         transferRateRequest = (TransferRateRequest) session.getUser()
                 .authorize(transferRateRequest);
@@ -156,155 +291,1424 @@ public class IODataConnection implements DataConnection {
         if (transferRateRequest != null) {
             maxRate = transferRateRequest.getMaxDownloadRate();
         }
-
-        OutputStream out = getDataOutputStream();
-        try {
-            return transfer(session, true, in, out, maxRate);
-        } finally {
-            IoUtils.close(out);
-        }
+        return bandwidthShaper.openDownloadLimiter(this.session, maxRate);
     }
 
     /*
      * (non-Javadoc)
      * 
-     * @see
-     * org.apache.ftpserver.FtpDataConnection2#transferToClient(java.lang.String
-     * )
+     * @seeorg.apache.ftpserver.FtpDataConnection2#transferFromClient(java.io.
+     * OutputStream)
      */
-    public final void transferToClient(FtpSession session, final String str)
-            throws IOException {
-        OutputStream out = getDataOutputStream();
-        Writer writer = null;
+    public final long transferFromClient(FtpSession session,
+            final OutputStream out) throws IOException {
+        TransferRateLimiter rateLimiter = openUploadLimiter(session);
+        this.session.setCurrentTransfer(this);
         try {
-            writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
-            writer.write(str);
+            InputStream is = getDataInputStream();
+            try {
+                long transferredSize;
+                FileChannel fileChannel;
+                if (writeBehindWriter != null && writeBehindWriter.isEnabled()) {
+                    transferredSize = transferWriteBehind(session, is, out,
+                            rateLimiter);
+                } else if ((fileChannel = getZeroCopyChannel(session, out)) != null) {
+                    transferredSize = transferFromClient(session, fileChannel,
+                            rateLimiter);
+                } else {
+                    transferredSize = transfer(session, false, is, out,
+                            rateLimiter);
+                }
 
-            // update session
-            if (session instanceof DefaultFtpSession) {
-                ((DefaultFtpSession) session).increaseWrittenDataBytes(str
-                        .getBytes(StandardCharsets.UTF_8).length);
+                // in block mode, the data connection carries the next
+                // transfer if the client marked the end of the file
+                if (is instanceof BlockModeInputStream
+                        && ((BlockModeInputStream) is).isEndOfFile()) {
+                    factory.blockTransferCompleted();
+                }
+                return transferredSize;
+            } finally {
+                IoUtils.close(is);
             }
         } finally {
-            if (writer != null) {
-                writer.flush();
+            this.session.setCurrentTransfer(null);
+            bandwidthShaper.closeLimiter(rateLimiter);
+        }
+    }
+
+    /**
+     * Transfer from the client with the data written to the file by a thread
+     * of the write-behind writer, so that slow disk writes do not hold the
+     * reading of the socket. Returns once all the received data is written,
+     * the data received before a failure being written as well. Waiting for
+     * the writing thread longer than the idle time of the data connection
+     * fails the transfer.
+     */
+    private long transferWriteBehind(FtpSession session, final InputStream in,
+            final OutputStream out, final TransferRateLimiter rateLimiter)
+            throws IOException {
+        WriteBehindOutputStream writeBehind = writeBehindWriter.open(out,
+                socket.getSoTimeout());
+        boolean finished = false;
+        try {
+            long transferredSize = transfer(session, false, in, writeBehind,
+                    rateLimiter);
+            writeBehind.finish();
+            finished = true;
+            return transferredSize;
+        } finally {
+            if (!finished) {
+                try {
+                    writeBehind.finish();
+                } catch (IOException e) {
+                    LOG.debug("Failed writing the data received before the transfer failed", e);
+                }
             }
-            IoUtils.close(writer);
         }
+    }
 
+    /**
+     * Get the file channel to use for a channel to channel transfer from the
+     * client. Returns null if the bytes must pass through the stream path.
+     */
+    private FileChannel getZeroCopyChannel(FtpSession session,
+            final OutputStream out) {
+        if (!(out instanceof FileOutputStream) || !isZeroCopyPossible(session)) {
+            return null;
+        }
+        return ((FileOutputStream) out).getChannel();
     }
 
-    private long transfer(FtpSession session, boolean isWrite,
-                          final InputStream in, final OutputStream out, final int maxRate)
+    /**
+     * Transfer data from the data socket channel into the file, starting at
+     * the current channel position.
+     */
+    private long transferFromClient(FtpSession session,
+            final FileChannel fileChannel, final TransferRateLimiter rateLimiter)
             throws IOException {
         long transferredSize = 0L;
 
-        boolean isAscii = session.getDataType() == DataType.ASCII;
-        long startTime = System.currentTimeMillis();
-        byte[] buff = new byte[4096];
+        DefaultFtpSession defaultFtpSession = null;
+        if (session instanceof DefaultFtpSession) {
+            defaultFtpSession = (DefaultFtpSession) session;
+        }
+
+        // with direct buffers, move the data through a pooled buffer rather
+        // than the small temporary buffer used by transferFrom for sockets,
+        // checksums also need the data to pass through a buffer
+        ByteBuffer buffer = null;
+        if (bufferPool.isDirect() || checksumCalculator != null) {
+            buffer = bufferPool.acquireBuffer();
+        }
 
-        BufferedInputStream bis = null;
-        BufferedOutputStream bos = null;
+        AwaitableReadableChannel socketChannel = null;
+        long position = fileChannel.position();
         try {
-            bis = IoUtils.getBufferedInputStream(in);
+            if (reactor != null) {
+                socketChannel = createReactorChannel();
+            } else {
+                socketChannel = new IdleTimeoutReadableChannel(
+                        socket.getChannel(), socket.getSoTimeout());
+            }
+            while (true) {
+                checkAborted();
 
-            bos = IoUtils.getBufferedOutputStream(out);
+                // wait for the rate limit to allow the transfer
+                long length = ZERO_COPY_CHUNK_SIZE;
+                if (rateLimiter != null) {
+                    try {
+                        length = rateLimiter.acquire(length);
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                }
 
-            DefaultFtpSession defaultFtpSession = null;
-            if (session instanceof DefaultFtpSession) {
-                defaultFtpSession = (DefaultFtpSession) session;
+                // wait for data and move what is available to the file
+                socketChannel.awaitReadable();
+                long count;
+                if (buffer != null) {
+                    count = readToFile(socketChannel, buffer, length,
+                            fileChannel, position);
+                } else {
+                    count = fileChannel.transferFrom(socketChannel, position,
+                            length);
+                }
+                if (rateLimiter != null) {
+                    rateLimiter.release(length - count);
+                }
+                if (count == 0) {
+                    if (socketChannel.isEndOfStream()) {
+                        break;
+                    }
+                    continue;
+                }
+                position += count;
+
+                // update MINA session
+                if (defaultFtpSession != null) {
+                    defaultFtpSession.increaseReadDataBytes((int) count);
+                }
+
+                transferredSize += count;
+                bytesTransferred += count;
+
+                notifyObserver();
+            }
+        } catch(IOException | RuntimeException e) {
+            if (aborted) {
+                LOG.debug("Data transfer aborted", e);
+                factory.closeDataConnection();
+                throw createAbortedException(e);
+            }
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } finally {
+            // leave the file positioned after the received data, also when
+            // the transfer fails, for the file to be trimmed there
+            if (fileChannel.isOpen()) {
+                try {
+                    fileChannel.position(position);
+                } catch (IOException e) {
+                    LOG.debug("Failed to position file after received data", e);
+                }
             }
+            if (socketChannel != null) {
+                try {
+                    socketChannel.close();
+                } catch (IOException e) {
+                    LOG.debug("Failed to restore blocking mode on data socket", e);
+                }
+            }
+            bufferPool.release(buffer);
+        }
 
-            byte lastByte = 0;
-            while (true) {
+        return transferredSize;
+    }
 
-                // if current rate exceeds the max rate, sleep for 50ms
-                // and again check the current transfer rate
-                if (maxRate > 0) {
+    /**
+     * Read the data available from the socket channel, at most length bytes,
+     * and write it to the file at the given position.
+     * 
+     * @return The number of bytes moved, 0 if none were available or the end
+     *         of the stream was reached
+     */
+    private long readToFile(final AwaitableReadableChannel socketChannel,
+            final ByteBuffer buffer, final long length,
+            final FileChannel fileChannel, long position) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Math.min(length, buffer.capacity()));
+        int count = socketChannel.read(buffer);
+        if (count <= 0) {
+            return 0;
+        }
+        buffer.flip();
+        if (checksumCalculator != null) {
+            checksumCalculator.update(buffer);
+        }
+        while (buffer.hasRemaining()) {
+            position += fileChannel.write(buffer, position);
+        }
+        return count;
+    }
 
-                    // prevent "divide by zero" exception
-                    long interval = System.currentTimeMillis() - startTime;
-                    if (interval == 0) {
-                        interval = 1;
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.apache.ftpserver.FtpDataConnection2#transferToClient(java.io.InputStream
+     * )
+     */
+    public final long transferToClient(FtpSession session, final InputStream in)
+            throws IOException {
+        TransferRateLimiter rateLimiter = openDownloadLimiter(session);
+        this.session.setCurrentTransfer(this);
+        try {
+            OutputStream out = getDataOutputStream();
+            try {
+                long transferredSize;
+                FileChannel fileChannel;
+                if (readAheadReader != null && readAheadReader.isEnabled()) {
+                    ReadAheadInputStream readAhead = readAheadReader.open(in);
+                    try {
+                        transferredSize = transfer(session, true, readAhead,
+                                out, rateLimiter);
+                    } finally {
+                        IoUtils.close(readAhead);
                     }
+                } else if ((fileChannel = getZeroCopyChannel(session, in)) != null) {
+                    transferredSize = transferToClient(session, fileChannel,
+                            rateLimiter);
+                } else {
+                    transferredSize = transfer(session, true, in, out,
+                            rateLimiter);
+                }
+                sendEndOfFile(out);
+                return transferredSize;
+            } finally {
+                IoUtils.close(out);
+            }
+        } finally {
+            this.session.setCurrentTransfer(null);
+            bandwidthShaper.closeLimiter(rateLimiter);
+        }
+    }
 
-                    // check current rate
-                    long currRate = (transferredSize * 1000L) / interval;
-                    if (currRate > maxRate) {
-                        try {
-                            Thread.sleep(50);
-                        } catch (InterruptedException ex) {
-                            break;
-                        }
-                        continue;
+    /**
+     * In block mode, send the end of file marker, the data connection then
+     * carries the next transfer.
+     */
+    private void sendEndOfFile(final OutputStream out) throws IOException {
+        if (out instanceof BlockModeOutputStream) {
+            ((BlockModeOutputStream) out).finish();
+            factory.blockTransferCompleted();
+        }
+    }
+
+    /**
+     * Get the file channel to use for a zero-copy transfer to the client. Zero
+     * copy is only possible for binary transfers of a file stream over a plain
+     * (not secure and not compressed) data socket, in all other cases the
+     * bytes must pass through the JVM and null is returned.
+     */
+    private FileChannel getZeroCopyChannel(FtpSession session,
+            final InputStream in) {
+        if (!(in instanceof FileInputStream) || !isZeroCopyPossible(session)) {
+            return null;
+        }
+        return ((FileInputStream) in).getChannel();
+    }
+
+    /**
+     * Check if file data can be moved directly between the file and the data
+     * socket channel, that is for binary transfers over a plain (not secure,
+     * not compressed and not in blocks) channel backed data socket.
+     */
+    private boolean isZeroCopyPossible(FtpSession session) {
+        if (session.getDataType() == DataType.ASCII || factory.isZipMode()
+                || factory.isBlockMode()) {
+            return false;
+        }
+        return socket != null && !(socket instanceof SSLSocket)
+                && secureChannel == null && socket.getChannel() != null;
+    }
+
+    /**
+     * Wrap the non-blocking data socket channel to wait for it through the
+     * reactor.
+     */
+    private ReactorSocketChannel createReactorChannel() throws IOException {
+        return new ReactorSocketChannel(socket.getChannel(), reactor, socket
+                .getSoTimeout());
+    }
+
+    /**
+     * Transfer the remainder of a file, starting at the current channel
+     * position, directly into the data socket channel.
+     */
+    private long transferToClient(FtpSession session,
+            final FileChannel fileChannel, final TransferRateLimiter rateLimiter)
+            throws IOException {
+        long transferredSize = 0L;
+
+        DefaultFtpSession defaultFtpSession = null;
+        if (session instanceof DefaultFtpSession) {
+            defaultFtpSession = (DefaultFtpSession) session;
+        }
+
+        try {
+            SocketChannel socketChannel = socket.getChannel();
+            long position = fileChannel.position();
+            long size = fileChannel.size();
+            while (position < size) {
+                checkAborted();
+
+                // wait for the rate limit to allow the transfer
+                long length = Math.min(ZERO_COPY_CHUNK_SIZE, size - position);
+                if (rateLimiter != null) {
+                    try {
+                        length = rateLimiter.acquire(length);
+                    } catch (InterruptedException ex) {
+                        break;
                     }
                 }
 
-                // read data
-                int count = bis.read(buff);
-
-                if (count == -1) {
+                long count = fileChannel.transferTo(position, length,
+                        socketChannel);
+                if (rateLimiter != null) {
+                    rateLimiter.release(length - count);
+                }
+                if (count <= 0) {
+                    if (reactor != null && position < fileChannel.size()) {
+                        // the socket send buffer is full
+                        createReactorChannel().awaitWritable();
+                        continue;
+                    }
+                    // the file has been truncated while we were sending it
                     break;
                 }
+                position += count;
 
                 // update MINA session
                 if (defaultFtpSession != null) {
-                    if (isWrite) {
-                        defaultFtpSession.increaseWrittenDataBytes(count);
-                    } else {
-                        defaultFtpSession.increaseReadDataBytes(count);
-                    }
-                }
-
-                // write data
-                // if ascii, replace \n by \r\n
-                if (isAscii) {
-                    for (int i = 0; i < count; ++i) {
-                        byte b = buff[i];
-                        if(isWrite) {
-                            if (b == '\n' && lastByte != '\r') {
-                                bos.write('\r');
-                            }
-    
-                            bos.write(b);
-                        } else {
-                            if(b == '\n') {
-                                // for reads, we should always get \r\n
-                                // so what we do here is to ignore \n bytes 
-                                // and on \r dump the system local line ending.
-                                // Some clients won't transform new lines into \r\n so we make sure we don't delete new lines
-                                if (lastByte != '\r'){
-                                    bos.write(EOL);
-                                }
-                            } else if(b == '\r') {
-                                bos.write(EOL);
-                            } else {
-                                // not a line ending, just output
-                                bos.write(b);
-                            }
-                        }
-                        // store this byte so that we can compare it for line endings
-                        lastByte = b;
-                    }
-                } else {
-                    bos.write(buff, 0, count);
+                    defaultFtpSession.increaseWrittenDataBytes((int) count);
                 }
 
                 transferredSize += count;
+                bytesTransferred += count;
 
                 notifyObserver();
             }
+            fileChannel.position(position);
         } catch(IOException | RuntimeException e) {
+            if (aborted) {
+                LOG.debug("Data transfer aborted", e);
+                factory.closeDataConnection();
+                throw createAbortedException(e);
+            }
             LOG.warn("Exception during data transfer, closing data connection socket", e);
             factory.closeDataConnection();
             throw e;
+        }
+
+        return transferredSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * org.apache.ftpserver.FtpDataConnection2#transferToClient(java.lang.String
+     * )
+     */
+    public final void transferToClient(FtpSession session, final String str)
+            throws IOException {
+        transferToClient(session, Collections.singletonList(str).iterator());
+    }
+
+    /**
+     * Transfer text to the client, piece by piece. Each piece is encoded as
+     * UTF-8 into a pooled buffer which is written to the data connection
+     * whenever full, so that the text never needs to be held in memory as a
+     * whole. Directory listings are sent this way, a few lines per piece.
+     * 
+     * @param pieces
+     *            The pieces of text, taken from the iterator as the buffer is
+     *            written. Each piece is copied before the next one is taken,
+     *            so the iterator may reuse the same builder. The iterator may
+     *            report failures as {@link UncheckedIOException}, the cause
+     *            being rethrown.
+     * @return The number of bytes transferred
+     */
+    public final long transferToClient(FtpSession session,
+            final Iterator<? extends CharSequence> pieces) throws IOException {
+        OutputStream out = getDataOutputStream();
+        ByteBuffer buffer = bufferPool.acquireHeapBuffer();
+        this.session.setCurrentTransfer(this);
+        try {
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer chars = CharBuffer.allocate(buffer.capacity());
+            chars.flip();
+            long writtenSize = 0;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                checkAborted();
+                endOfInput = !pieces.hasNext();
+                if (!endOfInput) {
+                    // a high surrogate ending the previous piece is kept in
+                    // front of this one, to be encoded with its low surrogate
+                    chars = append(chars, pieces.next());
+                }
+                while (encoder.encode(chars, buffer, endOfInput).isOverflow()) {
+                    writtenSize += writeBuffer(out, buffer);
+                }
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                writtenSize += writeBuffer(out, buffer);
+            }
+            writtenSize += writeBuffer(out, buffer);
+            sendEndOfFile(out);
+
+            // update session
+            if (session instanceof DefaultFtpSession) {
+                ((DefaultFtpSession) session)
+                        .increaseWrittenDataBytes((int) writtenSize);
+            }
+            return writtenSize;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (IOException e) {
+            if (aborted) {
+                throw createAbortedException(e);
+            }
+            throw e;
         } finally {
-            if (bos != null) {
-                bos.flush();
+            this.session.setCurrentTransfer(null);
+            bufferPool.release(buffer);
+            out.flush();
+            IoUtils.close(out);
+        }
+    }
+
+    /**
+     * Append a piece of text after the chars remaining in a buffer, growing
+     * the buffer if needed.
+     * 
+     * @return The buffer, ready to be read
+     */
+    private static CharBuffer append(CharBuffer chars,
+            final CharSequence piece) {
+        int length = piece.length();
+        chars.compact();
+        if (chars.remaining() < length) {
+            chars.flip();
+            chars = CharBuffer.allocate(chars.remaining() + length).put(chars);
+        }
+
+        char[] array = chars.array();
+        int offset = chars.arrayOffset() + chars.position();
+        if (piece instanceof String) {
+            ((String) piece).getChars(0, length, array, offset);
+        } else if (piece instanceof StringBuilder) {
+            ((StringBuilder) piece).getChars(0, length, array, offset);
+        } else {
+            for (int i = 0; i < length; i++) {
+                array[offset + i] = piece.charAt(i);
             }
         }
+        chars.position(chars.position() + length);
+        chars.flip();
+        return chars;
+    }
 
-        return transferredSize;
+    /**
+     * Write the encoded bytes of the buffer to the data connection and clear
+     * the buffer.
+     * 
+     * @return The number of bytes written
+     */
+    private int writeBuffer(final OutputStream out, final ByteBuffer buffer)
+            throws IOException {
+        checkAborted();
+        int length = buffer.position();
+        out.write(buffer.array(), 0, length);
+        bytesTransferred += length;
+        buffer.clear();
+        return length;
+    }
+
+    /**
+     * Can the transfers of this data connection run asynchronously, with
+     * {@link #transferToClientAsync(FtpSession, InputStream)},
+     * {@link #transferToClientAsync(FtpSession, Iterator)} and
+     * {@link #transferFromClientAsync(FtpSession, OutputStream)}? This is the
+     * case for the non-blocking data sockets, plain or secured by an
+     * {@link SslEngineSocketChannel}, the uploads also needing the stream
+     * mode.
+     * 
+     * @param upload
+     *            true for a transfer from the client
+     */
+    public boolean isAsyncTransferPossible(final boolean upload) {
+        if (reactor == null || socket == null || socket.getChannel() == null) {
+            return false;
+        }
+        return !upload || (!factory.isZipMode() && !factory.isBlockMode());
+    }
+
+    /**
+     * Transfer data to the client without holding the calling thread, see
+     * {@link #transferToClient(FtpSession, InputStream)}. The data is moved by
+     * the transfer threads of the reactor whenever the socket can take it.
+     * 
+     * @return Completed with the number of bytes transferred, or with the
+     *         failure of the transfer, a {@link SocketException} if it was
+     *         aborted
+     */
+    public final CompletableFuture<Long> transferToClientAsync(
+            FtpSession session, final InputStream in) throws IOException {
+        TransferRateLimiter rateLimiter = openDownloadLimiter(session);
+        this.session.setCurrentTransfer(this);
+        try {
+            FileChannel fileChannel;
+            AsyncTransfer transfer;
+            if (readAheadReader != null && readAheadReader.isEnabled()) {
+                transfer = new AsyncDownload(session, readAheadReader.open(in),
+                        true, rateLimiter);
+            } else if ((fileChannel = getZeroCopyChannel(session, in)) != null) {
+                transfer = new AsyncZeroCopyDownload(session, fileChannel,
+                        rateLimiter);
+            } else {
+                transfer = new AsyncDownload(session, in, false, rateLimiter);
+            }
+            return startAsync(transfer);
+        } catch (IOException | RuntimeException e) {
+            this.session.setCurrentTransfer(null);
+            bandwidthShaper.closeLimiter(rateLimiter);
+            throw e;
+        }
+    }
+
+    /**
+     * Transfer text to the client without holding the calling thread, see
+     * {@link #transferToClient(FtpSession, Iterator)}. The pieces are taken
+     * from the iterator by the transfer threads of the reactor.
+     * 
+     * @return Completed with the number of bytes transferred, or with the
+     *         failure of the transfer
+     */
+    public final CompletableFuture<Long> transferToClientAsync(
+            FtpSession session, final Iterator<? extends CharSequence> pieces)
+            throws IOException {
+        this.session.setCurrentTransfer(this);
+        try {
+            return startAsync(new AsyncTextDownload(session, pieces));
+        } catch (IOException | RuntimeException e) {
+            this.session.setCurrentTransfer(null);
+            throw e;
+        }
+    }
+
+    /**
+     * Transfer data from the client without holding the calling thread, see
+     * {@link #transferFromClient(FtpSession, OutputStream)}. The data is
+     * moved by the transfer threads of the reactor whenever the socket has
+     * some.
+     * 
+     * @return Completed with the number of bytes transferred, or with the
+     *         failure of the transfer, a {@link SocketException} if it was
+     *         aborted
+     */
+    public final CompletableFuture<Long> transferFromClientAsync(
+            FtpSession session, final OutputStream out) throws IOException {
+        TransferRateLimiter rateLimiter = openUploadLimiter(session);
+        this.session.setCurrentTransfer(this);
+        try {
+            return startAsync(new AsyncUpload(session, out, rateLimiter));
+        } catch (IOException | RuntimeException e) {
+            this.session.setCurrentTransfer(null);
+            bandwidthShaper.closeLimiter(rateLimiter);
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Long> startAsync(final AsyncTransfer transfer) {
+        asyncTransfer = transfer;
+        return transfer.start();
+    }
+
+    /**
+     * Handle the failure of an asynchronous transfer like the failures of the
+     * other transfers.
+     */
+    private Throwable asyncTransferFailed(Throwable e) {
+        if (e instanceof UncheckedIOException) {
+            e = e.getCause();
+        }
+        if (aborted && e instanceof Exception) {
+            LOG.debug("Data transfer aborted", e);
+            factory.closeDataConnection();
+            return createAbortedException((Exception) e);
+        }
+        LOG.warn("Exception during data transfer, closing data connection socket", e);
+        factory.closeDataConnection();
+        return e;
+    }
+
+    /**
+     * Release what all asynchronous transfers hold.
+     */
+    private void asyncTransferReleased(final TransferRateLimiter rateLimiter) {
+        asyncTransfer = null;
+        this.session.setCurrentTransfer(null);
+        bandwidthShaper.closeLimiter(rateLimiter);
+    }
+
+    /**
+     * Count the bytes moved by an asynchronous transfer.
+     */
+    private void asyncTransferred(FtpSession session, final boolean isWrite,
+            final int count) {
+        if (session instanceof DefaultFtpSession) {
+            if (isWrite) {
+                ((DefaultFtpSession) session).increaseWrittenDataBytes(count);
+            } else {
+                ((DefaultFtpSession) session).increaseReadDataBytes(count);
+            }
+        }
+        bytesTransferred += count;
+        notifyObserver();
+    }
+
+    /**
+     * The data prepared for the socket, written whenever the socket can take
+     * it.
+     */
+    private static class PendingOutput extends ByteArrayOutputStream {
+
+        public PendingOutput(final int size) {
+            super(size);
+        }
+
+        /**
+         * Get the data written since the last reset, valid until the next
+         * write.
+         */
+        public ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    /**
+     * A transfer over the data socket channel, through the secure channel of
+     * a secure data connection. The handshake of the secure channel is then
+     * the first step of the transfer. The last one sends the encrypted data
+     * left and the TLS close notification, unless the data connection stays
+     * open in block mode.
+     */
+    private abstract class AsyncSocketTransfer extends AsyncTransfer {
+
+        private final SocketChannel socketChannel;
+
+        private boolean handshakeDone = secureChannel == null;
+
+        private boolean endOfData = false;
+
+        protected AsyncSocketTransfer() throws IOException {
+            super(reactor, socket.getChannel(), socket.getSoTimeout());
+            this.socketChannel = socket.getChannel();
+        }
+
+        @Override
+        protected final long transferSome() throws IOException {
+            if (!handshakeDone) {
+                checkAborted();
+                if (!secureChannel.handshakeSome()) {
+                    await(secureChannel.whenReady());
+                    return WAITING;
+                }
+                handshakeDone = true;
+            }
+            if (!endOfData) {
+                long count = transferData();
+                if (count != END) {
+                    return count;
+                }
+                endOfData = true;
+            }
+            if (secureChannel != null) {
+                checkAborted();
+                boolean sent = factory.isBlockMode() ? secureChannel.flush()
+                        : secureChannel.closeOutbound();
+                if (!sent) {
+                    await(secureChannel.whenReady());
+                    return WAITING;
+                }
+            }
+            return END;
+        }
+
+        /**
+         * Move the data that can be moved without waiting, see
+         * {@link #transferSome()}.
+         */
+        protected abstract long transferData() throws IOException;
+
+        /**
+         * Read the data available without waiting.
+         * 
+         * @return The number of bytes read, -1 at the end of the stream, 0 if
+         *         no data is available, see {@link #awaitSocket(int)}
+         */
+        protected int read(final ByteBuffer dst) throws IOException {
+            if (secureChannel != null) {
+                return secureChannel.read(dst);
+            }
+            return socketChannel.read(dst);
+        }
+
+        /**
+         * Write the data the socket send buffer has room for.
+         * 
+         * @return The number of bytes written, 0 if the buffer is full, see
+         *         {@link #awaitSocket(int)}
+         */
+        protected int write(final ByteBuffer src) throws IOException {
+            if (secureChannel != null) {
+                return secureChannel.write(src);
+            }
+            return socketChannel.write(src);
+        }
+
+        /**
+         * Continue once a read or a write which returned 0 can go on.
+         * 
+         * @param ops
+         *            {@link SelectionKey#OP_READ} or
+         *            {@link SelectionKey#OP_WRITE}
+         */
+        protected void awaitSocket(final int ops) {
+            if (secureChannel != null) {
+                await(secureChannel.whenReady());
+            } else {
+                awaitChannel(ops);
+            }
+        }
+    }
+
+    /**
+     * A file sent with {@link FileChannel#transferTo(long, long,
+     * java.nio.channels.WritableByteChannel)}, continuing whenever the socket
+     * send buffer has room.
+     */
+    private class AsyncZeroCopyDownload extends AsyncTransfer {
+
+        private final FtpSession ftpSession;
+
+        private final FileChannel fileChannel;
+
+        private final TransferRateLimiter rateLimiter;
+
+        private final SocketChannel socketChannel;
+
+        private final long size;
+
+        private long position;
+
+        private long transferredSize = 0L;
+
+        public AsyncZeroCopyDownload(final FtpSession ftpSession,
+                final FileChannel fileChannel,
+                final TransferRateLimiter rateLimiter) throws IOException {
+            super(reactor, socket.getChannel(), socket.getSoTimeout());
+            this.ftpSession = ftpSession;
+            this.fileChannel = fileChannel;
+            this.rateLimiter = rateLimiter;
+            this.socketChannel = socket.getChannel();
+            this.position = fileChannel.position();
+            this.size = fileChannel.size();
+        }
+
+        @Override
+        protected long transferSome() throws IOException {
+            checkAborted();
+            if (position >= size) {
+                return END;
+            }
+
+            // wait for the rate limit to allow the transfer
+            long length = Math.min(ZERO_COPY_CHUNK_SIZE, size - position);
+            if (rateLimiter != null) {
+                long acquired = rateLimiter.tryAcquire(length);
+                if (acquired > 0) {
+                    awaitDelay(acquired);
+                    return WAITING;
+                }
+                length = -acquired;
+            }
+
+            long count = fileChannel.transferTo(position, length,
+                    socketChannel);
+            if (rateLimiter != null) {
+                rateLimiter.release(length - Math.max(count, 0));
+            }
+            if (count <= 0) {
+                if (position < fileChannel.size()) {
+                    // the socket send buffer is full
+                    awaitChannel(SelectionKey.OP_WRITE);
+                    return WAITING;
+                }
+                // the file has been truncated while we were sending it
+                return END;
+            }
+            position += count;
+            transferredSize += count;
+            asyncTransferred(ftpSession, true, (int) count);
+            return count;
+        }
+
+        @Override
+        protected long finish() throws IOException {
+            fileChannel.position(position);
+            return transferredSize;
+        }
+
+        @Override
+        protected Throwable failed(final Throwable e) {
+            return asyncTransferFailed(e);
+        }
+
+        @Override
+        protected void release() {
+            asyncTransferReleased(rateLimiter);
+        }
+    }
+
+    /**
+     * Data sent through the conversions of the data type and the transfer
+     * mode, read from the stream and converted a buffer at a time, each
+     * buffer being written whenever the socket send buffer has room.
+     */
+    private class AsyncDownload extends AsyncSocketTransfer {
+
+        private final FtpSession ftpSession;
+
+        private final InputStream in;
+
+        private final boolean closeInput;
+
+        private final TransferRateLimiter rateLimiter;
+
+        private final ByteBuffer buffer;
+
+        private final AsciiTranslator asciiTranslator;
+
+        private final PendingOutput translated;
+
+        private final PendingOutput sink;
+
+        private final OutputStream out;
+
+        private ByteBuffer pending = null;
+
+        private boolean endOfFile = false;
+
+        private long transferredSize = 0L;
+
+        /**
+         * @param closeInput
+         *            true to close the input stream at the end of the
+         *            transfer, else it is closed by the caller
+         */
+        public AsyncDownload(final FtpSession ftpSession,
+                final InputStream in, final boolean closeInput,
+                final TransferRateLimiter rateLimiter) throws IOException {
+            this.ftpSession = ftpSession;
+            this.in = in;
+            this.closeInput = closeInput;
+            this.rateLimiter = rateLimiter;
+            buffer = bufferPool.acquireHeapBuffer();
+            if (ftpSession.getDataType() == DataType.ASCII) {
+                asciiTranslator = new AsciiTranslator(true, EOL);
+                translated = new PendingOutput(buffer.capacity() * 2);
+            } else {
+                asciiTranslator = null;
+                translated = null;
+            }
+            sink = new PendingOutput(buffer.capacity() + 256);
+            if (factory.isZipMode()) {
+                out = new DeflaterOutputStream(sink);
+            } else if (factory.isBlockMode()) {
+                out = new BlockModeOutputStream(sink);
+            } else {
+                out = sink;
+            }
+        }
+
+        @Override
+        protected long transferData() throws IOException {
+            checkAborted();
+
+            // send the converted data first
+            if (pending != null && pending.hasRemaining()) {
+                int count = write(pending);
+                if (count == 0) {
+                    awaitSocket(SelectionKey.OP_WRITE);
+                    return WAITING;
+                }
+                return count;
+            }
+            if (endOfFile) {
+                return END;
+            }
+
+            // wait for the rate limit to allow the transfer
+            byte[] buff = buffer.array();
+            int length = buff.length;
+            if (rateLimiter != null) {
+                long acquired = rateLimiter.tryAcquire(length);
+                if (acquired > 0) {
+                    awaitDelay(acquired);
+                    return WAITING;
+                }
+                length = (int) -acquired;
+            }
+
+            int count = in.read(buff, 0, length);
+            if (rateLimiter != null) {
+                rateLimiter.release(length - Math.max(count, 0));
+            }
+
+            sink.reset();
+            if (count == -1) {
+                // complete the compressed data or send the end of file block
+                endOfFile = true;
+                out.close();
+            } else if (asciiTranslator != null) {
+                translated.reset();
+                asciiTranslator.write(buff, 0, count, translated);
+                translated.writeTo(out);
+            } else {
+                out.write(buff, 0, count);
+            }
+            pending = sink.toByteBuffer();
+            if (count == -1) {
+                return 0;
+            }
+
+            transferredSize += count;
+            asyncTransferred(ftpSession, true, count);
+            return count;
+        }
+
+        @Override
+        protected long finish() {
+            if (out instanceof BlockModeOutputStream) {
+                factory.blockTransferCompleted();
+            }
+            return transferredSize;
+        }
+
+        @Override
+        protected Throwable failed(final Throwable e) {
+            return asyncTransferFailed(e);
+        }
+
+        @Override
+        protected void release() {
+            IoUtils.close(out);
+            if (closeInput) {
+                IoUtils.close(in);
+            }
+            bufferPool.release(buffer);
+            asyncTransferReleased(rateLimiter);
+        }
+    }
+
+    /**
+     * Text encoded as UTF-8 a buffer at a time, each buffer being written
+     * whenever the socket send buffer has room.
+     */
+    private class AsyncTextDownload extends AsyncSocketTransfer {
+
+        private final FtpSession ftpSession;
+
+        private final Iterator<? extends CharSequence> pieces;
+
+        private final ByteBuffer buffer;
+
+        private final CharsetEncoder encoder;
+
+        private final PendingOutput sink;
+
+        private final OutputStream out;
+
+        private CharBuffer chars;
+
+        private ByteBuffer pending = null;
+
+        private boolean endOfInput = false;
+
+        private boolean endOfFile = false;
+
+        private long writtenSize = 0L;
+
+        public AsyncTextDownload(final FtpSession ftpSession,
+                final Iterator<? extends CharSequence> pieces)
+                throws IOException {
+            this.ftpSession = ftpSession;
+            this.pieces = pieces;
+            buffer = bufferPool.acquireHeapBuffer();
+            encoder = StandardCharsets.UTF_8.newEncoder().onMalformedInput(
+                    CodingErrorAction.REPLACE).onUnmappableCharacter(
+                    CodingErrorAction.REPLACE);
+            chars = CharBuffer.allocate(buffer.capacity());
+            chars.flip();
+            sink = new PendingOutput(buffer.capacity() + 256);
+            if (factory.isZipMode()) {
+                out = new DeflaterOutputStream(sink);
+            } else if (factory.isBlockMode()) {
+                out = new BlockModeOutputStream(sink);
+            } else {
+                out = sink;
+            }
+        }
+
+        @Override
+        protected long transferData() throws IOException {
+            checkAborted();
+
+            // send the encoded text first
+            if (pending != null && pending.hasRemaining()) {
+                int count = write(pending);
+                if (count == 0) {
+                    awaitSocket(SelectionKey.OP_WRITE);
+                    return WAITING;
+                }
+                return count;
+            }
+            if (endOfFile) {
+                return END;
+            }
+
+            sink.reset();
+            long size = writtenSize;
+            endOfInput = !pieces.hasNext();
+            if (!endOfInput) {
+                // a high surrogate ending the previous piece is kept in
+                // front of this one, to be encoded with its low surrogate
+                chars = append(chars, pieces.next());
+            }
+            while (encoder.encode(chars, buffer, endOfInput).isOverflow()) {
+                writtenSize += writeBuffer(out, buffer);
+            }
+            if (endOfInput) {
+                while (encoder.flush(buffer).isOverflow()) {
+                    writtenSize += writeBuffer(out, buffer);
+                }
+                writtenSize += writeBuffer(out, buffer);
+                endOfFile = true;
+                out.close();
+            }
+            pending = sink.toByteBuffer();
+            return writtenSize - size;
+        }
+
+        @Override
+        protected long finish() {
+            if (out instanceof BlockModeOutputStream) {
+                factory.blockTransferCompleted();
+            }
+
+            // update session
+            if (ftpSession instanceof DefaultFtpSession) {
+                ((DefaultFtpSession) ftpSession)
+                        .increaseWrittenDataBytes((int) writtenSize);
+            }
+            return writtenSize;
+        }
+
+        @Override
+        protected Throwable failed(final Throwable e) {
+            return asyncTransferFailed(e);
+        }
+
+        @Override
+        protected void release() {
+            IoUtils.close(out);
+            bufferPool.release(buffer);
+            asyncTransferReleased(null);
+        }
+    }
+
+    /**
+     * Data received in stream mode, written to the file whenever the socket
+     * has some. The received data is written directly to the file channel if
+     * possible, else through the stream and the conversion of the data type.
+     */
+    private class AsyncUpload extends AsyncSocketTransfer {
+
+        private final FtpSession ftpSession;
+
+        private final TransferRateLimiter rateLimiter;
+
+        private final WriteBehindOutputStream writeBehind;
+
+        private final FileChannel fileChannel;
+
+        private final OutputStream out;
+
+        private final AsciiTranslator asciiTranslator;
+
+        private final ByteBuffer buffer;
+
+        private boolean finished = false;
+
+        private long position;
+
+        private long transferredSize = 0L;
+
+        public AsyncUpload(final FtpSession ftpSession,
+                final OutputStream out, final TransferRateLimiter rateLimiter)
+                throws IOException {
+            this.ftpSession = ftpSession;
+            this.rateLimiter = rateLimiter;
+            if (writeBehindWriter != null && writeBehindWriter.isEnabled()) {
+                writeBehind = writeBehindWriter.open(out, socket
+                        .getSoTimeout());
+                fileChannel = null;
+            } else {
+                writeBehind = null;
+                fileChannel = getZeroCopyChannel(ftpSession, out);
+            }
+            if (fileChannel != null) {
+                // checksums and direct buffers need the data in a buffer
+                // anyway, so the data always passes through one
+                this.out = null;
+                asciiTranslator = null;
+                position = fileChannel.position();
+                buffer = bufferPool.acquireBuffer();
+            } else {
+                OutputStream target = writeBehind != null ? writeBehind : out;
+                if (ftpSession.getDataType() == DataType.ASCII) {
+                    asciiTranslator = new AsciiTranslator(false, EOL);
+                    this.out = IoUtils.getBufferedOutputStream(target);
+                } else {
+                    asciiTranslator = null;
+                    this.out = target;
+                }
+                buffer = bufferPool.acquireHeapBuffer();
+            }
+        }
+
+        @Override
+        protected long transferData() throws IOException {
+            checkAborted();
+
+            // wait for the rate limit to allow the transfer
+            int length = buffer.capacity();
+            if (rateLimiter != null) {
+                long acquired = rateLimiter.tryAcquire(length);
+                if (acquired > 0) {
+                    awaitDelay(acquired);
+                    return WAITING;
+                }
+                length = (int) -acquired;
+            }
+
+            buffer.clear();
+            buffer.limit(length);
+            int count = read(buffer);
+            if (rateLimiter != null) {
+                rateLimiter.release(length - Math.max(count, 0));
+            }
+            if (count == 0) {
+                // hand the partly filled buffer to the writing thread rather
+                // than holding it while the client is slow
+                if (writeBehind != null) {
+                    out.flush();
+                }
+                awaitSocket(SelectionKey.OP_READ);
+                return WAITING;
+            }
+            if (count == -1) {
+                return END;
+            }
+
+            buffer.flip();
+            if (fileChannel != null) {
+                if (checksumCalculator != null) {
+                    checksumCalculator.update(buffer);
+                }
+                while (buffer.hasRemaining()) {
+                    position += fileChannel.write(buffer, position);
+                }
+            } else {
+                byte[] buff = buffer.array();
+                if (asciiTranslator != null) {
+                    asciiTranslator.write(buff, 0, count, out);
+                } else {
+                    out.write(buff, 0, count);
+                }
+                if (checksumCalculator != null) {
+                    checksumCalculator.update(buff, 0, count);
+                }
+            }
+
+            transferredSize += count;
+            asyncTransferred(ftpSession, false, count);
+            return count;
+        }
+
+        @Override
+        protected long finish() throws IOException {
+            if (out != null) {
+                out.flush();
+            }
+            if (writeBehind != null) {
+                finished = true;
+                writeBehind.finish();
+            }
+            return transferredSize;
+        }
+
+        @Override
+        protected Throwable failed(final Throwable e) {
+            return asyncTransferFailed(e);
+        }
+
+        @Override
+        protected void release() {
+            // write the data received before a failure as well
+            if (out != null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    LOG.debug("Failed writing the data received before the transfer failed", e);
+                }
+            }
+            if (writeBehind != null && !finished) {
+                try {
+                    writeBehind.finish();
+                } catch (IOException e) {
+                    LOG.debug("Failed writing the data received before the transfer failed", e);
+                }
+            }
+
+            // leave the file positioned after the received data, also when
+            // the transfer fails, for the file to be trimmed there
+            if (fileChannel != null && fileChannel.isOpen()) {
+                try {
+                    fileChannel.position(position);
+                } catch (IOException e) {
+                    LOG.debug("Failed to position file after received data", e);
+                }
+            }
+            bufferPool.release(buffer);
+            asyncTransferReleased(rateLimiter);
+        }
+    }
+
+    private long transfer(FtpSession session, boolean isWrite,
+                          final InputStream in, final OutputStream out,
+                          final TransferRateLimiter rateLimiter)
+            throws IOException {
+        long transferredSize = 0L;
+
+        AsciiTranslator asciiTranslator = null;
+        if (session.getDataType() == DataType.ASCII) {
+            asciiTranslator = new AsciiTranslator(isWrite, EOL);
+        }
+        ByteBuffer buffer = bufferPool.acquireHeapBuffer();
+        byte[] buff = buffer.array();
+
+        OutputStream bos = null;
+        try {
+            // the pooled buffer is large enough to read and write in bulk,
+            // only the short writes of the ASCII translation need buffering
+            if (asciiTranslator != null) {
+                bos = IoUtils.getBufferedOutputStream(out);
+            } else {
+                bos = out;
+            }
+
+            DefaultFtpSession defaultFtpSession = null;
+            if (session instanceof DefaultFtpSession) {
+                defaultFtpSession = (DefaultFtpSession) session;
+            }
+
+            while (true) {
+                checkAborted();
+
+                // wait for the rate limit to allow the transfer
+                int length = buff.length;
+                if (rateLimiter != null) {
+                    try {
+                        length = (int) rateLimiter.acquire(length);
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                }
+
+                // read data
+                int count = in.read(buff, 0, length);
+
+                if (rateLimiter != null) {
+                    rateLimiter.release(length - Math.max(count, 0));
+                }
+
+                if (count == -1) {
+                    break;
+                }
+
+                // update MINA session
+                if (defaultFtpSession != null) {
+                    if (isWrite) {
+                        defaultFtpSession.increaseWrittenDataBytes(count);
+                    } else {
+                        defaultFtpSession.increaseReadDataBytes(count);
+                    }
+                }
+
+                // write data
+                // if ascii, translate the line endings
+                if (asciiTranslator != null) {
+                    asciiTranslator.write(buff, 0, count, bos);
+                } else {
+                    bos.write(buff, 0, count);
+                }
+                if (!isWrite && checksumCalculator != null) {
+                    checksumCalculator.update(buff, 0, count);
+                }
+
+                transferredSize += count;
+                bytesTransferred += count;
+
+                notifyObserver();
+            }
+        } catch(IOException | RuntimeException e) {
+            if (aborted) {
+                LOG.debug("Data transfer aborted", e);
+                factory.closeDataConnection();
+                throw createAbortedException(e);
+            }
+            LOG.warn("Exception during data transfer, closing data connection socket", e);
+            factory.closeDataConnection();
+            throw e;
+        } finally {
+            if (bos != null) {
+                bos.flush();
+            }
+            bufferPool.release(buffer);
+        }
+
+        return transferredSize;
+    }
+
+    /**
+     * Abort the transfer in progress, as requested by an ABOR received while
+     * the transfer is running. The transfer fails with a
+     * {@link SocketException}, so that the command transferring the data
+     * replies with 426 before ABOR replies with 226.
+     */
+    public void abort() {
+        aborted = true;
+
+        // stop transfers blocked in the socket right away, closing a secure
+        // socket could block on the transfer thread, that transfer stops
+        // after its current chunk instead
+        if (!(socket instanceof SSLSocket)) {
+            factory.closeDataConnection();
+        }
+        AsyncTransfer transfer = asyncTransfer;
+        if (transfer != null) {
+            transfer.abortWait();
+        }
+    }
+
+    /**
+     * Get the number of bytes transferred so far, for status requests during
+     * the transfer.
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    private void checkAborted() throws SocketException {
+        if (aborted) {
+            throw new SocketException("Transfer aborted");
+        }
+    }
+
+    private SocketException createAbortedException(final Exception cause) {
+        if (cause instanceof SocketException) {
+            return (SocketException) cause;
+        }
+        SocketException ex = new SocketException("Transfer aborted");
+        ex.initCause(cause);
+        return ex;
     }
 
     /**
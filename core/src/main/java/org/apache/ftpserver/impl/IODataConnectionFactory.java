@@ -19,13 +19,18 @@
 
 package org.apache.ftpserver.impl;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.ReentrantLock;
 
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
@@ -51,12 +56,28 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     private final Logger LOG = LoggerFactory
             .getLogger(IODataConnectionFactory.class);
 
-    private FtpServerContext serverContext;
+    FtpServerContext serverContext;
+
+    /**
+     * Guards the sockets, not a monitor so that a thread waiting for the data
+     * socket does not pin the carrier thread of a virtual thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
 
     private Socket dataSoc;
 
     ServerSocket servSoc;
 
+    /**
+     * Is the passive server socket taken from the passive socket pool?
+     */
+    private boolean servSocPooled = false;
+
+    /**
+     * The passive port requested from the configuration, 0 for any port
+     */
+    private int requestedPassivePort = 0;
+
     InetAddress address;
 
     int port = 0;
@@ -69,6 +90,20 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
     private boolean isZip = false;
 
+    private boolean isBlock = false;
+
+    /**
+     * Has the last transfer in block mode completed with the end of file
+     * marker?
+     */
+    private boolean blockTransferCompleted = false;
+
+    /**
+     * The last data connection opened, kept open between transfers in block
+     * mode
+     */
+    private IODataConnection dataConnection;
+
     InetAddress serverControlAddress;
 
     FtpIoSession session;
@@ -87,58 +122,79 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
      * Close data socket.
      * This method must be idempotent as we might call it multiple times during disconnect.
      */
-    public synchronized void closeDataConnection() {
-
-        // close client socket if any
-        if (dataSoc != null) {
-            try {
-                dataSoc.close();
-            } catch (Exception ex) {
-                LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+    public void closeDataConnection() {
+        lock.lock();
+        try {
+            // release the secure channel of the current connection
+            if (dataConnection != null) {
+                dataConnection.abortSecureChannel();
             }
-            dataSoc = null;
-        }
 
-        // close server socket if any
-        if (servSoc != null) {
-            try {
-                servSoc.close();
-            } catch (Exception ex) {
-                LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+            // close client socket if any
+            if (dataSoc != null) {
+                try {
+                    dataSoc.close();
+                } catch (Exception ex) {
+                    LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+                }
+                dataSoc = null;
             }
 
-            if (session != null) {
-                DataConnectionConfiguration dcc = session.getListener()
-                        .getDataConnectionConfiguration();
-                if (dcc != null) {
-                    dcc.releasePassivePort(port);
+            // close server socket if any
+            if (servSoc != null) {
+                if (servSocPooled) {
+                    serverContext.getPassiveSocketPool().release(servSoc,
+                            requestedPassivePort);
+                } else {
+                    try {
+                        servSoc.close();
+                    } catch (Exception ex) {
+                        LOG.warn("FtpDataConnection.closeDataSocket()", ex);
+                    }
                 }
+
+                if (session != null) {
+                    DataConnectionConfiguration dcc = session.getListener()
+                            .getDataConnectionConfiguration();
+                    if (dcc != null) {
+                        dcc.releasePassivePort(port);
+                    }
+                }
+
+                servSoc = null;
             }
 
-            servSoc = null;
-        }
+            // reset request time
+            requestTime = 0L;
 
-        // reset request time
-        requestTime = 0L;
+            dataConnection = null;
+            blockTransferCompleted = false;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Port command.
      */
-    public synchronized void initActiveDataConnection(
+    public void initActiveDataConnection(
             final InetSocketAddress address) {
+        lock.lock();
+        try {
+            // close old sockets if any
+            closeDataConnection();
 
-        // close old sockets if any
-        closeDataConnection();
-
-        // set variables
-        passive = false;
-        this.address = address.getAddress();
-        port = address.getPort();
-        requestTime = System.currentTimeMillis();
+            // set variables
+            passive = false;
+            this.address = address.getAddress();
+            port = address.getPort();
+            requestTime = System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private SslConfiguration getSslConfiguration() {
+    SslConfiguration getSslConfiguration() {
         DataConnectionConfiguration dataCfg = session.getListener()
                 .getDataConnectionConfiguration();
 
@@ -155,7 +211,17 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
     /**
      * Initiate a data connection in passive mode (server listening). 
      */
-    public synchronized InetSocketAddress initPassiveDataConnection()
+    public InetSocketAddress initPassiveDataConnection()
+            throws DataConnectionException {
+        lock.lock();
+        try {
+            return doInitPassiveDataConnection();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private InetSocketAddress doInitPassiveDataConnection()
             throws DataConnectionException {
         LOG.debug("Initiating passive data connection");
         // close old sockets if any
@@ -198,7 +264,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 // (https://issues.apache.org/jira/browse/FTPSERVER-241).
                 // Instead, it creates a regular
                 // ServerSocket that will be wrapped as a SSL socket in createDataSocket()
-                servSoc = new ServerSocket(passivePort, 0, address);
+                servSoc = openServerSocket(dataCfg, passivePort, address);
                 LOG
                         .debug(
                                 "SSL Passive data connection created on address \"{}\" and port {}",
@@ -208,7 +274,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                         .debug(
                                 "Opening passive data connection on address \"{}\" and port {}",
                                 address, passivePort);
-                servSoc = new ServerSocket(passivePort, 0, address);
+                servSoc = openServerSocket(dataCfg, passivePort, address);
                 LOG
                         .debug(
                                 "Passive data connection created on address \"{}\" and port {}",
@@ -223,6 +289,11 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
             return new InetSocketAddress(address, port);
         } catch (Exception ex) {
+            if (servSoc == null) {
+                // not released when closing the data connection
+                session.getListener().getDataConnectionConfiguration()
+                        .releasePassivePort(passivePort);
+            }
             closeDataConnection();
             throw new DataConnectionException(
                     "Failed to initate passive data connection: "
@@ -230,6 +301,40 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         }
     }
 
+    /**
+     * Get a passive server socket, from the passive socket pool if enabled.
+     */
+    private ServerSocket openServerSocket(DataConnectionConfiguration dataCfg,
+            int passivePort, InetAddress address) throws IOException {
+        if (dataCfg.isPassiveSocketPoolEnabled() && serverContext != null) {
+            ServerSocket serverSocket = serverContext.getPassiveSocketPool()
+                    .acquire(address, passivePort, dataCfg.isNonBlocking());
+            servSocPooled = true;
+            requestedPassivePort = passivePort;
+            return serverSocket;
+        }
+        servSocPooled = false;
+        return createServerSocket(passivePort, address);
+    }
+
+    /**
+     * Create a passive server socket. The socket is backed by a
+     * {@link ServerSocketChannel} so that accepted data sockets have a channel
+     * that file data can be transferred into without copying.
+     */
+    private ServerSocket createServerSocket(int passivePort, InetAddress address)
+            throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            ServerSocket serverSocket = channel.socket();
+            serverSocket.bind(new InetSocketAddress(address, passivePort), 0);
+            return serverSocket;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -254,13 +359,51 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
      * @see org.apache.ftpserver.FtpDataConnectionFactory2#openConnection()
      */
     public DataConnection openConnection() throws Exception {
-        return new IODataConnection(createDataSocket(), session, this);
+        lock.lock();
+        try {
+            if (isBlock && dataConnection != null && isKeptOpen()) {
+                // carry this transfer on the connection of the previous one
+                LOG.debug("Reusing block mode data connection");
+                blockTransferCompleted = false;
+                dataConnection = dataConnection.reopen();
+                return dataConnection;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        IODataConnection connection = createDataConnection();
+        lock.lock();
+        try {
+            blockTransferCompleted = false;
+            dataConnection = connection;
+        } finally {
+            lock.unlock();
+        }
+        return connection;
+    }
+
+    /**
+     * Open a new data connection.
+     */
+    IODataConnection createDataConnection() throws Exception {
+        return new IODataConnection(createDataSocket(), session, this,
+                serverContext);
     }
 
     /**
      * Get the data socket. In case of error returns null.
      */
-    private synchronized Socket createDataSocket() throws Exception {
+    Socket createDataSocket() throws Exception {
+        lock.lock();
+        try {
+            return doCreateDataSocket();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Socket doCreateDataSocket() throws Exception {
 
         // get socket depending on the selection
         dataSoc = null;
@@ -268,7 +411,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 .getDataConnectionConfiguration();
         try {
             if (!passive) {
-                if (secure) {
+                if (secure && isSecureSocketWrapped()) {
                     LOG.debug("Opening secure active data connection");
                     SslConfiguration ssl = getSslConfiguration();
                     if (ssl == null) {
@@ -290,7 +433,8 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                     dataSoc = ssoc;
                 } else {
                     LOG.debug("Opening active data connection");
-                    dataSoc = new Socket();
+                    // use a channel backed socket to allow for zero-copy transfers
+                    dataSoc = SocketChannel.open().socket();
                 }
 
                 dataSoc.setReuseAddress(true);
@@ -308,10 +452,10 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 LOG.debug("Binding active data connection to {}", localSocketAddress);
                 dataSoc.bind(localSocketAddress);
 
-                dataSoc.connect(new InetSocketAddress(address, port));
+                connectDataSocket(dataSoc, new InetSocketAddress(address, port));
             } else {
 
-                if (secure) {
+                if (secure && isSecureSocketWrapped()) {
                     LOG.debug("Opening secure passive data connection");
                     // this is where we wrap the unsecured socket as a SSLSocket. This is 
                     // due to the JVM bug described in FTPSERVER-241.
@@ -327,7 +471,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
 
                     SSLSocketFactory ssocketFactory = ssl.getSocketFactory();
 
-                    Socket serverSocket = servSoc.accept();
+                    Socket serverSocket = acceptDataSocket();
 
                     SSLSocket sslSocket = (SSLSocket) ssocketFactory
                             .createSocket(serverSocket, serverSocket
@@ -351,7 +495,7 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
                 } else {
                     LOG.debug("Opening passive data connection");
 
-                    dataSoc = servSoc.accept();
+                    dataSoc = acceptDataSocket();
                 }
                 
                 if (dataConfig.isPassiveIpCheck()) {
@@ -386,12 +530,70 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         // get an error if we turn out not to send any data
         // e.g. during the listing of an empty directory
         if (dataSoc instanceof SSLSocket) {
-            ((SSLSocket) dataSoc).startHandshake();
+            startHandshake((SSLSocket) dataSoc);
         }
 
         return dataSoc;
     }
 
+    /**
+     * Run the handshake of a secure data socket. The data socket shares the
+     * server session cache of the control connection as long as both use the
+     * same SSL configuration, so clients can resume the control connection
+     * TLS session instead of doing a full handshake for every transfer.
+     */
+    private void startHandshake(final SSLSocket socket) throws IOException {
+        long start = System.currentTimeMillis();
+        socket.startHandshake();
+        handshakeCompleted(socket.getSession(), start);
+    }
+
+    /**
+     * Count a completed data connection handshake.
+     * 
+     * @param sslSession
+     *            The negotiated session
+     * @param start
+     *            The time the handshake started at
+     */
+    void handshakeCompleted(final SSLSession sslSession, final long start) {
+        // a resumed session keeps the creation time of the session it resumes
+        boolean resumed = sslSession.getCreationTime() < start;
+        LOG.debug("Data connection {} handshake completed",
+                resumed ? "resumed TLS session" : "full TLS");
+
+        ServerFtpStatistics stats = (ServerFtpStatistics) serverContext
+                .getFtpStatistics();
+        if (stats != null) {
+            stats.setDataSslHandshake(session, resumed);
+        }
+    }
+
+    /**
+     * Should secure data sockets be {@link SSLSocket}s? Otherwise the data
+     * socket is a plain socket and securing it is left to the caller of
+     * {@link #createDataSocket()}.
+     */
+    boolean isSecureSocketWrapped() {
+        return true;
+    }
+
+    /**
+     * Accept the data socket on the passive server socket, waiting at most the
+     * server socket timeout.
+     */
+    Socket acceptDataSocket() throws IOException {
+        return servSoc.accept();
+    }
+
+    /**
+     * Connect the active data socket to the client.
+     */
+    void connectDataSocket(Socket socket, InetSocketAddress address)
+            throws IOException {
+        socket.connect(address);
+    }
+
     /*
      *  (non-Javadoc)
      *   Returns an InetAddress object from a hostname or IP address.
@@ -441,30 +643,88 @@ public class IODataConnectionFactory implements ServerDataConnectionFactory {
         isZip = zip;
     }
 
-    /**
-     * Check the data connection idle status.
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.ftpserver.impl.ServerDataConnectionFactory#isBlockMode()
      */
-    public synchronized boolean isTimeout(final long currTime) {
+    public boolean isBlockMode() {
+        return isBlock;
+    }
 
-        // data connection not requested - not a timeout
-        if (requestTime == 0L) {
-            return false;
+    /**
+     * Set block mode. Leaving block mode closes the data connection kept open
+     * by the previous transfers, the transfers in the other modes end by
+     * closing their data connection.
+     */
+    public void setBlockMode(final boolean block) {
+        lock.lock();
+        try {
+            if (isBlock && !block && dataSoc != null) {
+                closeDataConnection();
+            }
+            isBlock = block;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        // data connection active - not a timeout
-        if (dataSoc != null) {
-            return false;
+    /**
+     * Keep the data connection open for the next transfer, if still in block
+     * mode.
+     */
+    public void blockTransferCompleted() {
+        lock.lock();
+        try {
+            blockTransferCompleted = true;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        // no idle time limit - not a timeout
-        int maxIdleTime = session.getListener()
-                .getDataConnectionConfiguration().getIdleTime() * 1000;
-        if (maxIdleTime == 0) {
-            return false;
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.apache.ftpserver.impl.ServerDataConnectionFactory#isKeptOpen()
+     */
+    public boolean isKeptOpen() {
+        lock.lock();
+        try {
+            return isBlock && blockTransferCompleted && dataSoc != null
+                    && !dataSoc.isClosed();
+        } finally {
+            lock.unlock();
         }
+    }
 
-        // idle time is within limit - not a timeout
-        return (currTime - requestTime) >= maxIdleTime;
+    /**
+     * Check the data connection idle status.
+     */
+    public boolean isTimeout(final long currTime) {
+        lock.lock();
+        try {
+            // data connection not requested - not a timeout
+            if (requestTime == 0L) {
+                return false;
+            }
+
+            // data connection active - not a timeout
+            if (dataSoc != null) {
+                return false;
+            }
+
+            // no idle time limit - not a timeout
+            int maxIdleTime = session.getListener()
+                    .getDataConnectionConfiguration().getIdleTime() * 1000;
+            if (maxIdleTime == 0) {
+                return false;
+            }
+
+            // idle time is within limit - not a timeout
+            return (currTime - requestTime) >= maxIdleTime;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
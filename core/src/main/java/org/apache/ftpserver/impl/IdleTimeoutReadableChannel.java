@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Non-blocking reader for a socket channel that allows waiting for data while
+ * honoring the socket timeout, which is ignored by blocking channel reads. The
+ * socket channel is switched to non-blocking mode while this reader is open
+ * and restored to blocking mode when closed. Closing this reader does not
+ * close the socket channel.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+class IdleTimeoutReadableChannel implements AwaitableReadableChannel {
+
+    private final SocketChannel channel;
+
+    private final Selector selector;
+
+    private final long timeout;
+
+    private boolean endOfStream = false;
+
+    /**
+     * @param channel
+     *            The socket channel to read from
+     * @param timeout
+     *            The maximum time in milliseconds to wait for data, 0 means
+     *            wait forever
+     */
+    public IdleTimeoutReadableChannel(final SocketChannel channel,
+            final long timeout) throws IOException {
+        this.channel = channel;
+        this.timeout = timeout;
+
+        selector = Selector.open();
+        try {
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            selector.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until data, or the end of the stream, is available to read.
+     * 
+     * @throws SocketTimeoutException
+     *             If nothing became available within the timeout
+     */
+    public void awaitReadable() throws IOException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (selector.selectedKeys().isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Read interrupted");
+            }
+
+            if (timeout > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                selector.select(remaining);
+            } else {
+                selector.select();
+            }
+        }
+        selector.selectedKeys().clear();
+    }
+
+    /**
+     * Read the data available without waiting.
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        int count = channel.read(dst);
+        if (count == -1) {
+            endOfStream = true;
+        }
+        return count;
+    }
+
+    /**
+     * Has the end of the stream been reached?
+     */
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isOpen() {
+        return selector.isOpen();
+    }
+
+    /**
+     * Deregister from the socket channel and put it back into blocking mode.
+     */
+    public void close() throws IOException {
+        if (!selector.isOpen()) {
+            return;
+        }
+        // closing the selector deregisters the channel
+        selector.close();
+        if (channel.isOpen()) {
+            channel.configureBlocking(true);
+        }
+    }
+}
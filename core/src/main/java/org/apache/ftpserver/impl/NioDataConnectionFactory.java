@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLEngine;
+
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ssl.ClientAuth;
+import org.apache.ftpserver.ssl.SslConfiguration;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Data connection factory using non-blocking channels. Passive accepts and
+ * active connects go through the {@link DataConnectionReactor} shared by the
+ * server, instead of blocking in the socket.
+ *
+ * The data transfers run as state machines driven by the reactor, see
+ * {@link IODataConnection#isAsyncTransferPossible(boolean)}: the command
+ * starting the transfer returns at once and replies from the completion of
+ * the transfer, so no thread is held while the client is slow. Secure data
+ * connections encrypt the data with an {@link SSLEngine} over the
+ * non-blocking channel, their handshake being the first step of the
+ * transfer. The uploads in the compressed and block modes still wait for
+ * the socket on the thread running the command, including for the
+ * handshake of secure data connections.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class NioDataConnectionFactory extends IODataConnectionFactory {
+
+    public NioDataConnectionFactory(final FtpServerContext serverContext,
+            final FtpIoSession session) {
+        super(serverContext, session);
+    }
+
+    /**
+     * Open a new data connection over a non-blocking channel.
+     */
+    @Override
+    IODataConnection createDataConnection() throws Exception {
+        Socket socket = createDataSocket();
+        DataConnectionReactor reactor = null;
+        SslEngineSocketChannel secureChannel = null;
+        if (socket != null) {
+            // accepted sockets are blocking until here
+            socket.getChannel().configureBlocking(false);
+            reactor = serverContext.getDataConnectionReactor();
+            if (isSecure()) {
+                secureChannel = createSecureChannel(socket, reactor);
+            }
+        }
+        return new IODataConnection(socket, session, this, serverContext,
+                reactor, secureChannel);
+    }
+
+    /**
+     * Secure data sockets are plain sockets, secured by
+     * {@link #createSecureChannel(Socket, DataConnectionReactor)}.
+     */
+    @Override
+    boolean isSecureSocketWrapped() {
+        return false;
+    }
+
+    /**
+     * Secure the data socket channel with a server side engine.
+     */
+    private SslEngineSocketChannel createSecureChannel(final Socket socket,
+            final DataConnectionReactor reactor) throws Exception {
+        SslConfiguration ssl = getSslConfiguration();
+        if (ssl == null) {
+            closeDataConnection();
+            throw new FtpException("Data connection SSL not configured");
+        }
+
+        SSLEngine engine = ssl.getSSLContext().createSSLEngine();
+        engine.setUseClientMode(false);
+        if (ssl.getClientAuth() == ClientAuth.NEED) {
+            engine.setNeedClientAuth(true);
+        } else if (ssl.getClientAuth() == ClientAuth.WANT) {
+            engine.setWantClientAuth(true);
+        }
+        if (ssl.getEnabledCipherSuites() != null) {
+            engine.setEnabledCipherSuites(ssl.getEnabledCipherSuites());
+        }
+
+        // the handshake runs with the first transfer, see
+        // SslEngineSocketChannel
+        final long start = System.currentTimeMillis();
+        return new SslEngineSocketChannel(socket.getChannel(), engine,
+                reactor, getIdleTimeout(), serverContext
+                        .getTransferBufferPool(), serverContext
+                        .getHandshakeExecutor(), () -> handshakeCompleted(
+                        engine.getSession(), start));
+    }
+
+    /**
+     * Wait for the client to connect through the reactor. The accepted socket
+     * is in blocking mode.
+     */
+    @Override
+    Socket acceptDataSocket() throws IOException {
+        ServerSocketChannel serverChannel = servSoc.getChannel();
+        serverChannel.configureBlocking(false);
+        while (true) {
+            SocketChannel channel = serverChannel.accept();
+            if (channel != null) {
+                return channel.socket();
+            }
+            serverContext.getDataConnectionReactor().await(serverChannel,
+                    SelectionKey.OP_ACCEPT, getIdleTimeout());
+        }
+    }
+
+    /**
+     * Connect to the client waiting through the reactor. Sockets without a
+     * channel are connected the blocking way. The connected socket channel is
+     * left in non-blocking mode.
+     */
+    @Override
+    void connectDataSocket(final Socket socket,
+            final InetSocketAddress address) throws IOException {
+        SocketChannel channel = socket.getChannel();
+        if (channel == null) {
+            super.connectDataSocket(socket, address);
+            return;
+        }
+
+        channel.configureBlocking(false);
+        if (!channel.connect(address)) {
+            DataConnectionReactor reactor = serverContext
+                    .getDataConnectionReactor();
+            do {
+                reactor.await(channel, SelectionKey.OP_CONNECT,
+                        getIdleTimeout());
+            } while (!channel.finishConnect());
+        }
+    }
+
+    private long getIdleTimeout() {
+        return session.getListener().getDataConnectionConfiguration()
+                .getIdleTime() * 1000L;
+    }
+}
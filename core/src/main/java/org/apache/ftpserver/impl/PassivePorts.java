@@ -21,12 +21,13 @@ package org.apache.ftpserver.impl;
 
 import java.io.IOException;
 import java.net.ServerSocket;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,11 +48,17 @@ public class PassivePorts {
 
     private static final Integer MAX_PORT_INTEGER = MAX_PORT;
 
-    private List<Integer> freeList;
+    /**
+     * The passive ports, sorted
+     */
+    private final int[] ports;
 
-    private Set<Integer> usedList;
+    /**
+     * One bit for each of the ports, set while the port is reserved
+     */
+    private final AtomicLongArray used;
 
-    private Random r = new Random();
+    private final AtomicInteger portsInUse = new AtomicInteger();
 
     private String passivePortsString;
 
@@ -158,8 +165,13 @@ public class PassivePorts {
             passivePorts.add(0);
         }
 
-        this.freeList = new ArrayList<>(passivePorts);
-        this.usedList = new HashSet<>(passivePorts.size());
+        this.ports = new int[passivePorts.size()];
+        int i = 0;
+        for (Integer port : passivePorts) {
+            ports[i++] = port;
+        }
+        Arrays.sort(ports);
+        this.used = new AtomicLongArray((ports.length + 63) >>> 6);
 
         this.checkIfBound = checkIfBound;
     }
@@ -167,7 +179,7 @@ public class PassivePorts {
     /**
      * Checks that the port of not bound by another application
      */
-    private boolean checkPortUnbound(int port) {
+    private boolean checkPortUnbound(int port, boolean checkIfBound) {
         // is this check disabled?
         if (!checkIfBound) {
             return true;
@@ -198,44 +210,90 @@ public class PassivePorts {
         }
     }
 
-    public synchronized int reserveNextPort() {
-        // create a copy of the free ports, so that we can keep track of the tested ports
-        List<Integer> freeCopy = new ArrayList<>(freeList);
-        
-        // Loop until we have found a port, or exhausted all available ports
-        while (freeCopy.size() > 0) {
-            // Otherwise, pick one at random
-            int i = r.nextInt(freeCopy.size());
-            Integer ret = freeCopy.get(i);
-
-            if (ret == 0) {
-                // "Any" port should not be removed from our free list,
-                // nor added to the used list
-                return 0;
-
-            } else if (checkPortUnbound(ret)) {
-                // Not used by someone else, so lets reserve it and return it
-                freeList.remove(ret);
-                usedList.add(ret);
-                return ret;
+    /**
+     * Reserve a free port, picked at random.
+     * 
+     * @return The reserved port, 0 for any port or -1 if all ports are in
+     *         use
+     */
+    public int reserveNextPort() {
+        return reserveNextPort(checkIfBound);
+    }
+
+    /**
+     * Reserve a free port, picked at random. Free ports are looked up a word
+     * of the used bit set at a time, starting at a random position, and
+     * reserved with a compare-and-set, so that concurrent reservations do
+     * not need a lock.
+     * 
+     * @param checkIfBound
+     *            false to skip checking that the port is not bound by another
+     *            application, even if configured
+     * @return The reserved port, 0 for any port or -1 if all ports are in
+     *         use
+     */
+    public int reserveNextPort(final boolean checkIfBound) {
+        int words = used.length();
+        int start = ThreadLocalRandom.current().nextInt(ports.length);
+        int shift = start & 63;
+
+        // the ports found bound by another process during this call
+        long[] tested = null;
+
+        for (int w = 0; w < words; w++) {
+            int word = ((start >>> 6) + w) % words;
+            long valid = getValidBits(word);
+            while (true) {
+                long bits = used.get(word);
+                long free = ~bits & valid;
+                if (tested != null) {
+                    free &= ~tested[word];
+                }
+                if (free == 0) {
+                    break;
+                }
+
+                // the first free port from the random position
+                int bit = (Long.numberOfTrailingZeros(Long.rotateRight(free,
+                        shift)) + shift) & 63;
+                int port = ports[(word << 6) + bit];
+                if (port == 0) {
+                    // "Any" port is never marked as used
+                    return 0;
+                }
+
+                long mask = 1L << bit;
+                if (!used.compareAndSet(word, bits, bits | mask)) {
+                    // lost a race for this word, look again
+                    continue;
+                }
+
+                if (checkPortUnbound(port, checkIfBound && this.checkIfBound)) {
+                    portsInUse.incrementAndGet();
+                    return port;
+                }
 
-            } else {
-                freeCopy.remove(i);
                 // log port unavailable, but left in pool
-                log.warn("Passive port in use by another process: " + ret);
+                log.warn("Passive port in use by another process: " + port);
+                clearBit(word, mask);
+                if (tested == null) {
+                    tested = new long[words];
+                }
+                tested[word] |= mask;
             }
         }
 
         return -1;
     }
 
-    public synchronized void releasePort(final int port) {
+    public void releasePort(final int port) {
+        int index = Arrays.binarySearch(ports, port);
         if (port == 0) {
             // Ignore port 0 being released,
             // since its not put on the used list
 
-        } else if (usedList.remove(port)) {
-            freeList.add(port);
+        } else if (index >= 0 && clearBit(index >>> 6, 1L << (index & 63))) {
+            portsInUse.decrementAndGet();
 
         } else {
             // log attempt to release unused port
@@ -243,6 +301,41 @@ public class PassivePorts {
         }
     }
 
+    /**
+     * Get the number of ports currently reserved.
+     */
+    public int getPortsInUse() {
+        return portsInUse.get();
+    }
+
+    /**
+     * The bits of a word of the used bit set that map to a port.
+     */
+    private long getValidBits(int word) {
+        int count = ports.length - (word << 6);
+        if (count >= 64) {
+            return -1L;
+        }
+        return (1L << count) - 1;
+    }
+
+    /**
+     * Clear a bit of the used bit set.
+     * 
+     * @return false if the bit was not set
+     */
+    private boolean clearBit(int word, long mask) {
+        while (true) {
+            long bits = used.get(word);
+            if ((bits & mask) == 0) {
+                return false;
+            }
+            if (used.compareAndSet(word, bits, bits & ~mask)) {
+                return true;
+            }
+        }
+    }
+
     @Override
     public String toString() {
         if (passivePortsString != null) {
@@ -251,9 +344,11 @@ public class PassivePorts {
 
         StringBuilder sb = new StringBuilder();
 
-        for (Integer port : freeList) {
-            sb.append(port);
-            sb.append(",");
+        for (int i = 0; i < ports.length; i++) {
+            if ((used.get(i >>> 6) & (1L << (i & 63))) == 0) {
+                sb.append(ports[i]);
+                sb.append(",");
+            }
         }
         // remove the last ,
         sb.deleteCharAt(sb.length() - 1);
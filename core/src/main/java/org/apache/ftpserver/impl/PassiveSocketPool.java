@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Passive server sockets kept bound and listening between transfers. A
+ * session reserves a passive port as usual and takes the server socket
+ * bound to that port from the pool, binding a new one only if there is
+ * none, and hands it back once the data connection is closed.
+ *
+ * Server sockets requested on port 0, any port, are pooled by address, a
+ * limited number of them are kept. Server sockets used by non-blocking data
+ * connections stay registered with the data connection reactor and can not
+ * be put back in blocking mode, so they are pooled separately.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class PassiveSocketPool {
+
+    private final Logger LOG = LoggerFactory.getLogger(PassiveSocketPool.class);
+
+    /**
+     * The maximum number of idle server sockets kept for an address when
+     * requesting any port.
+     */
+    private static final int MAX_IDLE_ANY_PORT_SOCKETS = 16;
+
+    private final Map<InetSocketAddress, Queue<ServerSocket>> idleBlockingSockets = new ConcurrentHashMap<>();
+
+    private final Map<InetSocketAddress, Queue<ServerSocket>> idleNonBlockingSockets = new ConcurrentHashMap<>();
+
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private volatile boolean disposed = false;
+
+    /**
+     * Get a listening server socket backed by a {@link ServerSocketChannel}.
+     *
+     * @param address
+     *            The address to listen on
+     * @param port
+     *            The port to listen on, 0 for any port
+     * @param nonBlocking
+     *            true to get a server socket in non-blocking mode if one is
+     *            available, new server sockets are in blocking mode
+     */
+    public ServerSocket acquire(final InetAddress address, final int port,
+            final boolean nonBlocking) throws IOException {
+        Map<InetSocketAddress, Queue<ServerSocket>> idleSockets = nonBlocking ? idleNonBlockingSockets
+                : idleBlockingSockets;
+        Queue<ServerSocket> sockets = idleSockets.get(new InetSocketAddress(
+                address, port));
+        if (sockets != null) {
+            ServerSocket socket;
+            while ((socket = sockets.poll()) != null) {
+                idleCount.decrementAndGet();
+                if (prepare(socket)) {
+                    LOG.debug("Reusing passive server socket on port {}",
+                            socket.getLocalPort());
+                    return socket;
+                }
+            }
+        }
+
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            ServerSocket serverSocket = channel.socket();
+            serverSocket.bind(new InetSocketAddress(address, port), 0);
+            return serverSocket;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Hand back a server socket acquired from this pool, once the data
+     * connection has been accepted or given up.
+     *
+     * @param socket
+     *            The server socket
+     * @param port
+     *            The port requested when acquiring the server socket
+     */
+    public void release(final ServerSocket socket, final int port) {
+        if (disposed || !prepare(socket)) {
+            close(socket);
+            return;
+        }
+
+        Map<InetSocketAddress, Queue<ServerSocket>> idleSockets = socket
+                .getChannel().isBlocking() ? idleBlockingSockets
+                : idleNonBlockingSockets;
+        InetSocketAddress key = new InetSocketAddress(socket.getInetAddress(),
+                port);
+        Queue<ServerSocket> sockets = idleSockets.get(key);
+        if (sockets == null) {
+            sockets = new ConcurrentLinkedQueue<>();
+            Queue<ServerSocket> existing = idleSockets.putIfAbsent(key,
+                    sockets);
+            if (existing != null) {
+                sockets = existing;
+            }
+        }
+        if (port == 0 && sockets.size() >= MAX_IDLE_ANY_PORT_SOCKETS) {
+            close(socket);
+            return;
+        }
+        sockets.add(socket);
+        idleCount.incrementAndGet();
+
+        // the pool may have been disposed while adding
+        if (disposed && sockets.remove(socket)) {
+            idleCount.decrementAndGet();
+            close(socket);
+        }
+    }
+
+    /**
+     * Get the number of server sockets waiting in the pool.
+     */
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * Close all idle server sockets. Server sockets released afterwards are
+     * closed.
+     */
+    public void dispose() {
+        disposed = true;
+        closeAll(idleBlockingSockets);
+        closeAll(idleNonBlockingSockets);
+    }
+
+    private void closeAll(final Map<InetSocketAddress, Queue<ServerSocket>> idleSockets) {
+        for (Queue<ServerSocket> sockets : idleSockets.values()) {
+            ServerSocket socket;
+            while ((socket = sockets.poll()) != null) {
+                idleCount.decrementAndGet();
+                close(socket);
+            }
+        }
+    }
+
+    /**
+     * Close the connections left in the backlog, from clients that connected
+     * too late or not for this session.
+     *
+     * @return false if the server socket can not be reused
+     */
+    private boolean prepare(final ServerSocket socket) {
+        ServerSocketChannel channel = socket.getChannel();
+        if (socket.isClosed() || channel == null) {
+            return false;
+        }
+        try {
+            boolean blocking = channel.isBlocking();
+            if (blocking) {
+                channel.configureBlocking(false);
+            }
+            SocketChannel pending;
+            while ((pending = channel.accept()) != null) {
+                LOG.debug("Closing stale passive data connection from {}",
+                        pending.socket().getRemoteSocketAddress());
+                pending.close();
+            }
+            if (blocking) {
+                channel.configureBlocking(true);
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.debug("Failed to reuse passive server socket", e);
+            close(socket);
+            return false;
+        }
+    }
+
+    private void close(final ServerSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close passive server socket", e);
+        }
+    }
+}
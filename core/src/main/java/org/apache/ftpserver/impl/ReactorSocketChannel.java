@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Data socket channel kept in non-blocking mode, waiting for it to become
+ * readable or writable through the shared {@link DataConnectionReactor} while
+ * honoring the data connection idle timeout. Closing this wrapper does not
+ * close the socket channel.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+class ReactorSocketChannel implements AwaitableReadableChannel {
+
+    private final SocketChannel channel;
+
+    private final DataConnectionReactor reactor;
+
+    private final long timeout;
+
+    private boolean endOfStream = false;
+
+    private boolean open = true;
+
+    /**
+     * @param channel
+     *            The non-blocking socket channel
+     * @param reactor
+     *            The reactor to wait for the channel with
+     * @param timeout
+     *            The maximum time in milliseconds to wait for the channel, 0
+     *            means wait forever
+     */
+    public ReactorSocketChannel(final SocketChannel channel,
+            final DataConnectionReactor reactor, final long timeout) {
+        this.channel = channel;
+        this.reactor = reactor;
+        this.timeout = timeout;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void awaitReadable() throws IOException {
+        reactor.await(channel, SelectionKey.OP_READ, timeout);
+    }
+
+    /**
+     * Wait until data can be written without blocking.
+     */
+    public void awaitWritable() throws IOException {
+        reactor.await(channel, SelectionKey.OP_WRITE, timeout);
+    }
+
+    /**
+     * Read the data available without waiting.
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        int count = channel.read(dst);
+        if (count == -1) {
+            endOfStream = true;
+        }
+        return count;
+    }
+
+    /**
+     * Write all the remaining data, waiting for the channel whenever the
+     * socket send buffer is full.
+     */
+    public void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            if (channel.write(src) == 0) {
+                awaitWritable();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isOpen() {
+        return open && channel.isOpen();
+    }
+
+    /**
+     * Stop using the socket channel, it is left open.
+     */
+    public void close() {
+        open = false;
+    }
+
+    /**
+     * Get a stream blocking until data has been read, for the transfers that
+     * need to process the data on the way. Like the streams of a socket,
+     * closing the stream closes the socket channel.
+     */
+    public InputStream getInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int count = read(b, 0, 1);
+                return count == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (true) {
+                    int count = ReactorSocketChannel.this.read(buffer);
+                    if (count != 0) {
+                        return count;
+                    }
+                    awaitReadable();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Get a stream blocking until data has been written, for the transfers
+     * that need to process the data on the way. Like the streams of a
+     * socket, closing the stream closes the socket channel.
+     */
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeFully(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
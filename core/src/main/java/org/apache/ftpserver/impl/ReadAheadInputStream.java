@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Stream returning the data of an underlying stream read ahead by a thread
+ * of a {@link ReadAheadReader}. The reading thread fills chunks ahead of the
+ * one being returned, waiting for a chunk to be consumed once all of them are
+ * filled.
+ *
+ * A failure of the reading thread is thrown once the data read before it has
+ * been returned.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final ReadAheadReader reader;
+
+    private final InputStream in;
+
+    private final int depth;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    private final BlockingQueue<ByteBuffer> free = new LinkedBlockingQueue<>();
+
+    private final BlockingQueue<ByteBuffer> filled = new LinkedBlockingQueue<>();
+
+    private ByteBuffer current = null;
+
+    private Future<?> readerTask = null;
+
+    private boolean ended = false;
+
+    private volatile boolean closed = false;
+
+    private volatile IOException failure = null;
+
+    ReadAheadInputStream(final ReadAheadReader reader, final InputStream in,
+            final int depth) {
+        this.reader = reader;
+        this.in = in;
+        this.depth = depth;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int count = read(b, 0, 1);
+        return count == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (readerTask == null && !ended) {
+            start();
+        }
+        while (current == null || !current.hasRemaining()) {
+            if (current != null) {
+                free.add(current);
+                current = null;
+            }
+            if (ended) {
+                checkFailure();
+                return -1;
+            }
+            ByteBuffer chunk;
+            try {
+                chunk = filled.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(
+                        "Interrupted waiting for the data to be read");
+            }
+            if (chunk == END) {
+                ended = true;
+            } else {
+                current = chunk;
+            }
+        }
+        int count = Math.min(len, current.remaining());
+        current.get(b, off, count);
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes of the chunk being returned.
+     */
+    @Override
+    public int available() throws IOException {
+        return current != null ? current.remaining() : 0;
+    }
+
+    /**
+     * Stop the reading thread, waiting for its current read to complete, and
+     * close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (readerTask != null) {
+                // wake the reading thread up if it waits for a free chunk
+                free.add(END);
+                try {
+                    readerTask.get();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException(
+                            "Interrupted waiting for the read to complete");
+                } catch (ExecutionException e) {
+                    // failures are reported to the reading side
+                }
+                for (ByteBuffer chunk : chunks) {
+                    reader.getChunkPool().release(chunk);
+                }
+                chunks.clear();
+                current = null;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void start() throws IOException {
+        // the chunks read ahead and the one being returned
+        for (int i = 0; i <= depth; i++) {
+            ByteBuffer chunk = reader.getChunkPool().acquireHeapBuffer();
+            chunks.add(chunk);
+            free.add(chunk);
+        }
+        try {
+            readerTask = reader.submit(this::readAhead);
+        } catch (RejectedExecutionException e) {
+            for (ByteBuffer chunk : chunks) {
+                reader.getChunkPool().release(chunk);
+            }
+            chunks.clear();
+            ended = true;
+            failure = new IOException("Read-ahead reader disposed");
+            throw failure;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * The task of the reading thread, filling the free chunks until the end
+     * of the underlying stream or until this stream is closed.
+     */
+    private void readAhead() {
+        try {
+            while (!closed) {
+                ByteBuffer chunk = free.take();
+                if (chunk == END) {
+                    break;
+                }
+                chunk.clear();
+                boolean eof = fill(chunk);
+                chunk.flip();
+                if (chunk.hasRemaining()) {
+                    filled.add(chunk);
+                }
+                if (eof) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("Interrupted reading the data");
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException(e);
+        } finally {
+            filled.add(END);
+        }
+    }
+
+    /**
+     * Read the underlying stream until the chunk is full.
+     *
+     * @return true if the end of the underlying stream was reached
+     */
+    private boolean fill(final ByteBuffer chunk) throws IOException {
+        byte[] array = chunk.array();
+        while (chunk.hasRemaining() && !closed) {
+            int count = in.read(array, chunk.arrayOffset() + chunk.position(),
+                    chunk.remaining());
+            if (count == -1) {
+                return true;
+            }
+            chunk.position(chunk.position() + count);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.InputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ftpserver.ConnectionConfig;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Reads downloaded files ahead on threads separate from the ones sending the
+ * data, so that the data connections are not left idle while waiting for slow
+ * or network mounted storage. Each download reads a fixed number of chunks
+ * ahead of the chunk being sent, the chunks being taken from a pool shared by
+ * all downloads. Files are read through their stream, so that downloads from
+ * any file system are read ahead.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ReadAheadReader {
+
+    private static final long THREAD_KEEP_ALIVE = 60000;
+
+    private final int depth;
+
+    private final TransferBufferPool chunkPool;
+
+    private final ThreadPoolExecutor executor;
+
+    public ReadAheadReader(final ConnectionConfig connectionConfig) {
+        this(connectionConfig.getReadAheadDepth(), connectionConfig
+                .getReadAheadChunkSize(), connectionConfig
+                .getTransferBufferPoolSize());
+    }
+
+    /**
+     * @param depth
+     *            The number of chunks read ahead of the chunk being sent, 0
+     *            disables reading ahead
+     * @param chunkSize
+     *            The size of the chunks read at once
+     * @param maxPooledBytes
+     *            The maximum number of bytes held by idle chunks
+     */
+    public ReadAheadReader(final int depth, final int chunkSize,
+            final long maxPooledBytes) {
+        this.depth = Math.max(0, depth);
+        chunkPool = new TransferBufferPool(chunkSize, maxPooledBytes, false);
+
+        // one thread for each download being read, created on demand
+        executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, "FtpServer read-ahead "
+                                + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Returns whether downloads are read ahead, that is whether the
+     * read-ahead depth is positive.
+     */
+    public boolean isEnabled() {
+        return depth > 0;
+    }
+
+    /**
+     * Open a stream returning the data of a stream read ahead by a reading
+     * thread. The reading starts with the first read of the returned stream.
+     *
+     * @param in
+     *            The stream of the file to read ahead
+     */
+    public ReadAheadInputStream open(final InputStream in) {
+        return new ReadAheadInputStream(this, in, depth);
+    }
+
+    /**
+     * Returns the pool of the chunks the data is read into.
+     */
+    public TransferBufferPool getChunkPool() {
+        return chunkPool;
+    }
+
+    /**
+     * Stop the reading threads once the pending reads are done.
+     */
+    public void dispose() {
+        executor.shutdown();
+    }
+
+    Future<?> submit(final Runnable task) {
+        return executor.submit(task);
+    }
+}
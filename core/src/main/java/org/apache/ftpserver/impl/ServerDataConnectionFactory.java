@@ -59,6 +59,31 @@ public interface ServerDataConnectionFactory extends DataConnectionFactory {
 
     void setZipMode(boolean zip);
 
+    /**
+     * Set block mode, where the end of a file is marked in the data instead
+     * of by closing the data connection.
+     */
+    void setBlockMode(boolean block);
+
+    /**
+     * Is block mode?
+     */
+    boolean isBlockMode();
+
+    /**
+     * Notify that a transfer in block mode completed with the end of file
+     * marker, so that the data connection can carry the next transfer.
+     */
+    void blockTransferCompleted();
+
+    /**
+     * Is the data connection kept open at the end of the current transfer
+     * command? Only in block mode, once a transfer completed with the end of
+     * file marker. Otherwise the transfer commands close the data connection
+     * once done.
+     */
+    boolean isKeptOpen();
+
     /**
      * Check the data connection idle status.
      */
@@ -92,6 +92,25 @@ public interface ServerFtpStatistics extends FtpStatistics {
      */
     void setLogout(FtpIoSession session);
 
+    /**
+     * Increment the secure data connection handshake count.
+     * 
+     * @param resumed
+     *            true if the handshake resumed an earlier TLS session
+     */
+    void setDataSslHandshake(FtpIoSession session, boolean resumed);
+
+    /**
+     * Get the number of completed secure data connection handshakes.
+     */
+    int getTotalDataSslHandshakeNumber();
+
+    /**
+     * Get the number of secure data connection handshakes that resumed an
+     * earlier TLS session, the other ones being full handshakes.
+     */
+    int getTotalResumedDataSslHandshakeNumber();
+
     /**
      * Reset all cumulative total counters. Do not reset current counters, like
      * current logins, otherwise these will become negative when someone
@@ -0,0 +1,840 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLHandshakeException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Secure data socket channel kept in non-blocking mode, encrypting and
+ * decrypting the data with an {@link SSLEngine}. The handshake runs with the
+ * first read or write rather than when the channel is created.
+ *
+ * The asynchronous transfers use the operations returning without waiting,
+ * {@link #handshakeSome()}, {@link #read(ByteBuffer)},
+ * {@link #write(ByteBuffer)}, {@link #flush()} and {@link #closeOutbound()},
+ * and continue from {@link #whenReady()} when these can not go on. The
+ * delegated tasks of the handshake, where the expensive key exchange
+ * happens, then run on a bounded executor shared by the server, so no
+ * transfer thread waits for them. The streams wait for the socket channel
+ * through the shared {@link DataConnectionReactor} and run the delegated
+ * tasks on the thread using them.
+ *
+ * Writes are wrapped into as many full size TLS records as fit the outgoing
+ * packet buffer before being sent. The packet buffers are taken from the
+ * {@link TransferBufferPool} of the server when its buffers are large enough
+ * for a TLS record, and handed back when the channel is shut down or
+ * aborted. Aborting while a transfer uses the channel closes the socket
+ * channel to stop the transfer, the transfer thread then hands the buffers
+ * back.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+class SslEngineSocketChannel implements AwaitableReadableChannel {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(SslEngineSocketChannel.class);
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /**
+     * What an operation waits for when the engine has delegated tasks to run,
+     * the other waits being for the socket channel operations.
+     */
+    private static final int NEED_TASK = -1;
+
+    private final SocketChannel socketChannel;
+
+    private final DataConnectionReactor reactor;
+
+    private final long timeout;
+
+    private final SSLEngine engine;
+
+    private final TransferBufferPool bufferPool;
+
+    private final Executor taskExecutor;
+
+    private final Runnable handshakeListener;
+
+    /**
+     * Received data not decrypted yet, in read mode
+     */
+    private ByteBuffer netIn;
+
+    /**
+     * Encrypted data not sent yet, in read mode
+     */
+    private ByteBuffer netOut;
+
+    /**
+     * Decrypted data not read yet, in read mode
+     */
+    private ByteBuffer appIn;
+
+    /**
+     * What the last operation unable to go on waits for,
+     * {@link SelectionKey#OP_READ}, {@link SelectionKey#OP_WRITE} or
+     * {@link #NEED_TASK}
+     */
+    private int needs;
+
+    private boolean handshakeStarted = false;
+
+    private boolean handshakeDone = false;
+
+    private boolean endOfStream = false;
+
+    private boolean open = true;
+
+    /**
+     * Held while using the engine and the buffers, not a monitor so that a
+     * thread waiting for the socket does not pin the carrier thread of a
+     * virtual thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private boolean released = false;
+
+    private volatile boolean closing = false;
+
+    /**
+     * @param socketChannel
+     *            The non-blocking socket channel
+     * @param engine
+     *            The engine, configured for server or client mode
+     * @param reactor
+     *            The reactor to wait for the channel with
+     * @param timeout
+     *            The maximum time in milliseconds to wait for the channel, 0
+     *            means wait forever
+     * @param bufferPool
+     *            The pool to take the packet buffers from
+     * @param taskExecutor
+     *            The executor to run the delegated tasks of the engine on
+     *            for the asynchronous transfers
+     * @param handshakeListener
+     *            Run once the initial handshake is done, can be null
+     */
+    public SslEngineSocketChannel(final SocketChannel socketChannel,
+            final SSLEngine engine, final DataConnectionReactor reactor,
+            final long timeout, final TransferBufferPool bufferPool,
+            final Executor taskExecutor, final Runnable handshakeListener) {
+        this.socketChannel = socketChannel;
+        this.reactor = reactor;
+        this.timeout = timeout;
+        this.engine = engine;
+        this.bufferPool = bufferPool;
+        this.taskExecutor = taskExecutor;
+        this.handshakeListener = handshakeListener;
+
+        int packetSize = engine.getSession().getPacketBufferSize();
+        netIn = acquireBuffer(packetSize);
+        netIn.flip();
+        netOut = acquireBuffer(packetSize);
+        netOut.flip();
+        appIn = acquireBuffer(engine.getSession().getApplicationBufferSize());
+        appIn.flip();
+    }
+
+    /**
+     * Run the initial handshake, waiting for the socket channel.
+     */
+    public void handshake() throws IOException {
+        lock();
+        try {
+            while (!continueHandshake()) {
+                await();
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Go on with the initial handshake without waiting.
+     * 
+     * @return true once the handshake is done, else call
+     *         {@link #whenReady()} to continue
+     */
+    public boolean handshakeSome() throws IOException {
+        lock();
+        try {
+            return continueHandshake();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Get the engine, to check the negotiated session once the handshake is
+     * done.
+     */
+    public SSLEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Get notified once the last operation which could not go on without
+     * waiting can be retried: when the socket channel is ready for it, or
+     * when the delegated tasks of the engine have run on the task executor.
+     * 
+     * @return A future completed once the operation can be retried, failing
+     *         like {@link DataConnectionReactor#whenReady(
+     *         java.nio.channels.SelectableChannel, int, long)} or with an
+     *         {@link SSLHandshakeException} if a delegated task failed
+     */
+    public CompletableFuture<Void> whenReady() {
+        if (needs == NEED_TASK) {
+            return runDelegatedTasksAsync();
+        }
+        return reactor.whenReady(socketChannel, needs, timeout);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void awaitReadable() throws IOException {
+        lock();
+        try {
+            while (true) {
+                if (continueHandshake()) {
+                    if (appIn.hasRemaining() || endOfStream) {
+                        return;
+                    }
+                    decrypt();
+                    if (appIn.hasRemaining() || endOfStream) {
+                        return;
+                    }
+                }
+                await();
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Read the decrypted data available without waiting.
+     * 
+     * @return The number of bytes read, -1 at the end of the stream, 0 if
+     *         no data is available, call {@link #whenReady()} or
+     *         {@link #awaitReadable()} to continue
+     */
+    public int read(final ByteBuffer dst) throws IOException {
+        lock();
+        try {
+            if (!continueHandshake()) {
+                return 0;
+            }
+            if (!appIn.hasRemaining()) {
+                decrypt();
+                if (!appIn.hasRemaining()) {
+                    return endOfStream ? -1 : 0;
+                }
+            }
+            int count = Math.min(appIn.remaining(), dst.remaining());
+            int limit = appIn.limit();
+            appIn.limit(appIn.position() + count);
+            dst.put(appIn);
+            appIn.limit(limit);
+            return count;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Encrypt and send data without waiting. The encrypted data the socket
+     * channel could not take is sent by the next write or by
+     * {@link #flush()}.
+     * 
+     * @return The number of bytes taken from the buffer, 0 if the channel can
+     *         not take more data, call {@link #whenReady()} to continue
+     */
+    public int write(final ByteBuffer src) throws IOException {
+        lock();
+        try {
+            if (!continueHandshake()) {
+                return 0;
+            }
+            return encrypt(src);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Send the encrypted data not sent yet without waiting.
+     * 
+     * @return true once all the data is sent, else call {@link #whenReady()}
+     *         to continue
+     */
+    public boolean flush() throws IOException {
+        lock();
+        try {
+            return flushNet();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Send the data not sent yet and the TLS close notification without
+     * waiting, at the normal end of a transfer. The socket channel is left
+     * open.
+     * 
+     * @return true once the close notification is sent, else call
+     *         {@link #whenReady()} to continue
+     */
+    public boolean closeOutbound() throws IOException {
+        lock();
+        try {
+            return sendCloseNotification();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Encrypt and write all the remaining data, waiting for the channel
+     * whenever the socket send buffer is full.
+     */
+    public void writeFully(final ByteBuffer src) throws IOException {
+        lock();
+        try {
+            while (!continueHandshake()) {
+                await();
+            }
+            while (src.hasRemaining()) {
+                if (encrypt(src) == 0) {
+                    await();
+                }
+            }
+            while (!flushNet()) {
+                await();
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isEndOfStream() {
+        return endOfStream;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isOpen() {
+        return open && socketChannel.isOpen();
+    }
+
+    /**
+     * Stop using the socket channel, it is left open.
+     */
+    public void close() {
+        open = false;
+    }
+
+    /**
+     * Send the TLS close notification, waiting for the channel, close the
+     * socket channel and hand the packet buffers back to the pool. The
+     * handshake is completed first if no data was transferred, for the client
+     * to get an empty transfer rather than a handshake failure. If another
+     * thread is using the channel, only the socket channel is closed, failing
+     * the transfer of that thread which then hands the buffers back. Can be
+     * called several times.
+     */
+    public void shutdown() throws IOException {
+        closing = true;
+        if (!lock.tryLock()) {
+            socketChannel.close();
+            return;
+        }
+        try {
+            if (!released && socketChannel.isOpen()) {
+                while (!continueHandshake()) {
+                    await();
+                }
+                while (!sendCloseNotification()) {
+                    await();
+                }
+            }
+        } finally {
+            try {
+                socketChannel.close();
+            } finally {
+                release();
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Close the socket channel without sending the TLS close notification,
+     * which could wait for a client no longer reading, and hand the packet
+     * buffers back to the pool. If another thread is using the channel, that
+     * thread hands the buffers back once its transfer has failed. Can be
+     * called several times, from any thread.
+     */
+    public void abort() {
+        closing = true;
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close secure data connection", e);
+        }
+        if (lock.tryLock()) {
+            try {
+                release();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Take the lock before using the engine and the buffers.
+     * 
+     * @throws AsynchronousCloseException
+     *             If the channel has been shut down
+     */
+    private void lock() throws IOException {
+        lock.lock();
+        if (released) {
+            lock.unlock();
+            throw new AsynchronousCloseException();
+        }
+    }
+
+    /**
+     * Release the lock, handing the buffers back if the channel was shut down
+     * by another thread meanwhile.
+     */
+    private void unlock() {
+        lock.unlock();
+        if (closing && lock.tryLock()) {
+            try {
+                release();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Hand the packet buffers back to the pool, with the lock held.
+     */
+    private void release() {
+        if (!released) {
+            released = true;
+            bufferPool.release(netIn);
+            bufferPool.release(netOut);
+            bufferPool.release(appIn);
+        }
+    }
+
+    /**
+     * Get a stream blocking until decrypted data has been read. Closing the
+     * stream closes the socket channel.
+     */
+    public InputStream getInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int count = read(b, 0, 1);
+                return count == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (true) {
+                    int count = SslEngineSocketChannel.this.read(buffer);
+                    if (count != 0) {
+                        return count;
+                    }
+                    awaitReadable();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                shutdown();
+            }
+        };
+    }
+
+    /**
+     * Get a stream blocking until data has been encrypted and written.
+     * Closing the stream sends the TLS close notification and closes the
+     * socket channel.
+     */
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writeFully(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                shutdown();
+            }
+        };
+    }
+
+    /**
+     * Wait for what the last operation unable to go on needs, running the
+     * delegated tasks on this thread.
+     */
+    private void await() throws IOException {
+        if (needs == NEED_TASK) {
+            try {
+                runDelegatedTasks();
+            } catch (RuntimeException e) {
+                throw handshakeFailed(e);
+            }
+        } else {
+            reactor.await(socketChannel, needs, timeout);
+        }
+    }
+
+    /**
+     * Go on with the initial handshake without waiting, with the lock held.
+     * 
+     * @return true once the handshake is done
+     */
+    private boolean continueHandshake() throws IOException {
+        if (handshakeDone) {
+            return true;
+        }
+        if (!handshakeStarted) {
+            engine.beginHandshake();
+            handshakeStarted = true;
+        }
+        if (!processHandshake()) {
+            return false;
+        }
+        handshakeDone = true;
+        if (handshakeListener != null) {
+            handshakeListener.run();
+        }
+        return true;
+    }
+
+    /**
+     * Encrypt as much of the data as the socket channel takes without
+     * waiting.
+     * 
+     * @return The number of bytes taken from the buffer
+     */
+    private int encrypt(final ByteBuffer src) throws IOException {
+        int position = src.position();
+        while (src.hasRemaining() && processHandshake()) {
+            if (wrap(src).getStatus() == Status.CLOSED) {
+                throw new SSLException("Secure data connection closed");
+            }
+        }
+        flushNet();
+        return src.position() - position;
+    }
+
+    /**
+     * Send the pending data and the close notification without waiting.
+     * 
+     * @return true once the close notification is sent
+     */
+    private boolean sendCloseNotification() throws IOException {
+        if (!flushNet()) {
+            return false;
+        }
+        engine.closeOutbound();
+        while (!engine.isOutboundDone()) {
+            if (wrap(EMPTY).bytesProduced() == 0) {
+                break;
+            }
+            if (!flushNet()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decrypt the data available without waiting, until some application
+     * data or the end of the stream is reached.
+     */
+    private void decrypt() throws IOException {
+        while (!appIn.hasRemaining() && !endOfStream) {
+            if (netIn.hasRemaining()) {
+                SSLEngineResult result = unwrap();
+                if (result.getStatus() == Status.CLOSED) {
+                    endOfStream = true;
+                    return;
+                }
+                if (!processHandshake()) {
+                    return;
+                }
+                if (result.getStatus() == Status.OK
+                        && result.bytesConsumed() > 0) {
+                    continue;
+                }
+            }
+
+            int count = readNet();
+            if (count == -1) {
+                // the client closed the connection without a close
+                // notification, like many FTP clients do
+                endOfStream = true;
+            } else if (count == 0) {
+                needs = SelectionKey.OP_READ;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send the pending encrypted data and go on with a handshake without
+     * waiting, until it is done.
+     * 
+     * @return true once the handshake is done and the data sent, else
+     *         {@link #needs} tells what to wait for
+     */
+    private boolean processHandshake() throws IOException {
+        while (true) {
+            if (!flushNet()) {
+                return false;
+            }
+            switch (engine.getHandshakeStatus()) {
+            case NEED_TASK:
+                needs = NEED_TASK;
+                return false;
+            case NEED_WRAP:
+                if (wrap(EMPTY).getStatus() == Status.CLOSED) {
+                    throw new SSLHandshakeException(
+                            "Secure data connection closed during handshake");
+                }
+                break;
+            case NEED_UNWRAP:
+            case NEED_UNWRAP_AGAIN:
+                SSLEngineResult result = unwrap();
+                if (result.getStatus() == Status.CLOSED) {
+                    throw new SSLHandshakeException(
+                            "Secure data connection closed during handshake");
+                }
+                if (result.getStatus() == Status.BUFFER_UNDERFLOW) {
+                    int count = readNet();
+                    if (count == -1) {
+                        throw new SSLHandshakeException(
+                                "Secure data connection closed during handshake");
+                    } else if (count == 0) {
+                        needs = SelectionKey.OP_READ;
+                        return false;
+                    }
+                }
+                break;
+            default:
+                // NOT_HANDSHAKING
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Run the delegated tasks of the engine on the task executor.
+     * 
+     * @return A future completed once the tasks have run
+     */
+    private CompletableFuture<Void> runDelegatedTasksAsync() {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        Runnable tasks = () -> {
+            try {
+                runDelegatedTasks();
+                done.complete(null);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(handshakeFailed(e));
+            }
+        };
+        try {
+            taskExecutor.execute(tasks);
+        } catch (RejectedExecutionException e) {
+            // the server is shutting down
+            tasks.run();
+        }
+        return done;
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    private SSLHandshakeException handshakeFailed(final Throwable cause) {
+        SSLHandshakeException e = new SSLHandshakeException(
+                "Secure data connection handshake failed");
+        e.initCause(cause);
+        return e;
+    }
+
+    /**
+     * Encrypt as many records as fit in the packet buffer, to be sent by
+     * {@link #flushNet()}. The packet buffer must be empty.
+     */
+    private SSLEngineResult wrap(final ByteBuffer src) throws IOException {
+        int packetSize = engine.getSession().getPacketBufferSize();
+        netOut.clear();
+        SSLEngineResult result;
+        while (true) {
+            result = engine.wrap(src, netOut);
+            if (result.getStatus() == Status.BUFFER_OVERFLOW) {
+                if (netOut.position() > 0) {
+                    // send what we have to make room
+                    break;
+                }
+                netOut.flip();
+                netOut = enlarge(netOut, packetSize);
+                netOut.clear();
+                continue;
+            }
+            if (result.getStatus() != Status.OK || !src.hasRemaining()
+                    || netOut.remaining() < packetSize
+                    || result.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING) {
+                break;
+            }
+        }
+        netOut.flip();
+        return result;
+    }
+
+    /**
+     * Write the encrypted data not sent yet without waiting.
+     * 
+     * @return true once all the data is sent, else {@link #needs} tells to
+     *         wait for the channel
+     */
+    private boolean flushNet() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (socketChannel.write(netOut) == 0) {
+                needs = SelectionKey.OP_WRITE;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decrypt one record from the received data, if complete.
+     */
+    private SSLEngineResult unwrap() throws IOException {
+        while (true) {
+            appIn.compact();
+            SSLEngineResult result;
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                appIn.flip();
+            }
+            if (result.getStatus() == Status.BUFFER_OVERFLOW) {
+                appIn = enlarge(appIn, engine.getSession()
+                        .getApplicationBufferSize()
+                        + appIn.remaining());
+                continue;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Read the received data available without waiting.
+     */
+    private int readNet() throws IOException {
+        netIn.compact();
+        try {
+            if (!netIn.hasRemaining()) {
+                netIn.flip();
+                netIn = enlarge(netIn, engine.getSession()
+                        .getPacketBufferSize()
+                        + netIn.remaining());
+                netIn.compact();
+            }
+            return socketChannel.read(netIn);
+        } finally {
+            netIn.flip();
+        }
+    }
+
+    /**
+     * Replace a buffer in read mode by a larger one holding the same data, in
+     * read mode too.
+     */
+    private ByteBuffer enlarge(final ByteBuffer buffer, final int size) {
+        LOG.debug("Enlarging secure data connection buffer to {} bytes", size);
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(size, buffer
+                .capacity()));
+        larger.put(buffer);
+        larger.flip();
+        bufferPool.release(buffer);
+        return larger;
+    }
+
+    private ByteBuffer acquireBuffer(final int size) {
+        if (bufferPool.getBufferSize() >= size) {
+            return bufferPool.acquireBuffer();
+        }
+        return ByteBuffer.allocate(size);
+    }
+}
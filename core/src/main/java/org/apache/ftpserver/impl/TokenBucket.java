@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Token bucket used to limit the transfer rate of data connections. The bucket
+ * holds up to burst size tokens, one token per byte, and is refilled at the
+ * configured rate in steps of the refill interval. Transfers acquire tokens
+ * before moving data and return the tokens they did not use.
+ *
+ * This class is thread safe, threads waiting for tokens do not hold any lock.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long rate;
+
+    private final long burstSize;
+
+    private final long refillInterval;
+
+    private long tokens;
+
+    private long lastRefill;
+
+    /**
+     * Create a bucket, initially filled to the burst size.
+     *
+     * @param rate
+     *            The refill rate in bytes per second, must be positive
+     * @param burstSize
+     *            The maximum number of tokens in the bucket, must be positive
+     * @param refillInterval
+     *            The refill granularity in milliseconds, 0 to refill
+     *            continuously
+     */
+    public TokenBucket(final long rate, final long burstSize,
+            final long refillInterval) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        if (burstSize <= 0) {
+            throw new IllegalArgumentException("burstSize must be positive");
+        }
+        if (refillInterval < 0) {
+            throw new IllegalArgumentException(
+                    "refillInterval can not be negative");
+        }
+        this.rate = rate;
+        this.burstSize = burstSize;
+        this.refillInterval = Math.max(1,
+                TimeUnit.MILLISECONDS.toNanos(refillInterval));
+        this.tokens = burstSize;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Get the refill rate in bytes per second.
+     */
+    public long getRate() {
+        return rate;
+    }
+
+    /**
+     * Get the maximum number of tokens in the bucket.
+     */
+    public long getBurstSize() {
+        return burstSize;
+    }
+
+    /**
+     * Acquire between one and max tokens, waiting until at least one token is
+     * available.
+     *
+     * @param max
+     *            The maximum number of tokens to acquire
+     * @return The number of tokens acquired
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting
+     */
+    public long acquire(final long max) throws InterruptedException {
+        if (max <= 0) {
+            throw new IllegalArgumentException("max must be positive");
+        }
+        while (true) {
+            long waitTime = tryAcquire(max);
+            if (waitTime < 0) {
+                return -waitTime;
+            }
+            TimeUnit.NANOSECONDS.sleep(waitTime);
+        }
+    }
+
+    /**
+     * Try to acquire between one and max tokens without waiting.
+     *
+     * @return The number of tokens acquired as a negative number, or the time
+     *         in nanoseconds until tokens are expected to be available
+     */
+    synchronized long tryAcquire(final long max) {
+        long now = System.nanoTime();
+        refill(now);
+
+        if (tokens > 0) {
+            long acquired = Math.min(tokens, max);
+            tokens -= acquired;
+            return -acquired;
+        }
+
+        // time until the refill providing the first token
+        long needed = (NANOS_PER_SECOND * (1 - tokens) + rate - 1) / rate;
+        needed = ((needed + refillInterval - 1) / refillInterval)
+                * refillInterval;
+        return Math.max(1, lastRefill + needed - now);
+    }
+
+    /**
+     * Return tokens that were acquired but not used.
+     *
+     * @param unused
+     *            The number of unused tokens
+     */
+    public synchronized void release(final long unused) {
+        if (unused > 0) {
+            tokens = Math.min(burstSize, tokens + unused);
+        }
+    }
+
+    private void refill(final long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed < refillInterval) {
+            return;
+        }
+
+        // only refill in steps of the refill interval
+        elapsed -= elapsed % refillInterval;
+
+        long missing = burstSize - tokens;
+        if (missing <= 0 || elapsed >= (NANOS_PER_SECOND * missing) / rate) {
+            tokens = Math.max(tokens, burstSize);
+            lastRefill = now;
+            return;
+        }
+
+        long added = (elapsed * rate) / NANOS_PER_SECOND;
+        tokens += added;
+
+        // keep the fraction of a token not yet added for the next refill
+        lastRefill += (added * NANOS_PER_SECOND) / rate;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ftpserver.ConnectionConfig;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Pool of the buffers used to move data during transfers, checksum
+ * calculations and directory listings, shared by all sessions of a server.
+ * All buffers have the same size. The number of bytes held by idle buffers
+ * is capped, buffers released while the pool is full are left to the
+ * garbage collector.
+ *
+ * Heap buffers are handed out to code working on streams, which needs the
+ * backing array. Code working on channels may be handed direct buffers,
+ * which are pooled separately.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferBufferPool {
+
+    private final int bufferSize;
+
+    private final long maxPooledBytes;
+
+    private final boolean direct;
+
+    private final Queue<ByteBuffer> heapBuffers = new ConcurrentLinkedQueue<>();
+
+    private final Queue<ByteBuffer> directBuffers = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    private final AtomicLong outstandingBytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    public TransferBufferPool(final ConnectionConfig connectionConfig) {
+        this(connectionConfig.getTransferBufferSize(), connectionConfig
+                .getTransferBufferPoolSize(), connectionConfig
+                .isDirectTransferBuffers());
+    }
+
+    /**
+     * @param bufferSize
+     *            The size of the buffers in bytes
+     * @param maxPooledBytes
+     *            The maximum number of bytes held by idle buffers, 0 disables
+     *            pooling
+     * @param direct
+     *            true if {@link #acquireBuffer()} should return direct buffers
+     */
+    public TransferBufferPool(final int bufferSize, final long maxPooledBytes,
+            final boolean direct) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Buffer size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooledBytes = maxPooledBytes;
+        this.direct = direct;
+    }
+
+    /**
+     * Get a cleared buffer to be used with channels. It is a direct buffer if
+     * the pool is configured for direct buffers.
+     */
+    public ByteBuffer acquireBuffer() {
+        return acquire(direct ? directBuffers : heapBuffers, direct);
+    }
+
+    /**
+     * Get a cleared heap buffer, for code needing the backing array.
+     */
+    public ByteBuffer acquireHeapBuffer() {
+        return acquire(heapBuffers, false);
+    }
+
+    /**
+     * Hand back a buffer acquired from this pool. The buffer must not be used
+     * after being released.
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize) {
+            return;
+        }
+        outstandingBytes.addAndGet(-bufferSize);
+
+        if (pooledBytes.addAndGet(bufferSize) > maxPooledBytes) {
+            // pool full, leave it to the garbage collector
+            pooledBytes.addAndGet(-bufferSize);
+            return;
+        }
+        if (buffer.isDirect()) {
+            directBuffers.add(buffer);
+        } else {
+            heapBuffers.add(buffer);
+        }
+    }
+
+    private ByteBuffer acquire(final Queue<ByteBuffer> buffers,
+            final boolean allocateDirect) {
+        outstandingBytes.addAndGet(bufferSize);
+
+        ByteBuffer buffer = buffers.poll();
+        if (buffer != null) {
+            pooledBytes.addAndGet(-bufferSize);
+            hits.incrementAndGet();
+            buffer.clear();
+            return buffer;
+        }
+
+        misses.incrementAndGet();
+        if (allocateDirect) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        return ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Returns the size of the buffers handed out by this pool.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns whether {@link #acquireBuffer()} returns direct buffers.
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Returns the number of buffers taken from the pool.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of buffers allocated because the pool was empty.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of bytes in buffers handed out and not yet released.
+     */
+    public long getOutstandingBytes() {
+        return outstandingBytes.get();
+    }
+
+    /**
+     * Returns the number of bytes in idle buffers held by the pool.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * One level in a hierarchy of transfer rate limits, for example the server,
+ * a listener, a user or a single transfer. Tokens acquired from a limiter are
+ * also acquired from all its parents, so a transfer never exceeds the limit of
+ * any level it belongs to.
+ *
+ * Levels shared by several transfers hand out at most a fair share of their
+ * burst size per call, so that concurrent transfers get similar portions of
+ * the bandwidth while a single busy transfer can still use all the capacity
+ * left unused by idle ones.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class TransferRateLimiter {
+
+    /**
+     * The smallest share handed out by a shared level, avoids very small
+     * reads and writes when many transfers are active.
+     */
+    private static final long MIN_FAIR_SHARE = 1024;
+
+    private final TransferRateLimiter parent;
+
+    private final TokenBucket bucket;
+
+    private final AtomicInteger activeTransfers = new AtomicInteger();
+
+    /**
+     * @param parent
+     *            The next level up in the hierarchy, null if this is the top
+     *            level
+     * @param bucket
+     *            The token bucket enforcing the rate of this level, null if
+     *            this level does not limit the rate
+     */
+    public TransferRateLimiter(final TransferRateLimiter parent,
+            final TokenBucket bucket) {
+        this.parent = parent;
+        this.bucket = bucket;
+    }
+
+    /**
+     * Get the next level up in the hierarchy.
+     */
+    public TransferRateLimiter getParent() {
+        return parent;
+    }
+
+    /**
+     * Get the number of active transfers using this level.
+     */
+    public int getActiveTransfers() {
+        return activeTransfers.get();
+    }
+
+    /**
+     * Register a transfer starting to use this level and all its parents.
+     */
+    public void open() {
+        for (TransferRateLimiter level = this; level != null; level = level.parent) {
+            level.activeTransfers.incrementAndGet();
+        }
+    }
+
+    /**
+     * Unregister a transfer from this level and all its parents.
+     */
+    public void close() {
+        for (TransferRateLimiter level = this; level != null; level = level.parent) {
+            level.activeTransfers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Acquire between one and max tokens from this level and all its parents,
+     * waiting until they are available.
+     *
+     * @param max
+     *            The maximum number of tokens to acquire
+     * @return The number of tokens acquired
+     * @throws InterruptedException
+     *             If the thread was interrupted while waiting
+     */
+    public long acquire(final long max) throws InterruptedException {
+        long acquired = max;
+        if (bucket != null) {
+            acquired = bucket.acquire(Math.min(max, getFairShare()));
+        }
+        if (parent != null) {
+            long granted;
+            try {
+                granted = parent.acquire(acquired);
+            } catch (InterruptedException e) {
+                releaseLocal(acquired);
+                throw e;
+            }
+            releaseLocal(acquired - granted);
+            acquired = granted;
+        }
+        return acquired;
+    }
+
+    /**
+     * Try to acquire between one and max tokens from this level and all its
+     * parents without waiting, for the transfers that must not hold a thread.
+     *
+     * @param max
+     *            The maximum number of tokens to acquire
+     * @return The number of tokens acquired as a negative number, or the time
+     *         in nanoseconds until tokens are expected to be available
+     */
+    public long tryAcquire(final long max) {
+        long acquired = max;
+        if (bucket != null) {
+            long result = bucket.tryAcquire(Math.min(max, getFairShare()));
+            if (result > 0) {
+                return result;
+            }
+            acquired = -result;
+        }
+        if (parent != null) {
+            long result = parent.tryAcquire(acquired);
+            if (result > 0) {
+                releaseLocal(acquired);
+                return result;
+            }
+            releaseLocal(acquired + result);
+            acquired = -result;
+        }
+        return -acquired;
+    }
+
+    /**
+     * Return tokens that were acquired but not used to this level and all its
+     * parents.
+     *
+     * @param unused
+     *            The number of unused tokens
+     */
+    public void release(final long unused) {
+        for (TransferRateLimiter level = this; level != null; level = level.parent) {
+            level.releaseLocal(unused);
+        }
+    }
+
+    private void releaseLocal(final long unused) {
+        if (bucket != null) {
+            bucket.release(unused);
+        }
+    }
+
+    private long getFairShare() {
+        int active = activeTransfers.get();
+        if (active <= 1) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(MIN_FAIR_SHARE, bucket.getBurstSize() / active);
+    }
+}
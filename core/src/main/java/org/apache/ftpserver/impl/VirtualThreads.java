@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Access to virtual threads, which are only available from Java 21 while the
+ * server is built for older Java versions.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class VirtualThreads {
+
+    /**
+     * Are virtual threads supported by the running JVM?
+     */
+    public static boolean isSupported() {
+        return createThreadFactory("probe-") != null;
+    }
+
+    /**
+     * Create a factory for virtual threads.
+     *
+     * @param namePrefix
+     *            The prefix of the thread names, followed by a counter
+     * @return The thread factory, null if virtual threads are not supported by
+     *         the running JVM
+     */
+    public static ThreadFactory createThreadFactory(final String namePrefix) {
+        try {
+            // Thread.ofVirtual().name(namePrefix, 0).factory()
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method name = builderClass.getMethod("name", String.class,
+                    long.class);
+            builder = name.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(
+                    builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Stream copying the data written to it into pooled buffers, written to the
+ * underlying stream by a thread of a {@link WriteBehindWriter}. All the
+ * buffers filled since the last write are written at once, through a
+ * gathering write for file streams.
+ *
+ * Writing fails once a write of the writing thread failed, or if no buffer
+ * was freed by the pending writes within the timeout. The data is only known
+ * to be written once {@link #finish()} returned.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class WriteBehindOutputStream extends OutputStream {
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final WriteBehindWriter writer;
+
+    private final OutputStream out;
+
+    private final FileChannel channel;
+
+    private final Semaphore uploadBuffers;
+
+    // 0 to wait forever
+    private final long timeout;
+
+    private final BlockingQueue<ByteBuffer> queue = new LinkedBlockingQueue<>();
+
+    private ByteBuffer current = null;
+
+    private Future<?> writerTask = null;
+
+    private boolean finished = false;
+
+    private volatile IOException failure = null;
+
+    WriteBehindOutputStream(final WriteBehindWriter writer,
+            final OutputStream out, final int maxBuffers, final long timeout) {
+        this.writer = writer;
+        this.out = out;
+        if (out instanceof FileOutputStream) {
+            channel = ((FileOutputStream) out).getChannel();
+        } else {
+            channel = null;
+        }
+        uploadBuffers = new Semaphore(maxBuffers);
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        checkFailure();
+        if (finished) {
+            throw new IOException("Stream finished");
+        }
+        while (len > 0) {
+            if (current == null) {
+                current = acquire();
+            }
+            int count = Math.min(len, current.remaining());
+            current.put(b, off, count);
+            off += count;
+            len -= count;
+            if (!current.hasRemaining()) {
+                handOver();
+            }
+        }
+    }
+
+    /**
+     * Hand the data written so far to the writing thread, without waiting for
+     * it to be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkFailure();
+        if (current != null && current.position() > 0) {
+            handOver();
+        }
+    }
+
+    /**
+     * Wait for all the data written to this stream to be written to the
+     * underlying stream. The underlying stream is not closed.
+     *
+     * @throws IOException
+     *             If writing the data failed
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            checkFailure();
+            return;
+        }
+        finished = true;
+        if (current != null) {
+            if (current.position() > 0 && failure == null) {
+                handOver();
+            } else {
+                release(current);
+                current = null;
+            }
+        }
+        if (writerTask != null) {
+            queue.add(END);
+            try {
+                writerTask.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(
+                        "Interrupted waiting for the data to be written");
+            } catch (ExecutionException e) {
+                throw new IOException("Writing the data failed", e.getCause());
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Finish and close the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private ByteBuffer acquire() throws IOException {
+        Semaphore poolBuffers = writer.getPoolBuffers();
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            if (!acquire(uploadBuffers, deadline)) {
+                throw new IOException(
+                        "Timed out waiting for the data to be written");
+            }
+            boolean acquired = false;
+            try {
+                acquired = acquire(poolBuffers, deadline);
+            } finally {
+                if (!acquired) {
+                    uploadBuffers.release();
+                }
+            }
+            if (!acquired) {
+                throw new IOException(
+                        "Timed out waiting for the buffers of other uploads to be written");
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException(
+                    "Interrupted waiting for the data to be written");
+        }
+        ByteBuffer buffer = writer.getBufferPool().acquireHeapBuffer();
+
+        // the writing thread may have failed while we were waiting
+        if (failure != null) {
+            release(buffer);
+            checkFailure();
+        }
+        return buffer;
+    }
+
+    private boolean acquire(final Semaphore buffers, final long deadline)
+            throws InterruptedException {
+        if (timeout == 0) {
+            buffers.acquire();
+            return true;
+        }
+        return buffers.tryAcquire(deadline - System.nanoTime(),
+                TimeUnit.NANOSECONDS);
+    }
+
+    private void release(final ByteBuffer buffer) {
+        writer.getBufferPool().release(buffer);
+        writer.getPoolBuffers().release();
+        uploadBuffers.release();
+    }
+
+    private void handOver() throws IOException {
+        ByteBuffer buffer = current;
+        current = null;
+        buffer.flip();
+        if (writerTask == null) {
+            try {
+                writerTask = writer.submit(this::writeQueued);
+            } catch (RejectedExecutionException e) {
+                release(buffer);
+                failure = new IOException("Write-behind writer disposed");
+                throw failure;
+            }
+        }
+        queue.add(buffer);
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * The task of the writing thread, writing the buffers as they are handed
+     * over until the end of the upload.
+     */
+    private void writeQueued() {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        boolean end = false;
+        while (!end) {
+            try {
+                buffers.add(queue.take());
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException(
+                        "Interrupted writing the data");
+                continue;
+            }
+            // coalesce all the buffers handed over meanwhile
+            queue.drainTo(buffers);
+            if (buffers.get(buffers.size() - 1) == END) {
+                buffers.remove(buffers.size() - 1);
+                end = true;
+            }
+            try {
+                if (failure == null) {
+                    write(buffers);
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e instanceof IOException ? (IOException) e
+                        : new IOException(e);
+            } finally {
+                for (ByteBuffer buffer : buffers) {
+                    release(buffer);
+                }
+                buffers.clear();
+            }
+        }
+    }
+
+    private void write(final List<ByteBuffer> buffers) throws IOException {
+        if (buffers.isEmpty()) {
+            return;
+        }
+        if (channel != null) {
+            ByteBuffer[] array = buffers.toArray(new ByteBuffer[buffers.size()]);
+            ByteBuffer last = array[array.length - 1];
+            while (last.hasRemaining()) {
+                channel.write(array);
+            }
+        } else {
+            for (ByteBuffer buffer : buffers) {
+                out.write(buffer.array(), buffer.arrayOffset()
+                        + buffer.position(), buffer.remaining());
+            }
+            out.flush();
+        }
+    }
+}
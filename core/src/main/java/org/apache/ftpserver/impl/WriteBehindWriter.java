@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.OutputStream;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ftpserver.ConnectionConfig;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ *
+ * Writes uploaded data to the files on threads separate from the ones
+ * receiving it, so that slow disk writes do not stall the data connections.
+ * The data is handed over in buffers taken from the transfer buffer pool.
+ * The number of buffers received and not yet written is limited for each
+ * upload and for the whole server, uploads reaching either limit wait for the
+ * pending writes before receiving more data. An upload waiting longer than
+ * its timeout fails, so that the buffers held by stalled uploads can not stop
+ * the other uploads for ever.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class WriteBehindWriter {
+
+    private static final long THREAD_KEEP_ALIVE = 60000;
+
+    private final TransferBufferPool bufferPool;
+
+    private final int maxUploadBuffers;
+
+    private final int maxPoolBuffers;
+
+    private final Semaphore poolBuffers;
+
+    private final ThreadPoolExecutor executor;
+
+    public WriteBehindWriter(final ConnectionConfig connectionConfig,
+            final TransferBufferPool bufferPool) {
+        this(bufferPool, connectionConfig.getWriteBehindSize(),
+                connectionConfig.getWriteBehindPoolSize());
+    }
+
+    /**
+     * @param bufferPool
+     *            The pool to take the buffers handed to the writing threads
+     *            from
+     * @param writeBehindSize
+     *            The maximum number of bytes of an upload not yet written, 0
+     *            disables writing behind
+     * @param writeBehindPoolSize
+     *            The maximum number of bytes not yet written for all uploads
+     */
+    public WriteBehindWriter(final TransferBufferPool bufferPool,
+            final long writeBehindSize, final long writeBehindPoolSize) {
+        this.bufferPool = bufferPool;
+        int bufferSize = bufferPool.getBufferSize();
+        if (writeBehindSize > 0) {
+            // at least one buffer being filled and one being written
+            maxUploadBuffers = (int) Math.max(2, Math.min(Integer.MAX_VALUE,
+                    (writeBehindSize + bufferSize - 1) / bufferSize));
+        } else {
+            maxUploadBuffers = 0;
+        }
+        maxPoolBuffers = (int) Math.max(maxUploadBuffers, Math.min(
+                Integer.MAX_VALUE, writeBehindPoolSize / bufferSize));
+        poolBuffers = new Semaphore(maxPoolBuffers);
+
+        // one thread for each upload being written, created on demand
+        executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(r, "FtpServer write-behind "
+                                + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Returns whether uploads are written behind, that is whether the
+     * write-behind size is positive.
+     */
+    public boolean isEnabled() {
+        return maxUploadBuffers > 0;
+    }
+
+    /**
+     * Open a stream handing the data written to it to a writing thread.
+     * {@link WriteBehindOutputStream#finish()} must be called once all the
+     * data has been written to the stream.
+     *
+     * @param out
+     *            The stream of the file to write the data to, the data is
+     *            written through the channel of {@link java.io.FileOutputStream}
+     *            instances
+     */
+    public WriteBehindOutputStream open(final OutputStream out) {
+        return open(out, 0);
+    }
+
+    /**
+     * Open a stream handing the data written to it to a writing thread,
+     * failing writes waiting too long for buffers.
+     * {@link WriteBehindOutputStream#finish()} must be called once all the
+     * data has been written to the stream.
+     *
+     * @param out
+     *            The stream of the file to write the data to
+     * @param timeout
+     *            The maximum time in milliseconds to wait for pending writes
+     *            to free a buffer, 0 means wait forever
+     */
+    public WriteBehindOutputStream open(final OutputStream out,
+            final long timeout) {
+        return new WriteBehindOutputStream(this, out, maxUploadBuffers,
+                timeout);
+    }
+
+    /**
+     * Returns the number of buffers which can still be handed to the writing
+     * threads by all uploads.
+     */
+    public int getAvailableBuffers() {
+        return poolBuffers.availablePermits();
+    }
+
+    /**
+     * Returns the maximum number of buffers handed to the writing threads by
+     * all uploads.
+     */
+    public int getMaxPoolBuffers() {
+        return maxPoolBuffers;
+    }
+
+    /**
+     * Stop the writing threads once the pending uploads are written.
+     */
+    public void dispose() {
+        executor.shutdown();
+    }
+
+    TransferBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    Semaphore getPoolBuffers() {
+        return poolBuffers;
+    }
+
+    Future<?> submit(final Runnable task) {
+        return executor.submit(task);
+    }
+}
@@ -138,12 +138,16 @@ public class NioListener extends AbstractListener {
                         new MinaSessionFilter(sessionFilter));
             }
     
-            acceptor.getFilterChain().addLast("threadPool",
-                    new ExecutorFilter(context.getThreadPoolExecutor()));
+            // requests are decoded before the thread pool, so that commands
+            // not waiting for a running transfer can be picked out
             acceptor.getFilterChain().addLast("codec",
                     new ProtocolCodecFilter(new FtpServerProtocolCodecFactory()));
-            acceptor.getFilterChain().addLast("mdcFilter2", mdcFilter);
             acceptor.getFilterChain().addLast("logger", new FtpLoggingFilter());
+            acceptor.getFilterChain().addLast("outOfBand",
+                    new OutOfBandCommandFilter(context));
+            acceptor.getFilterChain().addLast("threadPool",
+                    new ExecutorFilter(context.getThreadPoolExecutor()));
+            acceptor.getFilterChain().addLast("mdcFilter2", mdcFilter);
     
             if (isImplicitSsl()) {
                 SslConfiguration ssl = getSslConfiguration();
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.listener.nio;
+
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.impl.DefaultFtpRequest;
+import org.apache.ftpserver.impl.FtpIoSession;
+import org.apache.ftpserver.impl.FtpServerContext;
+import org.apache.ftpserver.impl.IODataConnection;
+import org.apache.ftpserver.impl.LocalizedFtpReply;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * Handles the commands that must not wait for a running data transfer. The
+ * commands of a session are otherwise executed one at a time, so without this
+ * filter they would only be processed once the transfer has completed. It
+ * must be placed after the codec and before the thread pool.
+ * 
+ * While a transfer is in progress, ABOR aborts it right away and is then
+ * passed on, to reply 226 once the transfer command has replied 426. NOOP
+ * and STAT without argument are answered directly, without calling the
+ * ftplets.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class OutOfBandCommandFilter extends IoFilterAdapter {
+
+    private final Logger LOG = LoggerFactory
+            .getLogger(OutOfBandCommandFilter.class);
+
+    private final FtpServerContext context;
+
+    public OutOfBandCommandFilter(final FtpServerContext context) {
+        this.context = context;
+    }
+
+    @Override
+    public void messageReceived(final NextFilter nextFilter,
+            final IoSession session, final Object message) throws Exception {
+        FtpIoSession ftpSession = new FtpIoSession(session, context);
+        IODataConnection transfer = ftpSession.getCurrentTransfer();
+        if (transfer != null) {
+            FtpRequest request = new DefaultFtpRequest(message.toString());
+            String command = request.getCommand();
+            if ("ABOR".equals(command)) {
+                LOG.debug("Aborting the data transfer in progress");
+                transfer.abort();
+            } else if ("NOOP".equals(command)) {
+                ftpSession.write(LocalizedFtpReply.translate(ftpSession,
+                        request, context, FtpReply.REPLY_200_COMMAND_OKAY,
+                        "NOOP", null));
+                return;
+            } else if ("STAT".equals(command) && !request.hasArgument()) {
+                ftpSession.write(LocalizedFtpReply.translate(ftpSession,
+                        request, context, FtpReply.REPLY_213_FILE_STATUS,
+                        "STAT.transfer", String.valueOf(transfer
+                                .getBytesTransferred())));
+                return;
+            }
+        }
+
+        nextFilter.messageReceived(session, message);
+    }
+}
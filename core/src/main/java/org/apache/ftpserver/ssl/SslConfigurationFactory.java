@@ -72,6 +72,17 @@ public class SslConfigurationFactory {
 
     private String[] enabledCipherSuites;
 
+    private int sessionCacheSize = -1;
+
+    private int sessionTimeout = -1;
+
+    private boolean sessionTicketsEnabled = true;
+
+    /**
+     * The JVM wide switch for session tickets, read by each new SSL context.
+     */
+    private static final String SESSION_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
     /**
      * The key store file used by this configuration
      * 
@@ -190,6 +201,83 @@ public class SslConfigurationFactory {
         }
     }
 
+    /**
+     * The maximum number of TLS sessions kept by the server to let clients
+     * resume them, for example on the data connections of a secure control
+     * connection.
+     * 
+     * @return The session cache size, 0 for no limit or -1 for the JVM
+     *         default
+     */
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    /**
+     * Set the maximum number of TLS sessions kept by the server to let clients
+     * resume them. Defaults to -1, the JVM default.
+     * 
+     * @param sessionCacheSize
+     *            The session cache size, 0 for no limit or -1 for the JVM
+     *            default
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
+    /**
+     * The time TLS sessions can be resumed for after being created.
+     * 
+     * @return The session timeout in seconds, 0 for no limit or -1 for the
+     *         JVM default
+     */
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Set the time TLS sessions can be resumed for after being created.
+     * Defaults to -1, the JVM default.
+     * 
+     * @param sessionTimeout
+     *            The session timeout in seconds, 0 for no limit or -1 for the
+     *            JVM default
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    /**
+     * Are TLS session tickets (RFC 5077) handed to clients?
+     * 
+     * @return true if the JVM setting applies, false if session tickets must
+     *         be disabled
+     */
+    public boolean isSessionTicketsEnabled() {
+        return sessionTicketsEnabled;
+    }
+
+    /**
+     * Set whether TLS session tickets are handed to clients. With session
+     * tickets, the client keeps the state needed to resume a session, without
+     * them sessions can only be resumed from the server session cache.
+     * Defaults to true, leaving the choice to the JVM, where they are enabled
+     * by default.
+     * 
+     * The JVM only supports disabling session tickets for all its SSL
+     * contexts, with the system property
+     * <code>jdk.tls.server.enableSessionTicketExtension=false</code>. The
+     * server does not change this JVM wide setting, the property must be set
+     * when starting the JVM, otherwise {@link #createSslConfiguration()}
+     * fails.
+     * 
+     * @param sessionTicketsEnabled
+     *            false to disable session tickets
+     */
+    public void setSessionTicketsEnabled(boolean sessionTicketsEnabled) {
+        this.sessionTicketsEnabled = sessionTicketsEnabled;
+    }
+
     /**
      * The password used to load the key
      * 
@@ -316,6 +404,13 @@ public class SslConfigurationFactory {
      * @return The {@link SslConfiguration} instance
      */
     public SslConfiguration createSslConfiguration() {
+        if (!sessionTicketsEnabled
+                && !"false".equalsIgnoreCase(System
+                        .getProperty(SESSION_TICKETS_PROPERTY))) {
+            throw new FtpServerConfigurationException(
+                    "Session tickets can only be disabled for the whole JVM, with the system property "
+                            + SESSION_TICKETS_PROPERTY + "=false");
+        }
 
         try {
             // initialize keystore
@@ -358,7 +453,8 @@ public class SslConfigurationFactory {
             return new DefaultSslConfiguration(
                     keyManagerFactory, trustManagerFactory, 
                     clientAuth, sslProtocol, 
-                    enabledCipherSuites, keyAlias);
+                    enabledCipherSuites, keyAlias, sessionCacheSize,
+                    sessionTimeout);
         } catch (Exception ex) {
             LOG.error("DefaultSsl.configure()", ex);
             throw new FtpServerConfigurationException("DefaultSsl.configure()",
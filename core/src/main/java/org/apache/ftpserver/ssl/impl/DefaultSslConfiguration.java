@@ -24,6 +24,7 @@ import java.security.GeneralSecurityException;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509KeyManager;
@@ -56,6 +57,10 @@ public class DefaultSslConfiguration implements SslConfiguration {
     private final String keyAlias;
 
     private final String[] enabledCipherSuites;
+
+    private final int sessionCacheSize;
+
+    private final int sessionTimeout;
     
     private final SSLContext sslContext;
     
@@ -67,9 +72,12 @@ public class DefaultSslConfiguration implements SslConfiguration {
      */
     public DefaultSslConfiguration(KeyManagerFactory keyManagerFactory,
             TrustManagerFactory trustManagerFactory, ClientAuth clientAuthReqd,
-            String sslProtocol, String[] enabledCipherSuites, String keyAlias) 
+            String sslProtocol, String[] enabledCipherSuites, String keyAlias,
+            int sessionCacheSize, int sessionTimeout)
     		throws GeneralSecurityException {
         super();
+        this.sessionCacheSize = sessionCacheSize;
+        this.sessionTimeout = sessionTimeout;
         this.clientAuth = clientAuthReqd;
         this.enabledCipherSuites = enabledCipherSuites;
         this.keyAlias = keyAlias;
@@ -135,7 +143,19 @@ public class DefaultSslConfiguration implements SslConfiguration {
         // create and initialize the SSLContext
         SSLContext ctx = SSLContext.getInstance(sslProtocol);
         ctx.init(keyManagers, trustManagerFactory.getTrustManagers(), null);
-        //Create the socket factory
+
+        // the server session cache is shared by the control connection and
+        // the data connections using this configuration, letting the data
+        // connections resume the TLS session of the control connection
+        SSLSessionContext sessionContext = ctx.getServerSessionContext();
+        if (sessionContext != null) {
+            if (sessionCacheSize >= 0) {
+                sessionContext.setSessionCacheSize(sessionCacheSize);
+            }
+            if (sessionTimeout >= 0) {
+                sessionContext.setSessionTimeout(sessionTimeout);
+            }
+        }
         return ctx;
     }
 }
@@ -59,6 +59,10 @@ public class BaseUser implements User {
 
     private List<? extends Authority> authorities = new ArrayList<>();
 
+    // compiled on the first write request, and again when the authorities
+    // are replaced
+    private volatile WriteAuthorization writeAuthorization;
+
     /**
      * Default constructor.
      */
@@ -115,7 +119,8 @@ public class BaseUser implements User {
 
     public void setAuthorities(List<Authority> authorities) {
         if (authorities != null) {
-            this.authorities = Collections.unmodifiableList(authorities);
+            this.authorities = Collections
+                    .unmodifiableList(new ArrayList<>(authorities));
         } else {
             this.authorities = null;
         }
@@ -178,10 +183,21 @@ public class BaseUser implements User {
      * {@inheritDoc}
      */
     public AuthorizationRequest authorize(AuthorizationRequest request) {
+        List<? extends Authority> authorities = this.authorities;
+
         // check for no authorities at all
         if(authorities == null) {
             return null;
         }
+
+        // write requests are decided by the compiled write permissions
+        if (request instanceof WriteRequest) {
+            String file = ((WriteRequest) request).getFile();
+            WriteAuthorization compiled = getWriteAuthorization(authorities);
+            if (compiled.isCompiled() && file != null) {
+                return compiled.isWritable(file) ? request : null;
+            }
+        }
         
         boolean someoneCouldAuthorize = false;
         for (Authority authority : authorities) {
@@ -205,6 +221,19 @@ public class BaseUser implements User {
         }
     }
 
+    /**
+     * Get the compiled write permissions, compiling them if needed.
+     */
+    private WriteAuthorization getWriteAuthorization(
+            final List<? extends Authority> current) {
+        WriteAuthorization compiled = writeAuthorization;
+        if (compiled == null || !compiled.isCompiledFrom(current)) {
+            compiled = WriteAuthorization.compile(current);
+            writeAuthorization = compiled;
+        }
+        return compiled;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.util.List;
+
+import org.apache.ftpserver.ftplet.Authority;
+
+/**
+ * <strong>Internal class, do not use directly.</strong>
+ * 
+ * The write permissions of a user, compiled to decide the write requests
+ * without going through the authorities. A write request must be granted by
+ * every {@link WritePermission}, so the permissions reduce to the longest
+ * permission root, which all the other roots start with: a file is writable
+ * if its path starts with this root. When the roots do not start with each
+ * other, no file is writable.
+ * 
+ * Only the authorities of this package are compiled, the requests they
+ * handle being known. The users having other authorities are authorized
+ * through their authorities.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+final class WriteAuthorization {
+
+    private final List<? extends Authority> authorities;
+
+    private final boolean compiled;
+
+    // the root of the writable files, null if no file is writable
+    private final String root;
+
+    private WriteAuthorization(final List<? extends Authority> authorities,
+            final boolean compiled, final String root) {
+        this.authorities = authorities;
+        this.compiled = compiled;
+        this.root = root;
+    }
+
+    /**
+     * Compile the write permissions of a user.
+     * 
+     * @param authorities
+     *            The authorities of the user
+     * @return The compiled permissions, not compiled if the authorities are
+     *         not all known
+     */
+    static WriteAuthorization compile(
+            final List<? extends Authority> authorities) {
+        String longestRoot = null;
+        for (Authority authority : authorities) {
+            if (authority == null) {
+                return new WriteAuthorization(authorities, false, null);
+            }
+            Class<?> type = authority.getClass();
+            if (type == WritePermission.class) {
+                String permissionRoot = ((WritePermission) authority)
+                        .getPermissionRoot();
+                if (permissionRoot == null) {
+                    return new WriteAuthorization(authorities, false, null);
+                }
+                if (longestRoot == null
+                        || permissionRoot.length() > longestRoot.length()) {
+                    longestRoot = permissionRoot;
+                }
+            } else if (type != ConcurrentLoginPermission.class
+                    && type != TransferRatePermission.class) {
+                return new WriteAuthorization(authorities, false, null);
+            }
+        }
+
+        // a file starting with every root requires the roots to be nested
+        if (longestRoot != null) {
+            for (Authority authority : authorities) {
+                if (authority instanceof WritePermission
+                        && !longestRoot.startsWith(((WritePermission) authority)
+                                .getPermissionRoot())) {
+                    longestRoot = null;
+                    break;
+                }
+            }
+        }
+        return new WriteAuthorization(authorities, true, longestRoot);
+    }
+
+    /**
+     * Is this the compilation of the given authorities?
+     */
+    boolean isCompiledFrom(final List<? extends Authority> authorities) {
+        return this.authorities == authorities;
+    }
+
+    /**
+     * Are the permissions compiled? If not, the requests must be authorized
+     * through the authorities.
+     */
+    boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Check write access to a file.
+     * 
+     * @param file
+     *            The file, relative to the user home directory
+     */
+    boolean isWritable(final String file) {
+        return root != null && file.startsWith(root);
+    }
+}
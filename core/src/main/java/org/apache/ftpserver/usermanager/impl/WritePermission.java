@@ -51,6 +51,13 @@ public class WritePermission implements Authority {
         this.permissionRoot = permissionRoot;
     }
 
+    /**
+     * Get the file or directory the permission is given for.
+     */
+    String getPermissionRoot() {
+        return permissionRoot;
+    }
+
     /**
      * @see Authority#authorize(AuthorizationRequest)
      */
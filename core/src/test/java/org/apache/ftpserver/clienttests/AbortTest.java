@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+* ABOR, STAT and NOOP must be handled while a download is still running.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class AbortTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    // the anonymous user is limited to 4800 bytes per second, the download
+    // takes about 20 seconds
+    private static final int TEST_FILE_SIZE = 20 * 4800;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        TestUtil.writeDataToFile(TEST_FILE, new byte[TEST_FILE_SIZE]);
+
+        client.login(ANONYMOUS_USERNAME, ANONYMOUS_PASSWORD);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+    }
+
+    public void testAbortRunningDownload() throws Exception {
+        InputStream is = client.retrieveFileStream(TEST_FILENAME);
+        assertNotNull(is);
+        long read = readAvailable(is, 2000);
+
+        long start = System.currentTimeMillis();
+        assertEquals(426, client.sendCommand("ABOR"));
+        assertEquals(226, client.getReply());
+
+        // the server stops sending
+        read += readToEnd(is);
+        long time = System.currentTimeMillis() - start;
+        assertTrue("Abort took " + time + " ms", time < 2000);
+        assertTrue("Read " + read + " bytes", read < TEST_FILE_SIZE);
+
+        // the session is still usable
+        assertTrue(client.sendNoOp());
+    }
+
+    public void testAbortWithoutTransfer() throws Exception {
+        assertEquals(226, client.sendCommand("ABOR"));
+    }
+
+    public void testNoopAndStatDuringDownload() throws Exception {
+        InputStream is = client.retrieveFileStream(TEST_FILENAME);
+        assertNotNull(is);
+        readAvailable(is, 1000);
+
+        long start = System.currentTimeMillis();
+        assertEquals(200, client.sendCommand("NOOP"));
+        assertEquals(213, client.sendCommand("STAT"));
+        assertTrue(client.getReplyString().contains("bytes transferred"));
+        long time = System.currentTimeMillis() - start;
+        assertTrue("Status took " + time + " ms", time < 1000);
+
+        assertEquals(426, client.sendCommand("ABOR"));
+        assertEquals(226, client.getReply());
+        readToEnd(is);
+    }
+
+    /**
+     * Read for the given time.
+     */
+    private long readAvailable(InputStream is, long time) throws IOException {
+        long read = 0;
+        long end = System.currentTimeMillis() + time;
+        byte[] buffer = new byte[1024];
+        while (System.currentTimeMillis() < end) {
+            int count = is.read(buffer);
+            if (count == -1) {
+                fail("Download completed too early");
+            }
+            read += count;
+        }
+        return read;
+    }
+
+    private long readToEnd(InputStream is) {
+        long read = 0;
+        byte[] buffer = new byte[1024];
+        try {
+            int count;
+            while ((count = is.read(buffer)) != -1) {
+                read += count;
+            }
+        } catch (IOException e) {
+            // reset by the server
+        } finally {
+            try {
+                is.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        return read;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class AlloTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.bin";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private static byte[] createTestData() {
+        byte[] data = new byte[1024 * 1024 + 13];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 253);
+        }
+        return data;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+    }
+
+    public void testAllo() throws Exception {
+        assertEquals(200, client.sendCommand("ALLO 1000"));
+        assertEquals(200, client.sendCommand("ALLO 1000 R 100"));
+    }
+
+    public void testInvalidAllo() throws Exception {
+        assertEquals(501, client.sendCommand("ALLO"));
+        assertEquals(501, client.sendCommand("ALLO abc"));
+        assertEquals(501, client.sendCommand("ALLO -1"));
+        assertEquals(501, client.sendCommand("ALLO 1000 X 100"));
+        assertEquals(501, client.sendCommand("ALLO 1000 R"));
+    }
+
+    public void testStoreSmallerThanAllocated() throws Exception {
+        byte[] data = createTestData();
+
+        assertEquals(200, client.sendCommand("ALLO " + (2 * data.length)));
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+
+        TestUtil.assertFileEqual(data, TEST_FILE);
+    }
+
+    public void testStoreExactlyAllocated() throws Exception {
+        byte[] data = createTestData();
+
+        assertEquals(200, client.sendCommand("ALLO " + data.length));
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+
+        TestUtil.assertFileEqual(data, TEST_FILE);
+    }
+
+    public void testStoreLargerThanAllocated() throws Exception {
+        byte[] data = createTestData();
+
+        assertEquals(200, client.sendCommand("ALLO 100"));
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+
+        TestUtil.assertFileEqual(data, TEST_FILE);
+    }
+
+    public void testStoreWithRestart() throws Exception {
+        byte[] data = createTestData();
+        TestUtil.writeDataToFile(TEST_FILE, data);
+
+        assertEquals(200, client.sendCommand("ALLO " + (2 * data.length)));
+        client.setRestartOffset(10);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+
+        byte[] expected = new byte[10 + data.length];
+        System.arraycopy(data, 0, expected, 0, 10);
+        System.arraycopy(data, 0, expected, 10, data.length);
+        TestUtil.assertFileEqual(expected, TEST_FILE);
+    }
+
+    public void testAppend() throws Exception {
+        byte[] data = createTestData();
+        TestUtil.writeDataToFile(TEST_FILE, data);
+
+        assertEquals(200, client.sendCommand("ALLO " + (2 * data.length)));
+        assertTrue(client.appendFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+
+        byte[] expected = new byte[2 * data.length];
+        System.arraycopy(data, 0, expected, 0, data.length);
+        System.arraycopy(data, 0, expected, data.length, data.length);
+        TestUtil.assertFileEqual(expected, TEST_FILE);
+    }
+
+    public void testInsufficientSpace() throws Exception {
+        assertEquals(200, client.sendCommand("ALLO " + (Long.MAX_VALUE / 2)));
+        assertFalse(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                new byte[10])));
+        assertEquals(452, client.getReplyCode());
+        assertFalse(TEST_FILE.exists());
+    }
+
+    public void testAlloOnlyAppliesToNextUpload() throws Exception {
+        assertEquals(200, client.sendCommand("ALLO " + (Long.MAX_VALUE / 2)));
+        assertFalse(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                new byte[10])));
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                new byte[10])));
+    }
+
+    public void testInvalidAlloResets() throws Exception {
+        assertEquals(200, client.sendCommand("ALLO " + (Long.MAX_VALUE / 2)));
+        assertEquals(501, client.sendCommand("ALLO abc"));
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                new byte[10])));
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+* Tests transfers in block mode, carried by a data connection kept open
+* between them.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class BlockModeTest extends ClientTestTemplate {
+
+    private static final Pattern PASV_REPLY = Pattern
+            .compile("(\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)");
+
+    private static final int EOF = 0x40;
+
+    private static final int RESTART_MARKER = 0x10;
+
+    private static final File TEST_FILE1 = new File(ROOT_DIR, "test1.bin");
+
+    private static final File TEST_FILE2 = new File(ROOT_DIR, "test2.bin");
+
+    private Socket dataSocket;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+        client.setFileType(org.apache.commons.net.ftp.FTP.BINARY_FILE_TYPE);
+        assertEquals(200, client.sendCommand("MODE B"));
+        dataSocket = openPassiveDataSocket();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (dataSocket != null) {
+            dataSocket.close();
+        }
+        super.tearDown();
+    }
+
+    private Socket openPassiveDataSocket() throws Exception {
+        assertEquals(227, client.sendCommand("PASV"));
+        Matcher matcher = PASV_REPLY.matcher(client.getReplyString());
+        assertTrue(matcher.find());
+        String host = matcher.group(1) + "." + matcher.group(2) + "."
+                + matcher.group(3) + "." + matcher.group(4);
+        int port = Integer.parseInt(matcher.group(5)) * 256
+                + Integer.parseInt(matcher.group(6));
+        Socket socket = new Socket(host, port);
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    private byte[] createTestData(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((i + seed) % 251);
+        }
+        return data;
+    }
+
+    /**
+     * Read blocks until the end of file block.
+     */
+    private byte[] readBlocks() throws IOException {
+        DataInputStream in = new DataInputStream(dataSocket.getInputStream());
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        while (true) {
+            int descriptor = in.readUnsignedByte();
+            byte[] block = new byte[in.readUnsignedShort()];
+            in.readFully(block);
+            data.write(block);
+            if ((descriptor & EOF) != 0) {
+                return data.toByteArray();
+            }
+        }
+    }
+
+    private void writeBlock(int descriptor, byte[] data, int off, int len)
+            throws IOException {
+        OutputStream out = dataSocket.getOutputStream();
+        out.write(descriptor);
+        out.write(len >>> 8);
+        out.write(len);
+        out.write(data, off, len);
+        out.flush();
+    }
+
+    private void retrieve(File file, byte[] expected) throws Exception {
+        assertEquals(150, client.sendCommand("RETR " + file.getName()));
+        assertTrue(Arrays.equals(expected, readBlocks()));
+        assertEquals(226, client.getReply());
+    }
+
+    private void store(File file, byte[] data) throws Exception {
+        assertEquals(150, client.sendCommand("STOR " + file.getName()));
+        int half = data.length / 2;
+        writeBlock(0, data, 0, half);
+        writeBlock(EOF, data, half, data.length - half);
+        assertEquals(226, client.getReply());
+    }
+
+    public void testRetrieveFilesOnOneConnection() throws Exception {
+        // spans several blocks
+        byte[] data1 = createTestData(200 * 1024 + 17, 0);
+        byte[] data2 = createTestData(1000, 1);
+        TestUtil.writeDataToFile(TEST_FILE1, data1);
+        TestUtil.writeDataToFile(TEST_FILE2, data2);
+
+        retrieve(TEST_FILE1, data1);
+        retrieve(TEST_FILE2, data2);
+        retrieve(TEST_FILE1, data1);
+    }
+
+    public void testRetrieveEmptyFile() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, new byte[0]);
+
+        retrieve(TEST_FILE1, new byte[0]);
+        retrieve(TEST_FILE1, new byte[0]);
+    }
+
+    public void testStoreFilesOnOneConnection() throws Exception {
+        byte[] data1 = createTestData(60000, 0);
+        byte[] data2 = createTestData(1000, 1);
+
+        store(TEST_FILE1, data1);
+        store(TEST_FILE2, data2);
+
+        TestUtil.assertFileEqual(data1, TEST_FILE1);
+        TestUtil.assertFileEqual(data2, TEST_FILE2);
+
+        // the downloads use the connection of the uploads
+        retrieve(TEST_FILE1, data1);
+    }
+
+    public void testStoreSkipsRestartMarkers() throws Exception {
+        byte[] data = createTestData(1000, 0);
+        byte[] marker = "500".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(150, client.sendCommand("STOR " + TEST_FILE1.getName()));
+        writeBlock(0, data, 0, 500);
+        writeBlock(RESTART_MARKER, marker, 0, marker.length);
+        writeBlock(EOF, data, 500, 500);
+        assertEquals(226, client.getReply());
+
+        TestUtil.assertFileEqual(data, TEST_FILE1);
+    }
+
+    public void testListThenRetrieve() throws Exception {
+        byte[] data = createTestData(1000, 0);
+        TestUtil.writeDataToFile(TEST_FILE1, data);
+
+        assertEquals(150, client.sendCommand("LIST"));
+        String listing = new String(readBlocks(), StandardCharsets.UTF_8);
+        assertTrue(listing.contains(TEST_FILE1.getName()));
+        assertEquals(226, client.getReply());
+
+        retrieve(TEST_FILE1, data);
+    }
+
+    public void testMissingFileKeepsConnection() throws Exception {
+        byte[] data = createTestData(1000, 0);
+        TestUtil.writeDataToFile(TEST_FILE1, data);
+        retrieve(TEST_FILE1, data);
+
+        assertEquals(550, client.sendCommand("RETR " + TEST_FILE2.getName()));
+
+        retrieve(TEST_FILE1, data);
+    }
+
+    public void testStreamModeClosesConnection() throws Exception {
+        byte[] data = createTestData(1000, 0);
+        TestUtil.writeDataToFile(TEST_FILE1, data);
+        retrieve(TEST_FILE1, data);
+
+        assertEquals(200, client.sendCommand("MODE S"));
+        InputStream in = dataSocket.getInputStream();
+        assertEquals(-1, in.read());
+    }
+}
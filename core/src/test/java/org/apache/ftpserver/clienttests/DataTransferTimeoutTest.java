@@ -22,6 +22,7 @@ package org.apache.ftpserver.clienttests;
 import java.io.File;
 import java.io.OutputStream;
 
+import org.apache.commons.net.ftp.FTP;
 import org.apache.ftpserver.FtpServerFactory;
 import org.apache.ftpserver.listener.ListenerFactory;
 
@@ -82,6 +83,11 @@ public class DataTransferTimeoutTest extends ClientTestTemplate {
         client.noop();
     }
 
+    public void testTimeoutForBinaryStore() throws Exception {
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        testTimeoutForStore();
+    }
+
     /*
      * Disabled for now, test is not stable on Solaris
     
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class HashTest extends ClientTestTemplate {
+    private static final File TEST_FILE1 = new File(ROOT_DIR, "test1.txt");
+
+    private static final File TEST_DIR1 = new File(ROOT_DIR, "dir1");
+
+    private static final byte[] TEST_DATA = "Hello world"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    public void testDefaultSha1() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA);
+
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertEquals("213 SHA-1 0-11 "
+                + DigestUtils.shaHex(TEST_DATA).toUpperCase() + " /test1.txt",
+                client.getReplyString().trim());
+
+        // the second time from the cache
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertEquals("213 SHA-1 0-11 "
+                + DigestUtils.shaHex(TEST_DATA).toUpperCase() + " /test1.txt",
+                client.getReplyString().trim());
+    }
+
+    public void testOptsHash() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA);
+
+        assertEquals(200, client.sendCommand("OPTS HASH"));
+        assertEquals("200 SHA-1", client.getReplyString().trim());
+
+        assertEquals(200, client.sendCommand("OPTS HASH sha-512"));
+        assertEquals("200 SHA-512", client.getReplyString().trim());
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertEquals("213 SHA-512 0-11 "
+                + DigestUtils.sha512Hex(TEST_DATA).toUpperCase()
+                + " /test1.txt", client.getReplyString().trim());
+
+        assertEquals(200, client.sendCommand("OPTS HASH CRC32"));
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertEquals("213 CRC32 0-11 8BD69E52 /test1.txt", client
+                .getReplyString().trim());
+
+        assertEquals(200, client.sendCommand("OPTS HASH"));
+        assertEquals("200 CRC32", client.getReplyString().trim());
+    }
+
+    public void testOptsHashUnsupported() throws Exception {
+        assertEquals(501, client.sendCommand("OPTS HASH SHA-384"));
+
+        assertEquals(200, client.sendCommand("OPTS HASH"));
+        assertEquals("200 SHA-1", client.getReplyString().trim());
+    }
+
+    public void testRange() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA);
+
+        assertEquals(200, client.sendCommand("OPTS HASH MD5"));
+        assertEquals(350, client.sendCommand("RANG 6 10"));
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertEquals("213 MD5 6-11 "
+                + DigestUtils.md5Hex(Arrays.copyOfRange(TEST_DATA, 6, 11))
+                        .toUpperCase() + " /test1.txt", client
+                .getReplyString().trim());
+
+        // the range only applies to the next command
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertEquals("213 MD5 0-11 " + DigestUtils.md5Hex(TEST_DATA).toUpperCase()
+                + " /test1.txt", client.getReplyString().trim());
+    }
+
+    public void testRangeBeyondEnd() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA);
+
+        assertEquals(350, client.sendCommand("RANG 6 100"));
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertEquals("213 SHA-1 6-11 "
+                + DigestUtils.shaHex(Arrays.copyOfRange(TEST_DATA, 6, 11))
+                        .toUpperCase() + " /test1.txt", client
+                .getReplyString().trim());
+
+        assertEquals(350, client.sendCommand("RANG 100 200"));
+        assertEquals(501, client.sendCommand("HASH " + TEST_FILE1.getName()));
+    }
+
+    public void testRangeReset() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA);
+
+        assertEquals(350, client.sendCommand("RANG 6 10"));
+        assertEquals(350, client.sendCommand("RANG 1 0"));
+        assertEquals(213, client.sendCommand("HASH " + TEST_FILE1.getName()));
+        assertTrue(client.getReplyString().startsWith("213 SHA-1 0-11 "));
+    }
+
+    public void testInvalidRange() throws Exception {
+        assertEquals(501, client.sendCommand("RANG"));
+        assertEquals(501, client.sendCommand("RANG 1"));
+        assertEquals(501, client.sendCommand("RANG a b"));
+        assertEquals(501, client.sendCommand("RANG 10 5"));
+        assertEquals(501, client.sendCommand("RANG -1 5"));
+    }
+
+    public void testNoFileName() throws Exception {
+        assertEquals(501, client.sendCommand("HASH"));
+    }
+
+    public void testNonExistingFile() throws Exception {
+        assertFalse(TEST_FILE1.exists());
+
+        assertEquals(550, client.sendCommand("HASH " + TEST_FILE1.getName()));
+    }
+
+    public void testDirectory() throws Exception {
+        TEST_DIR1.mkdirs();
+
+        assertEquals(550, client.sendCommand("HASH " + TEST_DIR1.getName()));
+    }
+
+    public void testPipelinedRepliesInOrder() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, new byte[1024 * 1024]);
+
+        Socket socket = new Socket("localhost", getListenerPort());
+        try {
+            socket.setSoTimeout(10000);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.US_ASCII));
+            assertTrue(reader.readLine().startsWith("220"));
+
+            OutputStream out = socket.getOutputStream();
+            out.write(("USER " + ADMIN_USERNAME + "\r\nPASS " + ADMIN_PASSWORD
+                    + "\r\nHASH " + TEST_FILE1.getName()
+                    + "\r\nOPTS HASH CRC32\r\nHASH " + TEST_FILE1.getName()
+                    + "\r\nNOOP\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            assertTrue(reader.readLine().startsWith("331"));
+            assertTrue(reader.readLine().startsWith("230"));
+            assertTrue(reader.readLine().startsWith("213 SHA-1 "));
+            assertTrue(reader.readLine().startsWith("200 CRC32"));
+            assertTrue(reader.readLine().startsWith("213 CRC32 "));
+            assertTrue(reader.readLine().startsWith("200"));
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.impl.ChecksumCache;
+
+/**
+* Tests that checksums computed during uploads answer the checksum commands.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class InlineChecksumTest extends ClientTestTemplate {
+
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setInlineChecksums(new String[] { "MD5", "CRC32" });
+        return factory;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    private byte[] createTestData(int seed) {
+        // larger than a transfer buffer
+        byte[] data = new byte[200 * 1024 + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ((i + seed) % 251);
+        }
+        return data;
+    }
+
+    private ChecksumCache getChecksumCache() {
+        return server.getServerContext().getChecksumCache();
+    }
+
+    public void testStoreThenChecksum() throws Exception {
+        byte[] data = createTestData(0);
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+        assertEquals(1, getChecksumCache().getSize());
+
+        assertEquals(251, client.sendCommand("MD5 " + TEST_FILENAME));
+        assertTrue(client.getReplyString().trim().endsWith(
+                DigestUtils.md5Hex(data).toUpperCase()));
+        assertEquals(250, client.sendCommand("XCRC " + TEST_FILENAME));
+        assertEquals(2, getChecksumCache().getHits());
+        assertEquals(0, getChecksumCache().getMisses());
+    }
+
+    public void testStoreAgainReplacesChecksum() throws Exception {
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                createTestData(0))));
+        byte[] data = createTestData(1);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+
+        assertEquals(250, client.sendCommand("XMD5 " + TEST_FILENAME));
+        assertEquals("250 " + DigestUtils.md5Hex(data).toUpperCase(), client
+                .getReplyString().trim());
+        assertEquals(1, getChecksumCache().getHits());
+    }
+
+    public void testAppendNotComputedInline() throws Exception {
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        byte[] data = createTestData(0);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+        assertTrue(client.appendFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+        assertEquals(0, getChecksumCache().getSize());
+
+        assertEquals(2 * data.length, TEST_FILE.length());
+        assertEquals(250, client.sendCommand("XMD5 " + TEST_FILENAME));
+        assertEquals(1, getChecksumCache().getMisses());
+    }
+
+    public void testAsciiNotComputedInline() throws Exception {
+        client.setFileType(FTP.ASCII_FILE_TYPE);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                "TESTDATA\r\n".getBytes("UTF-8"))));
+        assertEquals(0, getChecksumCache().getSize());
+    }
+
+    public void testDeleteInvalidates() throws Exception {
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                createTestData(0))));
+        assertEquals(1, getChecksumCache().getSize());
+
+        assertTrue(client.deleteFile(TEST_FILENAME));
+        assertEquals(0, getChecksumCache().getSize());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.filesystem.pathfs.PathFileSystemFactory;
+import org.apache.ftpserver.filesystem.pathfs.impl.DirectoryListingCache;
+
+/**
+* Runs the tests of {@link ListTest} with the directory listings cached, and
+* checks that the listings follow the changes made by the server.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ListCacheTest extends ListTest {
+
+    private static final File TEST_DIR1 = new File(ROOT_DIR, "dir1");
+
+    @Override
+    protected FtpServerFactory createServer() throws Exception {
+        FtpServerFactory serverFactory = super.createServer();
+        PathFileSystemFactory fileSystem = new PathFileSystemFactory();
+        fileSystem.setListingCacheSize(1000);
+        serverFactory.setFileSystem(fileSystem);
+        return serverFactory;
+    }
+
+    private DirectoryListingCache getListingCache() {
+        return ((PathFileSystemFactory) server.getFileSystem())
+                .getListingCache();
+    }
+
+    public void testListAfterChanges() throws Exception {
+        TEST_DIR1.mkdirs();
+
+        assertEquals(0, client.listFiles(TEST_DIR1.getName()).length);
+        long misses = getListingCache().getMisses();
+        assertEquals(0, client.listFiles(TEST_DIR1.getName()).length);
+        assertTrue(getListingCache().getHits() > 0);
+        assertEquals(misses, getListingCache().getMisses());
+
+        assertTrue(client.storeFile("dir1/test.txt", new ByteArrayInputStream(
+                "TESTDATA".getBytes())));
+        FTPFile[] files = client.listFiles(TEST_DIR1.getName());
+        assertEquals(1, files.length);
+        assertEquals("test.txt", files[0].getName());
+        assertEquals(8, files[0].getSize());
+
+        assertTrue(client.rename("dir1/test.txt", "dir1/test2.txt"));
+        files = client.listFiles(TEST_DIR1.getName());
+        assertEquals(1, files.length);
+        assertEquals("test2.txt", files[0].getName());
+
+        assertTrue(client.makeDirectory("dir1/dir2"));
+        assertEquals(2, client.listFiles(TEST_DIR1.getName()).length);
+
+        assertTrue(client.removeDirectory("dir1/dir2"));
+        assertTrue(client.deleteFile("dir1/test2.txt"));
+        assertEquals(0, client.listFiles(TEST_DIR1.getName()).length);
+    }
+}
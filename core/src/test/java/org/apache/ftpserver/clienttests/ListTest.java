@@ -186,6 +186,24 @@ public class ListTest extends ClientTestTemplate {
         assertTrue(file.isDirectory());
     }
 
+    public void testListManyFiles() throws Exception {
+        // more lines than sent at once
+        TEST_DIR1.mkdirs();
+        for (int i = 0; i < 300; i++) {
+            new File(TEST_DIR1, "file-with-a-rather-long-name-" + i)
+                    .createNewFile();
+        }
+
+        FTPFile[] files = client.listFiles(TEST_DIR1.getName());
+
+        assertEquals(300, files.length);
+        for (int i = 0; i < 300; i++) {
+            assertNotNull(getFile(files, "file-with-a-rather-long-name-" + i));
+        }
+        assertEquals(300, client.listNames(TEST_DIR1.getName()).length);
+        assertEquals(300, client.mlistDir(TEST_DIR1.getName()).length);
+    }
+
     public void testListFileNonExistingFile() throws Exception {
         TEST_DIR1.mkdirs();
         assertEquals(450, client.sendCommand("LIST", TEST_DIR1.getName() + "/nonexisting"));
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+* Runs the tests of {@link RetrievePassiveTest} with pooled passive server
+* sockets.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class RetrievePassiveSocketPoolTest extends RetrievePassiveTest {
+
+    private static final File TEST_FILE = new File(ROOT_DIR, "pooled.txt");
+
+    @Override
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super
+                .createDataConnectionConfigurationFactory();
+        factory.setPassiveSocketPoolEnabled(true);
+        return factory;
+    }
+
+    public void testServerSocketReused() throws Exception {
+        byte[] testData = "TESTDATA".getBytes("UTF-8");
+        TestUtil.writeDataToFile(TEST_FILE, testData);
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            assertTrue(client.retrieveFile(TEST_FILE.getName(), baos));
+            TestUtil.assertArraysEqual(testData, baos.toByteArray());
+        }
+
+        // the passive ports are any port by default, one socket is enough
+        assertEquals(1, server.getServerContext().getPassiveSocketPool()
+                .getIdleCount());
+    }
+}
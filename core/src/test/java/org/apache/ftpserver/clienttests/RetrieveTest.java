@@ -23,6 +23,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.nio.charset.StandardCharsets;
 
+import org.apache.commons.net.ftp.FTP;
 import org.apache.ftpserver.test.TestUtil;
 
 /**
@@ -117,6 +118,63 @@ public class RetrieveTest extends ClientTestTemplate {
         TestUtil.assertArraysEqual(expected, baos.toByteArray());
     }
 
+    public void testRetrieveAsciiWithRestart() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE, ("TESTDATA" + EOL + "line2" + EOL)
+                .getBytes(StandardCharsets.UTF_8));
+
+        // the offset counts the first line ending as sent, \r\n
+        client.setRestartOffset(10);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+
+        TestUtil.assertArraysEqual(("line2" + EOL)
+                .getBytes(StandardCharsets.UTF_8), baos.toByteArray());
+    }
+
+    private byte[] createLargeTestData() {
+        // larger than a single zero-copy chunk
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    public void testRetrieveBinary() throws Exception {
+        byte[] data = createLargeTestData();
+        TestUtil.writeDataToFile(TEST_FILE, data);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+
+        TestUtil.assertArraysEqual(data, baos.toByteArray());
+        assertEquals(data.length, server.getServerContext().getFtpStatistics()
+                .getTotalDownloadSize());
+    }
+
+    public void testRetrieveBinaryWithRestart() throws Exception {
+        int skipLen = 1024 * 1024 + 3;
+        byte[] data = createLargeTestData();
+        TestUtil.writeDataToFile(TEST_FILE, data);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        client.setRestartOffset(skipLen);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+
+        int len = data.length - skipLen;
+        byte[] expected = new byte[len];
+        System.arraycopy(data, skipLen, expected, 0, len);
+
+        TestUtil.assertArraysEqual(expected, baos.toByteArray());
+        assertEquals(len, server.getServerContext().getFtpStatistics()
+                .getTotalDownloadSize());
+    }
+
     public void testRetrieveWithPath() throws Exception {
         File dir = new File(ROOT_DIR, "foo/bar");
         dir.mkdirs();
@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+import org.apache.ftpserver.impl.VirtualThreads;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.TransferRatePermission;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+ * Compares many concurrent slow downloads with the commands executed on
+ * platform threads, on virtual threads and on platform threads with
+ * non-blocking data connections. Each download is limited by the user's
+ * transfer rate and takes about two seconds. The time to the first byte of
+ * the downloads and the number of platform threads used by the server are
+ * reported. Not run with the tests, run the main method with the number of
+ * downloads, 10000 by default, and the maximum number of server threads, 0
+ * by default for one thread per session. The client and the server run in
+ * the same JVM, which needs about four open files and, without virtual
+ * threads, two threads per download. The virtual threads are skipped on Java
+ * versions before 21.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class SlowDownloadBenchmark {
+
+    private static final File ROOT_DIR = new File("test-tmp/benchmark");
+
+    private static final String FILE_NAME = "slow.bin";
+
+    private static final int RATE = 8192;
+
+    private static final int FILE_SIZE = 2 * RATE;
+
+    /**
+     * The connections being established at once, kept below the accept
+     * backlog of the listener. Connections beyond the backlog are completed
+     * by the kernel without ever being accepted.
+     */
+    private static final Semaphore CONNECTS = new Semaphore(32);
+
+    private static final int TIMEOUT = 60000;
+
+    private static final ThreadMXBean THREADS = ManagementFactory
+            .getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+
+        if (ROOT_DIR.exists()) {
+            IoUtils.delete(ROOT_DIR);
+        }
+        ROOT_DIR.mkdirs();
+        TestUtil.writeDataToFile(new File(ROOT_DIR, FILE_NAME),
+                new byte[FILE_SIZE]);
+
+        try {
+            run("platform", count, maxThreads, false, false);
+            if (VirtualThreads.isSupported()) {
+                run("virtual", count, maxThreads, true, false);
+            } else {
+                System.out.printf("%-13s skipped, requires Java 21%n",
+                        "virtual");
+            }
+            run("non-blocking", count, maxThreads, false, true);
+        } finally {
+            IoUtils.delete(ROOT_DIR);
+        }
+    }
+
+    private static void run(String name, int count, int maxThreads,
+            boolean virtualThreads, boolean nonBlocking) throws Exception {
+        // the threads of the clients are not counted as server threads
+        ThreadFactory clientThreads = VirtualThreads
+                .createThreadFactory("client-");
+        boolean clientsOnPlatformThreads = clientThreads == null;
+        if (clientsOnPlatformThreads) {
+            clientThreads = new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(null, r, "client", 256 * 1024);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+        }
+
+        int threadsBefore = THREADS.getThreadCount();
+        FtpServer server = createServer(count, maxThreads, virtualThreads,
+                nonBlocking);
+        server.start();
+        final int port = ((DefaultFtpServer) server).getListener("default")
+                .getPort();
+
+        final long[] firstByte = new long[count];
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(count);
+        int peakThreads = 0;
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < count; i++) {
+                final int index = i;
+                clientThreads.newThread(new Runnable() {
+                    public void run() {
+                        try {
+                            firstByte[index] = download(port);
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                            firstByte[index] = Long.MAX_VALUE;
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }).start();
+            }
+
+            // sample the platform threads of the server while downloading
+            while (!done.await(100, TimeUnit.MILLISECONDS)) {
+                int serverThreads = THREADS.getThreadCount() - threadsBefore;
+                if (clientsOnPlatformThreads) {
+                    serverThreads -= done.getCount();
+                }
+                peakThreads = Math.max(peakThreads, serverThreads);
+            }
+        } finally {
+            server.stop();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(firstByte);
+        System.out.printf(
+                "%-13s %7.2f s total, first byte %8.1f ms median %8.1f ms p99,"
+                        + " %5d server threads, %d failed%n", name,
+                elapsed / 1e9, firstByte[count / 2] / 1e6,
+                firstByte[(int) (count * 0.99)] / 1e6, peakThreads, failures
+                        .get());
+    }
+
+    /**
+     * Download the file at the user's transfer rate.
+     * 
+     * @return The time to the first byte in nanoseconds
+     */
+    private static long download(int port) throws Exception {
+        FTPClient client = new FTPClient();
+        client.setConnectTimeout(TIMEOUT);
+        client.setDefaultTimeout(TIMEOUT);
+        client.setDataTimeout(TIMEOUT);
+        long start = System.nanoTime();
+        CONNECTS.acquire();
+        try {
+            client.connect("localhost", port);
+        } finally {
+            CONNECTS.release();
+        }
+        try {
+            if (!client.login("bench", "bench")) {
+                throw new IllegalStateException("Login failed");
+            }
+            client.setFileType(FTP.BINARY_FILE_TYPE);
+            client.enterLocalPassiveMode();
+
+            InputStream is = client.retrieveFileStream(FILE_NAME);
+            if (is == null) {
+                throw new IllegalStateException(client.getReplyString());
+            }
+            long firstByte = 0;
+            int read = 0;
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = is.read(buffer)) != -1) {
+                if (read == 0) {
+                    firstByte = System.nanoTime() - start;
+                }
+                read += length;
+            }
+            is.close();
+            if (!client.completePendingCommand() || read != FILE_SIZE) {
+                throw new IllegalStateException(client.getReplyString());
+            }
+            client.logout();
+            return firstByte;
+        } finally {
+            client.disconnect();
+        }
+    }
+
+    private static FtpServer createServer(int count, int maxThreads,
+            boolean virtualThreads, boolean nonBlocking) throws Exception {
+        FtpServerFactory serverFactory = new FtpServerFactory();
+
+        ConnectionConfigFactory connectionConfig = new ConnectionConfigFactory();
+        connectionConfig.setMaxLogins(count + 1);
+        connectionConfig.setMaxThreads(maxThreads);
+        connectionConfig.setVirtualThreadsEnabled(virtualThreads);
+        serverFactory.setConnectionConfig(connectionConfig
+                .createConnectionConfig());
+
+        DataConnectionConfigurationFactory dataConfig = new DataConnectionConfigurationFactory();
+        dataConfig.setNonBlocking(nonBlocking);
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setPort(0);
+        listenerFactory.setDataConnectionConfiguration(dataConfig
+                .createDataConnectionConfiguration());
+        serverFactory.addListener("default", listenerFactory.createListener());
+
+        BaseUser user = new BaseUser();
+        user.setName("bench");
+        user.setPassword("bench");
+        user.setHomeDirectory(ROOT_DIR.getAbsolutePath());
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(new ConcurrentLoginPermission(0, 0));
+        authorities.add(new TransferRatePermission(RATE, 0));
+        user.setAuthorities(authorities);
+        serverFactory.getUserManager().save(user);
+
+        return serverFactory.createServer();
+    }
+}
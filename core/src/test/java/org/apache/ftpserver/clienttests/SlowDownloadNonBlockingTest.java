@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+* With a single worker thread, a slow download over a non-blocking data
+* connection does not block the other sessions, the worker being released
+* while the transfer runs.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class SlowDownloadNonBlockingTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private static final Pattern PASV_REPLY = Pattern
+            .compile("(\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)");
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxThreads(1);
+        return factory;
+    }
+
+    @Override
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super
+                .createDataConnectionConfigurationFactory();
+        factory.setNonBlocking(true);
+        return factory;
+    }
+
+    public void testLoginDuringSlowDownload() throws Exception {
+        // the anonymous user is limited to 4800 bytes per second
+        final byte[] data = new byte[2 * 4800];
+        TestUtil.writeDataToFile(TEST_FILE, data);
+
+        final FTPClient slowClient = createFTPClient();
+        slowClient.connect("localhost", getListenerPort());
+        assertTrue(slowClient.login(ANONYMOUS_USERNAME, ANONYMOUS_PASSWORD));
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final boolean[] retrieved = new boolean[1];
+        Thread download = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    retrieved[0] = slowClient.retrieveFile(TEST_FILENAME, baos);
+                } catch (Exception e) {
+                    // fails the test below
+                }
+            }
+        };
+        download.start();
+
+        // let the download start
+        Thread.sleep(300);
+
+        long start = System.currentTimeMillis();
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        long time = System.currentTimeMillis() - start;
+        assertTrue("Login took " + time + " ms", time < 1000);
+
+        download.join();
+        assertTrue(retrieved[0]);
+        TestUtil.assertArraysEqual(data, baos.toByteArray());
+        assertTrue(slowClient.sendNoOp());
+        slowClient.disconnect();
+    }
+
+    public void testLoginDuringCommandPipelinedAfterSlowDownload()
+            throws Exception {
+        final byte[] data = new byte[2 * 4800];
+        TestUtil.writeDataToFile(TEST_FILE, data);
+
+        Socket control = new Socket("localhost", getListenerPort());
+        Socket dataSocket = null;
+        try {
+            control.setSoTimeout(10000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    control.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = control.getOutputStream();
+            assertTrue(readReply(in).startsWith("220"));
+            send(out, "USER " + ANONYMOUS_USERNAME);
+            assertTrue(readReply(in).startsWith("331"));
+            send(out, "PASS " + ANONYMOUS_PASSWORD);
+            assertTrue(readReply(in).startsWith("230"));
+            send(out, "TYPE I");
+            assertTrue(readReply(in).startsWith("200"));
+            send(out, "PASV");
+            Matcher matcher = PASV_REPLY.matcher(readReply(in));
+            assertTrue(matcher.find());
+            dataSocket = new Socket(matcher.group(1) + "." + matcher.group(2)
+                    + "." + matcher.group(3) + "." + matcher.group(4),
+                    Integer.parseInt(matcher.group(5)) * 256
+                            + Integer.parseInt(matcher.group(6)));
+            dataSocket.setSoTimeout(10000);
+
+            // the command sent during the download waits for its reply
+            // without holding the only worker
+            send(out, "RETR " + TEST_FILENAME + "\r\nPWD");
+            assertTrue(readReply(in).startsWith("150"));
+            Thread.sleep(300);
+
+            long start = System.currentTimeMillis();
+            assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+            long time = System.currentTimeMillis() - start;
+            assertTrue("Login took " + time + " ms", time < 1000);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            InputStream dataIn = dataSocket.getInputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = dataIn.read(buffer)) != -1) {
+                baos.write(buffer, 0, count);
+            }
+            TestUtil.assertArraysEqual(data, baos.toByteArray());
+            assertTrue(readReply(in).startsWith("226"));
+            assertTrue(readReply(in).startsWith("257"));
+        } finally {
+            if (dataSocket != null) {
+                dataSocket.close();
+            }
+            control.close();
+        }
+    }
+
+    private void send(OutputStream out, String command) throws IOException {
+        out.write((command + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Read a reply, returning its last line.
+     */
+    private String readReply(BufferedReader in) throws IOException {
+        while (true) {
+            String line = in.readLine();
+            assertNotNull(line);
+            if (line.length() > 3 && line.charAt(3) == ' ') {
+                return line;
+            }
+        }
+    }
+
+    public void testListAfterSlowDownload() throws Exception {
+        // the reply of the download comes before the reply of the listing
+        final byte[] data = new byte[4800];
+        TestUtil.writeDataToFile(TEST_FILE, data);
+        assertTrue(client.login(ANONYMOUS_USERNAME, ANONYMOUS_PASSWORD));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+        assertEquals(1, client.listFiles().length);
+        TestUtil.assertArraysEqual(data, baos.toByteArray());
+    }
+}
@@ -110,6 +110,59 @@ public class StoreTest extends ClientTestTemplate {
         TestUtil.assertFileEqual(testData, testFile);
     }
 
+    private byte[] createLargeTestData() {
+        // larger than a single channel transfer chunk
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    public void testStoreBinary() throws Exception {
+        File testFile = new File(ROOT_DIR, TEST_FILENAME);
+        byte[] data = createLargeTestData();
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+
+        TestUtil.assertFileEqual(data, testFile);
+        assertEquals(data.length, server.getServerContext().getFtpStatistics()
+                .getTotalUploadSize());
+    }
+
+    public void testStoreBinaryWithRestart() throws Exception {
+        File testFile = new File(ROOT_DIR, TEST_FILENAME);
+        byte[] data = createLargeTestData();
+        TestUtil.writeDataToFile(testFile, data);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        client.setRestartOffset(SKIP_LEN);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+
+        byte[] expected = new byte[SKIP_LEN + data.length];
+        System.arraycopy(data, 0, expected, 0, SKIP_LEN);
+        System.arraycopy(data, 0, expected, SKIP_LEN, data.length);
+        TestUtil.assertFileEqual(expected, testFile);
+    }
+
+    public void testAppendBinary() throws Exception {
+        File testFile = new File(ROOT_DIR, TEST_FILENAME);
+        byte[] data = createLargeTestData();
+        TestUtil.writeDataToFile(testFile, testData);
+
+        client.setFileType(FTP.BINARY_FILE_TYPE);
+        assertTrue(client.appendFile(TEST_FILENAME, new ByteArrayInputStream(
+                data)));
+
+        byte[] expected = new byte[testData.length + data.length];
+        System.arraycopy(testData, 0, expected, 0, testData.length);
+        System.arraycopy(data, 0, expected, testData.length, data.length);
+        TestUtil.assertFileEqual(expected, testFile);
+    }
+
     public void testStoreWithLeadingSpace() throws Exception {
         File testFile = new File(ROOT_DIR, TEST_FILENAME_WITH_LEADING_SPACE);
 
@@ -142,6 +195,19 @@ public class StoreTest extends ClientTestTemplate {
         TestUtil.assertFileEqual(oneAndAHalfTestData, testFile);
     }
 
+    public void testStoreAsciiWithRestart() throws Exception {
+        File testFile = new File(ROOT_DIR, TEST_FILENAME);
+        TestUtil.writeDataToFile(testFile, ("TESTDATA" + EOL)
+                .getBytes(ENCODING));
+
+        // the offset counts the first line ending as received, \r\n
+        client.setRestartOffset(10);
+        assertTrue(client.storeFile(TEST_FILENAME, new ByteArrayInputStream(
+                ("line2" + EOL).getBytes(ENCODING))));
+
+        TestUtil.assertFileEqual(testData, testFile);
+    }
+
     public void testStoreEmptyFile() throws Exception {
         File testFile = new File(ROOT_DIR, TEST_FILENAME);
 
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.apache.commons.net.ftp.FTP;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+* The anonymous user in the test user file is limited to 4800 bytes per
+* second for both downloads and uploads.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TransferRateTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    private static final int MAX_RATE = 4800;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ANONYMOUS_USERNAME, ANONYMOUS_PASSWORD);
+    }
+
+    private void assertRateLimitedRetrieve(int fileType) throws Exception {
+        // two seconds worth of data
+        byte[] data = new byte[2 * MAX_RATE];
+        TestUtil.writeDataToFile(TEST_FILE, data);
+
+        client.setFileType(fileType);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        long start = System.currentTimeMillis();
+        assertTrue(client.retrieveFile(TEST_FILENAME, baos));
+        long time = System.currentTimeMillis() - start;
+
+        TestUtil.assertArraysEqual(data, baos.toByteArray());
+
+        // allow for the initial burst
+        assertTrue("Transfer took " + time + " ms", time >= 1500);
+        assertTrue("Transfer took " + time + " ms", time < 4000);
+    }
+
+    public void testRetrieveAscii() throws Exception {
+        assertRateLimitedRetrieve(FTP.ASCII_FILE_TYPE);
+    }
+
+    public void testRetrieveBinary() throws Exception {
+        assertRateLimitedRetrieve(FTP.BINARY_FILE_TYPE);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.clienttests;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.impl.VirtualThreads;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+* With a single worker thread, a slow download blocks all other sessions
+* unless commands are executed on virtual threads. Java versions before 21
+* fall back to the single platform thread.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class VirtualThreadModeTest extends ClientTestTemplate {
+    private static final String TEST_FILENAME = "test.txt";
+
+    private static final File TEST_FILE = new File(ROOT_DIR, TEST_FILENAME);
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxThreads(1);
+        factory.setVirtualThreadsEnabled(true);
+        return factory;
+    }
+
+    public void testLoginDuringSlowDownload() throws Exception {
+        // the anonymous user is limited to 4800 bytes per second
+        final byte[] data = new byte[2 * 4800];
+        TestUtil.writeDataToFile(TEST_FILE, data);
+
+        final FTPClient slowClient = createFTPClient();
+        slowClient.connect("localhost", getListenerPort());
+        assertTrue(slowClient.login(ANONYMOUS_USERNAME, ANONYMOUS_PASSWORD));
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final boolean[] retrieved = new boolean[1];
+        Thread download = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    retrieved[0] = slowClient.retrieveFile(TEST_FILENAME, baos);
+                } catch (Exception e) {
+                    // fails the test below
+                }
+            }
+        };
+        download.start();
+
+        // let the download start
+        Thread.sleep(300);
+
+        long start = System.currentTimeMillis();
+        assertTrue(client.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+        long time = System.currentTimeMillis() - start;
+
+        download.join();
+        assertTrue(retrieved[0]);
+        TestUtil.assertArraysEqual(data, baos.toByteArray());
+        slowClient.disconnect();
+
+        ThreadPoolExecutor executor = server.getServerContext()
+                .getThreadPoolExecutor();
+        if (VirtualThreads.isSupported()) {
+            assertEquals(Integer.MAX_VALUE, executor.getMaximumPoolSize());
+            assertTrue("Login took " + time + " ms", time < 1000);
+        } else {
+            // older Java versions fall back to the single platform thread,
+            // which is busy with the download
+            assertEquals(1, executor.getMaximumPoolSize());
+            assertTrue("Login took " + time + " ms", time >= 1000);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.clienttests;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class XcrcTest extends ClientTestTemplate {
+    private static final File TEST_FILE1 = new File(ROOT_DIR, "test1.txt");
+
+    private static final File TEST_FILE_WITH_SPACE = new File(ROOT_DIR,
+            "test 2.txt");
+
+    private static final File TEST_DIR1 = new File(ROOT_DIR, "dir1");
+
+    private static final byte[] TEST_DATA = "Hello world"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        client.login(ADMIN_USERNAME, ADMIN_PASSWORD);
+    }
+
+    public void testXcrc() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA);
+
+        assertEquals(250, client.sendCommand("XCRC " + TEST_FILE1.getName()));
+        assertEquals("250 8BD69E52", client.getReplyString().trim());
+    }
+
+    public void testXmd5() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA);
+
+        assertEquals(250, client.sendCommand("XMD5 " + TEST_FILE1.getName()));
+        assertEquals("250 " + DigestUtils.md5Hex(TEST_DATA).toUpperCase(),
+                client.getReplyString().trim());
+    }
+
+    public void testXsha1() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA);
+
+        assertEquals(250, client.sendCommand("XSHA1 " + TEST_FILE1.getName()));
+        assertEquals("250 " + DigestUtils.shaHex(TEST_DATA).toUpperCase(),
+                client.getReplyString().trim());
+    }
+
+    public void testXsha256() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA);
+
+        assertEquals(250, client.sendCommand("XSHA256 "
+                + TEST_FILE1.getName()));
+        assertEquals("250 " + DigestUtils.sha256Hex(TEST_DATA).toUpperCase(),
+                client.getReplyString().trim());
+    }
+
+    public void testQuotedFileNameWithSpace() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE_WITH_SPACE, TEST_DATA);
+
+        assertEquals(250, client.sendCommand("XCRC \""
+                + TEST_FILE_WITH_SPACE.getName() + "\""));
+        assertEquals("250 8BD69E52", client.getReplyString().trim());
+    }
+
+    public void testNoFileName() throws Exception {
+        assertEquals(501, client.sendCommand("XCRC"));
+    }
+
+    public void testNonExistingFile() throws Exception {
+        assertFalse(TEST_FILE1.exists());
+
+        assertEquals(550, client.sendCommand("XCRC " + TEST_FILE1.getName()));
+    }
+
+    public void testDirectory() throws Exception {
+        TEST_DIR1.mkdirs();
+
+        assertEquals(550, client.sendCommand("XCRC " + TEST_DIR1.getName()));
+    }
+
+    public void testModifiedFileRecomputed() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, TEST_DATA);
+        assertEquals(250, client.sendCommand("XCRC " + TEST_FILE1.getName()));
+
+        byte[] data2 = "Hello world, again".getBytes(StandardCharsets.UTF_8);
+        TestUtil.writeDataToFile(TEST_FILE1, data2);
+        assertEquals(250, client.sendCommand("XMD5 " + TEST_FILE1.getName()));
+        assertEquals("250 " + DigestUtils.md5Hex(data2).toUpperCase(), client
+                .getReplyString().trim());
+    }
+}
@@ -20,10 +20,15 @@
 package org.apache.ftpserver.commands.impl.listing;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 
 import junit.framework.TestCase;
 
 import org.apache.ftpserver.command.impl.listing.DirectoryLister;
+import org.apache.ftpserver.command.impl.listing.DirectoryListing;
 import org.apache.ftpserver.command.impl.listing.FileFormater;
 import org.apache.ftpserver.command.impl.listing.ListArgument;
 import org.apache.ftpserver.command.impl.listing.NLSTFileFormater;
@@ -71,6 +76,10 @@ public class DirectoryListerTest extends TestCase {
         };
         directoryLister = new DirectoryLister();
 
+        // clean up after tests run before this one
+        if (TEST_TMP_DIR.exists()) {
+            IoUtils.delete(TEST_TMP_DIR);
+        }
         assertTrue(ROOT_DIR.mkdirs());
         assertTrue(TEST_DIR1.mkdirs());
         assertTrue(TEST_DIR2.mkdirs());
@@ -90,6 +99,79 @@ public class DirectoryListerTest extends TestCase {
         assertEquals("dir3\r\ntest3.txt\r\ntest4.txt\r\n", actual);
     }
 
+    private List<String> readListing(DirectoryListing listing) {
+        List<String> lines = new ArrayList<>();
+        try {
+            while (listing.hasNext()) {
+                lines.add(listing.next());
+            }
+        } finally {
+            listing.close();
+        }
+        return lines;
+    }
+
+    public void testOpenListingDirectoriesFirst() throws Exception {
+        ListArgument arg = new ListArgument(TEST_DIR1.getName(), null, null);
+
+        List<String> lines = readListing(directoryLister.openListing(arg,
+                fileSystemView, new NLSTFileFormater(), true));
+
+        assertEquals(3, lines.size());
+        assertEquals("dir3\r\n", lines.get(0));
+        assertTrue(lines.contains("test3.txt\r\n"));
+        assertTrue(lines.contains("test4.txt\r\n"));
+    }
+
+    public void testOpenListingSinglePass() throws Exception {
+        ListArgument arg = new ListArgument(TEST_DIR1.getName(), null, null);
+
+        List<String> lines = readListing(directoryLister.openListing(arg,
+                fileSystemView, new NLSTFileFormater(), false));
+
+        assertEquals(new HashSet<>(Arrays.asList("dir3\r\n",
+                "test3.txt\r\n", "test4.txt\r\n")), new HashSet<>(lines));
+        assertEquals(3, lines.size());
+    }
+
+    public void testOpenListingWithPattern() throws Exception {
+        ListArgument arg = new ListArgument(TEST_DIR1.getName(), "test*",
+                null);
+
+        List<String> lines = readListing(directoryLister.openListing(arg,
+                fileSystemView, new NLSTFileFormater(), true));
+
+        assertEquals(2, lines.size());
+        assertFalse(lines.contains("dir3\r\n"));
+    }
+
+    public void testOpenListingFile() throws Exception {
+        ListArgument arg = new ListArgument(TEST_FILE1.getName(), null, null);
+
+        List<String> lines = readListing(directoryLister.openListing(arg,
+                fileSystemView, new NLSTFileFormater(), true));
+
+        assertEquals(Arrays.asList("test1.txt\r\n"), lines);
+    }
+
+    public void testOpenListingNonExisting() throws Exception {
+        ListArgument arg = new ListArgument("nonexisting", null, null);
+
+        assertTrue(readListing(directoryLister.openListing(arg,
+                fileSystemView, new NLSTFileFormater(), true)).isEmpty());
+    }
+
+    public void testCloseListingBeforeEnd() throws Exception {
+        ListArgument arg = new ListArgument(TEST_DIR1.getName(), null, null);
+        DirectoryListing listing = directoryLister.openListing(arg,
+                fileSystemView, new NLSTFileFormater(), true);
+
+        assertTrue(listing.hasNext());
+        listing.next();
+        listing.close();
+        assertFalse(listing.hasNext());
+    }
+
     /*
      * (non-Javadoc)
      * 
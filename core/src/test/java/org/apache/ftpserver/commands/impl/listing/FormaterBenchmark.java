@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.commands.impl.listing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.apache.ftpserver.command.impl.listing.FileFormater;
+import org.apache.ftpserver.command.impl.listing.LISTFileFormater;
+import org.apache.ftpserver.command.impl.listing.MLSTFileFormater;
+import org.apache.ftpserver.ftplet.FtpFile;
+
+/**
+ * Measures the time and the memory allocated to format a LIST or MLSD line,
+ * either as a string per line or into a reused builder. The files are held
+ * in memory so that only the formating is measured. Not run with the tests,
+ * run the main method with the number of files to format, 100000 by default.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class FormaterBenchmark {
+
+    private static final int ITERATIONS = 20;
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * A file with fixed attributes, modified recently or years ago.
+     */
+    private static class BenchmarkFile extends LISTFileFormaterTest.MockFileObject {
+
+        private final String name;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final boolean directory;
+
+        BenchmarkFile(String name, long size, long lastModified,
+                boolean directory) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.directory = directory;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        @Override
+        public boolean isFile() {
+            return !directory;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        long now = System.currentTimeMillis();
+        FtpFile[] files = new FtpFile[count];
+        for (int i = 0; i < count; i++) {
+            // a few files per day over the last months, and some old ones
+            long lastModified = i % 4 == 0 ? now - 3000 * DAY + i * 1000L
+                    : now - (i % 100) * DAY - i * 7919L;
+            files[i] = new BenchmarkFile("file" + i, i * 1024L,
+                    lastModified, i % 10 == 0);
+        }
+
+        FileFormater list = new LISTFileFormater();
+        FileFormater mlst = new MLSTFileFormater(new String[] { "Size",
+                "Modify", "Type", "Perm" });
+
+        // run twice, the first round warming up the JVM
+        for (int round = 0; round < 2; round++) {
+            run("LIST string", list, files, false);
+            run("LIST builder", list, files, true);
+            run("MLST string", mlst, files, false);
+            run("MLST builder", mlst, files, true);
+        }
+    }
+
+    private static void run(String name, FileFormater formater,
+            FtpFile[] files, boolean builder) {
+        StringBuilder sb = new StringBuilder(16384);
+        long chars = 0;
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (FtpFile file : files) {
+                if (builder) {
+                    // sent in chunks, as by the directory listings
+                    if (sb.length() > 8192) {
+                        chars += sb.length();
+                        sb.setLength(0);
+                    }
+                    formater.format(file, sb);
+                } else {
+                    chars += formater.format(file).length();
+                }
+            }
+        }
+        chars += sb.length();
+        long elapsed = System.nanoTime() - start;
+        allocated = getAllocatedBytes() - allocated;
+
+        long entries = (long) ITERATIONS * files.length;
+        System.out.printf("%-12s %6d ns/entry %6d bytes/entry (%d chars)%n",
+                name, elapsed / entries, allocated / entries, chars
+                        / ITERATIONS);
+    }
+
+    /**
+     * Get the bytes allocated by the current thread, 0 if not supported by
+     * the JVM.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
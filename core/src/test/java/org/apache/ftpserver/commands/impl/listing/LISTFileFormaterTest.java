@@ -24,11 +24,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Date;
 import java.util.List;
+import java.util.TimeZone;
 
 import junit.framework.TestCase;
 
 import org.apache.ftpserver.command.impl.listing.LISTFileFormater;
 import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.util.DateUtils;
 
 /**
 *
@@ -164,4 +166,95 @@ public class LISTFileFormaterTest extends TestCase {
         assertEquals(TEST_DIR_FORMAT, formater.format(dir));
     }
 
+    public void testFormatIntoBuilder() {
+        StringBuilder sb = new StringBuilder("first line\r\n");
+        formater.format(TEST_FILE, sb);
+
+        assertEquals("first line\r\n" + TEST_FILE_FORMAT, sb.toString());
+    }
+
+    public void testLargeSize() {
+        FtpFile file = new MockFileObject() {
+            @Override
+            public long getSize() {
+                return 12345678901234L;
+            }
+        };
+
+        assertEquals("-r--------   1 owner group 12345678901234 Feb  2  2005 short\r\n",
+                formater.format(file));
+    }
+
+    private void assertDates(long from, long to, long step) {
+        for (long time = from; time < to; time += step) {
+            final long lastModified = time;
+            FtpFile file = new MockFileObject() {
+                @Override
+                public long getLastModified() {
+                    return lastModified;
+                }
+            };
+
+            assertEquals("-r--------   1 owner group           13 "
+                    + DateUtils.getUnixDate(lastModified) + " short\r\n",
+                    formater.format(file));
+        }
+    }
+
+    /**
+     * Wait for the formater to follow a change of the default time zone,
+     * checked once per second.
+     */
+    private void waitForTimeZone() throws InterruptedException {
+        long probe = System.currentTimeMillis() - 3600000;
+        final long lastModified = probe - probe % 3600000 + 1800000;
+        FtpFile file = new MockFileObject() {
+            @Override
+            public long getLastModified() {
+                return lastModified;
+            }
+        };
+        String expected = "-r--------   1 owner group           13 "
+                + DateUtils.getUnixDate(lastModified) + " short\r\n";
+
+        long timeout = System.currentTimeMillis() + 5000;
+        while (!expected.equals(formater.format(file))
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+    }
+
+    public void testDatesAsDateUtils() throws Exception {
+        long day = 24L * 60 * 60 * 1000;
+        long now = System.currentTimeMillis();
+
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone testZone = TimeZone.getTimeZone("Europe/Paris");
+        if (testZone.getRawOffset() == defaultZone.getRawOffset()) {
+            testZone = TimeZone.getTimeZone("America/New_York");
+        }
+        try {
+            // with daylight saving time changes in the last months
+            TimeZone.setDefault(testZone);
+            waitForTimeZone();
+            assertDates(now - 170 * day, now + 170 * day, 37 * 60 * 1000 + 7);
+            assertDates(0, 60 * 365 * day, 11 * day + 13 * 60 * 1000);
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+        waitForTimeZone();
+        assertDates(now - 170 * day, now + 170 * day, 37 * 60 * 1000 + 7);
+    }
+
+    public void testNegativeDate() {
+        FtpFile file = new MockFileObject() {
+            @Override
+            public long getLastModified() {
+                return -1;
+            }
+        };
+
+        assertEquals("-r--------   1 owner group           13 ------------ short\r\n",
+                formater.format(file));
+    }
 }
\ No newline at end of file
@@ -30,6 +30,7 @@ import junit.framework.TestCase;
 
 import org.apache.ftpserver.command.impl.listing.MLSTFileFormater;
 import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.util.DateUtils;
 
 /**
 *
@@ -168,4 +169,40 @@ public class MLSTFileFormaterTest extends TestCase {
         assertEquals("Size=0;Modify=20050102030405.000;Type=dir; short\r\n",
                 formater.format(dir));
     }
-}
\ No newline at end of file
+
+    public void testSelectedTypes() {
+        MLSTFileFormater selected = new MLSTFileFormater(new String[] {
+                "type", "unknown", "SIZE", "Perm" });
+
+        assertEquals("Type=file;Size=13;Perm=r; short\r\n", selected
+                .format(TEST_FILE));
+    }
+
+    public void testFormatIntoBuilder() {
+        StringBuilder sb = new StringBuilder("first line\r\n");
+        formater.format(TEST_FILE, sb);
+
+        assertEquals("first line\r\nSize=13;Modify=20050102030405.000;Type=file; short\r\n",
+                sb.toString());
+    }
+
+    public void testDatesAsDateUtils() {
+        MLSTFileFormater modify = new MLSTFileFormater(
+                new String[] { "Modify" });
+        long day = 24L * 60 * 60 * 1000;
+
+        for (long time = -3 * day; time < 60 * 365 * day; time += 3 * day
+                + 3723007) {
+            final long lastModified = time;
+            FtpFile file = new MockFileObject() {
+                @Override
+                public long getLastModified() {
+                    return lastModified;
+                }
+            };
+
+            assertEquals("Modify=" + DateUtils.getFtpDate(lastModified)
+                    + "; short\r\n", modify.format(file));
+        }
+    }
+}
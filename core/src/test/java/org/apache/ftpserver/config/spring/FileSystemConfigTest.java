@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.config.spring;
+
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.filesystem.pathfs.PathFileSystemFactory;
+import org.apache.ftpserver.impl.DefaultFtpServer;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FileSystemConfigTest extends SpringConfigTestTemplate {
+
+    private NativeFileSystemFactory createFileSystem(String config) {
+        DefaultFtpServer server = (DefaultFtpServer) createServer(config);
+
+        return (NativeFileSystemFactory) server.getFileSystem();
+    }
+
+    public void testNativeFileSystem() throws Throwable {
+        NativeFileSystemFactory fs = createFileSystem("<native-filesystem create-home=\"true\" />");
+
+        assertFalse(fs instanceof PathFileSystemFactory);
+        assertTrue(fs.isCreateHome());
+        assertFalse(fs.isCaseInsensitive());
+    }
+
+    public void testPathFileSystem() throws Throwable {
+        NativeFileSystemFactory fs = createFileSystem("<path-filesystem case-insensitive=\"true\" />");
+
+        assertTrue(fs instanceof PathFileSystemFactory);
+        assertFalse(fs.isCreateHome());
+        assertTrue(fs.isCaseInsensitive());
+        assertNull(((PathFileSystemFactory) fs).getListingCache());
+    }
+
+    public void testPathFileSystemListingCache() throws Throwable {
+        NativeFileSystemFactory fs = createFileSystem("<path-filesystem listing-cache-size=\"1000\" />");
+
+        assertEquals(1000, ((PathFileSystemFactory) fs).getListingCacheSize());
+        assertEquals(1000, ((PathFileSystemFactory) fs).getListingCache()
+                .getMaxEntries());
+    }
+}
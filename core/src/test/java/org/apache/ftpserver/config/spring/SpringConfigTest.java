@@ -20,6 +20,7 @@
 package org.apache.ftpserver.config.spring;
 
 import java.net.InetAddress;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -56,6 +57,23 @@ public class SpringConfigTest extends TestCase {
         assertEquals(123, server.getConnectionConfig().getMaxAnonymousLogins());
         assertEquals(124, server.getConnectionConfig().getMaxLoginFailures());
         assertEquals(125, server.getConnectionConfig().getLoginFailureDelay());
+        assertEquals(1000000, server.getConnectionConfig().getMaxDownloadRate());
+        assertEquals(500000, server.getConnectionConfig().getMaxUploadRate());
+        assertTrue(server.getConnectionConfig().isVirtualThreadsEnabled());
+        assertEquals(32768, server.getConnectionConfig().getTransferBufferSize());
+        assertEquals(1048576, server.getConnectionConfig()
+                .getTransferBufferPoolSize());
+        assertTrue(server.getConnectionConfig().isDirectTransferBuffers());
+        assertTrue(Arrays.equals(new String[] { "MD5", "CRC32" }, server
+                .getConnectionConfig().getInlineChecksums()));
+        assertEquals(500, server.getConnectionConfig().getChecksumCacheSize());
+        assertEquals(4194304, server.getConnectionConfig().getWriteBehindSize());
+        assertEquals(33554432, server.getConnectionConfig()
+                .getWriteBehindPoolSize());
+        assertEquals(3, server.getConnectionConfig().getReadAheadDepth());
+        assertEquals(131072, server.getConnectionConfig()
+                .getReadAheadChunkSize());
+        assertFalse(server.getConnectionConfig().isListDirectoriesFirst());
 
         Map<String, Listener> listeners = server.getServerContext()
                 .getListeners();
@@ -67,6 +85,10 @@ public class SpringConfigTest extends TestCase {
         assertEquals(2222, listener.getPort());
         assertEquals(InetAddress.getByName("1.2.3.4"), InetAddress.getByName(listener
                 .getServerAddress()));
+        assertEquals(100, listener.getSslConfiguration().getSSLContext()
+                .getServerSessionContext().getSessionCacheSize());
+        assertEquals(600, listener.getSslConfiguration().getSSLContext()
+                .getServerSessionContext().getSessionTimeout());
         assertEquals(100, listener
                 .getDataConnectionConfiguration().getIdleTime());
         assertTrue(listener
@@ -80,6 +102,20 @@ public class SpringConfigTest extends TestCase {
                 .getDataConnectionConfiguration().getPassivePorts());
         assertEquals(false, listener
                 .getDataConnectionConfiguration().isPassiveIpCheck());
+        assertTrue(listener
+                .getDataConnectionConfiguration().isPassiveSocketPoolEnabled());
+        assertEquals(65536, listener
+                .getDataConnectionConfiguration().getTransferRateBurstSize());
+        assertEquals(20, listener
+                .getDataConnectionConfiguration().getTransferRateRefillInterval());
+        assertEquals(200000, listener
+                .getDataConnectionConfiguration().getMaxDownloadRate());
+        assertEquals(100000, listener
+                .getDataConnectionConfiguration().getMaxUploadRate());
+        assertTrue(listener
+                .getDataConnectionConfiguration().isUserTransferRateShared());
+        assertTrue(listener
+                .getDataConnectionConfiguration().isNonBlocking());
         
         RemoteIpFilter filter = (RemoteIpFilter) listener.getSessionFilter();
         assertEquals(3, filter.size());
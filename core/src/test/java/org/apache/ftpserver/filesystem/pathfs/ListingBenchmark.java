@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.filesystem.pathfs;
+
+import java.io.File;
+
+import org.apache.ftpserver.command.impl.listing.DirectoryLister;
+import org.apache.ftpserver.command.impl.listing.DirectoryListing;
+import org.apache.ftpserver.command.impl.listing.LISTFileFormater;
+import org.apache.ftpserver.command.impl.listing.ListArgument;
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+ * Compares the time taken to format the LIST output of a large directory
+ * with the native file system and the java.nio.file based one. Not run with
+ * the tests, run the main method with the number of files to list, 10000 by
+ * default.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class ListingBenchmark {
+
+    private static final File ROOT_DIR = new File("test-tmp/benchmark");
+
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+        if (ROOT_DIR.exists()) {
+            IoUtils.delete(ROOT_DIR);
+        }
+        ROOT_DIR.mkdirs();
+        for (int i = 0; i < count; i++) {
+            if (i % 10 == 0) {
+                new File(ROOT_DIR, "dir" + i).mkdir();
+            } else {
+                new File(ROOT_DIR, "file" + i).createNewFile();
+            }
+        }
+
+        try {
+            BaseUser user = new BaseUser();
+            user.setName("user");
+            user.setHomeDirectory(ROOT_DIR.getAbsolutePath());
+
+            // run twice, the first round warming up the JVM
+            for (int round = 0; round < 2; round++) {
+                run("native", new NativeFileSystemFactory(), user, count);
+                run("path", new PathFileSystemFactory(), user, count);
+            }
+        } finally {
+            IoUtils.delete(ROOT_DIR);
+        }
+    }
+
+    private static void run(String name, FileSystemFactory factory,
+            BaseUser user, int count) throws Exception {
+        FileSystemView view = factory.createFileSystemView(user);
+        DirectoryLister lister = new DirectoryLister();
+        LISTFileFormater formater = new LISTFileFormater();
+        ListArgument argument = new ListArgument("/", null, new char[0]);
+
+        long bytes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            DirectoryListing listing = lister.openListing(argument, view,
+                    formater, true);
+            try {
+                while (listing.hasNext()) {
+                    bytes += listing.next().length();
+                }
+            } finally {
+                listing.close();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        view.dispose();
+
+        System.out.printf("%-8s %8.2f ms/listing %8d ns/entry (%d chars)%n",
+                name, elapsed / 1e6 / ITERATIONS, elapsed / ITERATIONS
+                        / count, bytes / ITERATIONS);
+    }
+}
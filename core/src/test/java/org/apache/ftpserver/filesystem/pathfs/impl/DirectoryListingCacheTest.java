@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.filesystem.pathfs.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class DirectoryListingCacheTest extends TestCase {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File ROOT_DIR = new File(TEST_TMP_DIR, "ftproot");
+
+    private static final File TEST_DIR1 = new File(ROOT_DIR, "dir1");
+
+    private static final File TEST_DIR2 = new File(ROOT_DIR, "dir2");
+
+    private static final File TEST_FILE1 = new File(TEST_DIR1, "file1");
+
+    private BaseUser user;
+
+    private DirectoryListingCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        cleanTmpDirs();
+
+        TEST_DIR1.mkdirs();
+        TEST_DIR2.mkdirs();
+        TEST_FILE1.createNewFile();
+
+        user = new BaseUser();
+        user.setName("user");
+        user.setHomeDirectory(ROOT_DIR.getAbsolutePath());
+        user.setAuthorities(Collections
+                .<Authority> singletonList(new WritePermission()));
+
+        cache = new DirectoryListingCache(3);
+    }
+
+    private PathFtpFile createFile(String name, File file) {
+        return new PathFtpFile(name, file.getAbsoluteFile().toPath(), user,
+                cache);
+    }
+
+    private int count(PathFtpFile dir) throws IOException {
+        int count = 0;
+        try (DirectoryStream<FtpFile> stream = dir.newDirectoryStream()) {
+            for (FtpFile file : stream) {
+                assertTrue(file.doesExist());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void testHitsAndMisses() throws Exception {
+        PathFtpFile dir = createFile("/dir1", TEST_DIR1);
+        assertEquals(1, count(dir));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getSize());
+
+        assertEquals(1, count(dir));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    public void testCachedEntries() throws Exception {
+        PathFtpFile dir = createFile("/dir1", TEST_DIR1);
+        count(dir);
+
+        try (DirectoryStream<FtpFile> stream = dir.newDirectoryStream()) {
+            FtpFile file = stream.iterator().next();
+            assertEquals("/dir1/file1", file.getAbsolutePath());
+            assertTrue(file.isFile());
+            assertTrue(file.isWritable());
+        }
+        assertEquals(1, cache.getHits());
+    }
+
+    public void testEviction() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            new File(TEST_DIR2, "file" + i).createNewFile();
+        }
+        PathFtpFile dir1 = createFile("/dir1", TEST_DIR1);
+        PathFtpFile dir2 = createFile("/dir2", TEST_DIR2);
+
+        count(dir1);
+        count(dir2);
+
+        // the least recently listed directory is evicted
+        assertEquals(1, cache.getSize());
+        assertEquals(3, cache.getEntryCount());
+        count(dir2);
+        assertEquals(1, cache.getHits());
+    }
+
+    public void testTooLargeDirectory() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            new File(TEST_DIR2, "file" + i).createNewFile();
+        }
+        PathFtpFile dir2 = createFile("/dir2", TEST_DIR2);
+
+        assertEquals(4, count(dir2));
+        assertEquals(4, count(dir2));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testInvalidatedByFileOperations() throws Exception {
+        PathFtpFile dir = createFile("/dir1", TEST_DIR1);
+        assertEquals(1, count(dir));
+
+        PathFtpFile file = createFile("/dir1/file2", new File(TEST_DIR1,
+                "file2"));
+        OutputStream out = file.createOutputStream(0);
+        out.write(1);
+        out.close();
+        assertEquals(2, count(dir));
+
+        PathFtpFile subDir = createFile("/dir1/dir3",
+                new File(TEST_DIR1, "dir3"));
+        assertTrue(subDir.mkdir());
+        assertEquals(3, count(dir));
+
+        assertTrue(subDir.delete());
+        assertEquals(2, count(dir));
+
+        assertTrue(file.move(createFile("/dir2/file2", new File(TEST_DIR2,
+                "file2"))));
+        assertEquals(1, count(dir));
+        assertEquals(0, cache.getHits());
+    }
+
+    public void testInvalidatedByWatchService() throws Exception {
+        PathFtpFile dir = createFile("/dir1", TEST_DIR1);
+        assertEquals(1, count(dir));
+
+        // changed outside of the server
+        new File(TEST_DIR1, "file2").createNewFile();
+
+        long timeout = System.currentTimeMillis() + 30000;
+        while (cache.getSize() > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, count(dir));
+    }
+
+    public void testDispose() throws Exception {
+        PathFtpFile dir = createFile("/dir1", TEST_DIR1);
+        count(dir);
+        cache.dispose();
+        assertEquals(0, cache.getSize());
+
+        // usable again
+        count(dir);
+        count(dir);
+        assertEquals(1, cache.getHits());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        cache.dispose();
+        cleanTmpDirs();
+    }
+
+    private void cleanTmpDirs() throws IOException {
+        if (TEST_TMP_DIR.exists()) {
+            IoUtils.delete(TEST_TMP_DIR);
+        }
+    }
+}
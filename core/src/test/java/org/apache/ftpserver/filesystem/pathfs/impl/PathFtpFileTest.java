@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.ftpserver.filesystem.pathfs.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ftpserver.filesystem.nativefs.impl.FtpFileTestTemplate;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class PathFtpFileTest extends FtpFileTestTemplate {
+
+    private static final File TEST_TMP_DIR = new File("test-tmp");
+
+    private static final File ROOT_DIR = new File(TEST_TMP_DIR, "ftproot");
+
+    private static final File TEST_DIR1 = new File(ROOT_DIR, "dir1");
+
+    private static final File TEST_FILE1 = new File(ROOT_DIR, "file1");
+
+    private static final File TEST_FILE2_IN_DIR1 = new File(TEST_DIR1, "file2");
+
+    private static final File TEST_FILE3 = new File(ROOT_DIR, "file3");
+
+    private static final Map<String, File> FILE_MAPPINGS = new HashMap<>();
+
+    static {
+        FILE_MAPPINGS.put("/", ROOT_DIR);
+        FILE_MAPPINGS.put(FILE2_PATH, TEST_FILE2_IN_DIR1);
+        FILE_MAPPINGS.put(DIR1_PATH, TEST_DIR1);
+        FILE_MAPPINGS.put(FILE1_PATH, TEST_FILE1);
+        FILE_MAPPINGS.put(FILE3_PATH, TEST_FILE3);
+        FILE_MAPPINGS.put(DIR1_WITH_SLASH_PATH, TEST_DIR1);
+        FILE_MAPPINGS.put(" \t", TEST_FILE2_IN_DIR1);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        initDirs();
+
+        TEST_DIR1.mkdirs();
+        TEST_FILE1.createNewFile();
+        TEST_FILE2_IN_DIR1.createNewFile();
+        TEST_FILE3.createNewFile();
+    }
+
+    @Override
+    protected FtpFile createFileObject(String fileName, User user) {
+        File file = FILE_MAPPINGS.get(fileName);
+        return new PathFtpFile(fileName, file == null ? null : file.toPath(),
+                user);
+    }
+
+    public void testAttributes() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE1, "Hello".getBytes());
+        TEST_FILE1.setLastModified(1000000000000L);
+
+        FtpFile file = createFileObject(FILE1_PATH, USER);
+        assertTrue(file.doesExist());
+        assertTrue(file.isFile());
+        assertFalse(file.isDirectory());
+        assertFalse(file.isHidden());
+        assertEquals(5, file.getSize());
+        assertEquals(1000000000000L, file.getLastModified());
+        assertEquals(1, file.getLinkCount());
+        assertTrue(file.isReadable());
+        assertTrue(file.isWritable());
+
+        FtpFile dir = createFileObject(DIR1_PATH, USER);
+        assertTrue(dir.isDirectory());
+        assertFalse(dir.isFile());
+        assertEquals(3, dir.getLinkCount());
+    }
+
+    public void testNonExistingFile() {
+        FtpFile file = new PathFtpFile("/nonexisting", new File(ROOT_DIR,
+                "nonexisting").toPath(), USER);
+        assertFalse(file.doesExist());
+        assertFalse(file.isFile());
+        assertFalse(file.isDirectory());
+        assertEquals(0, file.getSize());
+        assertNull(file.listFiles());
+    }
+
+    public void testAttributesReadOnce() throws Exception {
+        FtpFile file = createFileObject(FILE1_PATH, USER);
+        assertEquals(0, file.getSize());
+
+        // the snapshot is kept for the life of the object
+        TestUtil.writeDataToFile(TEST_FILE1, "Hello".getBytes());
+        assertEquals(0, file.getSize());
+        assertEquals(5, createFileObject(FILE1_PATH, USER).getSize());
+    }
+
+    public void testModificationResetsAttributes() throws Exception {
+        FtpFile file = new PathFtpFile("/dir1/dir2", new File(TEST_DIR1,
+                "dir2").toPath(), USER);
+        assertFalse(file.doesExist());
+
+        assertTrue(file.mkdir());
+        assertTrue(file.doesExist());
+        assertTrue(file.isDirectory());
+
+        assertTrue(file.setLastModified(1000000000000L));
+        assertEquals(1000000000000L, file.getLastModified());
+
+        assertTrue(file.delete());
+        assertFalse(file.doesExist());
+    }
+
+    public void testUploadResetsAttributes() throws Exception {
+        FtpFile file = createFileObject(FILE1_PATH, USER);
+        assertEquals(0, file.getSize());
+
+        OutputStream out = file.createOutputStream(0);
+        out.write("Hello".getBytes());
+        out.close();
+        assertEquals(5, file.getSize());
+    }
+
+    public void testMove() throws Exception {
+        FtpFile file = createFileObject(FILE1_PATH, USER);
+        FtpFile dest = new PathFtpFile("/file4", new File(ROOT_DIR, "file4")
+                .toPath(), USER);
+        assertTrue(file.doesExist());
+        assertFalse(dest.doesExist());
+
+        assertTrue(file.move(dest));
+        assertFalse(file.doesExist());
+        assertTrue(dest.doesExist());
+
+        // the destination must not exist
+        FtpFile file3 = createFileObject(FILE3_PATH, USER);
+        assertFalse(file3.move(dest));
+    }
+
+    public void testDirectoryStream() throws Exception {
+        TestUtil.writeDataToFile(TEST_FILE2_IN_DIR1, "Hello".getBytes());
+        PathFtpFile dir = (PathFtpFile) createFileObject(DIR1_PATH, USER);
+
+        try (DirectoryStream<FtpFile> stream = dir.newDirectoryStream()) {
+            int count = 0;
+            for (FtpFile file : stream) {
+                assertEquals("/dir1/file2", file.getAbsolutePath());
+                assertTrue(file.isFile());
+                assertEquals(5, file.getSize());
+                count++;
+            }
+            assertEquals(1, count);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        cleanTmpDirs();
+    }
+
+    /**
+     * @throws IOException
+     */
+    protected void initDirs() throws IOException {
+        cleanTmpDirs();
+
+        TEST_TMP_DIR.mkdirs();
+        ROOT_DIR.mkdirs();
+    }
+
+    protected void cleanTmpDirs() throws IOException {
+        if (TEST_TMP_DIR.exists()) {
+            IoUtils.delete(TEST_TMP_DIR);
+        }
+    }
+}
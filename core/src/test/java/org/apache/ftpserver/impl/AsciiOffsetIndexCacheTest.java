@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class AsciiOffsetIndexCacheTest extends TestCase {
+
+    private static final File ROOT_DIR = new File("test-tmp/ascii-index");
+
+    private TransferBufferPool bufferPool = new TransferBufferPool(1024, 0,
+            false);
+
+    // small checkpoint interval for the files to have several checkpoints
+    private AsciiOffsetIndexCache cache = new AsciiOffsetIndexCache(10, 100,
+            bufferPool);
+
+    private FileSystemView view;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (ROOT_DIR.exists()) {
+            IoUtils.delete(ROOT_DIR);
+        }
+        ROOT_DIR.mkdirs();
+
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        user.setHomeDirectory(ROOT_DIR.getAbsolutePath());
+        user.setAuthorities(Collections.<Authority> singletonList(
+                new WritePermission()));
+        view = new NativeFileSystemFactory().createFileSystemView(user);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        view.dispose();
+        IoUtils.delete(ROOT_DIR);
+    }
+
+    private FtpFile createFile(String name, byte[] data) throws Exception {
+        TestUtil.writeDataToFile(new File(ROOT_DIR, name), data);
+        return view.getFile(name);
+    }
+
+    /**
+     * Text with bare \n, \r\n and lone \r line endings.
+     */
+    private static byte[] createText(int length) {
+        Random random = new Random(42);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int r = random.nextInt(20);
+            data[i] = (byte) (r == 0 ? '\n' : r == 1 ? '\r' : 'a' + r);
+        }
+        return data;
+    }
+
+    /**
+     * The position reached by reading the file from its beginning.
+     */
+    private static long scan(byte[] data, long asciiOffset) {
+        long ascii = 0;
+        byte previous = 0;
+        int position = 0;
+        while (ascii < asciiOffset) {
+            byte b = data[position++];
+            ascii += (b == '\n' && previous != '\r') ? 2 : 1;
+            previous = b;
+        }
+        return position;
+    }
+
+    public void testPosition() throws Exception {
+        byte[] data = createText(2000);
+        FtpFile file = createFile("test.txt", data);
+
+        // in any order, backwards once the file is indexed
+        for (long offset = 2000; offset >= 0; offset -= 7) {
+            assertEquals(scan(data, offset), cache.getPosition(file, offset));
+        }
+        assertEquals(1, cache.getSize());
+        assertEquals(21, cache.get(file).getCheckpoints());
+    }
+
+    public void testNoLineEnding() throws Exception {
+        FtpFile file = createFile("test.txt", "Hello world"
+                .getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(0, cache.getPosition(file, 0));
+        assertEquals(6, cache.getPosition(file, 6));
+        assertEquals(11, cache.getPosition(file, 11));
+    }
+
+    public void testLineEndings() throws Exception {
+        FtpFile file = createFile("test.txt", "a\nb\r\nc"
+                .getBytes(StandardCharsets.UTF_8));
+
+        // a \r \n b \r \n c
+        assertEquals(1, cache.getPosition(file, 1));
+        assertEquals(2, cache.getPosition(file, 3));
+        assertEquals(3, cache.getPosition(file, 4));
+        assertEquals(5, cache.getPosition(file, 6));
+        assertEquals(6, cache.getPosition(file, 7));
+    }
+
+    public void testBeyondEnd() throws Exception {
+        FtpFile file = createFile("test.txt", "a\nb"
+                .getBytes(StandardCharsets.UTF_8));
+
+        try {
+            cache.getPosition(file, 5);
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    public void testModifiedFileReindexed() throws Exception {
+        FtpFile file = createFile("test.txt", createText(500));
+        cache.getPosition(file, 400);
+
+        byte[] data = createText(600);
+        data[0] = '\n';
+        FtpFile modified = createFile("test.txt", data);
+        assertNull(cache.get(modified));
+        assertEquals(scan(data, 450), cache.getPosition(modified, 450));
+    }
+
+    public void testIndexedByDownload() throws Exception {
+        byte[] data = createText(1000);
+        FtpFile file = createFile("test.txt", data);
+
+        InputStream in = cache.createInputStream(file, 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IoUtils.copy(in, out, 64);
+        in.close();
+        TestUtil.assertArraysEqual(data, out.toByteArray());
+
+        AsciiOffsetIndex index = cache.get(file);
+        assertEquals(1000, index.getLength());
+        assertEquals(11, index.getCheckpoints());
+        assertEquals(scan(data, 900), cache.getPosition(file, 900));
+    }
+
+    public void testRestartedDownloadIndexed() throws Exception {
+        byte[] data = createText(1000);
+        FtpFile file = createFile("test.txt", data);
+
+        long position = cache.getPosition(file, 300);
+        InputStream in = cache.createInputStream(file, position);
+        IoUtils.copy(in, new ByteArrayOutputStream(), 64);
+        in.close();
+
+        assertEquals(1000, cache.get(file).getLength());
+    }
+
+    public void testIndexedByUpload() throws Exception {
+        byte[] data = createText(1000);
+        FtpFile file = view.getFile("test.txt");
+
+        OutputStream out = cache.createOutputStream(file, 0);
+        out.write(data, 0, 600);
+        out.close();
+        file = view.getFile("test.txt");
+        assertEquals(600, cache.get(file).getLength());
+
+        // restarted upload, going on with the index
+        long position = cache.getPosition(file, scanAscii(data, 500));
+        assertEquals(500, position);
+        out = cache.createOutputStream(file, position);
+        out.write(data, 500, 500);
+        out.close();
+
+        file = view.getFile("test.txt");
+        TestUtil.assertFileEqual(data, new File(ROOT_DIR, "test.txt"));
+        assertEquals(1000, cache.get(file).getLength());
+        assertEquals(950, cache.getPosition(file, scanAscii(data, 950)));
+    }
+
+    private static long scanAscii(byte[] data, int position) {
+        long ascii = 0;
+        byte previous = 0;
+        for (int i = 0; i < position; i++) {
+            ascii += (data[i] == '\n' && previous != '\r') ? 2 : 1;
+            previous = data[i];
+        }
+        return ascii;
+    }
+
+    public void testIndexTruncate() {
+        byte[] data = createText(1000);
+        AsciiOffsetIndex index = new AsciiOffsetIndex(100);
+        index.update(0, data, 0, 1000);
+        assertEquals(11, index.getCheckpoints());
+
+        assertFalse(index.truncate(550));
+        index.setLastSeek(index.floor(scanAscii(data, 550)));
+        assertTrue(index.truncate(500));
+        assertEquals(500, index.getLength());
+        assertEquals(6, index.getCheckpoints());
+
+        // bytes not following the indexed data are ignored
+        index.update(600, data, 600, 100);
+        assertEquals(500, index.getLength());
+        index.update(500, data, 500, 500);
+        assertEquals(1000, index.getLength());
+        assertEquals(11, index.getCheckpoints());
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class AsciiTranslatorTest extends TestCase {
+
+    private static final byte[] LOCAL_EOL = "\n".getBytes();
+
+    private static final String[] INPUTS = new String[] { "", "abc",
+            "a\r\nb\r\nc\r\n", "a\nb\nc", "\n\n\r\r\r\n\n", "\r\n\r\n",
+            "mixed\rline\nendings\r\n\n\rend" };
+
+    private byte[] translate(boolean toNetwork, byte[] data, int... splits)
+            throws Exception {
+        AsciiTranslator translator = new AsciiTranslator(toNetwork, LOCAL_EOL);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int off = 0;
+        for (int split : splits) {
+            translator.write(data, off, split - off, out);
+            off = split;
+        }
+        translator.write(data, off, data.length - off, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * The byte per byte translation done by earlier versions.
+     */
+    private byte[] translateByteByByte(boolean toNetwork, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte lastByte = 0;
+        for (byte b : data) {
+            if (toNetwork) {
+                if (b == '\n' && lastByte != '\r') {
+                    out.write('\r');
+                }
+                out.write(b);
+            } else if (b == '\n') {
+                if (lastByte != '\r') {
+                    out.write(LOCAL_EOL, 0, LOCAL_EOL.length);
+                }
+            } else if (b == '\r') {
+                out.write(LOCAL_EOL, 0, LOCAL_EOL.length);
+            } else {
+                out.write(b);
+            }
+            lastByte = b;
+        }
+        return out.toByteArray();
+    }
+
+    public void testToNetwork() throws Exception {
+        assertEquals("a\r\nb\r\n", new String(translate(true,
+                "a\nb\r\n".getBytes())));
+    }
+
+    public void testToLocal() throws Exception {
+        assertEquals("a\nb\nc\n\n", new String(translate(false,
+                "a\r\nb\nc\r\r\n".getBytes())));
+    }
+
+    public void testLineEndingSplitAcrossBuffers() throws Exception {
+        assertEquals("a\r\nb", new String(translate(true,
+                "a\r\nb".getBytes(), 2)));
+        assertEquals("a\nb", new String(translate(false,
+                "a\r\nb".getBytes(), 2)));
+    }
+
+    public void testSameAsByteByByteForAllSplits() throws Exception {
+        for (String input : INPUTS) {
+            byte[] data = input.getBytes();
+            for (boolean toNetwork : new boolean[] { true, false }) {
+                byte[] expected = translateByteByByte(toNetwork, data);
+                for (int split = 0; split <= data.length; split++) {
+                    byte[] actual = translate(toNetwork, data, split);
+                    assertTrue("Input " + Arrays.toString(data) + " split at "
+                            + split, Arrays.equals(expected, actual));
+                }
+            }
+        }
+    }
+
+    public void testMultiByteLocalLineEnding() throws Exception {
+        AsciiTranslator translator = new AsciiTranslator(false,
+                "\r\n".getBytes());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] data = "a\r\nb\nc".getBytes();
+        translator.write(data, 0, data.length, out);
+        assertEquals("a\r\nb\r\nc", new String(out.toByteArray()));
+    }
+}
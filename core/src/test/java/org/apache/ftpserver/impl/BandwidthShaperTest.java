@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.listener.Listener;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.mina.core.session.DummySession;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class BandwidthShaperTest extends TestCase {
+
+    private FtpIoSession createSession(Listener listener, String userName) {
+        FtpIoSession session = new FtpIoSession(new DummySession(), null);
+        session.setListener(listener);
+
+        BaseUser user = new BaseUser();
+        user.setName(userName);
+        session.setUser(user);
+        return session;
+    }
+
+    private Listener createListener(int maxDownloadRate, boolean userShared) {
+        DataConnectionConfigurationFactory dataConfigFactory = new DataConnectionConfigurationFactory();
+        dataConfigFactory.setMaxDownloadRate(maxDownloadRate);
+        dataConfigFactory.setUserTransferRateShared(userShared);
+
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setDataConnectionConfiguration(dataConfigFactory
+                .createDataConnectionConfiguration());
+        return listenerFactory.createListener();
+    }
+
+    private int getDepth(TransferRateLimiter limiter) {
+        int depth = 0;
+        for (TransferRateLimiter level = limiter; level != null; level = level
+                .getParent()) {
+            depth++;
+        }
+        return depth;
+    }
+
+    public void testUnlimited() {
+        BandwidthShaper shaper = new BandwidthShaper(
+                new ConnectionConfigFactory().createConnectionConfig());
+
+        FtpIoSession session = createSession(createListener(0, false), "user1");
+        assertNull(shaper.openDownloadLimiter(session, 0));
+        assertNull(shaper.openUploadLimiter(session, 0));
+    }
+
+    public void testSessionLimitOnly() {
+        BandwidthShaper shaper = new BandwidthShaper(
+                new ConnectionConfigFactory().createConnectionConfig());
+
+        FtpIoSession session = createSession(createListener(0, false), "user1");
+        TransferRateLimiter limiter = shaper.openDownloadLimiter(session, 1000);
+        assertNotNull(limiter);
+        assertEquals(1, getDepth(limiter));
+        shaper.closeLimiter(limiter);
+    }
+
+    public void testGlobalAndListenerLevels() {
+        ConnectionConfigFactory configFactory = new ConnectionConfigFactory();
+        configFactory.setMaxDownloadRate(100000);
+        BandwidthShaper shaper = new BandwidthShaper(configFactory
+                .createConnectionConfig());
+
+        Listener listener = createListener(50000, false);
+        TransferRateLimiter limiter1 = shaper.openDownloadLimiter(
+                createSession(listener, "user1"), 1000);
+        TransferRateLimiter limiter2 = shaper.openDownloadLimiter(
+                createSession(listener, "user2"), 0);
+
+        // session, listener and global level
+        assertEquals(3, getDepth(limiter1));
+        assertEquals(3, getDepth(limiter2));
+        assertSame(limiter1.getParent(), limiter2.getParent());
+        assertEquals(2, limiter1.getParent().getActiveTransfers());
+        assertEquals(2, limiter1.getParent().getParent().getActiveTransfers());
+
+        // no upload limit configured at all
+        assertNull(shaper.openUploadLimiter(createSession(listener, "user1"), 0));
+
+        shaper.closeLimiter(limiter1);
+        assertEquals(1, limiter2.getParent().getActiveTransfers());
+        shaper.closeLimiter(limiter2);
+        assertEquals(0, limiter2.getParent().getActiveTransfers());
+    }
+
+    public void testSharedUserLevel() {
+        BandwidthShaper shaper = new BandwidthShaper(
+                new ConnectionConfigFactory().createConnectionConfig());
+
+        Listener listener = createListener(0, true);
+        TransferRateLimiter limiter1 = shaper.openDownloadLimiter(
+                createSession(listener, "user1"), 1000);
+        TransferRateLimiter limiter2 = shaper.openDownloadLimiter(
+                createSession(listener, "user1"), 1000);
+        TransferRateLimiter limiter3 = shaper.openDownloadLimiter(
+                createSession(listener, "user2"), 1000);
+
+        // each session keeps its own level under the shared user level
+        assertEquals(2, getDepth(limiter1));
+        assertNotSame(limiter1, limiter2);
+        assertSame(limiter1.getParent(), limiter2.getParent());
+        assertNotSame(limiter1.getParent(), limiter3.getParent());
+        assertEquals(2, shaper.getUserLimiterCount());
+
+        shaper.closeLimiter(limiter1);
+        assertEquals(2, shaper.getUserLimiterCount());
+        shaper.closeLimiter(limiter2);
+        assertEquals(1, shaper.getUserLimiterCount());
+        shaper.closeLimiter(limiter3);
+        assertEquals(0, shaper.getUserLimiterCount());
+    }
+
+    public void testSharedUserLevelPerListener() {
+        BandwidthShaper shaper = new BandwidthShaper(
+                new ConnectionConfigFactory().createConnectionConfig());
+
+        Listener listener1 = createListener(50000, true);
+        Listener listener2 = createListener(20000, true);
+        TransferRateLimiter limiter1 = shaper.openDownloadLimiter(
+                createSession(listener1, "user1"), 1000);
+        TransferRateLimiter limiter2 = shaper.openDownloadLimiter(
+                createSession(listener2, "user1"), 1000);
+
+        // session, user and listener level
+        assertEquals(3, getDepth(limiter1));
+        assertEquals(3, getDepth(limiter2));
+        assertNotSame(limiter1.getParent(), limiter2.getParent());
+        assertNotSame(limiter1.getParent().getParent(), limiter2.getParent()
+                .getParent());
+        assertEquals(2, shaper.getUserLimiterCount());
+        assertEquals(2, shaper.getListenerLimiterCount());
+
+        shaper.closeLimiter(limiter1);
+        assertEquals(1, shaper.getUserLimiterCount());
+        assertEquals(1, shaper.getListenerLimiterCount());
+        shaper.closeLimiter(limiter2);
+        assertEquals(0, shaper.getUserLimiterCount());
+        assertEquals(0, shaper.getListenerLimiterCount());
+    }
+
+    public void testChangedUserRate() {
+        BandwidthShaper shaper = new BandwidthShaper(
+                new ConnectionConfigFactory().createConnectionConfig());
+
+        Listener listener = createListener(0, true);
+        TransferRateLimiter limiter1 = shaper.openDownloadLimiter(
+                createSession(listener, "user1"), 1000);
+        TransferRateLimiter limiter2 = shaper.openDownloadLimiter(
+                createSession(listener, "user1"), 2000);
+
+        assertNotSame(limiter1.getParent(), limiter2.getParent());
+        assertEquals(1, shaper.getUserLimiterCount());
+
+        // the replaced level must not remove the current one
+        shaper.closeLimiter(limiter1);
+        assertEquals(1, shaper.getUserLimiterCount());
+        assertSame(limiter2.getParent(), shaper.openDownloadLimiter(
+                createSession(listener, "user1"), 2000).getParent());
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class BlockModeStreamTest extends TestCase {
+
+    private byte[] createTestData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    private byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            baos.write(buffer, 0, count);
+        }
+        return baos.toByteArray();
+    }
+
+    public void testBlocks() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BlockModeOutputStream out = new BlockModeOutputStream(baos);
+        out.write(new byte[] { 1, 2, 3 });
+        out.flush();
+        out.write(4);
+        out.finish();
+
+        assertTrue(Arrays.equals(new byte[] { 0, 0, 3, 1, 2, 3, 0x40, 0, 1,
+                4 }, baos.toByteArray()));
+    }
+
+    public void testLargeWriteSplitInBlocks() throws Exception {
+        byte[] data = createTestData(2 * BlockModeOutputStream.MAX_BLOCK_SIZE
+                + 10);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BlockModeOutputStream out = new BlockModeOutputStream(baos);
+        out.write(data);
+        out.close();
+
+        byte[] blocks = baos.toByteArray();
+        assertEquals(data.length + 3 * 3, blocks.length);
+        assertEquals(0, blocks[0]);
+        assertEquals((byte) 0xFF, blocks[1]);
+        assertEquals((byte) 0xFF, blocks[2]);
+        int last = 2 * (3 + BlockModeOutputStream.MAX_BLOCK_SIZE);
+        assertEquals(0x40, blocks[last]);
+        assertEquals(10, blocks[last + 2]);
+    }
+
+    public void testEmptyFile() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new BlockModeOutputStream(baos).close();
+        assertTrue(Arrays.equals(new byte[] { 0x40, 0, 0 }, baos
+                .toByteArray()));
+
+        BlockModeInputStream in = new BlockModeInputStream(
+                new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(-1, in.read());
+        assertTrue(in.isEndOfFile());
+    }
+
+    public void testRoundTripLeavesNextFile() throws Exception {
+        byte[] data1 = createTestData(100000);
+        byte[] data2 = createTestData(10);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BlockModeOutputStream out = new BlockModeOutputStream(baos);
+        out.write(data1);
+        out.finish();
+        out = new BlockModeOutputStream(baos);
+        out.write(data2);
+        out.finish();
+
+        ByteArrayInputStream underlying = new ByteArrayInputStream(baos
+                .toByteArray());
+        BlockModeInputStream in = new BlockModeInputStream(underlying);
+        assertTrue(Arrays.equals(data1, readAll(in)));
+        assertTrue(in.isEndOfFile());
+        in.close();
+
+        // the next file follows on the same stream
+        in = new BlockModeInputStream(underlying);
+        assertTrue(Arrays.equals(data2, readAll(in)));
+        assertTrue(in.isEndOfFile());
+        assertEquals(0, underlying.available());
+    }
+
+    public void testRecordsAndRestartMarkers() throws Exception {
+        byte[] blocks = new byte[] { (byte) 0x80, 0, 2, 1, 2, 0x10, 0, 3, '1',
+                '0', '0', 0x40, 0, 1, 3 };
+        BlockModeInputStream in = new BlockModeInputStream(
+                new ByteArrayInputStream(blocks));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, readAll(in)));
+        assertTrue(in.isEndOfFile());
+    }
+
+    public void testClosedWithoutEndOfFile() throws Exception {
+        BlockModeInputStream in = new BlockModeInputStream(
+                new ByteArrayInputStream(new byte[] { 0, 0, 2, 1, 2 }));
+        assertTrue(Arrays.equals(new byte[] { 1, 2 }, readAll(in)));
+        assertFalse(in.isEndOfFile());
+    }
+
+    public void testClosedWithinBlock() throws Exception {
+        BlockModeInputStream in = new BlockModeInputStream(
+                new ByteArrayInputStream(new byte[] { 0, 0, 5, 1, 2 }));
+        try {
+            readAll(in);
+            fail("Must throw EOFException");
+        } catch (EOFException e) {
+            // ok
+        }
+    }
+
+    public void testWriteAfterFinish() throws Exception {
+        BlockModeOutputStream out = new BlockModeOutputStream(
+                new ByteArrayOutputStream());
+        out.finish();
+        try {
+            out.write(1);
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ChecksumCacheTest extends TestCase {
+
+    private static final File ROOT_DIR = new File("test-tmp/checksums");
+
+    private static final byte[] DATA = "Hello world".getBytes(StandardCharsets.UTF_8);
+
+    private static final String DATA_MD5 = DigestUtils.md5Hex(DATA).toUpperCase();
+
+    private TransferBufferPool bufferPool = new TransferBufferPool(1024, 0,
+            false);
+
+    private FileSystemView view;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (ROOT_DIR.exists()) {
+            IoUtils.delete(ROOT_DIR);
+        }
+        ROOT_DIR.mkdirs();
+
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        user.setHomeDirectory(ROOT_DIR.getAbsolutePath());
+        view = new NativeFileSystemFactory().createFileSystemView(user);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        view.dispose();
+        IoUtils.delete(ROOT_DIR);
+    }
+
+    private FtpFile createFile(String name, byte[] data) throws Exception {
+        TestUtil.writeDataToFile(new File(ROOT_DIR, name), data);
+        return view.getFile(name);
+    }
+
+    public void testComputeOnMiss() throws Exception {
+        ChecksumCache cache = new ChecksumCache(10, new String[] { "CRC32" });
+        FtpFile file = createFile("test.txt", DATA);
+
+        assertEquals(DATA_MD5, cache.getChecksum(file, ChecksumCalculator.MD5,
+                bufferPool));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getSize());
+
+        // the inline algorithms are computed in the same pass
+        assertEquals("8BD69E52", cache.get(file, ChecksumCalculator.CRC32));
+        assertEquals(DATA_MD5, cache.getChecksum(file, ChecksumCalculator.MD5,
+                bufferPool));
+        assertEquals(2, cache.getHits());
+    }
+
+    public void testPutAndGet() throws Exception {
+        ChecksumCache cache = new ChecksumCache(10, new String[0]);
+        FtpFile file = createFile("test.txt", DATA);
+
+        Map<String, String> checksums = new HashMap<>();
+        checksums.put(ChecksumCalculator.MD5, "CACHED");
+        cache.put(file, checksums);
+
+        // answered without reading the file
+        assertEquals("CACHED", cache.getChecksum(file, ChecksumCalculator.MD5,
+                bufferPool));
+        assertNull(cache.get(file, ChecksumCalculator.SHA1));
+    }
+
+    public void testModifiedFileNotUsed() throws Exception {
+        ChecksumCache cache = new ChecksumCache(10, new String[0]);
+        FtpFile file = createFile("test.txt", DATA);
+        cache.getChecksum(file, ChecksumCalculator.MD5, bufferPool);
+
+        byte[] data2 = "Hello world, again".getBytes(StandardCharsets.UTF_8);
+        FtpFile modified = createFile("test.txt", data2);
+        assertNull(cache.get(modified, ChecksumCalculator.MD5));
+        assertEquals(DigestUtils.md5Hex(data2).toUpperCase(), cache
+                .getChecksum(modified, ChecksumCalculator.MD5, bufferPool));
+    }
+
+    public void testInvalidate() throws Exception {
+        ChecksumCache cache = new ChecksumCache(10, new String[0]);
+        FtpFile file = createFile("test.txt", DATA);
+        cache.getChecksum(file, ChecksumCalculator.MD5, bufferPool);
+
+        cache.invalidate(file);
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get(file, ChecksumCalculator.MD5));
+    }
+
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        ChecksumCache cache = new ChecksumCache(2, new String[0]);
+        FtpFile file1 = createFile("test1.txt", DATA);
+        FtpFile file2 = createFile("test2.txt", DATA);
+        FtpFile file3 = createFile("test3.txt", DATA);
+
+        cache.getChecksum(file1, ChecksumCalculator.MD5, bufferPool);
+        cache.getChecksum(file2, ChecksumCalculator.MD5, bufferPool);
+        cache.get(file1, ChecksumCalculator.MD5);
+        cache.getChecksum(file3, ChecksumCalculator.MD5, bufferPool);
+
+        assertEquals(2, cache.getSize());
+        assertNotNull(cache.get(file1, ChecksumCalculator.MD5));
+        assertNull(cache.get(file2, ChecksumCalculator.MD5));
+        assertNotNull(cache.get(file3, ChecksumCalculator.MD5));
+    }
+
+    public void testDisabled() throws Exception {
+        ChecksumCache cache = new ChecksumCache(0, new String[] { "MD5" });
+        FtpFile file = createFile("test.txt", DATA);
+
+        assertNull(cache.createInlineCalculator());
+        assertEquals(DATA_MD5, cache.getChecksum(file, ChecksumCalculator.MD5,
+                bufferPool));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testInlineCalculator() throws Exception {
+        assertNull(new ChecksumCache(10, new String[0])
+                .createInlineCalculator());
+
+        ChecksumCache cache = new ChecksumCache(10, new String[] { "md5",
+                "sha256" });
+        ChecksumCalculator calculator = cache.createInlineCalculator();
+        calculator.update(DATA, 0, DATA.length);
+        FtpFile file = createFile("test.txt", DATA);
+        cache.uploaded(file, calculator);
+
+        assertEquals(DATA_MD5, cache.get(file, ChecksumCalculator.MD5));
+        assertEquals(DigestUtils.sha256Hex(DATA).toUpperCase(), cache.get(
+                file, ChecksumCalculator.SHA256));
+    }
+
+    public void testUnsupportedInlineAlgorithm() {
+        try {
+            new ChecksumCache(10, new String[] { "SHA-384" });
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ChecksumCalculatorTest extends TestCase {
+
+    private static final byte[] DATA = "Hello world".getBytes(StandardCharsets.UTF_8);
+
+    public void testAllAlgorithms() throws Exception {
+        ChecksumCalculator calculator = new ChecksumCalculator("md5", "sha1",
+                "SHA-256", "crc32");
+        calculator.update(DATA, 0, 5);
+        calculator.update(DATA, 5, DATA.length - 5);
+        assertEquals(DATA.length, calculator.getLength());
+
+        Map<String, String> checksums = calculator.getChecksums();
+        assertEquals(4, checksums.size());
+        assertEquals(DigestUtils.md5Hex(DATA).toUpperCase(), checksums
+                .get(ChecksumCalculator.MD5));
+        assertEquals(DigestUtils.shaHex(DATA).toUpperCase(), checksums
+                .get(ChecksumCalculator.SHA1));
+        assertEquals(DigestUtils.sha256Hex(DATA).toUpperCase(), checksums
+                .get(ChecksumCalculator.SHA256));
+        assertEquals("8BD69E52", checksums.get(ChecksumCalculator.CRC32));
+    }
+
+    public void testCrcPadded() throws Exception {
+        ChecksumCalculator calculator = new ChecksumCalculator("CRC32");
+        assertEquals("00000000", calculator.getChecksums().get(
+                ChecksumCalculator.CRC32));
+    }
+
+    public void testUpdateFromBuffer() throws Exception {
+        ChecksumCalculator calculator = new ChecksumCalculator("MD5");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+        buffer.put(DATA);
+        buffer.flip();
+        calculator.update(buffer);
+
+        // the buffer is left for the caller to consume
+        assertEquals(0, buffer.position());
+        assertEquals(DATA.length, buffer.limit());
+        assertEquals(DigestUtils.md5Hex(DATA).toUpperCase(), calculator
+                .getChecksums().get(ChecksumCalculator.MD5));
+    }
+
+    public void testSha512() throws Exception {
+        ChecksumCalculator calculator = new ChecksumCalculator("sha512");
+        calculator.update(DATA, 0, DATA.length);
+        assertEquals(DigestUtils.sha512Hex(DATA).toUpperCase(), calculator
+                .getChecksums().get(ChecksumCalculator.SHA512));
+    }
+
+    public void testCombineCrc32() {
+        CRC32 whole = new CRC32();
+        whole.update(DATA);
+        CRC32 first = new CRC32();
+        first.update(DATA, 0, 4);
+        CRC32 second = new CRC32();
+        second.update(DATA, 4, DATA.length - 4);
+
+        assertEquals(whole.getValue(), ChecksumCalculator.combineCrc32(first
+                .getValue(), second.getValue(), DATA.length - 4));
+        assertEquals(first.getValue(), ChecksumCalculator.combineCrc32(first
+                .getValue(), 0, 0));
+    }
+
+        public void testNormalize() {
+        assertEquals(ChecksumCalculator.SHA256, ChecksumCalculator
+                .normalize("sha256"));
+        assertEquals(ChecksumCalculator.SHA1, ChecksumCalculator
+                .normalize("SHA-1"));
+        assertEquals(ChecksumCalculator.CRC32, ChecksumCalculator
+                .normalize("crc"));
+        assertNull(ChecksumCalculator.normalize("SHA-384"));
+        assertNull(ChecksumCalculator.normalize(null));
+    }
+
+    public void testUnsupportedAlgorithm() {
+        try {
+            new ChecksumCalculator("MD5", "ADLER32");
+            fail("Must throw NoSuchAlgorithmException");
+        } catch (NoSuchAlgorithmException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class DataConnectionReactorTest extends TestCase {
+
+    private DataConnectionReactor reactor;
+
+    private Pipe pipe;
+
+    @Override
+    protected void setUp() throws Exception {
+        reactor = new DataConnectionReactor();
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+        pipe.sink().configureBlocking(false);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pipe.source().close();
+        pipe.sink().close();
+        reactor.dispose();
+    }
+
+    public void testAwaitReadable() throws Exception {
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    pipe.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+                } catch (Exception e) {
+                    // the test will time out
+                }
+            }
+        }.start();
+
+        reactor.await(pipe.source(), SelectionKey.OP_READ, 5000);
+        assertEquals(1, pipe.source().read(ByteBuffer.allocate(10)));
+    }
+
+    public void testAwaitRepeatedly() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            pipe.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+            reactor.await(pipe.source(), SelectionKey.OP_READ, 5000);
+            assertEquals(1, pipe.source().read(ByteBuffer.allocate(10)));
+        }
+    }
+
+    public void testAwaitWritable() throws Exception {
+        reactor.await(pipe.sink(), SelectionKey.OP_WRITE, 5000);
+    }
+
+    public void testTimeout() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            reactor.await(pipe.source(), SelectionKey.OP_READ, 200);
+            fail("Must throw SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            // ok
+        }
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+
+    public void testChannelClosedWhileWaiting() throws Exception {
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    pipe.source().close();
+                } catch (Exception e) {
+                    // the test will time out
+                }
+            }
+        }.start();
+
+        try {
+            reactor.await(pipe.source(), SelectionKey.OP_READ, 5000);
+            fail("Must throw AsynchronousCloseException");
+        } catch (AsynchronousCloseException e) {
+            // ok
+        }
+    }
+
+    public void testWhenReadyDoesNotBlock() throws Exception {
+        CompletableFuture<Void> ready = reactor.whenReady(pipe.source(),
+                SelectionKey.OP_READ, 5000);
+        Thread.sleep(100);
+        assertFalse(ready.isDone());
+
+        pipe.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+        ready.get(5, TimeUnit.SECONDS);
+        assertEquals(1, pipe.source().read(ByteBuffer.allocate(10)));
+    }
+
+    public void testWhenReadyTimeout() throws Exception {
+        CompletableFuture<Void> ready = reactor.whenReady(pipe.source(),
+                SelectionKey.OP_READ, 200);
+        try {
+            ready.get(5, TimeUnit.SECONDS);
+            fail("Must throw ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+    }
+
+    public void testWhenReadyAfterDispose() throws Exception {
+        reactor.dispose();
+        try {
+            reactor.whenReady(pipe.source(), SelectionKey.OP_READ, 0).get(5,
+                    TimeUnit.SECONDS);
+            fail("Must throw ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AsynchronousCloseException);
+        }
+    }
+
+    public void testSchedule() throws Exception {
+        final CountDownLatch run = new CountDownLatch(1);
+        long start = System.nanoTime();
+        reactor.schedule(new Runnable() {
+            public void run() {
+                run.countDown();
+            }
+        }, TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertTrue(run.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS
+                .toNanos(100));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FileAllocatorTest extends TestCase {
+
+    private static final File ROOT_DIR = new File("test-tmp/allocator");
+
+    private static final File TEST_FILE = new File(ROOT_DIR, "test.bin");
+
+    @Override
+    protected void setUp() throws Exception {
+        if (ROOT_DIR.exists()) {
+            IoUtils.delete(ROOT_DIR);
+        }
+        ROOT_DIR.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        IoUtils.delete(ROOT_DIR);
+    }
+
+    public void testAllocateAndTrim() throws Exception {
+        OutputStream out = FileAllocator.allocate(new FileOutputStream(
+                TEST_FILE), 1000);
+        assertTrue(out instanceof FileOutputStream);
+        assertEquals(1000, TEST_FILE.length());
+
+        out.write(new byte[300]);
+        ((FileOutputStream) out).getChannel().write(
+                ByteBuffer.allocate(200));
+        out.close();
+        assertEquals(500, TEST_FILE.length());
+
+        // closing again keeps the file
+        out.close();
+        assertEquals(500, TEST_FILE.length());
+    }
+
+    public void testAlreadyLongEnough() throws Exception {
+        FileOutputStream fileOut = new FileOutputStream(TEST_FILE);
+        fileOut.write(new byte[100]);
+        assertSame(fileOut, FileAllocator.allocate(fileOut, 50));
+        fileOut.close();
+    }
+
+    public void testNotAFile() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertSame(out, FileAllocator.allocate(out, 1000));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.ftpserver.filesystem.nativefs.NativeFileSystemFactory;
+import org.apache.ftpserver.ftplet.FileSystemView;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class FileHasherTest extends TestCase {
+
+    private static final File ROOT_DIR = new File("test-tmp/hasher");
+
+    private static final byte[] DATA = new byte[100000];
+
+    static {
+        new Random(42).nextBytes(DATA);
+    }
+
+    private TransferBufferPool bufferPool = new TransferBufferPool(1024, 0,
+            false);
+
+    // small chunks for the files to be split
+    private FileHasher hasher = new FileHasher(bufferPool, 4, 4096);
+
+    private FileSystemView view;
+
+    private FtpFile file;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (ROOT_DIR.exists()) {
+            IoUtils.delete(ROOT_DIR);
+        }
+        ROOT_DIR.mkdirs();
+
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        user.setHomeDirectory(ROOT_DIR.getAbsolutePath());
+        view = new NativeFileSystemFactory().createFileSystemView(user);
+
+        TestUtil.writeDataToFile(new File(ROOT_DIR, "test.bin"), DATA);
+        file = view.getFile("test.bin");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        hasher.dispose();
+        view.dispose();
+        IoUtils.delete(ROOT_DIR);
+    }
+
+    private static String crc32(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return ChecksumCalculator.encodeCrc32(crc.getValue());
+    }
+
+    public void testParallelCrc32() throws Exception {
+        assertEquals(crc32(DATA), hasher.hash(file, "CRC32", 0, DATA.length)
+                .get());
+    }
+
+    public void testCrc32QueuesOneChunkPerThread() throws Exception {
+        FileHasher singleThreadHasher = new FileHasher(bufferPool, 1, 1024);
+        try {
+            Future<String> hash = singleThreadHasher.hash(file, "CRC32", 0,
+                    DATA.length);
+            while (!hash.isDone()) {
+                assertTrue(singleThreadHasher.getQueuedTasks() <= 1);
+                Thread.yield();
+            }
+            assertEquals(crc32(DATA), hash.get());
+        } finally {
+            singleThreadHasher.dispose();
+        }
+    }
+
+    public void testCrc32Range() throws Exception {
+        assertEquals(crc32(Arrays.copyOfRange(DATA, 1000, 50001)), hasher
+                .hash(file, "CRC32", 1000, 50001).get());
+    }
+
+    public void testEmptyRange() throws Exception {
+        assertEquals("00000000", hasher.hash(file, "CRC32", 10, 10).get());
+        assertEquals(DigestUtils.md5Hex(new byte[0]).toUpperCase(), hasher
+                .hash(file, "MD5", 10, 10).get());
+    }
+
+    public void testDigests() throws Exception {
+        assertEquals(DigestUtils.shaHex(DATA).toUpperCase(), hasher.hash(file,
+                "SHA-1", 0, DATA.length).get());
+        assertEquals(DigestUtils.sha256Hex(DATA).toUpperCase(), hasher.hash(
+                file, "SHA-256", 0, DATA.length).get());
+        assertEquals(DigestUtils.sha512Hex(
+                Arrays.copyOfRange(DATA, 5000, 9000)).toUpperCase(), hasher
+                .hash(file, "SHA-512", 5000, 9000).get());
+    }
+
+    public void testUnsupportedAlgorithm() throws Exception {
+        try {
+            hasher.hash(file, "SHA-384", 0, DATA.length).get();
+            fail("Must throw ExecutionException");
+        } catch (ExecutionException e) {
+            // ok
+        }
+    }
+}
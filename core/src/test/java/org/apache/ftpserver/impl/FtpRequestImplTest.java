@@ -72,4 +72,20 @@ public class FtpRequestImplTest extends TestCase {
         assertTrue(request.hasArgument());
         assertEquals("bar baz", request.getArgument());
     }
+
+    public void testExperimentalCommand() {
+        DefaultFtpRequest request = new DefaultFtpRequest("xmkd foo");
+
+        assertEquals("MKD", request.getCommand());
+        assertEquals("foo", request.getArgument());
+    }
+
+    public void testChecksumCommandKept() {
+        DefaultFtpRequest request = new DefaultFtpRequest("xcrc foo");
+
+        assertEquals("XCRC", request.getCommand());
+        assertEquals("foo", request.getArgument());
+        assertEquals("XSHA256", new DefaultFtpRequest("XSHA256 foo")
+                .getCommand());
+    }
 }
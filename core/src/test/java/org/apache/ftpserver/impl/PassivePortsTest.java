@@ -22,7 +22,13 @@ package org.apache.ftpserver.impl;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
@@ -180,4 +186,79 @@ public class PassivePortsTest extends TestCase {
         assertEquals(0, valid.size());
     }
 
-}
\ No newline at end of file
+    public void testPortsInUse() {
+        PassivePorts ports = new PassivePorts("123-125", false);
+
+        int port = ports.reserveNextPort();
+        ports.reserveNextPort();
+        assertEquals(2, ports.getPortsInUse());
+
+        ports.releasePort(port);
+        assertEquals(1, ports.getPortsInUse());
+
+        // releasing twice is ignored
+        ports.releasePort(port);
+        assertEquals(1, ports.getPortsInUse());
+    }
+
+    public void testReserveAllInLargeRange() {
+        PassivePorts ports = new PassivePorts("10000-10199", false);
+
+        Set<Integer> reserved = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            int port = ports.reserveNextPort();
+            assertTrue(port >= 10000 && port <= 10199);
+            assertTrue("Port reserved twice: " + port, reserved.add(port));
+        }
+        assertEquals(-1, ports.reserveNextPort());
+        assertEquals(200, ports.getPortsInUse());
+    }
+
+    /**
+     * Threads reserving and releasing ports from the same range must never
+     * get the same port at the same time.
+     */
+    public void testContendedReservations() throws Exception {
+        final PassivePorts ports = new PassivePorts("20000-20099", false);
+        final AtomicIntegerArray owners = new AtomicIntegerArray(100);
+        final AtomicInteger reservations = new AtomicInteger();
+        final AtomicReference<String> failure = new AtomicReference<>();
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int id = i + 1;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 20000; j++) {
+                        int port = ports.reserveNextPort();
+                        if (port == -1) {
+                            continue;
+                        }
+                        if (!owners.compareAndSet(port - 20000, 0, id)) {
+                            failure.set("Port reserved twice: " + port);
+                        }
+                        reservations.incrementAndGet();
+                        owners.set(port - 20000, 0);
+                        ports.releasePort(port);
+                    }
+                }
+            };
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long time = System.nanoTime() - start;
+
+        assertNull(failure.get(), failure.get());
+        assertEquals(0, ports.getPortsInUse());
+        System.out.println("Contended passive port reservations: "
+                + reservations.get() + " in "
+                + TimeUnit.NANOSECONDS.toMillis(time) + " ms");
+    }
+}
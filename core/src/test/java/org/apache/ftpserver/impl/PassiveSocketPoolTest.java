@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class PassiveSocketPoolTest extends TestCase {
+
+    private PassiveSocketPool pool = new PassiveSocketPool();
+
+    private InetAddress address;
+
+    @Override
+    protected void setUp() throws Exception {
+        address = InetAddress.getByName("localhost");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.dispose();
+    }
+
+    public void testReuseOnSamePort() throws Exception {
+        ServerSocket socket = pool.acquire(address, 0, false);
+        int port = socket.getLocalPort();
+        pool.release(socket, port);
+        assertEquals(1, pool.getIdleCount());
+
+        ServerSocket reused = pool.acquire(address, port, false);
+        assertSame(socket, reused);
+        assertTrue(reused.getChannel().isBlocking());
+        assertEquals(0, pool.getIdleCount());
+
+        reused.close();
+    }
+
+    public void testReuseAnyPort() throws Exception {
+        ServerSocket socket = pool.acquire(address, 0, false);
+        pool.release(socket, 0);
+
+        assertSame(socket, pool.acquire(address, 0, false));
+        socket.close();
+    }
+
+    public void testBlockingModesPooledSeparately() throws Exception {
+        ServerSocket socket = pool.acquire(address, 0, false);
+        socket.getChannel().configureBlocking(false);
+        pool.release(socket, 0);
+
+        ServerSocket blocking = pool.acquire(address, 0, false);
+        assertNotSame(socket, blocking);
+        assertSame(socket, pool.acquire(address, 0, true));
+
+        socket.close();
+        blocking.close();
+    }
+
+    public void testStaleConnectionsDrained() throws Exception {
+        ServerSocket socket = pool.acquire(address, 0, false);
+        int port = socket.getLocalPort();
+
+        Socket stale = new Socket(address, port);
+        pool.release(socket, port);
+
+        // the pending connection is closed by the pool, not accepted
+        stale.setSoTimeout(2000);
+        assertEquals(-1, stale.getInputStream().read());
+        stale.close();
+
+        ServerSocket reused = pool.acquire(address, port, false);
+        assertSame(socket, reused);
+        reused.getChannel().configureBlocking(false);
+        SocketChannel pending = reused.getChannel().accept();
+        assertNull(pending);
+
+        reused.close();
+    }
+
+    public void testClosedSocketNotPooled() throws Exception {
+        ServerSocket socket = pool.acquire(address, 0, false);
+        socket.close();
+        pool.release(socket, 0);
+
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    public void testAnyPortLimit() throws Exception {
+        ServerSocket[] sockets = new ServerSocket[20];
+        for (int i = 0; i < sockets.length; i++) {
+            sockets[i] = pool.acquire(address, 0, false);
+        }
+        for (ServerSocket socket : sockets) {
+            pool.release(socket, 0);
+        }
+
+        assertEquals(16, pool.getIdleCount());
+        for (int i = 16; i < sockets.length; i++) {
+            assertTrue(sockets[i].isClosed());
+        }
+    }
+
+    public void testDispose() throws Exception {
+        ServerSocket idle = pool.acquire(address, 0, false);
+        ServerSocket inUse = pool.acquire(address, 0, false);
+        pool.release(idle, 0);
+
+        pool.dispose();
+        assertTrue(idle.isClosed());
+        assertEquals(0, pool.getIdleCount());
+
+        // released after dispose
+        pool.release(inUse, 0);
+        assertTrue(inUse.isClosed());
+    }
+
+    public void testBindFailure() throws Exception {
+        ServerSocket taken = new ServerSocket();
+        taken.bind(new InetSocketAddress(address, 0));
+        try {
+            pool.acquire(address, taken.getLocalPort(), false);
+            fail("Must throw");
+        } catch (IOException e) {
+            // ok
+        } finally {
+            taken.close();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class ReadAheadReaderTest extends TestCase {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    private ReadAheadReader reader;
+
+    @Override
+    protected void setUp() throws Exception {
+        reader = new ReadAheadReader(2, CHUNK_SIZE, 16 * CHUNK_SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        reader.dispose();
+    }
+
+    private byte[] createTestData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    private byte[] readAll(InputStream in, int bufferSize) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            baos.write(buffer, 0, count);
+        }
+        return baos.toByteArray();
+    }
+
+    public void testDisabled() {
+        assertTrue(reader.isEnabled());
+        assertFalse(new ReadAheadReader(0, CHUNK_SIZE, 0).isEnabled());
+    }
+
+    public void testRead() throws Exception {
+        byte[] data = createTestData(20 * CHUNK_SIZE + 17);
+        ReadAheadInputStream in = reader.open(new ByteArrayInputStream(data));
+        try {
+            // reads smaller and larger than the chunks
+            assertTrue(Arrays.equals(data, readAll(in, 100)));
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+        assertEquals(0, reader.getChunkPool().getOutstandingBytes());
+
+        in = reader.open(new ByteArrayInputStream(data));
+        try {
+            assertTrue(Arrays.equals(data, readAll(in, 3 * CHUNK_SIZE)));
+        } finally {
+            in.close();
+        }
+        assertEquals(0, reader.getChunkPool().getOutstandingBytes());
+    }
+
+    public void testEmpty() throws Exception {
+        ReadAheadInputStream in = reader.open(new ByteArrayInputStream(
+                new byte[0]));
+        assertEquals(-1, in.read(new byte[10], 0, 10));
+        assertEquals(-1, in.read());
+        in.close();
+    }
+
+    public void testReadsAheadToDepth() throws Exception {
+        final AtomicInteger read = new AtomicInteger();
+        InputStream counting = new FilterInputStream(new ByteArrayInputStream(
+                createTestData(20 * CHUNK_SIZE))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int count = super.read(b, off, len);
+                if (count > 0) {
+                    read.addAndGet(count);
+                }
+                return count;
+            }
+        };
+
+        ReadAheadInputStream in = reader.open(counting);
+        try {
+            assertEquals(0, in.read());
+
+            // the current chunk and the two chunks ahead of it, not more
+            long timeout = System.currentTimeMillis() + 10000;
+            while (read.get() < 3 * CHUNK_SIZE
+                    && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            assertEquals(3 * CHUNK_SIZE, read.get());
+            assertEquals(CHUNK_SIZE - 1, in.available());
+        } finally {
+            in.close();
+        }
+        assertEquals(0, reader.getChunkPool().getOutstandingBytes());
+    }
+
+    public void testReadFailureAfterData() throws Exception {
+        final byte[] data = createTestData(2 * CHUNK_SIZE + 10);
+        InputStream failing = new InputStream() {
+            private int position = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (position == data.length) {
+                    throw new IOException("Stale file handle");
+                }
+                return data[position++] & 0xFF;
+            }
+        };
+
+        ReadAheadInputStream in = reader.open(failing);
+        try {
+            byte[] buffer = new byte[data.length];
+            int position = 0;
+            while (position < 2 * CHUNK_SIZE) {
+                position += in.read(buffer, position, buffer.length - position);
+            }
+            // the data read before the failure is returned first
+            assertTrue(Arrays.equals(Arrays.copyOf(data, 2 * CHUNK_SIZE),
+                    Arrays.copyOf(buffer, 2 * CHUNK_SIZE)));
+            in.read(buffer, 0, buffer.length);
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            assertEquals("Stale file handle", e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testCloseClosesUnderlyingStream() throws Exception {
+        final boolean[] closed = new boolean[1];
+        InputStream underlying = new ByteArrayInputStream(
+                createTestData(20 * CHUNK_SIZE)) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        ReadAheadInputStream in = reader.open(underlying);
+        in.read();
+        in.close();
+        assertTrue(closed[0]);
+        assertEquals(0, reader.getChunkPool().getOutstandingBytes());
+        try {
+            in.read();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+}
@@ -58,6 +58,20 @@ public abstract class ServerFtpStatisticsTestTemplate extends TestCase {
         assertEquals(0, stats.getCurrentConnectionNumber());
     }
 
+    public void testDataSslHandshakeCount() {
+        ServerFtpStatistics stats = createStatistics();
+
+        stats.setDataSslHandshake(new FtpIoSession(null, null), false);
+        stats.setDataSslHandshake(new FtpIoSession(null, null), true);
+        stats.setDataSslHandshake(new FtpIoSession(null, null), true);
+        assertEquals(3, stats.getTotalDataSslHandshakeNumber());
+        assertEquals(2, stats.getTotalResumedDataSslHandshakeNumber());
+
+        stats.resetStatisticsCounters();
+        assertEquals(0, stats.getTotalDataSslHandshakeNumber());
+        assertEquals(0, stats.getTotalResumedDataSslHandshakeNumber());
+    }
+
     @SuppressWarnings("deprecation")
     public void testStartDateImmutable() {
         ServerFtpStatistics stats = createStatistics();
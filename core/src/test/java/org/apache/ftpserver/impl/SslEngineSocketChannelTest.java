@@ -0,0 +1,423 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.KeyStore;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.ssl.SslConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class SslEngineSocketChannelTest extends TestCase {
+
+    private static final File KEYSTORE = new File(TestUtil.getBaseDir(),
+            "src/test/resources/ftpserver-rsa.jks");
+
+    private static final int DATA_SIZE = 1024 * 1024;
+
+    private DataConnectionReactor reactor;
+
+    private ExecutorService executor;
+
+    private AtomicInteger tasks = new AtomicInteger();
+
+    private AtomicInteger handshakes = new AtomicInteger();
+
+    private SSLContext serverContext;
+
+    private SSLContext clientContext;
+
+    private ServerSocketChannel serverChannel;
+
+    private SSLSocket clientSocket;
+
+    private byte[] testData = new byte[DATA_SIZE];
+
+    @Override
+    protected void setUp() throws Exception {
+        reactor = new DataConnectionReactor();
+        executor = Executors.newFixedThreadPool(2);
+
+        SslConfigurationFactory ssl = new SslConfigurationFactory();
+        ssl.setKeystoreFile(KEYSTORE);
+        ssl.setKeystorePassword("password");
+        serverContext = ssl.createSslConfiguration().getSSLContext();
+
+        KeyStore trustStore = KeyStore.getInstance("JKS");
+        InputStream in = new FileInputStream(KEYSTORE);
+        try {
+            trustStore.load(in, "password".toCharArray());
+        } finally {
+            in.close();
+        }
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory
+                .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+        clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagerFactory.getTrustManagers(), null);
+
+        new Random().nextBytes(testData);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (clientSocket != null) {
+            clientSocket.close();
+        }
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        executor.shutdownNow();
+        reactor.dispose();
+    }
+
+    /**
+     * Connect a client and run the server side handshake without waiting,
+     * like the asynchronous transfers do.
+     */
+    private SslEngineSocketChannel connect(final TransferBufferPool pool)
+            throws Exception {
+        SslEngineSocketChannel secureChannel = connectWithoutHandshake(pool);
+        while (!secureChannel.handshakeSome()) {
+            secureChannel.whenReady().get(10, TimeUnit.SECONDS);
+        }
+        return secureChannel;
+    }
+
+    /**
+     * Connect a client which starts the handshake, the server side
+     * handshaking with the first read or write.
+     */
+    private SslEngineSocketChannel connectWithoutHandshake(
+            final TransferBufferPool pool) throws Exception {
+        InetAddress localhost = InetAddress.getByName("localhost");
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().bind(new InetSocketAddress(localhost, 0));
+        clientSocket = (SSLSocket) clientContext.getSocketFactory()
+                .createSocket(localhost, serverChannel.socket().getLocalPort());
+        final SSLSocket client = clientSocket;
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    client.startHandshake();
+                } catch (Exception e) {
+                    // fails the server handshake
+                }
+            }
+        });
+
+        SocketChannel channel = serverChannel.accept();
+        channel.configureBlocking(false);
+        SSLEngine engine = serverContext.createSSLEngine();
+        engine.setUseClientMode(false);
+
+        Executor countingExecutor = new Executor() {
+            public void execute(Runnable command) {
+                tasks.incrementAndGet();
+                executor.execute(command);
+            }
+        };
+        return new SslEngineSocketChannel(channel, engine, reactor, 10000,
+                pool, countingExecutor, new Runnable() {
+                    public void run() {
+                        handshakes.incrementAndGet();
+                    }
+                });
+    }
+
+    private Future<byte[]> readFromClient() {
+        final SSLSocket client = clientSocket;
+        return executor.submit(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                InputStream in = client.getInputStream();
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    baos.write(buffer, 0, count);
+                }
+                return baos.toByteArray();
+            }
+        });
+    }
+
+    public void testHandshakeTasksOnExecutor() throws Exception {
+        SslEngineSocketChannel channel = connect(new TransferBufferPool(
+                64 * 1024, 1024 * 1024, false));
+
+        assertTrue(tasks.get() > 0);
+        assertEquals(1, handshakes.get());
+        assertNotNull(channel.getEngine().getSession().getCipherSuite());
+        channel.shutdown();
+    }
+
+    public void testHandshakeOnFirstWrite() throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(64 * 1024,
+                1024 * 1024, false);
+        SslEngineSocketChannel channel = connectWithoutHandshake(pool);
+        Future<byte[]> received = readFromClient();
+
+        OutputStream out = channel.getOutputStream();
+        out.write(testData);
+        out.close();
+
+        // the blocking streams run the delegated tasks themselves
+        assertEquals(0, tasks.get());
+        assertEquals(1, handshakes.get());
+        TestUtil.assertArraysEqual(testData, received.get());
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    public void testWriteWithoutWaiting() throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(64 * 1024,
+                1024 * 1024, false);
+        SslEngineSocketChannel channel = connect(pool);
+        Future<byte[]> received = readFromClient();
+
+        ByteBuffer src = ByteBuffer.wrap(testData);
+        while (src.hasRemaining()) {
+            if (channel.write(src) == 0) {
+                channel.whenReady().get(10, TimeUnit.SECONDS);
+            }
+        }
+        while (!channel.closeOutbound()) {
+            channel.whenReady().get(10, TimeUnit.SECONDS);
+        }
+        channel.abort();
+
+        TestUtil.assertArraysEqual(testData, received.get());
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    public void testShutdownWithoutTransfer() throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(64 * 1024,
+                1024 * 1024, false);
+        SslEngineSocketChannel channel = connectWithoutHandshake(pool);
+        Future<byte[]> received = readFromClient();
+
+        // the client gets an empty transfer rather than a failed handshake
+        channel.shutdown();
+
+        assertEquals(0, received.get().length);
+        assertEquals(1, handshakes.get());
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    public void testReadFromClient() throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(64 * 1024,
+                1024 * 1024, true);
+        SslEngineSocketChannel channel = connect(pool);
+
+        final SSLSocket client = clientSocket;
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    OutputStream out = client.getOutputStream();
+                    out.write(testData);
+                    out.flush();
+                    client.close();
+                } catch (Exception e) {
+                    // fails the comparison
+                }
+            }
+        });
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        InputStream in = channel.getInputStream();
+        byte[] buffer = new byte[10000];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            baos.write(buffer, 0, count);
+        }
+        in.close();
+
+        assertTrue(channel.isEndOfStream());
+        TestUtil.assertArraysEqual(testData, baos.toByteArray());
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    public void testWriteToClient() throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(64 * 1024,
+                1024 * 1024, false);
+        SslEngineSocketChannel channel = connect(pool);
+        Future<byte[]> received = readFromClient();
+
+        OutputStream out = channel.getOutputStream();
+        out.write(testData, 0, 1000);
+        out.write(testData, 1000, testData.length - 1000);
+        out.close();
+
+        TestUtil.assertArraysEqual(testData, received.get());
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    public void testBuffersTooSmallForRecords() throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(4096, 1024 * 1024,
+                false);
+        SslEngineSocketChannel channel = connect(pool);
+        Future<byte[]> received = readFromClient();
+
+        OutputStream out = channel.getOutputStream();
+        out.write(testData);
+        out.close();
+
+        TestUtil.assertArraysEqual(testData, received.get());
+        assertEquals(0, pool.getMisses());
+    }
+
+    public void testShutdownTwice() throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(64 * 1024,
+                1024 * 1024, false);
+        SslEngineSocketChannel channel = connect(pool);
+        Future<byte[]> received = readFromClient();
+
+        channel.shutdown();
+        channel.shutdown();
+
+        assertEquals(0, received.get().length);
+        assertEquals(0, pool.getOutstandingBytes());
+        assertFalse(channel.isOpen());
+    }
+
+    public void testShutdownWhileReading() throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(64 * 1024,
+                1024 * 1024, false);
+        final SslEngineSocketChannel channel = connect(pool);
+
+        // the client sends nothing
+        Future<Integer> read = executor.submit(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return channel.getInputStream().read(new byte[100]);
+            }
+        });
+        Thread.sleep(200);
+        channel.shutdown();
+
+        assertTransferFailed(read);
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    public void testShutdownWhileWriting() throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(64 * 1024,
+                1024 * 1024, false);
+        final SslEngineSocketChannel channel = connect(pool);
+
+        // the client reads nothing, the write waits for the channel holding
+        // the buffers
+        Future<Integer> write = executor.submit(new Callable<Integer>() {
+            public Integer call() throws Exception {
+                OutputStream out = channel.getOutputStream();
+                for (int i = 0; i < 100; i++) {
+                    out.write(testData);
+                }
+                return 0;
+            }
+        });
+        Thread.sleep(500);
+        channel.shutdown();
+
+        assertTransferFailed(write);
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    public void testCloseDataConnectionShutsDownSecureChannel()
+            throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(64 * 1024,
+                1024 * 1024, false);
+        final SslEngineSocketChannel channel = connect(pool);
+        Future<byte[]> received = readFromClient();
+
+        IODataConnectionFactory factory = new IODataConnectionFactory(null,
+                null) {
+            @Override
+            IODataConnection createDataConnection() {
+                return new IODataConnection(null, null, this, null, reactor,
+                        channel);
+            }
+        };
+        factory.setBlockMode(true);
+        factory.openConnection();
+        factory.blockTransferCompleted();
+        factory.closeDataConnection();
+
+        assertEquals(0, pool.getOutstandingBytes());
+        assertFalse(channel.isOpen());
+        try {
+            received.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            // closed without close notification
+        }
+    }
+
+    public void testAbortSendsNoCloseNotification() throws Exception {
+        TransferBufferPool pool = new TransferBufferPool(64 * 1024,
+                1024 * 1024, false);
+        SslEngineSocketChannel channel = connect(pool);
+
+        // writing the close notification could wait for the client
+        channel.abort();
+        channel.abort();
+
+        assertFalse(channel.getEngine().isOutboundDone());
+        assertFalse(channel.isOpen());
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    private void assertTransferFailed(final Future<Integer> transfer)
+            throws Exception {
+        try {
+            transfer.get(10, TimeUnit.SECONDS);
+            fail("Must throw IOException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TokenBucketTest extends TestCase {
+
+    public void testInitiallyFull() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000, 100, 10);
+
+        assertEquals(100, bucket.acquire(1000));
+    }
+
+    public void testAcquireLessThanAvailable() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000, 100, 10);
+
+        assertEquals(40, bucket.acquire(40));
+        assertEquals(60, bucket.acquire(1000));
+    }
+
+    public void testReleaseIsCappedAtBurstSize() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000, 100, 10);
+
+        assertEquals(100, bucket.acquire(100));
+        bucket.release(30);
+        assertEquals(30, bucket.acquire(100));
+
+        bucket.release(1000);
+        assertEquals(100, bucket.acquire(1000));
+    }
+
+    public void testWaitTimeFollowsRefillInterval() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000000, 100, 100);
+
+        assertEquals(-100, bucket.tryAcquire(100));
+
+        long waitTime = bucket.tryAcquire(100);
+        assertTrue(waitTime > 0);
+        assertTrue(waitTime <= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    public void testWaitTimeForSlowRate() throws Exception {
+        // one token every 100 ms
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+
+        assertEquals(-1, bucket.tryAcquire(1));
+
+        long waitTime = bucket.tryAcquire(1);
+        assertTrue(waitTime > TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(waitTime <= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    public void testInvalidArguments() {
+        try {
+            new TokenBucket(0, 100, 10);
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            new TokenBucket(100, 0, 10);
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            new TokenBucket(100, 100, -1);
+            fail("Must throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    /**
+     * Drain the bucket like a transfer would and measure the achieved rate
+     * and the longest gap between two grants.
+     */
+    public void testAchievedRateAndJitter() throws Exception {
+        long rate = 400 * 1024;
+        TokenBucket bucket = new TokenBucket(rate, rate / 10, 10);
+
+        // drain the initial burst
+        bucket.acquire(rate);
+
+        long transferred = 0;
+        long maxGap = 0;
+        long start = System.nanoTime();
+        long last = start;
+        long end = start + TimeUnit.MILLISECONDS.toNanos(1000);
+        while (last < end) {
+            transferred += bucket.acquire(4096);
+            long now = System.nanoTime();
+            maxGap = Math.max(maxGap, now - last);
+            last = now;
+        }
+
+        double seconds = (last - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        double achievedRate = transferred / seconds;
+
+        assertTrue("Achieved rate " + achievedRate, achievedRate > rate * 0.8);
+        assertTrue("Achieved rate " + achievedRate, achievedRate < rate * 1.2);
+
+        // the old implementation slept in steps of 50 ms
+        assertTrue("Longest gap " + maxGap + " ns",
+                maxGap < TimeUnit.MILLISECONDS.toNanos(50));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TransferBufferPoolTest extends TestCase {
+
+    public void testReuse() {
+        TransferBufferPool pool = new TransferBufferPool(1024, 4096, false);
+
+        ByteBuffer buffer = pool.acquireBuffer();
+        assertEquals(1024, buffer.capacity());
+        assertEquals(1, pool.getMisses());
+        assertEquals(1024, pool.getOutstandingBytes());
+
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        assertEquals(0, pool.getOutstandingBytes());
+        assertEquals(1024, pool.getPooledBytes());
+
+        ByteBuffer reused = pool.acquireHeapBuffer();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(1024, reused.limit());
+        assertEquals(1, pool.getHits());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    public void testPoolSizeCap() {
+        TransferBufferPool pool = new TransferBufferPool(1024, 2048, false);
+
+        ByteBuffer[] buffers = new ByteBuffer[3];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquireBuffer();
+        }
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+
+        assertEquals(2048, pool.getPooledBytes());
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    public void testPoolingDisabled() {
+        TransferBufferPool pool = new TransferBufferPool(1024, 0, false);
+
+        pool.release(pool.acquireBuffer());
+        pool.acquireBuffer();
+
+        assertEquals(0, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    public void testDirectBuffers() {
+        TransferBufferPool pool = new TransferBufferPool(1024, 4096, true);
+
+        ByteBuffer direct = pool.acquireBuffer();
+        assertTrue(direct.isDirect());
+        ByteBuffer heap = pool.acquireHeapBuffer();
+        assertFalse(heap.isDirect());
+        assertTrue(heap.hasArray());
+
+        pool.release(direct);
+        pool.release(heap);
+
+        // direct and heap buffers are pooled separately
+        assertSame(heap, pool.acquireHeapBuffer());
+        assertSame(direct, pool.acquireBuffer());
+    }
+
+    public void testForeignBufferIgnored() {
+        TransferBufferPool pool = new TransferBufferPool(1024, 4096, false);
+
+        pool.release(ByteBuffer.allocate(512));
+
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(0, pool.getHits());
+    }
+}
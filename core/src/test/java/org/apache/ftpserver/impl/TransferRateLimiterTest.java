@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class TransferRateLimiterTest extends TestCase {
+
+    public void testParentLimitsChild() throws Exception {
+        TokenBucket childBucket = new TokenBucket(1000, 500, 10);
+        TransferRateLimiter parent = new TransferRateLimiter(null,
+                new TokenBucket(1000, 100, 10));
+        TransferRateLimiter child = new TransferRateLimiter(parent, childBucket);
+
+        assertEquals(100, child.acquire(1000));
+
+        // the tokens not granted by the parent went back to the child
+        assertEquals(400, childBucket.acquire(1000));
+    }
+
+    public void testTryAcquireDoesNotWait() throws Exception {
+        TokenBucket childBucket = new TokenBucket(1000, 500, 10);
+        TransferRateLimiter parent = new TransferRateLimiter(null,
+                new TokenBucket(1000, 100, 10));
+        TransferRateLimiter child = new TransferRateLimiter(parent, childBucket);
+
+        assertEquals(-100, child.tryAcquire(1000));
+
+        // the parent is empty, the time to wait is returned instead
+        long wait = child.tryAcquire(1000);
+        assertTrue(wait > 0);
+        assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(100));
+
+        // the tokens not granted by the parent went back to the child
+        assertEquals(400, childBucket.acquire(1000));
+    }
+
+    public void testUnlimitedLevelPassesThrough() throws Exception {
+        TransferRateLimiter parent = new TransferRateLimiter(null,
+                new TokenBucket(1000, 100, 10));
+        TransferRateLimiter child = new TransferRateLimiter(parent, null);
+
+        assertEquals(60, child.acquire(60));
+        assertEquals(40, child.acquire(1000));
+    }
+
+    public void testReleaseReachesAllLevels() throws Exception {
+        TokenBucket parentBucket = new TokenBucket(1000, 100, 10);
+        TokenBucket childBucket = new TokenBucket(1000, 100, 10);
+        TransferRateLimiter parent = new TransferRateLimiter(null, parentBucket);
+        TransferRateLimiter child = new TransferRateLimiter(parent, childBucket);
+
+        assertEquals(100, child.acquire(100));
+        child.release(30);
+
+        assertEquals(30, parentBucket.acquire(100));
+        assertEquals(30, childBucket.acquire(100));
+    }
+
+    public void testOpenAndClose() {
+        TransferRateLimiter parent = new TransferRateLimiter(null, null);
+        TransferRateLimiter child1 = new TransferRateLimiter(parent, null);
+        TransferRateLimiter child2 = new TransferRateLimiter(parent, null);
+
+        child1.open();
+        child2.open();
+        assertEquals(1, child1.getActiveTransfers());
+        assertEquals(2, parent.getActiveTransfers());
+
+        child1.close();
+        assertEquals(0, child1.getActiveTransfers());
+        assertEquals(1, parent.getActiveTransfers());
+    }
+
+    public void testFairShare() throws Exception {
+        // refills slowly enough to not matter during the test
+        TransferRateLimiter parent = new TransferRateLimiter(null,
+                new TokenBucket(1, 10000, 0));
+        TransferRateLimiter child1 = new TransferRateLimiter(parent, null);
+        TransferRateLimiter child2 = new TransferRateLimiter(parent, null);
+
+        child1.open();
+        child2.open();
+        assertEquals(5000, child1.acquire(100000));
+        assertEquals(5000, child2.acquire(100000));
+    }
+
+    public void testSingleTransferGetsWholeBurst() throws Exception {
+        TransferRateLimiter parent = new TransferRateLimiter(null,
+                new TokenBucket(1, 10000, 0));
+        TransferRateLimiter child = new TransferRateLimiter(parent, null);
+
+        child.open();
+        assertEquals(10000, child.acquire(100000));
+    }
+
+    /**
+     * Two transfers sharing a parent limit must together stay within that
+     * limit and get similar portions of it.
+     */
+    public void testConcurrentTransfersShareParentRate() throws Exception {
+        final long rate = 200 * 1024;
+        final TransferRateLimiter parent = new TransferRateLimiter(null,
+                new TokenBucket(rate, rate / 10, 10));
+
+        // drain the initial burst
+        parent.acquire(rate);
+
+        final AtomicLong[] transferred = new AtomicLong[] { new AtomicLong(),
+                new AtomicLong() };
+        final long end = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(1000);
+
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final TransferRateLimiter child = new TransferRateLimiter(parent,
+                    null);
+            final AtomicLong counter = transferred[i];
+            child.open();
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (System.nanoTime() < end) {
+                            counter.addAndGet(child.acquire(64 * 1024));
+                        }
+                    } catch (InterruptedException e) {
+                        // stop
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start)
+                / (double) TimeUnit.SECONDS.toNanos(1);
+
+        long total = transferred[0].get() + transferred[1].get();
+        double achievedRate = total / seconds;
+        assertTrue("Achieved rate " + achievedRate, achievedRate < rate * 1.2);
+        assertTrue("Achieved rate " + achievedRate, achievedRate > rate * 0.7);
+
+        long min = Math.min(transferred[0].get(), transferred[1].get());
+        assertTrue("Unfair split " + transferred[0] + "/" + transferred[1],
+                min > total / 4);
+    }
+}
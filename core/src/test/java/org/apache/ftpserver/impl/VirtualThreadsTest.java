@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.util.concurrent.ThreadFactory;
+
+import junit.framework.TestCase;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class VirtualThreadsTest extends TestCase {
+
+    public void testSupportedFromJava21() {
+        assertEquals(Runtime.version().feature() >= 21, VirtualThreads
+                .isSupported());
+    }
+
+    public void testThreadFactory() throws Exception {
+        ThreadFactory factory = VirtualThreads.createThreadFactory("test-");
+        if (!VirtualThreads.isSupported()) {
+            assertNull(factory);
+            return;
+        }
+
+        final String[] name = new String[1];
+        Thread thread = factory.newThread(new Runnable() {
+            public void run() {
+                name[0] = Thread.currentThread().getName();
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertEquals("test-0", name[0]);
+        assertTrue((Boolean) Thread.class.getMethod("isVirtual").invoke(thread));
+    }
+}
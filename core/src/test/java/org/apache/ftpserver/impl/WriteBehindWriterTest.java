@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.test.TestUtil;
+import org.apache.ftpserver.util.IoUtils;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class WriteBehindWriterTest extends TestCase {
+
+    private static final File ROOT_DIR = new File("test-tmp/writebehind");
+
+    private static final File TEST_FILE = new File(ROOT_DIR, "test.bin");
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private TransferBufferPool bufferPool = new TransferBufferPool(BUFFER_SIZE,
+            16 * BUFFER_SIZE, false);
+
+    private WriteBehindWriter writer;
+
+    @Override
+    protected void setUp() throws Exception {
+        if (ROOT_DIR.exists()) {
+            IoUtils.delete(ROOT_DIR);
+        }
+        ROOT_DIR.mkdirs();
+        writer = new WriteBehindWriter(bufferPool, 4 * BUFFER_SIZE,
+                6 * BUFFER_SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        writer.dispose();
+        IoUtils.delete(ROOT_DIR);
+    }
+
+    private byte[] createTestData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    private void write(OutputStream out, byte[] data) throws IOException {
+        // uneven writes, crossing the buffer boundaries
+        int position = 0;
+        int count = 1;
+        while (position < data.length) {
+            int length = Math.min(count, data.length - position);
+            out.write(data, position, length);
+            position += length;
+            count = count * 3 + 1;
+        }
+    }
+
+    private void assertBuffersReleased() {
+        assertEquals(writer.getMaxPoolBuffers(), writer.getAvailableBuffers());
+        assertEquals(0, bufferPool.getOutstandingBytes());
+    }
+
+    public void testDisabled() {
+        assertTrue(writer.isEnabled());
+        assertFalse(new WriteBehindWriter(bufferPool, 0, 6 * BUFFER_SIZE)
+                .isEnabled());
+    }
+
+    public void testWriteToFile() throws Exception {
+        byte[] data = createTestData(20 * BUFFER_SIZE + 17);
+        FileOutputStream fos = new FileOutputStream(TEST_FILE);
+        try {
+            WriteBehindOutputStream out = writer.open(fos);
+            write(out, data);
+            out.finish();
+            assertEquals(data.length, fos.getChannel().position());
+        } finally {
+            fos.close();
+        }
+
+        TestUtil.assertFileEqual(data, TEST_FILE);
+        assertBuffersReleased();
+    }
+
+    public void testWriteToStream() throws Exception {
+        byte[] data = createTestData(20 * BUFFER_SIZE + 17);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        WriteBehindOutputStream out = writer.open(baos);
+        write(out, data);
+        out.write(42);
+        out.finish();
+
+        byte[] expected = Arrays.copyOf(data, data.length + 1);
+        expected[data.length] = 42;
+        assertTrue(Arrays.equals(expected, baos.toByteArray()));
+        assertBuffersReleased();
+    }
+
+    public void testFinishWithoutData() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        WriteBehindOutputStream out = writer.open(baos);
+        out.finish();
+        out.finish();
+
+        assertEquals(0, baos.size());
+        assertBuffersReleased();
+    }
+
+    public void testUploadAndPoolLimits() throws Exception {
+        final CountDownLatch diskReady = new CountDownLatch(1);
+        final ByteArrayOutputStream baos1 = new ByteArrayOutputStream();
+        final ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
+        OutputStream slowDisk1 = new SlowOutputStream(baos1, diskReady);
+        OutputStream slowDisk2 = new SlowOutputStream(baos2, diskReady);
+
+        final byte[] data = createTestData(10 * BUFFER_SIZE);
+        final WriteBehindOutputStream out1 = writer.open(slowDisk1);
+        final WriteBehindOutputStream out2 = writer.open(slowDisk2);
+        final IOException[] failures = new IOException[2];
+        Thread upload1 = startUpload(out1, data, failures, 0);
+
+        // the first upload stops once it has 4 buffers pending
+        waitForAvailableBuffers(2);
+        assertTrue(upload1.isAlive());
+
+        // the second upload gets the last 2 buffers of the pool
+        Thread upload2 = startUpload(out2, data, failures, 1);
+        waitForAvailableBuffers(0);
+        assertTrue(upload2.isAlive());
+
+        diskReady.countDown();
+        upload1.join(10000);
+        upload2.join(10000);
+        assertNull(failures[0]);
+        assertNull(failures[1]);
+
+        assertTrue(Arrays.equals(data, baos1.toByteArray()));
+        assertTrue(Arrays.equals(data, baos2.toByteArray()));
+        assertBuffersReleased();
+    }
+
+    public void testTimeoutWaitingForBuffers() throws Exception {
+        CountDownLatch diskReady = new CountDownLatch(1);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        WriteBehindOutputStream out = writer.open(new SlowOutputStream(baos,
+                diskReady), 200);
+
+        long start = System.currentTimeMillis();
+        try {
+            write(out, createTestData(10 * BUFFER_SIZE));
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            // the 4 buffers of the upload are pending
+            assertTrue(System.currentTimeMillis() - start >= 200);
+        }
+
+        // the data received until then is still written
+        diskReady.countDown();
+        out.finish();
+        assertEquals(4 * BUFFER_SIZE, baos.size());
+        assertBuffersReleased();
+    }
+
+    public void testWriteFailure() throws Exception {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Disk full");
+            }
+        };
+
+        WriteBehindOutputStream out = writer.open(failing);
+        try {
+            write(out, createTestData(20 * BUFFER_SIZE));
+            out.finish();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+
+        // the failure is reported until the end
+        try {
+            out.finish();
+            fail("Must throw IOException");
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+        assertBuffersReleased();
+    }
+
+    private Thread startUpload(final WriteBehindOutputStream out,
+            final byte[] data, final IOException[] failures, final int index) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    write(out, data);
+                    out.finish();
+                } catch (IOException e) {
+                    failures[index] = e;
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void waitForAvailableBuffers(int expected) throws Exception {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (writer.getAvailableBuffers() != expected
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        // leave time for a wrongly unlimited upload to take more buffers
+        Thread.sleep(100);
+        assertEquals(expected, writer.getAvailableBuffers());
+    }
+
+    private static class SlowOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        private final CountDownLatch ready;
+
+        public SlowOutputStream(OutputStream out, CountDownLatch ready) {
+            this.out = out;
+            this.ready = ready;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                if (!ready.await(10, TimeUnit.SECONDS)) {
+                    throw new IOException("Timeout");
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            out.write(b, off, len);
+        }
+    }
+}
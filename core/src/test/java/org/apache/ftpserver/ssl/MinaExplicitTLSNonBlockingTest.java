@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ssl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.DataConnectionConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+* Runs the tests of {@link MinaExplicitTLSTest} over non-blocking data
+* connections, secured with an SSLEngine. Uses an RSA server key, as the DSA
+* key of the other tests is refused by recent JVMs. With a single worker
+* thread, the handshake of a secure data connection does not hold the worker.
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class MinaExplicitTLSNonBlockingTest extends MinaExplicitTLSTest {
+
+    private static final File FTPSERVER_RSA_KEYSTORE = new File(TestUtil
+            .getBaseDir(), "src/test/resources/ftpserver-rsa.jks");
+
+    private static final Pattern PASV_REPLY = Pattern
+            .compile("(\\d+),(\\d+),(\\d+),(\\d+),(\\d+),(\\d+)");
+
+    @Override
+    protected ConnectionConfigFactory createConnectionConfigFactory() {
+        ConnectionConfigFactory factory = super.createConnectionConfigFactory();
+        factory.setMaxThreads(1);
+        return factory;
+    }
+
+    @Override
+    protected DataConnectionConfigurationFactory createDataConnectionConfigurationFactory() {
+        DataConnectionConfigurationFactory factory = super
+                .createDataConnectionConfigurationFactory();
+        factory.setNonBlocking(true);
+        return factory;
+    }
+
+    @Override
+    protected SslConfigurationFactory createSslConfiguration() {
+        SslConfigurationFactory sslConfigFactory = super
+                .createSslConfiguration();
+        sslConfigFactory.setKeystoreFile(FTPSERVER_RSA_KEYSTORE);
+        return sslConfigFactory;
+    }
+
+    @Override
+    protected FTPSClient createFTPClient() throws Exception {
+        FTPSClient ftpsClient = super.createFTPClient();
+
+        KeyStore store = KeyStore.getInstance("jks");
+        FileInputStream fin = new FileInputStream(FTPSERVER_RSA_KEYSTORE);
+        try {
+            store.load(fin, KEYSTORE_PASSWORD.toCharArray());
+        } finally {
+            fin.close();
+        }
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory
+                .getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(store);
+        clientTrustManager = trustManagerFactory.getTrustManagers()[0];
+        ftpsClient.setTrustManager(clientTrustManager);
+        return ftpsClient;
+    }
+
+    public void testLoginDuringSecureDataHandshake() throws Exception {
+        ((FTPSClient) client).execPROT("P");
+        assertEquals(227, client.pasv());
+        Matcher matcher = PASV_REPLY.matcher(client.getReplyString());
+        assertTrue(matcher.find());
+
+        // a plain socket, the client never starting the handshake
+        Socket dataSocket = new Socket(matcher.group(1) + "."
+                + matcher.group(2) + "." + matcher.group(3) + "."
+                + matcher.group(4), Integer.parseInt(matcher.group(5)) * 256
+                + Integer.parseInt(matcher.group(6)));
+        try {
+            assertEquals(150, client.sendCommand("LIST"));
+            Thread.sleep(300);
+
+            long start = System.currentTimeMillis();
+            FTPSClient otherClient = createFTPClient();
+            otherClient.connect("localhost", getListenerPort());
+            assertTrue(otherClient.login(ADMIN_USERNAME, ADMIN_PASSWORD));
+            long time = System.currentTimeMillis() - start;
+            assertTrue("Connecting and login took " + time + " ms", time < 1000);
+            otherClient.disconnect();
+        } finally {
+            dataSocket.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.ssl.impl;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import junit.framework.TestCase;
+
+import org.apache.ftpserver.FtpServerConfigurationException;
+import org.apache.ftpserver.ssl.SslConfigurationFactory;
+import org.apache.ftpserver.test.TestUtil;
+
+/**
+*
+* @author <a href="http://mina.apache.org">Apache MINA Project</a>
+*
+*/
+public class DefaultSslConfigurationTest extends TestCase {
+
+    private static final String SESSION_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
+    private static final File FTPSERVER_KEYSTORE = new File(TestUtil
+            .getBaseDir(), "src/test/resources/ftpserver.jks");
+
+    private SslConfigurationFactory createFactory() {
+        SslConfigurationFactory factory = new SslConfigurationFactory();
+        factory.setKeystoreFile(FTPSERVER_KEYSTORE);
+        factory.setKeystorePassword("password");
+        return factory;
+    }
+
+    public void testSessionCache() throws Exception {
+        SslConfigurationFactory factory = createFactory();
+        factory.setSessionCacheSize(100);
+        factory.setSessionTimeout(600);
+
+        SSLSessionContext sessionContext = factory.createSslConfiguration()
+                .getSSLContext().getServerSessionContext();
+        assertEquals(100, sessionContext.getSessionCacheSize());
+        assertEquals(600, sessionContext.getSessionTimeout());
+    }
+
+    public void testSessionCacheDefaults() throws Exception {
+        SSLSessionContext defaultContext = SSLContext
+                .getInstance("TLS").getServerSessionContext();
+
+        SSLSessionContext sessionContext = createFactory()
+                .createSslConfiguration().getSSLContext()
+                .getServerSessionContext();
+        assertEquals(defaultContext.getSessionCacheSize(), sessionContext
+                .getSessionCacheSize());
+        assertEquals(defaultContext.getSessionTimeout(), sessionContext
+                .getSessionTimeout());
+    }
+
+    public void testSessionTicketsDisabledRequiresSystemProperty()
+            throws Exception {
+        String previous = System.getProperty(SESSION_TICKETS_PROPERTY);
+        System.clearProperty(SESSION_TICKETS_PROPERTY);
+        try {
+            SslConfigurationFactory factory = createFactory();
+            factory.setSessionTicketsEnabled(false);
+            try {
+                factory.createSslConfiguration();
+                fail("Must throw FtpServerConfigurationException");
+            } catch (FtpServerConfigurationException e) {
+                // ok
+            }
+            assertNull(System.getProperty(SESSION_TICKETS_PROPERTY));
+        } finally {
+            restoreProperty(previous);
+        }
+    }
+
+    public void testSessionTicketsDisabledLeavesSystemProperty()
+            throws Exception {
+        String previous = System.getProperty(SESSION_TICKETS_PROPERTY);
+        // set by the operator when starting the JVM
+        System.setProperty(SESSION_TICKETS_PROPERTY, "false");
+        try {
+            SslConfigurationFactory factory = createFactory();
+            factory.setSessionTicketsEnabled(false);
+            SSLContext context = factory.createSslConfiguration()
+                    .getSSLContext();
+            assertEquals("false", System.getProperty(SESSION_TICKETS_PROPERTY));
+
+            // without a ticket the server keeps the session in its cache to
+            // resume it
+            handshake(context);
+            assertTrue(context.getServerSessionContext().getIds()
+                    .hasMoreElements());
+        } finally {
+            restoreProperty(previous);
+        }
+    }
+
+    private void restoreProperty(String previous) {
+        if (previous == null) {
+            System.clearProperty(SESSION_TICKETS_PROPERTY);
+        } else {
+            System.setProperty(SESSION_TICKETS_PROPERTY, previous);
+        }
+    }
+
+    /**
+     * Run a TLS 1.2 handshake with the server context, tickets being only
+     * optional before TLS 1.3.
+     */
+    private void handshake(SSLContext serverContext) throws Exception {
+        SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, new TrustManager[] { new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain,
+                    String authType) {
+            }
+
+            public void checkServerTrusted(X509Certificate[] chain,
+                    String authType) {
+            }
+
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        } }, null);
+
+        SSLEngine server = serverContext.createSSLEngine();
+        server.setUseClientMode(false);
+        server.setEnabledProtocols(new String[] { "TLSv1.2" });
+        SSLEngine client = clientContext.createSSLEngine("localhost", 21);
+        client.setUseClientMode(true);
+        client.setEnabledProtocols(new String[] { "TLSv1.2" });
+
+        ByteBuffer toServer = ByteBuffer.allocate(65536);
+        ByteBuffer toClient = ByteBuffer.allocate(65536);
+        ByteBuffer appData = ByteBuffer.allocate(65536);
+        client.beginHandshake();
+        server.beginHandshake();
+        for (int i = 0; i < 100 && !(isHandshakeDone(client) && isHandshakeDone(server)); i++) {
+            step(client, toServer, toClient, appData);
+            step(server, toClient, toServer, appData);
+        }
+        assertTrue(isHandshakeDone(client) && isHandshakeDone(server));
+    }
+
+    private boolean isHandshakeDone(SSLEngine engine) {
+        return engine.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING;
+    }
+
+    private void step(SSLEngine engine, ByteBuffer out, ByteBuffer in,
+            ByteBuffer appData) throws Exception {
+        HandshakeStatus status = engine.getHandshakeStatus();
+        if (status == HandshakeStatus.NEED_TASK) {
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+        } else if (status == HandshakeStatus.NEED_WRAP) {
+            engine.wrap(ByteBuffer.allocate(0), out);
+        } else if (status == HandshakeStatus.NEED_UNWRAP) {
+            in.flip();
+            engine.unwrap(in, appData);
+            in.compact();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.ftpserver.usermanager.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ftpserver.command.impl.listing.MLSTFileFormater;
+import org.apache.ftpserver.commands.impl.listing.LISTFileFormaterTest;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.FtpFile;
+import org.apache.ftpserver.ftplet.User;
+
+/**
+ * Measures the MLSD formating of a large listing with the permission fact,
+ * for a user with dozens of path scoped write permissions, each entry being
+ * checked for write access. The files are held in memory so that only the
+ * formating and the authorization are measured. Not run with the tests, run
+ * the main method with the number of files to format, 100000 by default.
+ *
+ * @author <a href="http://mina.apache.org">Apache MINA Project</a>
+ */
+public class AuthorizationBenchmark {
+
+    private static final int ITERATIONS = 20;
+
+    private static final int PERMISSIONS = 40;
+
+    /**
+     * A file checking its write access as the file systems do.
+     */
+    private static class BenchmarkFile extends LISTFileFormaterTest.MockFileObject {
+
+        private final String path;
+
+        private final User user;
+
+        BenchmarkFile(String path, User user) {
+            this.path = path;
+            this.user = user;
+        }
+
+        @Override
+        public String getAbsolutePath() {
+            return path;
+        }
+
+        @Override
+        public boolean isWritable() {
+            return user.authorize(new WriteRequest(getAbsolutePath())) != null;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        // write permissions scoped to the nested directories of /pub
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(new ConcurrentLoginPermission(10, 10));
+        authorities.add(new TransferRatePermission(0, 0));
+        StringBuilder root = new StringBuilder("/pub");
+        for (int i = 0; i < PERMISSIONS; i++) {
+            authorities.add(new WritePermission(root.toString()));
+            root.append("/d").append(i);
+        }
+
+        BaseUser user = new BaseUser();
+        user.setName("user");
+        user.setAuthorities(authorities);
+
+        // half of the files writable
+        FtpFile[] files = new FtpFile[count];
+        String writableDir = root.toString();
+        for (int i = 0; i < count; i++) {
+            String dir = i % 2 == 0 ? writableDir : "/pub/d0/readonly";
+            files[i] = new BenchmarkFile(dir + "/file" + i, user);
+        }
+
+        MLSTFileFormater formater = new MLSTFileFormater(new String[] {
+                "Size", "Modify", "Type", "Perm" });
+
+        // run twice, the first round warming up the JVM
+        for (int round = 0; round < 2; round++) {
+            StringBuilder sb = new StringBuilder(16384);
+            long allocated = getAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (FtpFile file : files) {
+                    if (sb.length() > 8192) {
+                        sb.setLength(0);
+                    }
+                    formater.format(file, sb);
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            allocated = getAllocatedBytes() - allocated;
+
+            long entries = (long) ITERATIONS * count;
+            System.out.printf("MLSD perm %6d ns/entry %6d bytes/entry%n",
+                    elapsed / entries, allocated / entries);
+        }
+    }
+
+    /**
+     * Get the bytes allocated by the current thread, 0 if not supported by
+     * the JVM.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -20,6 +20,7 @@
 package org.apache.ftpserver.usermanager.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import junit.framework.TestCase;
@@ -115,4 +116,106 @@ public class BaseUserTest extends TestCase {
 
         assertNull(user.authorize(REQUEST));
     }
+
+    private void setWritePermissions(String... roots) {
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(new ConcurrentLoginPermission(10, 10));
+        for (String root : roots) {
+            authorities.add(new WritePermission(root));
+        }
+        authorities.add(new TransferRatePermission(0, 0));
+        user.setAuthorities(authorities);
+    }
+
+    private boolean canWrite(String file) {
+        return user.authorize(new WriteRequest(file)) != null;
+    }
+
+    /**
+     * Authorize through the authorities, as done for the authorities which
+     * can not be compiled.
+     */
+    private boolean canWriteThroughAuthorities(String file) {
+        WriteRequest request = new WriteRequest(file);
+        boolean someoneCouldAuthorize = false;
+        for (Authority authority : user.getAuthorities()) {
+            if (authority.canAuthorize(request)) {
+                someoneCouldAuthorize = true;
+                if (authority.authorize(request) == null) {
+                    return false;
+                }
+            }
+        }
+        return someoneCouldAuthorize;
+    }
+
+    public void testNestedWritePermissions() {
+        setWritePermissions("/", "/pub/in", "/pub");
+
+        assertTrue(canWrite("/pub/in"));
+        assertTrue(canWrite("/pub/in/file"));
+        assertFalse(canWrite("/pub/file"));
+        assertFalse(canWrite("/"));
+    }
+
+    public void testDisjointWritePermissions() {
+        setWritePermissions("/foo", "/bar");
+
+        assertFalse(canWrite("/foo/file"));
+        assertFalse(canWrite("/bar/file"));
+    }
+
+    public void testNoWritePermission() {
+        setWritePermissions();
+
+        assertFalse(canWrite("/"));
+        assertFalse(canWrite("/file"));
+    }
+
+    public void testWritePermissionsAsAuthorities() {
+        List<String[]> permissions = Arrays.asList(new String[0],
+                new String[] { "/" }, new String[] { "/pub" }, new String[] {
+                        "/pub", "/pub/in" }, new String[] { "/pub/in", "/" },
+                new String[] { "/pub/in", "/pub/out" }, new String[] {
+                        "/pub", "/pu", "/p" });
+        List<String> files = Arrays.asList("/", "/p", "/pub", "/public",
+                "/pub/in", "/pub/in/file", "/pub/out/file", "/other");
+
+        for (String[] roots : permissions) {
+            setWritePermissions(roots);
+            for (String file : files) {
+                assertEquals(Arrays.toString(roots) + " " + file,
+                        canWriteThroughAuthorities(file), canWrite(file));
+            }
+        }
+    }
+
+    public void testWriteWithOtherAuthorities() {
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(new WritePermission("/pub"));
+        authorities.add(NEVER_ALLOW_AUTHORITY);
+        user.setAuthorities(authorities);
+
+        // authorized through the authorities
+        assertFalse(canWrite("/pub/file"));
+    }
+
+    public void testWritePermissionsReplaced() {
+        setWritePermissions("/foo");
+        assertTrue(canWrite("/foo/file"));
+
+        setWritePermissions("/bar");
+        assertFalse(canWrite("/foo/file"));
+        assertTrue(canWrite("/bar/file"));
+    }
+
+    public void testAuthoritiesCopied() {
+        List<Authority> authorities = new ArrayList<>();
+        authorities.add(new WritePermission("/foo"));
+        user.setAuthorities(authorities);
+        assertTrue(canWrite("/foo/file"));
+
+        authorities.add(new WritePermission("/bar"));
+        assertTrue(canWrite("/foo/file"));
+    }
 }